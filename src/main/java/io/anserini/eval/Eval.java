@@ -26,6 +26,7 @@ import org.kohsuke.args4j.ParserProperties;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -59,6 +60,7 @@ public final class Eval {
   }
 
   private static Map<String, EvalBundle> allEvals;
+  private static Map<String, double[]> allPerQuery;
 
   public static void print(boolean printPerQuery, PrintStream output) {
     String format = "%1$-22s\t%2$s\t%3$";
@@ -80,15 +82,20 @@ public final class Eval {
   }
 
   public static void eval(String runFile, String qrelFile) throws IOException {
-    RankingResults rr = new RankingResults(runFile);
     QueryJudgments qj = new QueryJudgments(qrelFile);
+    RankingResults rr = new RankingResults(runFile, qj.getDictionary());
     allEvals = new TreeMap<>();
-    for (String metric : allMetrics) {
-      BatchEval bm = new BatchEval(metric);
-      Map<String, Double> evals = bm.evaluate(rr, qj);
-      double aggregated = bm.getAggregated();
-      String format = bm.getFormat();
-      allEvals.put(metric, new EvalBundle(format, evals, aggregated));
+    // One pass over each query's results computes every metric
+    MultiMetricEval evaluator = new MultiMetricEval(allMetrics);
+    Map<String, double[]> perQuery = evaluator.evaluate(rr, qj);
+    allPerQuery = perQuery;
+    double[] aggregated = evaluator.aggregate(perQuery);
+    for (int m = 0; m < allMetrics.length; m++) {
+      Map<String, Double> evals = new TreeMap<>();
+      for (Map.Entry<String, double[]> entry : perQuery.entrySet()) {
+        evals.put(entry.getKey(), entry.getValue()[m]);
+      }
+      allEvals.put(allMetrics[m], new EvalBundle(evaluator.getFormat(m), evals, aggregated[m]));
     }
   }
 
@@ -113,5 +120,12 @@ public final class Eval {
     }
     eval(evalArgs.runPath, evalArgs.qrelPath);
     print(evalArgs.printPerQuery, System.out);
+
+    if (evalArgs.store != null) {
+      String runTag = evalArgs.runTag == null ? Paths.get(evalArgs.runPath).getFileName().toString() : evalArgs.runTag;
+      EvalStore.StoredEval stored = new EvalStore(Paths.get(evalArgs.store)).put(runTag, evalArgs.config, allMetrics,
+          allPerQuery);
+      LOG.info(String.format("Stored %s in %s", stored.getName(), evalArgs.store));
+    }
   }
 }
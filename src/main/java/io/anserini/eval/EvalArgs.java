@@ -15,12 +15,23 @@ public class EvalArgs {
 
   // optional arguments
   @Option(name = "-m", handler = StringArrayOptionHandler.class, usage = "The metric to be printed. Valid ones are: "
-          +"[num_ret|num_rel|num_rel_ret|map|p[.cutoff]|ndcg[.cutoff]]. "
+          +"[num_ret|num_rel|num_rel_ret|map|p[.cutoff]|ndcg[.cutoff]|recall[.cutoff]|rprec|bpref|infap|"
+          +"recip_rank|judged[.cutoff]|err[.cutoff]|rbp[.persistence]]. "
           +"Several metrics can be printed at once - use space to separate them. "
-          +"Use \".\" to indicate the cutoff parameter for p (precision), ndcg. "
+          +"Use \".\" to indicate the cutoff parameter for p (precision), ndcg, recall, judged and err, "
+          +"and the persistence of rbp, e.g. rbp.0.95. "
           +" For example, -m map p.30 ndcg.20")
   String[] reqMetrics;
 
   @Option(name = "-q", handler = BooleanOptionHandler.class, usage = "Print the internal document IDs of documents")
   boolean printPerQuery;
+
+  @Option(name = "-store", metaVar = "[path]", usage = "Store the per-query values in this EvalStore directory")
+  String store;
+
+  @Option(name = "-runtag", metaVar = "[tag]", usage = "Run tag to store the run under, its file name if not given")
+  String runTag;
+
+  @Option(name = "-config", metaVar = "[string]", usage = "Configuration the run came from, e.g. its parameters and commit")
+  String config = "";
 }
\ No newline at end of file
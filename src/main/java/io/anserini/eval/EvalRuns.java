@@ -0,0 +1,338 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates many run files against one set of qrels, e.g. the runs of a parameter sweep. The qrels
+ * are parsed once and shared by a pool of workers, each run is read against the docid dictionary
+ * of the qrels and evaluated in one pass with {@link MultiMetricEval}, and the results are written
+ * as one table with a row per run and a column per metric.
+ *
+ * Given a baseline run, every other run is also compared with it query by query, with a paired
+ * t-test and a randomization test per metric. The tests run on the same pool, since with thousands
+ * of randomization trials they take more time than the evaluation itself.
+ */
+public final class EvalRuns {
+  private static final Logger LOG = LogManager.getLogger(EvalRuns.class);
+
+  private EvalRuns() {}
+
+  private static class EvalRunsArgs {
+    @Option(name = "-qrels", metaVar = "[file]", required = true, usage = "Path to the qrels file")
+    public String qrelPath;
+
+    @Option(name = "-runs", metaVar = "[path]", required = true, handler = StringArrayOptionHandler.class,
+        usage = "run files, directories of run files or globs such as runs/bm25.*")
+    public String[] runs;
+
+    @Option(name = "-m", handler = StringArrayOptionHandler.class, usage = "metrics, as in Eval")
+    public String[] metrics = Eval.defaultMetrics;
+
+    @Option(name = "-baseline", metaVar = "[file]", usage = "run to test every other run against")
+    public String baseline;
+
+    @Option(name = "-trials", metaVar = "[number]", usage = "number of randomization test trials")
+    public int trials = 10000;
+
+    @Option(name = "-seed", metaVar = "[number]", usage = "seed of the randomization tests")
+    public long seed = 0;
+
+    @Option(name = "-threads", metaVar = "[number]", usage = "number of worker threads")
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-output", metaVar = "[file]", usage = "table to write, stdout if not given")
+    public String output;
+
+    @Option(name = "-store", metaVar = "[path]", usage = "EvalStore directory to store each run in, under its file name")
+    public String store;
+
+    @Option(name = "-config", metaVar = "[string]", usage = "configuration the runs came from, stored with each")
+    public String config = "";
+  }
+
+  /**
+   * The evaluation of one run
+   */
+  public static class RunEval {
+    public final Path path;
+    // Values of each metric by qid
+    public final Map<String, double[]> perQuery;
+    public final double[] aggregated;
+
+    RunEval(Path path, Map<String, double[]> perQuery, double[] aggregated) {
+      this.path = path;
+      this.perQuery = perQuery;
+      this.aggregated = aggregated;
+    }
+
+    public String getName() {
+      return path.getFileName().toString();
+    }
+  }
+
+  /**
+   * p-values of a run against the baseline, for each metric
+   */
+  public static class Comparison {
+    public final double[] tTest;
+    public final double[] randomization;
+
+    Comparison(int metrics) {
+      this.tTest = new double[metrics];
+      this.randomization = new double[metrics];
+    }
+  }
+
+  /**
+   * Expands each pattern into run files: a directory gives all the regular files in it, a pattern
+   * with glob characters gives the matching files of its directory, anything else is a file.
+   *
+   * @return absolute paths of the run files, sorted
+   */
+  public static List<Path> expandRuns(String... patterns) throws IOException {
+    List<Path> runs = new ArrayList<>();
+    for (String pattern : patterns) {
+      Path path = Paths.get(pattern);
+      if (Files.isDirectory(path)) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+          for (Path file : stream) {
+            if (Files.isRegularFile(file)) {
+              runs.add(file);
+            }
+          }
+        }
+      } else if (pattern.contains("*") || pattern.contains("?") || pattern.contains("[") || pattern.contains("{")) {
+        Path dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+          for (Path file : stream) {
+            if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+              runs.add(file);
+            }
+          }
+        }
+      } else {
+        runs.add(path);
+      }
+    }
+    for (int i = 0; i < runs.size(); i++) {
+      runs.set(i, runs.get(i).toAbsolutePath().normalize());
+    }
+    Collections.sort(runs);
+    return runs;
+  }
+
+  /**
+   * Evaluates runs in parallel.
+   *
+   * @return the evaluation of each run, in the order of {@code runs}
+   */
+  public static List<RunEval> evaluate(List<Path> runs, QueryJudgments qrels, String[] metrics, ExecutorService pool)
+      throws IOException {
+    // Each worker keeps its evaluator, and with it the statistics of the judgments, between runs
+    ThreadLocal<MultiMetricEval> evaluators = ThreadLocal.withInitial(() -> new MultiMetricEval(metrics));
+
+    List<Future<RunEval>> futures = new ArrayList<>(runs.size());
+    for (Path run : runs) {
+      futures.add(pool.submit(() -> {
+        MultiMetricEval evaluator = evaluators.get();
+        Map<String, double[]> perQuery = evaluator.evaluate(new RankingResults(run.toString(), qrels.getDictionary()),
+            qrels);
+        return new RunEval(run, perQuery, evaluator.aggregate(perQuery));
+      }));
+    }
+    return collect(futures);
+  }
+
+  /**
+   * Tests every run against a baseline on the queries both have values for, one task per run and
+   * metric.
+   *
+   * @return the comparison of each run, in the order of {@code evals}
+   */
+  public static List<Comparison> compare(List<RunEval> evals, RunEval baseline, int metrics, int trials, long seed,
+                                         ExecutorService pool) throws IOException {
+    List<Comparison> comparisons = new ArrayList<>(evals.size());
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int r = 0; r < evals.size(); r++) {
+      RunEval eval = evals.get(r);
+      Comparison comparison = new Comparison(metrics);
+      comparisons.add(comparison);
+
+      List<String> qids = new ArrayList<>(eval.perQuery.keySet());
+      qids.retainAll(baseline.perQuery.keySet());
+      for (int m = 0; m < metrics; m++) {
+        int metric = m;
+        // Seeded by position so the p-values don't depend on scheduling
+        long taskSeed = seed + 1000003L * r + m;
+        futures.add(pool.submit(() -> {
+          double[] a = new double[qids.size()];
+          double[] b = new double[qids.size()];
+          for (int i = 0; i < qids.size(); i++) {
+            a[i] = eval.perQuery.get(qids.get(i))[metric];
+            b[i] = baseline.perQuery.get(qids.get(i))[metric];
+          }
+          comparison.tTest[metric] = SignificanceTests.pairedTTest(a, b);
+          comparison.randomization[metric] = SignificanceTests.randomizationTest(a, b, trials, new Random(taskSeed));
+          return null;
+        }));
+      }
+    }
+    collect(futures);
+    return comparisons;
+  }
+
+  private static <T> List<T> collect(List<Future<T>> futures) throws IOException {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while evaluating runs", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Writes a tab separated table with a row per run and a column per metric, followed by the
+   * p-value columns of each metric if there are comparisons.
+   *
+   * @param comparisons p-values of each run against the baseline, or null
+   */
+  public static void print(List<RunEval> evals, List<Comparison> comparisons, String[] metrics, PrintStream out) {
+    MultiMetricEval formats = new MultiMetricEval(metrics);
+    StringBuilder header = new StringBuilder("run");
+    for (String metric : metrics) {
+      header.append('\t').append(metric);
+    }
+    if (comparisons != null) {
+      for (String metric : metrics) {
+        header.append('\t').append(metric).append(".ttest");
+        header.append('\t').append(metric).append(".rand");
+      }
+    }
+    out.println(header);
+
+    for (int r = 0; r < evals.size(); r++) {
+      RunEval eval = evals.get(r);
+      StringBuilder row = new StringBuilder(eval.getName());
+      for (int m = 0; m < metrics.length; m++) {
+        row.append('\t').append(String.format("%" + formats.getFormat(m), eval.aggregated[m]));
+      }
+      if (comparisons != null) {
+        Comparison comparison = comparisons.get(r);
+        for (int m = 0; m < metrics.length; m++) {
+          row.append('\t').append(String.format("%.4f", comparison.tTest[m]));
+          row.append('\t').append(String.format("%.4f", comparison.randomization[m]));
+        }
+      }
+      out.println(row);
+    }
+  }
+
+  public static void main(String[] argv) throws Exception {
+    EvalRunsArgs args = new EvalRunsArgs();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println("Example: EvalRuns " + parser.printExample(OptionHandlerFilter.REQUIRED));
+      return;
+    }
+
+    List<Path> runs = expandRuns(args.runs);
+    Path baselinePath = args.baseline == null ? null : Paths.get(args.baseline).toAbsolutePath().normalize();
+    if (baselinePath != null && !runs.contains(baselinePath)) {
+      runs.add(baselinePath);
+    }
+    if (runs.isEmpty()) {
+      System.err.println("No run files found...exit");
+      return;
+    }
+
+    long start = System.currentTimeMillis();
+    QueryJudgments qrels = new QueryJudgments(args.qrelPath);
+    ExecutorService pool = Executors.newFixedThreadPool(args.threads);
+    try {
+      List<RunEval> evals = evaluate(runs, qrels, args.metrics, pool);
+      LOG.info(String.format("Evaluated %d runs in %d ms", evals.size(), System.currentTimeMillis() - start));
+
+      if (args.store != null) {
+        EvalStore store = new EvalStore(Paths.get(args.store));
+        for (RunEval eval : evals) {
+          store.put(eval.getName(), args.config, args.metrics, eval.perQuery);
+        }
+        LOG.info(String.format("Stored %d runs in %s", evals.size(), args.store));
+      }
+
+      List<Comparison> comparisons = null;
+      if (baselinePath != null) {
+        RunEval baseline = evals.get(runs.indexOf(baselinePath));
+        comparisons = compare(evals, baseline, args.metrics.length, args.trials, args.seed, pool);
+        LOG.info(String.format("Compared %d runs with %s in %d ms", evals.size(), baseline.getName(),
+            System.currentTimeMillis() - start));
+      }
+
+      if (args.output == null) {
+        print(evals, comparisons, args.metrics, System.out);
+      } else {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(args.output)), false, "UTF-8")) {
+          print(evals, comparisons, args.metrics, out);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
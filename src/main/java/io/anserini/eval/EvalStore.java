@@ -0,0 +1,562 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An on-disk store of the per-query values of each metric for evaluated runs, so that runs can be
+ * compared query by query without evaluating their run files again. Each evaluation is keyed by a
+ * run tag and the hash of a configuration string, e.g. the parameters and commit the run came
+ * from, and is kept in a file of its own in the store directory:
+ *
+ * <pre>
+ * int      MAGIC
+ * int      VERSION
+ * UTF      run tag
+ * UTF      configuration hash
+ * UTF      configuration
+ * long     time of the evaluation, in ms since the epoch
+ * int      number of metrics, then the UTF name of each
+ * int      number of queries, then the UTF qid of each, in ascending order
+ * double   value of each metric for each query, query by query
+ * </pre>
+ *
+ * Storing an evaluation with the key of one already stored replaces it. A run is looked up by its
+ * tag, optionally followed by {@code @} and a prefix of the configuration hash; if several stored
+ * evaluations match, the latest one is used. Files are named after the run tag and the
+ * configuration hash, so a lookup only reads the files of that run.
+ */
+public final class EvalStore {
+  private static final Logger LOG = LogManager.getLogger(EvalStore.class);
+
+  public static final int MAGIC = 0x414e4553; // "ANES"
+  public static final int VERSION = 1;
+  private static final String SUFFIX = ".eval";
+  // Length of a configuration hash, in hex digits
+  private static final int HASH_LENGTH = 32;
+  // Per-query differences at most this large are ties
+  public static final double DEFAULT_TIE_THRESHOLD = 1e-9;
+
+  private final Path directory;
+  // Evaluations already read, by file name, with the modification time of the file they were read from
+  private final ConcurrentMap<String, CachedEval> cache = new ConcurrentHashMap<>();
+  // Time of the last evaluation stored, so evaluations stored within the same ms keep their order
+  private long lastTimestamp = 0L;
+
+  private static class CachedEval {
+    final FileTime modified;
+    final StoredEval eval;
+
+    CachedEval(FileTime modified, StoredEval eval) {
+      this.modified = modified;
+      this.eval = eval;
+    }
+  }
+
+  /**
+   * A stored evaluation of one run
+   */
+  public static class StoredEval {
+    public final String runTag;
+    public final String configHash;
+    public final String config;
+    public final long timestamp;
+    public final String[] metrics;
+    public final String[] qids;
+    // values[q][m] is the value of metric m for query q
+    private final double[][] values;
+
+    StoredEval(String runTag, String configHash, String config, long timestamp, String[] metrics, String[] qids,
+               double[][] values) {
+      this.runTag = runTag;
+      this.configHash = configHash;
+      this.config = config;
+      this.timestamp = timestamp;
+      this.metrics = metrics;
+      this.qids = qids;
+      this.values = values;
+    }
+
+    /**
+     * @return index of the metric, or -1 if it wasn't stored
+     */
+    public int indexOfMetric(String metric) {
+      return Arrays.asList(metrics).indexOf(metric);
+    }
+
+    /**
+     * @return index of the query, or a negative number if it has no values
+     */
+    public int indexOfQuery(String qid) {
+      return Arrays.binarySearch(qids, qid);
+    }
+
+    public double getValue(int query, int metric) {
+      return values[query][metric];
+    }
+
+    /**
+     * @return values of each metric by qid
+     */
+    public Map<String, double[]> getPerQuery() {
+      Map<String, double[]> perQuery = new TreeMap<>();
+      for (int q = 0; q < qids.length; q++) {
+        perQuery.put(qids[q], values[q].clone());
+      }
+      return perQuery;
+    }
+
+    /**
+     * @return values of each metric over all queries, aggregated as by {@link Eval}
+     */
+    public double[] getAggregated() {
+      return new MultiMetricEval(metrics).aggregate(getPerQuery());
+    }
+
+    /**
+     * @return run tag and the start of the configuration hash, which together find this evaluation
+     */
+    public String getName() {
+      return runTag + "@" + configHash.substring(0, Math.min(8, configHash.length()));
+    }
+  }
+
+  /**
+   * How one run compares with another on a metric, query by query, over the queries both have
+   * values for
+   */
+  public static class Comparison {
+    public final String metric;
+    public final String[] qids;
+    public final double[] a;
+    public final double[] b;
+    public final int wins;
+    public final int losses;
+    public final int ties;
+
+    Comparison(String metric, String[] qids, double[] a, double[] b, double tieThreshold) {
+      this.metric = metric;
+      this.qids = qids;
+      this.a = a;
+      this.b = b;
+      int win = 0;
+      int loss = 0;
+      for (int i = 0; i < qids.length; i++) {
+        double delta = b[i] - a[i];
+        if (delta > tieThreshold) {
+          win++;
+        } else if (delta < -tieThreshold) {
+          loss++;
+        }
+      }
+      this.wins = win;
+      this.losses = loss;
+      this.ties = qids.length - win - loss;
+    }
+
+    /**
+     * @return value of the second run minus that of the first on the i-th query
+     */
+    public double delta(int i) {
+      return b[i] - a[i];
+    }
+
+    /**
+     * @return indexes of the (at most) k queries with the largest absolute deltas, largest first
+     */
+    public int[] largestDeltas(int k) {
+      int[] order = new int[qids.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      IntArrays.quickSort(order, 0, order.length, new AbstractIntComparator() {
+        @Override
+        public int compare(int x, int y) {
+          int c = Double.compare(Math.abs(delta(y)), Math.abs(delta(x)));
+          return c != 0 ? c : qids[x].compareTo(qids[y]);
+        }
+      });
+      return Arrays.copyOf(order, Math.min(k, order.length));
+    }
+  }
+
+  public EvalStore(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+  }
+
+  /**
+   * @return hash of a configuration string, as a hex string
+   */
+  public static String hashConfig(String config) {
+    return Hashing.murmur3_128().hashString(config, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * @return start of the names of the files the run tag's evaluations are stored in
+   */
+  private static String filePrefix(String runTag) {
+    String safe = runTag.replaceAll("[^A-Za-z0-9._-]", "_");
+    // The tag may not survive being made safe, so it is hashed into the name as well
+    String tagHash = Hashing.murmur3_32().hashString(runTag, StandardCharsets.UTF_8).toString();
+    return safe + "-" + tagHash + "-";
+  }
+
+  private static String fileName(String runTag, String configHash) {
+    return filePrefix(runTag) + configHash + SUFFIX;
+  }
+
+  /**
+   * Stores the evaluation of a run, replacing any with the same run tag and configuration.
+   *
+   * @param perQuery values of each metric by qid
+   * @return the stored evaluation
+   */
+  public StoredEval put(String runTag, String config, String[] metrics, Map<String, double[]> perQuery)
+      throws IOException {
+    String[] qids = new TreeMap<>(perQuery).keySet().toArray(new String[perQuery.size()]);
+    double[][] values = new double[qids.length][];
+    for (int q = 0; q < qids.length; q++) {
+      values[q] = perQuery.get(qids[q]).clone();
+      if (values[q].length != metrics.length) {
+        throw new IllegalArgumentException(String.format("Query %s has %d values for %d metrics", qids[q],
+            values[q].length, metrics.length));
+      }
+    }
+    long timestamp;
+    synchronized (this) {
+      timestamp = lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+    }
+    StoredEval eval = new StoredEval(runTag, hashConfig(config), config, timestamp, metrics.clone(), qids, values);
+
+    String name = fileName(runTag, eval.configHash);
+    // Written aside and moved into place, so a reader never sees half an evaluation
+    Path temp = Files.createTempFile(directory, name, ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(eval.runTag);
+        out.writeUTF(eval.configHash);
+        out.writeUTF(eval.config);
+        out.writeLong(eval.timestamp);
+        out.writeInt(eval.metrics.length);
+        for (String metric : eval.metrics) {
+          out.writeUTF(metric);
+        }
+        out.writeInt(qids.length);
+        for (String qid : qids) {
+          out.writeUTF(qid);
+        }
+        for (double[] row : values) {
+          for (double value : row) {
+            out.writeDouble(value);
+          }
+        }
+      }
+      Path file = directory.resolve(name);
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      cache.put(name, new CachedEval(Files.getLastModifiedTime(file), eval));
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return eval;
+  }
+
+  /**
+   * Reads a stored evaluation, unless it was read before and the file hasn't changed since
+   */
+  private StoredEval read(Path file) throws IOException {
+    String name = file.getFileName().toString();
+    // Taken before reading, so a file replaced in between is read again next time
+    FileTime modified = Files.getLastModifiedTime(file);
+    CachedEval cached = cache.get(name);
+    if (cached != null && cached.modified.equals(modified)) {
+      return cached.eval;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(String.format("%s is not a stored evaluation", file));
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException(String.format("Unsupported stored evaluation version %d in %s", version, file));
+      }
+      String runTag = in.readUTF();
+      String configHash = in.readUTF();
+      String config = in.readUTF();
+      long timestamp = in.readLong();
+      String[] metrics = new String[in.readInt()];
+      for (int m = 0; m < metrics.length; m++) {
+        metrics[m] = in.readUTF();
+      }
+      String[] qids = new String[in.readInt()];
+      for (int q = 0; q < qids.length; q++) {
+        qids[q] = in.readUTF();
+      }
+      double[][] values = new double[qids.length][metrics.length];
+      for (double[] row : values) {
+        for (int m = 0; m < row.length; m++) {
+          row[m] = in.readDouble();
+        }
+      }
+      StoredEval eval = new StoredEval(runTag, configHash, config, timestamp, metrics, qids, values);
+      cache.put(name, new CachedEval(modified, eval));
+      return eval;
+    }
+  }
+
+  /**
+   * @return every stored evaluation, oldest first; unreadable files are logged and left out
+   */
+  public List<StoredEval> list() throws IOException {
+    List<StoredEval> evals = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      for (Path file : stream) {
+        try {
+          evals.add(read(file));
+        } catch (IOException e) {
+          LOG.warn(String.format("Skipping %s: %s", file, e.getMessage()));
+        }
+      }
+    }
+    evals.sort(Comparator.comparingLong((StoredEval eval) -> eval.timestamp).thenComparing(StoredEval::getName));
+    return evals;
+  }
+
+  /**
+   * Finds an evaluation by run tag, optionally followed by {@code @} and a prefix of the
+   * configuration hash.
+   *
+   * @return the latest matching evaluation, or null if there is none
+   */
+  public StoredEval get(String name) throws IOException {
+    int at = name.lastIndexOf('@');
+    String runTag = at < 0 ? name : name.substring(0, at);
+    String hashPrefix = at < 0 ? "" : name.substring(at + 1);
+    if (!hashPrefix.matches("[0-9a-f]*") || hashPrefix.length() > HASH_LENGTH) {
+      return null;
+    }
+
+    // A whole hash names a single file
+    if (hashPrefix.length() == HASH_LENGTH) {
+      Path file = directory.resolve(fileName(runTag, hashPrefix));
+      if (!Files.exists(file)) {
+        return null;
+      }
+      StoredEval eval = read(file);
+      return eval.runTag.equals(runTag) ? eval : null;
+    }
+
+    StoredEval latest = null;
+    String glob = filePrefix(runTag) + hashPrefix + "*" + SUFFIX;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+      for (Path file : stream) {
+        StoredEval eval = read(file);
+        // Another tag made safe to the same name, whose hash collides
+        if (!eval.runTag.equals(runTag)) {
+          continue;
+        }
+        if (latest == null || eval.timestamp > latest.timestamp ||
+            (eval.timestamp == latest.timestamp && eval.getName().compareTo(latest.getName()) > 0)) {
+          latest = eval;
+        }
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Compares two evaluations on a metric, over the queries both have values for.
+   *
+   * @param tieThreshold differences at most this large are ties
+   */
+  public static Comparison compare(StoredEval a, StoredEval b, String metric, double tieThreshold) {
+    int ma = a.indexOfMetric(metric);
+    int mb = b.indexOfMetric(metric);
+    if (ma < 0 || mb < 0) {
+      throw new IllegalArgumentException(String.format("%s isn't stored for %s", metric,
+          ma < 0 ? a.getName() : b.getName()));
+    }
+    List<String> qids = new ArrayList<>();
+    List<double[]> pairs = new ArrayList<>();
+    for (int q = 0; q < a.qids.length; q++) {
+      int qb = b.indexOfQuery(a.qids[q]);
+      if (qb >= 0) {
+        qids.add(a.qids[q]);
+        pairs.add(new double[] {a.getValue(q, ma), b.getValue(qb, mb)});
+      }
+    }
+    double[] valuesA = new double[qids.size()];
+    double[] valuesB = new double[qids.size()];
+    for (int i = 0; i < valuesA.length; i++) {
+      valuesA[i] = pairs.get(i)[0];
+      valuesB[i] = pairs.get(i)[1];
+    }
+    return new Comparison(metric, qids.toArray(new String[qids.size()]), valuesA, valuesB, tieThreshold);
+  }
+
+  /**
+   * Writes for each metric the value of both runs over their common queries, the wins, losses and
+   * ties of the second run against the first, and the queries with the largest differences.
+   */
+  public static void printComparison(StoredEval a, StoredEval b, String[] metrics, int k, double tieThreshold,
+                                     PrintStream out) {
+    out.format("a: %s\t%s\n", a.getName(), a.config);
+    out.format("b: %s\t%s\n", b.getName(), b.config);
+    for (String metric : metrics) {
+      Comparison comparison = compare(a, b, metric, tieThreshold);
+      double meanA = Arrays.stream(comparison.a).average().orElse(0.0);
+      double meanB = Arrays.stream(comparison.b).average().orElse(0.0);
+      out.format("%1$-22s\t%2$d queries\ta %3$.4f\tb %4$.4f\twins %5$d\tlosses %6$d\tties %7$d\n", metric,
+          comparison.qids.length, meanA, meanB, comparison.wins, comparison.losses, comparison.ties);
+      for (int i : comparison.largestDeltas(k)) {
+        out.format("%1$-22s\t%2$s\t%3$.4f\t%4$.4f\t%5$+.4f\n", metric, comparison.qids[i], comparison.a[i],
+            comparison.b[i], comparison.delta(i));
+      }
+    }
+  }
+
+  private static class EvalStoreArgs {
+    @Option(name = "-store", metaVar = "[path]", required = true, usage = "directory of the store")
+    public String store;
+
+    @Option(name = "-list", usage = "list the stored evaluations")
+    public boolean list = false;
+
+    @Option(name = "-compare", handler = StringArrayOptionHandler.class,
+        usage = "compare two stored runs, each a run tag optionally followed by @ and a prefix of its configuration hash")
+    public String[] compare;
+
+    @Option(name = "-run", metaVar = "[file]", usage = "run file to evaluate and store")
+    public String run;
+
+    @Option(name = "-qrels", metaVar = "[file]", usage = "qrels to evaluate -run against")
+    public String qrels;
+
+    @Option(name = "-runtag", metaVar = "[tag]", usage = "run tag to store -run under, its file name if not given")
+    public String runTag;
+
+    @Option(name = "-config", metaVar = "[string]", usage = "configuration -run came from, e.g. its parameters and commit")
+    public String config = "";
+
+    @Option(name = "-m", handler = StringArrayOptionHandler.class, usage = "metrics, as in Eval")
+    public String[] metrics;
+
+    @Option(name = "-k", metaVar = "[number]", usage = "number of queries with the largest differences to show")
+    public int k = 10;
+
+    @Option(name = "-tie", metaVar = "[value]", usage = "differences at most this large are ties")
+    public double tieThreshold = DEFAULT_TIE_THRESHOLD;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    EvalStoreArgs args = new EvalStoreArgs();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println("Example: EvalStore " + parser.printExample(OptionHandlerFilter.REQUIRED));
+      return;
+    }
+
+    if (args.run != null && args.qrels == null) {
+      System.err.println("-run needs -qrels...exit");
+      return;
+    }
+    if (args.compare != null && args.compare.length != 2) {
+      System.err.println("-compare needs two runs...exit");
+      return;
+    }
+
+    EvalStore store = new EvalStore(Paths.get(args.store));
+    if (args.run != null) {
+      String[] metrics = args.metrics == null ? Eval.defaultMetrics : args.metrics;
+      QueryJudgments qrels = new QueryJudgments(args.qrels);
+      MultiMetricEval evaluator = new MultiMetricEval(metrics);
+      Map<String, double[]> perQuery = evaluator.evaluate(new RankingResults(args.run, qrels.getDictionary()), qrels);
+      String runTag = args.runTag == null ? Paths.get(args.run).getFileName().toString() : args.runTag;
+      StoredEval eval = store.put(runTag, args.config, metrics, perQuery);
+      LOG.info(String.format("Stored %d queries of %s as %s", perQuery.size(), args.run, eval.getName()));
+    }
+
+    if (args.list) {
+      for (StoredEval eval : store.list()) {
+        StringBuilder line = new StringBuilder(eval.getName());
+        line.append('\t').append(eval.qids.length).append(" queries");
+        double[] aggregated = eval.getAggregated();
+        for (int m = 0; m < eval.metrics.length; m++) {
+          line.append('\t').append(eval.metrics[m]).append(' ').append(String.format("%.4f", aggregated[m]));
+        }
+        line.append('\t').append(eval.config);
+        System.out.println(line);
+      }
+    }
+
+    if (args.compare != null) {
+      StoredEval a = store.get(args.compare[0]);
+      StoredEval b = store.get(args.compare[1]);
+      if (a == null || b == null) {
+        System.err.println("No stored evaluation of " + (a == null ? args.compare[0] : args.compare[1]));
+        System.exit(-1);
+      }
+      String[] metrics = args.metrics;
+      if (metrics == null) {
+        List<String> common = new ArrayList<>(Arrays.asList(a.metrics));
+        common.retainAll(Arrays.asList(b.metrics));
+        metrics = common.toArray(new String[common.size()]);
+      }
+      printComparison(a, b, metrics, args.k, args.tieThreshold, System.out);
+    }
+  }
+}
@@ -0,0 +1,524 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import io.anserini.util.Qrels;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.DoubleStream;
+
+/**
+ * Evaluates several metrics at once, walking each query's result list a single time. It gives the
+ * same values as running a {@link BatchEval} per metric, for which each metric walks every result
+ * list again.
+ *
+ * The relevance grade of each retrieved document is looked up once into a primitive array, and
+ * the running counts every metric is built from (relevant retrieved, summed precision, DCG) are
+ * recorded at each requested cutoff as the list is walked. The statistics of a query's judgments,
+ * i.e. the number of relevant documents and the DCG of the ideal ranking at every depth, are
+ * computed the first time the query is seen and reused for every later run, which is what makes
+ * evaluating many runs against the same qrels cheap. A run read with the dictionary of its qrels
+ * (see {@link RankingResults#RankingResults(String, io.anserini.util.DocidDictionary)}) has its
+ * grades found by docid ordinal, without any string lookups.
+ *
+ * Supported metrics, with optional cutoffs as in {@link io.anserini.eval.metric.MetricFactory}:
+ * num_ret, num_rel, num_rel_ret, map (or ap), p[.k], ndcg[.k], recall[.k], rprec, bpref, infap,
+ * recip_rank (or mrr), judged[.k], err[.k] and rbp[.p]. Rprec, bpref, infAP and recip_rank are
+ * defined as in trec_eval 9.0, where judgments with a negative grade are pooled but unjudged
+ * documents, and judged.k as in later versions of trec_eval. ERR is defined as in gdeval.pl, with
+ * a maximum grade of 4, and RBP over binary relevance with a persistence of p (0.8 by default).
+ *
+ * An evaluator keeps scratch space between queries, so it must not be shared between threads.
+ */
+public class MultiMetricEval {
+  private enum Kind {
+    NUM_RET(".0f", true),
+    NUM_REL(".0f", true),
+    NUM_REL_RET(".0f", true),
+    AP(".4f", false),
+    P(".4f", false),
+    NDCG(".4f", false),
+    RECALL(".4f", false),
+    RPREC(".4f", false),
+    BPREF(".4f", false),
+    INFAP(".4f", false),
+    RECIP_RANK(".4f", false),
+    JUDGED(".4f", false),
+    ERR(".4f", false),
+    RBP(".4f", false);
+
+    final String format;
+    // Counts are summed over queries, everything else is averaged
+    final boolean summed;
+
+    Kind(String format, boolean summed) {
+      this.format = format;
+      this.summed = summed;
+    }
+  }
+
+  /**
+   * Statistics of one query's judgments, independent of any run
+   */
+  private static class JudgedQuery {
+    final int numRel;
+    // Judged documents with a grade of 0
+    final int numNonRel;
+    // idealDcg[k] is the DCG of the best possible ranking cut off at k
+    final double[] idealDcg;
+
+    JudgedQuery(Map<String, Integer> judgments, boolean needsDcg) {
+      int[] grades = new int[judgments.size()];
+      int count = 0;
+      int nonRel = 0;
+      if (judgments instanceof Qrels.Judgments) {
+        Qrels.Judgments primitive = (Qrels.Judgments) judgments;
+        for (int i = 0; i < primitive.size(); i++) {
+          if (primitive.gradeAt(i) > 0) {
+            grades[count++] = primitive.gradeAt(i);
+          } else if (primitive.gradeAt(i) == 0) {
+            nonRel++;
+          }
+        }
+      } else {
+        for (int grade : judgments.values()) {
+          if (grade > 0) {
+            grades[count++] = grade;
+          } else if (grade == 0) {
+            nonRel++;
+          }
+        }
+      }
+      this.numRel = count;
+      this.numNonRel = nonRel;
+
+      if (needsDcg) {
+        Arrays.sort(grades, 0, count);
+        idealDcg = new double[count + 1];
+        for (int i = 0; i < count; i++) {
+          idealDcg[i + 1] = idealDcg[i] + gain(grades[count - 1 - i]) / discount(i);
+        }
+      } else {
+        idealDcg = null;
+      }
+    }
+
+    double idealDcg(int cutoff) {
+      return idealDcg[Math.min(cutoff, numRel)];
+    }
+  }
+
+  // Grade of a retrieved document that isn't in the qrels at all
+  private static final int NOT_POOLED = Integer.MIN_VALUE;
+  // Smoothing of the precision estimates of infAP, as in trec_eval
+  private static final double INFAP_EPSILON = 0.00001;
+  // Highest grade ERR gives a gain to, as in gdeval.pl
+  private static final int ERR_MAX_GRADE = 4;
+  private static final double DEFAULT_RBP_PERSISTENCE = 0.8;
+
+  private final String[] names;
+  private final Kind[] kinds;
+  private final int[] metricCutoffs;
+  // Persistence of each RBP metric
+  private final double[] persistence;
+  // Distinct cutoffs in ascending order, Integer.MAX_VALUE standing for the whole list
+  private final int[] cutoffs;
+  // Index into cutoffs of each metric
+  private final int[] cutoffIndex;
+  private final boolean needsDcg;
+  private final boolean needsErr;
+
+  private final Map<Map<String, Integer>, JudgedQuery> judgedQueries = new IdentityHashMap<>();
+
+  // Per query scratch, reused between queries
+  private int[] grades = new int[1000];
+  private final int[] relRetAt;
+  private final double[] dcgAt;
+  private final int[] judgedAt;
+  private final double[] errAt;
+
+  /**
+   * @param metrics metric names, e.g. "map", "p.30", "ndcg.20"
+   */
+  public MultiMetricEval(String... metrics) {
+    this.names = metrics.clone();
+    this.kinds = new Kind[metrics.length];
+    this.metricCutoffs = new int[metrics.length];
+    this.persistence = new double[metrics.length];
+    boolean dcg = false;
+    boolean err = false;
+    for (int i = 0; i < metrics.length; i++) {
+      parse(metrics[i], i);
+      dcg |= kinds[i] == Kind.NDCG;
+      err |= kinds[i] == Kind.ERR;
+    }
+    this.needsDcg = dcg;
+    this.needsErr = err;
+
+    this.cutoffs = Arrays.stream(metricCutoffs).distinct().sorted().toArray();
+    this.cutoffIndex = new int[metrics.length];
+    for (int i = 0; i < metrics.length; i++) {
+      cutoffIndex[i] = Arrays.binarySearch(cutoffs, metricCutoffs[i]);
+    }
+    this.relRetAt = new int[cutoffs.length];
+    this.dcgAt = new double[cutoffs.length];
+    this.judgedAt = new int[cutoffs.length];
+    this.errAt = new double[cutoffs.length];
+  }
+
+  private void parse(String metric, int i) {
+    String lower = metric.toLowerCase(Locale.ROOT);
+    metricCutoffs[i] = Integer.MAX_VALUE;
+    switch (lower) {
+      case "num_ret":
+        kinds[i] = Kind.NUM_RET;
+        return;
+      case "num_rel":
+        kinds[i] = Kind.NUM_REL;
+        return;
+      case "num_rel_ret":
+        kinds[i] = Kind.NUM_REL_RET;
+        return;
+      case "map":
+      case "ap":
+        kinds[i] = Kind.AP;
+        return;
+      case "rprec":
+        kinds[i] = Kind.RPREC;
+        return;
+      case "bpref":
+        kinds[i] = Kind.BPREF;
+        return;
+      case "infap":
+        kinds[i] = Kind.INFAP;
+        return;
+      case "recip_rank":
+      case "mrr":
+        kinds[i] = Kind.RECIP_RANK;
+        return;
+    }
+
+    // The parameter of RBP is a fraction, e.g. rbp.0.95
+    if (lower.equals("rbp") || lower.startsWith("rbp.")) {
+      kinds[i] = Kind.RBP;
+      persistence[i] = lower.equals("rbp") ? DEFAULT_RBP_PERSISTENCE : Double.parseDouble(lower.substring(4));
+      if (!(persistence[i] > 0.0 && persistence[i] < 1.0)) {
+        throw new RuntimeException("Metric " + metric + " needs a persistence between 0 and 1.");
+      }
+      return;
+    }
+
+    String[] pieces = lower.split("\\.");
+    switch (pieces[0]) {
+      case "p":
+        kinds[i] = Kind.P;
+        break;
+      case "ndcg":
+        kinds[i] = Kind.NDCG;
+        break;
+      case "recall":
+        kinds[i] = Kind.RECALL;
+        break;
+      case "judged":
+        kinds[i] = Kind.JUDGED;
+        break;
+      case "err":
+        kinds[i] = Kind.ERR;
+        break;
+      default:
+        throw new RuntimeException("Metric " + metric + " is not a valid metric.");
+    }
+    if (pieces.length > 1) {
+      metricCutoffs[i] = Integer.parseInt(pieces[1]);
+      if (metricCutoffs[i] < 0) {
+        throw new RuntimeException("Metric " + metric + " has a negative cutoff.");
+      }
+    }
+  }
+
+  private static double gain(int grade) {
+    return Math.pow(2, grade) - 1.0;
+  }
+
+  // Written as in NDCG so the values come out identical
+  private static double discount(int rank) {
+    return Math.log(rank + 2) / Math.log(2.0);
+  }
+
+  public String[] getMetricNames() {
+    return names;
+  }
+
+  /**
+   * @return print format of the metric at {@code index}, as in {@link BatchEval#getFormat()}
+   */
+  public String getFormat(int index) {
+    return kinds[index].format;
+  }
+
+  private JudgedQuery judged(Map<String, Integer> judgments) {
+    JudgedQuery judged = judgedQueries.get(judgments);
+    if (judged == null) {
+      judged = new JudgedQuery(judgments, needsDcg);
+      judgedQueries.put(judgments, judged);
+    }
+    return judged;
+  }
+
+  /**
+   * Evaluates one query.
+   *
+   * @param values receives the value of each metric, in the order they were given
+   * @return {@code values}
+   */
+  public double[] evaluate(List<ResultDoc> results, Map<String, Integer> judgments, double[] values) {
+    int n = results.size();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      Integer grade = judgments.get(results.get(i).getDocid());
+      grades[i] = grade == null ? NOT_POOLED : grade;
+    }
+    return score(n, judged(judgments), values);
+  }
+
+  /**
+   * Evaluates one query, the docids of the ranking being ordinals of the judgments' dictionary.
+   *
+   * @param values receives the value of each metric, in the order they were given
+   * @return {@code values}
+   */
+  public double[] evaluate(RankingResults.Ranking ranking, Qrels.Judgments judgments, double[] values) {
+    int n = ranking.size();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      int judged = judgments.indexOf(ranking.docidAt(i));
+      grades[i] = judged < 0 ? NOT_POOLED : judgments.gradeAt(judged);
+    }
+    return score(n, judged(judgments), values);
+  }
+
+  private void ensureCapacity(int n) {
+    if (grades.length < n) {
+      grades = new int[Math.max(n, grades.length * 2)];
+    }
+  }
+
+  /**
+   * Computes the metrics from the grades of the first n results.
+   */
+  private double[] score(int n, JudgedQuery judged, double[] values) {
+    int relRet = 0;
+    double precisionSum = 0.0;
+    double dcg = 0.0;
+    // Judged documents so far, and the running ERR and probability of getting this far
+    int judgedCount = 0;
+    double err = 0.0;
+    double stop = 1.0;
+    // Pooled documents so far by kind, relevant ones being relRet
+    int nonRel = 0;
+    int unjudged = 0;
+    double bpref = 0.0;
+    double infAp = 0.0;
+    int firstRel = -1;
+    int relRetAtR = 0;
+
+    int next = 0;
+    // A cutoff of 0 sees none of the list
+    while (next < cutoffs.length && cutoffs[next] == 0) {
+      relRetAt[next] = 0;
+      dcgAt[next] = 0.0;
+      judgedAt[next] = 0;
+      errAt[next] = 0.0;
+      next++;
+    }
+    for (int i = 0; i < n; i++) {
+      int grade = grades[i];
+      if (grade > 0) {
+        // infAP estimates the precision above from the judged documents above
+        if (i == 0) {
+          infAp += 1.0;
+        } else {
+          infAp += 1.0 / (i + 1) + ((double) i / (i + 1)) * ((double) (relRet + nonRel + unjudged) / i)
+              * ((relRet + INFAP_EPSILON) / (relRet + nonRel + 2 * INFAP_EPSILON));
+        }
+        bpref += nonRel == 0 ? 1.0 :
+            1.0 - (double) Math.min(nonRel, judged.numRel) / Math.min(judged.numNonRel, judged.numRel);
+        relRet++;
+        precisionSum += (double) relRet / (i + 1);
+        if (needsDcg) {
+          dcg += gain(grade) / discount(i);
+        }
+        if (firstRel < 0) {
+          firstRel = i;
+        }
+      } else if (grade == 0) {
+        nonRel++;
+      } else if (grade != NOT_POOLED) {
+        unjudged++;
+      }
+      if (grade >= 0) {
+        judgedCount++;
+        if (needsErr) {
+          double r = gain(Math.min(grade, ERR_MAX_GRADE)) / (1 << ERR_MAX_GRADE);
+          err += r * stop / (i + 1);
+          stop *= 1.0 - r;
+        }
+      }
+      if (i + 1 == judged.numRel) {
+        relRetAtR = relRet;
+      }
+      while (next < cutoffs.length && cutoffs[next] == i + 1) {
+        relRetAt[next] = relRet;
+        dcgAt[next] = dcg;
+        judgedAt[next] = judgedCount;
+        errAt[next] = err;
+        next++;
+      }
+    }
+    // Cutoffs past the end of the list see all of it
+    for (; next < cutoffs.length; next++) {
+      relRetAt[next] = relRet;
+      dcgAt[next] = dcg;
+      judgedAt[next] = judgedCount;
+      errAt[next] = err;
+    }
+    if (n < judged.numRel) {
+      relRetAtR = relRet;
+    }
+
+    for (int m = 0; m < kinds.length; m++) {
+      int at = cutoffIndex[m];
+      int cutoff = metricCutoffs[m];
+      switch (kinds[m]) {
+        case NUM_RET:
+          values[m] = n;
+          break;
+        case NUM_REL:
+          values[m] = judged.numRel;
+          break;
+        case NUM_REL_RET:
+          values[m] = relRet;
+          break;
+        case AP:
+          values[m] = judged.numRel == 0 ? 0.0 : precisionSum / judged.numRel;
+          break;
+        case P:
+          int retrieved = Math.min(n, cutoff);
+          values[m] = retrieved == 0 ? 0.0 : (double) relRetAt[at] / retrieved;
+          break;
+        case NDCG:
+          double ideal = judged.idealDcg(cutoff);
+          values[m] = ideal == 0 ? 0.0 : dcgAt[at] / ideal;
+          break;
+        case RECALL:
+          values[m] = judged.numRel == 0 ? 0.0 : (double) relRetAt[at] / judged.numRel;
+          break;
+        case RPREC:
+          values[m] = judged.numRel == 0 ? 0.0 : (double) relRetAtR / judged.numRel;
+          break;
+        case BPREF:
+          values[m] = judged.numRel == 0 ? 0.0 : bpref / judged.numRel;
+          break;
+        case INFAP:
+          values[m] = judged.numRel == 0 ? 0.0 : infAp / judged.numRel;
+          break;
+        case RECIP_RANK:
+          values[m] = firstRel < 0 ? 0.0 : 1.0 / (firstRel + 1);
+          break;
+        case JUDGED:
+          // Out of the cutoff as in trec_eval, or out of the whole list without one
+          int depth = cutoff == Integer.MAX_VALUE ? n : cutoff;
+          values[m] = depth == 0 ? 0.0 : (double) judgedAt[at] / depth;
+          break;
+        case ERR:
+          values[m] = errAt[at];
+          break;
+        case RBP:
+          values[m] = rbp(n, persistence[m]);
+          break;
+      }
+    }
+    return values;
+  }
+
+  private double rbp(int n, double p) {
+    double sum = 0.0;
+    double weight = 1.0 - p;
+    for (int i = 0; i < n && weight > 0.0; i++) {
+      if (grades[i] > 0) {
+        sum += weight;
+      }
+      weight *= p;
+    }
+    return sum;
+  }
+
+  public double[] evaluate(List<ResultDoc> results, Map<String, Integer> judgments) {
+    return evaluate(results, judgments, new double[kinds.length]);
+  }
+
+  /**
+   * Evaluates every query that has both results and judgments.
+   *
+   * @return the values of each metric by qid, in the order the metrics were given
+   */
+  public Map<String, double[]> evaluate(Map<String, List<ResultDoc>> resultLists,
+                                        Map<String, Map<String, Integer>> judgments) {
+    Map<String, double[]> evals = new TreeMap<>();
+    for (Map.Entry<String, List<ResultDoc>> entry : resultLists.entrySet()) {
+      Map<String, Integer> qJudge = judgments.get(entry.getKey());
+      if (entry.getValue() != null && qJudge != null) {
+        evals.put(entry.getKey(), evaluate(entry.getValue(), qJudge));
+      }
+    }
+    return evals;
+  }
+
+  public Map<String, double[]> evaluate(RankingResults resultLists, QueryJudgments judgments) {
+    // Ordinals can only be compared within one dictionary
+    if (resultLists.getDictionary() != judgments.getDictionary()) {
+      return evaluate(resultLists.getRankingList(), judgments.getQrels());
+    }
+    Map<String, double[]> evals = new TreeMap<>();
+    for (Map.Entry<String, RankingResults.Ranking> entry : resultLists.getRankings().entrySet()) {
+      Qrels.Judgments qJudge = judgments.getJudgments(entry.getKey());
+      if (qJudge != null) {
+        evals.put(entry.getKey(), evaluate(entry.getValue(), qJudge, new double[kinds.length]));
+      }
+    }
+    return evals;
+  }
+
+  /**
+   * Aggregates per query values over all queries: counts are summed and the other metrics
+   * averaged, as in {@link BatchEval#getAggregated()}.
+   */
+  public double[] aggregate(Map<String, double[]> evals) {
+    double[] aggregated = new double[kinds.length];
+    for (int m = 0; m < kinds.length; m++) {
+      int metric = m;
+      DoubleStream column = evals.values().stream().mapToDouble(values -> values[metric]);
+      aggregated[m] = kinds[m].summed ? column.sum() : column.average().orElse(0.0);
+    }
+    return aggregated;
+  }
+}
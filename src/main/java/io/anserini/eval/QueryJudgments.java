@@ -16,11 +16,12 @@
 
 package io.anserini.eval;
 
-import java.io.*;
+import io.anserini.util.DocidDictionary;
+import io.anserini.util.Qrels;
+
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.zip.GZIPInputStream;
 
 /**
  * The judgments for a specific query.
@@ -28,20 +29,37 @@ import java.util.zip.GZIPInputStream;
  * rel > 0  graded relevance
  * rel == 0 non-relevant
  * rel < 0  not judged (possibly categorized as non-relevant)
+ *
+ * The judgments are held by a {@link Qrels}, as int arrays over interned docids. Runs read with
+ * {@link #getDictionary()} are evaluated against them by ordinal, see {@link MultiMetricEval}.
  */
 public class QueryJudgments {
-  final private Map<String, Map<String, Integer>> qrels;
+  final private Qrels qrels;
 
   public QueryJudgments(String filename) throws IOException {
-    qrels = readJudgmentsFile(filename, true, false);
+    this(filename, true, false);
   }
 
   public Map<String, Map<String, Integer>> getQrels() {
-    return qrels;
+    return qrels.asMap();
   }
 
   public QueryJudgments(String filename, boolean graded, boolean ignoreNegative) throws IOException {
-    qrels = readJudgmentsFile(filename, graded, ignoreNegative);
+    qrels = Qrels.read(filename, graded, ignoreNegative);
+  }
+
+  /**
+   * @return the dictionary the judged docids are interned in
+   */
+  public DocidDictionary getDictionary() {
+    return qrels.getDictionary();
+  }
+
+  /**
+   * @return the judgments of the query, or null if it has none
+   */
+  public Qrels.Judgments getJudgments(String qid) {
+    return qrels.getJudgments(qid);
   }
 
   /*
@@ -52,46 +70,7 @@ public class QueryJudgments {
    * 19    0   doc7295      0
   */
   public Map<String, Map<String, Integer>> readJudgmentsFile(String fileName, boolean graded, boolean ignoreNegative) throws IOException {
-    Map<String, Map<String, Integer>> judgments = new TreeMap<>();
-
-    InputStream stream;
-    if (fileName.endsWith(".gz")) { //.gz
-      stream = new DataInputStream(new GZIPInputStream(new FileInputStream(fileName)));
-    } else { // in case user had already uncompressed the folder
-      stream = new DataInputStream(new FileInputStream(fileName));
-    }
-
-    int lineNumber = 1;
-    try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"))) {
-      while(true) {
-        String line = in.readLine();
-        if (line == null) {
-          break;
-        }
-
-        String[] arr = line.split("[\\s\\t]+");
-        if(arr.length != 4) {
-          throw new RuntimeException("Malformed line at line "+lineNumber+" in "+fileName+": "+ line);
-        }
-
-        String qid = arr[0];
-        String docno = arr[2];
-
-        if (!judgments.containsKey(qid)) {
-          judgments.put(qid, new TreeMap<>());
-        }
-
-        // add this judgment to the query
-        int grade =  Integer.parseInt(arr[3]);
-        if (grade < 0 && ignoreNegative) continue;
-        if (!graded) {
-          grade = (grade > 0) ? 1 : 0;
-        }
-        judgments.get(qid).put(docno, grade);
-        lineNumber++;
-      }
-    }
-    return judgments;
+    return Qrels.read(fileName, graded, ignoreNegative).asMap();
   }
 
   /**
@@ -102,40 +81,18 @@ public class QueryJudgments {
    * @return
    */
   public boolean isDocJudged(String qid, String docId) {
-    if (!qrels.containsKey(qid)) {
-      return false;
-    }
-
-    if (!qrels.get(qid).containsKey(docId)) {
-      return false;
-    } else {
-      return true;
-    }
+    return qrels.isDocJudged(qid, docId);
   }
 
   public int getRelevanceGrade(String qid, String docid) {
-    if (!qrels.containsKey(qid)) {
-      return 0;
-    }
-
-    if (!qrels.get(qid).containsKey(docid)) {
-      return 0;
-    }
-
-    if ( qrels.get(qid).get(docid) <= 0 ) return 0;
-    return qrels.get(qid).get(docid);
+    return qrels.getRelevanceGrade(qid, docid);
   }
 
   public Set<String> getQids() {
-    return this.qrels.keySet();
+    return qrels.getQids();
   }
 
   public Map<String, Integer> getDocMap(String qid) {
-    if (this.qrels.containsKey(qid)) {
-      return this.qrels.get(qid);
-    } else {
-      return null;
-    }
+    return qrels.getDocMap(qid);
   }
 }
-
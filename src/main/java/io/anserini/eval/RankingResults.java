@@ -1,31 +1,219 @@
 package io.anserini.eval;
 
+import io.anserini.util.DocidDictionary;
+import io.anserini.util.FieldScanner;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
 import java.io.*;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 
 /**
  * The ranking lists for some queries
+ *
+ * Each list is held as an int array of docid ordinals and a float array of scores, in rank order.
+ * The ordinals come from a {@link DocidDictionary}, which is the one of the qrels when the run is
+ * read for evaluation, so that judgments are found by ordinal. Docids the dictionary doesn't have
+ * can't be judged, and get negative ordinals from a dictionary of the run's own.
  */
 public class RankingResults {
 
-  final private Map<String, List<ResultDoc>> rankingList;
+  /**
+   * The ranking list of one query
+   */
+  public static class Ranking {
+    private final int[] docids;
+    private final float[] scores;
+
+    Ranking(int[] docids, float[] scores) {
+      this.docids = docids;
+      this.scores = scores;
+    }
+
+    public int size() {
+      return docids.length;
+    }
+
+    /**
+     * @return ordinal of the docid at rank i + 1, negative if it isn't in the dictionary
+     */
+    public int docidAt(int i) {
+      return docids[i];
+    }
+
+    public float scoreAt(int i) {
+      return scores[i];
+    }
+  }
+
+  /**
+   * One query's list while the file is read, in file order
+   */
+  private class Builder {
+    int[] docids = new int[64];
+    double[] scores = new double[64];
+    int size = 0;
+
+    void add(int docid, double score) {
+      if (size == docids.length) {
+        docids = Arrays.copyOf(docids, size * 2);
+        scores = Arrays.copyOf(scores, size * 2);
+      }
+      docids[size] = docid;
+      scores[size] = score;
+      size++;
+    }
+
+    // The order of ResultDoc: score descending, then docid descending
+    int compare(int a, int b) {
+      int c = Double.compare(scores[b], scores[a]);
+      if (c != 0) {
+        return c;
+      }
+      return getDocid(docids[b]).compareTo(getDocid(docids[a]));
+    }
+
+    Ranking build() {
+      int[] order = new int[size];
+      boolean sorted = true;
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+        sorted &= i == 0 || compare(i - 1, i) <= 0;
+      }
+      // Runs are usually written in rank order already
+      if (!sorted) {
+        IntArrays.quickSort(order, 0, size, new AbstractIntComparator() {
+          @Override
+          public int compare(int a, int b) {
+            return Builder.this.compare(a, b);
+          }
+        });
+      }
+      int[] sortedDocids = new int[size];
+      float[] sortedScores = new float[size];
+      for (int i = 0; i < size; i++) {
+        sortedDocids[i] = docids[order[i]];
+        sortedScores[i] = (float) scores[order[i]];
+      }
+      return new Ranking(sortedDocids, sortedScores);
+    }
+  }
+
+  /**
+   * Ranks the results of a search as a run file of them would be ranked, by score and then by
+   * docid, but with the scores at full float precision rather than as printed to the run file.
+   *
+   * @param docids     docid of each result
+   * @param scores     score of each result
+   * @param dictionary dictionary to look the docids up in; docids it doesn't have get -1, which
+   *                   means they aren't judged but can't be turned back into docids
+   */
+  public static Ranking rank(String[] docids, float[] scores, DocidDictionary dictionary) {
+    int n = docids.length;
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    IntArrays.quickSort(order, 0, n, new AbstractIntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        if (scores[a] != scores[b]) {
+          return scores[a] > scores[b] ? -1 : 1;
+        }
+        return docids[b].compareTo(docids[a]);
+      }
+    });
+
+    int[] ordinals = new int[n];
+    float[] sortedScores = new float[n];
+    for (int i = 0; i < n; i++) {
+      ordinals[i] = dictionary.get(docids[order[i]]);
+      sortedScores[i] = scores[order[i]];
+    }
+    return new Ranking(ordinals, sortedScores);
+  }
+
+  private final DocidDictionary dictionary;
+  // Whether docids may be added to the dictionary, which isn't the case for a shared one
+  private final boolean ownsDictionary;
+  // Docids missing from a shared dictionary, the ordinal -1 - i standing for docid i here
+  private final DocidDictionary unknown = new DocidDictionary();
+  private final Map<String, Ranking> rankings = new TreeMap<>();
+  private Map<String, List<ResultDoc>> rankingList;
 
   public RankingResults(Map<String, List<ResultDoc>> results) {
+    this.dictionary = new DocidDictionary();
+    this.ownsDictionary = true;
     rankingList = new TreeMap<>();
     for (String query : results.keySet()) {
       ArrayList<ResultDoc> rankedList = new ArrayList<>(results.get(query));
       Collections.sort(rankedList);
       rankingList.put(query, rankedList);
+
+      int[] docids = new int[rankedList.size()];
+      float[] scores = new float[rankedList.size()];
+      for (int i = 0; i < docids.length; i++) {
+        docids[i] = dictionary.intern(rankedList.get(i).getDocid());
+        scores[i] = (float) rankedList.get(i).getScore();
+      }
+      rankings.put(query, new Ranking(docids, scores));
     }
 
   }
 
   public RankingResults(String filename) throws IOException {
-    rankingList = readResultsFile(filename);
+    this.dictionary = new DocidDictionary();
+    this.ownsDictionary = true;
+    readResultsFile(filename);
+  }
+
+  /**
+   * Reads a run, looking its docids up in a dictionary shared with other runs or the qrels. The
+   * dictionary is only read, so runs can be read in parallel.
+   */
+  public RankingResults(String filename, DocidDictionary dictionary) throws IOException {
+    this.dictionary = dictionary;
+    this.ownsDictionary = false;
+    readResultsFile(filename);
   }
 
-  public Map<String, List<ResultDoc>> getRankingList() {
+  /**
+   * @return the dictionary docid ordinals are looked up in
+   */
+  public DocidDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return the ranking list of every query, by qid
+   */
+  public Map<String, Ranking> getRankings() {
+    return rankings;
+  }
+
+  /**
+   * @return the docid with this ordinal, which may be negative
+   */
+  public String getDocid(int docid) {
+    return docid >= 0 ? dictionary.get(docid) : unknown.get(-1 - docid);
+  }
+
+  /**
+   * The ranking lists as {@link ResultDoc}s, made the first time they're asked for.
+   */
+  public synchronized Map<String, List<ResultDoc>> getRankingList() {
+    if (rankingList == null) {
+      rankingList = new TreeMap<>();
+      for (Map.Entry<String, Ranking> entry : rankings.entrySet()) {
+        Ranking ranking = entry.getValue();
+        List<ResultDoc> documents = new ArrayList<>(ranking.size());
+        for (int i = 0; i < ranking.size(); i++) {
+          documents.add(new ResultDoc(getDocid(ranking.docidAt(i)), ranking.scoreAt(i)));
+        }
+        rankingList.put(entry.getKey(), documents);
+      }
+    }
     return rankingList;
   }
 
@@ -36,49 +224,60 @@ public class RankingResults {
    * 1 Q0 doc1 1 8.965 run_tag_1
    * 1 Q0 doc2 2 7.465 run_tag_2
    *
+   * Lists are sorted by the full precision of the scores before they're kept as floats.
    */
-  public Map<String, List<ResultDoc>> readResultsFile(String fileName) throws IOException {
-    TreeMap<String, List<ResultDoc>> ranking = new TreeMap<>();
-    InputStream stream;
+  private void readResultsFile(String fileName) throws IOException {
+    Map<String, Builder> builders = new TreeMap<>();
+    InputStream stream = new FileInputStream(fileName);
     if (fileName.endsWith(".gz")) { //.gz
-      stream = new DataInputStream(new GZIPInputStream(new FileInputStream(fileName)));
-    } else { // in case user had already uncompressed the folder
-      stream = new DataInputStream(new FileInputStream(fileName));
+      stream = new GZIPInputStream(stream);
     }
 
-    int lineNumber = 1;
+    FieldScanner fields = new FieldScanner();
     try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"))) {
-
-      while(true) {
-        String line = in.readLine();
-        if (line == null) {
-          break;
+      String qid = null;
+      Builder builder = null;
+      int lineNumber = 0;
+      String line;
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        if (!fields.reset(line).next()) {
+          continue;
         }
-
-        String[] arr = line.split("[\\s\\t]+");
-        if(arr.length < 6) {
-          throw new RuntimeException("Malformed line at line "+lineNumber+" in "+fileName+": "+ line);
+        // Runs are grouped by query, so the qid is usually the one of the line before
+        if (!fields.matches(qid)) {
+          qid = fields.string();
+          builder = builders.computeIfAbsent(qid, k -> new Builder());
         }
-
-        String qid = arr[0];
-        String docno = arr[2];
-        //String rank = arr[3];
-        String score = arr[4];
-
-        ResultDoc document = new ResultDoc(docno, Double.parseDouble(score));
-        if (!ranking.containsKey(qid)) {
-          ranking.put(qid, new ArrayList<ResultDoc>());
+        if (!fields.next() || !fields.next()) {
+          throw new RuntimeException("Malformed line at line " + lineNumber + " in " + fileName + ": " + line);
+        }
+        int docStart = fields.start();
+        int docEnd = fields.end();
+        // Skip the rank, then the score, which must be followed by the run tag
+        if (!fields.next() || !fields.next()) {
+          throw new RuntimeException("Malformed line at line " + lineNumber + " in " + fileName + ": " + line);
+        }
+        double score = fields.parseDouble();
+        if (!fields.next()) {
+          throw new RuntimeException("Malformed line at line " + lineNumber + " in " + fileName + ": " + line);
         }
-        ranking.get(qid).add(document);
-      }
 
-      // ensure sorted order by rank
-      for (String query : ranking.keySet()) {
-        List<ResultDoc> documents = ranking.get(query);
-        Collections.sort(documents);
+        int docid;
+        if (ownsDictionary) {
+          docid = dictionary.intern(line, docStart, docEnd);
+        } else {
+          docid = dictionary.get(line, docStart, docEnd);
+          if (docid < 0) {
+            docid = -1 - unknown.intern(line, docStart, docEnd);
+          }
+        }
+        builder.add(docid, score);
       }
     }
 
-    return ranking;
+    for (Map.Entry<String, Builder> entry : builders.entrySet()) {
+      rankings.put(entry.getKey(), entry.getValue().build());
+    }
   }
 }
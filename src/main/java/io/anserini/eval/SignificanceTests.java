@@ -0,0 +1,184 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import java.util.Random;
+
+/**
+ * Two-sided paired significance tests over per-query values of a metric, for comparing a run
+ * against a baseline on the same queries.
+ */
+public final class SignificanceTests {
+  private static final int MAX_ITERATIONS = 300;
+  private static final double EPSILON = 1e-15;
+  private static final double TINY = 1e-300;
+
+  private SignificanceTests() {}
+
+  /**
+   * Paired Student's t-test.
+   *
+   * @param a per-query values of one run
+   * @param b per-query values of the other, in the same query order
+   * @return two-sided p-value, 1 if the runs are identical or there are fewer than two queries
+   */
+  public static double pairedTTest(double[] a, double[] b) {
+    int n = a.length;
+    if (n < 2) {
+      return 1.0;
+    }
+    double mean = 0.0;
+    for (int i = 0; i < n; i++) {
+      mean += a[i] - b[i];
+    }
+    mean /= n;
+    double variance = 0.0;
+    for (int i = 0; i < n; i++) {
+      double d = a[i] - b[i] - mean;
+      variance += d * d;
+    }
+    variance /= n - 1;
+    if (variance == 0.0) {
+      return mean == 0.0 ? 1.0 : 0.0;
+    }
+
+    double t = mean / Math.sqrt(variance / n);
+    double df = n - 1;
+    // P(|T| > t) for Student's t with df degrees of freedom
+    return regularizedIncompleteBeta(df / (df + t * t), df / 2, 0.5);
+  }
+
+  /**
+   * Paired randomization (permutation) test on the difference in means: each trial swaps the two
+   * runs' values on a random subset of queries, and the p-value is the fraction of trials whose
+   * mean difference is at least as large as the observed one, counting the observed assignment.
+   *
+   * @param trials number of random assignments
+   * @param random source of the assignments, seeded by the caller for repeatable p-values
+   * @return two-sided p-value
+   */
+  public static double randomizationTest(double[] a, double[] b, int trials, Random random) {
+    int n = a.length;
+    double[] diffs = new double[n];
+    double observed = 0.0;
+    for (int i = 0; i < n; i++) {
+      diffs[i] = a[i] - b[i];
+      observed += diffs[i];
+    }
+    // Compare sums rather than means, with some slack for rounding
+    double threshold = Math.abs(observed) - 1e-9;
+
+    int atLeast = 0;
+    for (int trial = 0; trial < trials; trial++) {
+      double sum = 0.0;
+      long bits = 0;
+      for (int i = 0; i < n; i++) {
+        if ((i & 63) == 0) {
+          bits = random.nextLong();
+        }
+        sum += (bits & 1) == 0 ? diffs[i] : -diffs[i];
+        bits >>>= 1;
+      }
+      if (Math.abs(sum) >= threshold) {
+        atLeast++;
+      }
+    }
+    return (atLeast + 1.0) / (trials + 1.0);
+  }
+
+  /**
+   * Regularized incomplete beta function I_x(a, b), by its continued fraction (Numerical Recipes,
+   * section 6.4).
+   */
+  static double regularizedIncompleteBeta(double x, double a, double b) {
+    if (x <= 0.0) {
+      return 0.0;
+    }
+    if (x >= 1.0) {
+      return 1.0;
+    }
+    double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+        + a * Math.log(x) + b * Math.log(1.0 - x));
+    // The continued fraction converges quickly on this side, use the symmetry otherwise
+    if (x < (a + 1.0) / (a + b + 2.0)) {
+      return front * betaContinuedFraction(x, a, b) / a;
+    }
+    return 1.0 - front * betaContinuedFraction(1.0 - x, b, a) / b;
+  }
+
+  private static double betaContinuedFraction(double x, double a, double b) {
+    double qab = a + b;
+    double qap = a + 1.0;
+    double qam = a - 1.0;
+    double c = 1.0;
+    double d = 1.0 - qab * x / qap;
+    if (Math.abs(d) < TINY) {
+      d = TINY;
+    }
+    d = 1.0 / d;
+    double h = d;
+    for (int m = 1; m <= MAX_ITERATIONS; m++) {
+      int m2 = 2 * m;
+      double aa = m * (b - m) * x / ((qam + m2) * (a + m2));
+      d = 1.0 + aa * d;
+      if (Math.abs(d) < TINY) {
+        d = TINY;
+      }
+      c = 1.0 + aa / c;
+      if (Math.abs(c) < TINY) {
+        c = TINY;
+      }
+      d = 1.0 / d;
+      h *= d * c;
+
+      aa = -(a + m) * (qab + m) * x / ((a + m2) * (qap + m2));
+      d = 1.0 + aa * d;
+      if (Math.abs(d) < TINY) {
+        d = TINY;
+      }
+      c = 1.0 + aa / c;
+      if (Math.abs(c) < TINY) {
+        c = TINY;
+      }
+      d = 1.0 / d;
+      double delta = d * c;
+      h *= delta;
+      if (Math.abs(delta - 1.0) < EPSILON) {
+        break;
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Lanczos approximation of log Gamma(x) for x > 0.
+   */
+  static double logGamma(double x) {
+    double[] coefficients = {
+        76.18009172947146, -86.50532032941677, 24.01409824083091,
+        -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5
+    };
+    double y = x;
+    double tmp = x + 5.5;
+    tmp -= (x + 0.5) * Math.log(tmp);
+    double series = 1.000000000190015;
+    for (double coefficient : coefficients) {
+      series += coefficient / ++y;
+    }
+    return -tmp + Math.log(2.5066282746310005 * series / x);
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import io.anserini.rerank.ScoredDocuments;
+import io.anserini.util.Qrels;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evaluates the results of a search as each query finishes, against qrels loaded up front, so
+ * that a run can be scored without writing it out and reading it back with {@link Eval}. After
+ * each query its values and the running values over all queries so far are logged, and
+ * {@link #print} writes the final values in the format of {@link Eval}.
+ *
+ * Results are ranked as {@link RankingResults} ranks a run file, by score and then by docid, but
+ * with the scores at full float precision rather than as printed to the run file. Queries without
+ * results or without judgments are left out, as they are when a run file is evaluated.
+ */
+public class StreamingEval {
+  private static final Logger LOG = LogManager.getLogger(StreamingEval.class);
+
+  private final QueryJudgments qrels;
+  private final String idField;
+  private final String[] metrics;
+  private final MultiMetricEval evaluator;
+  private final Map<String, double[]> perQuery = new TreeMap<>();
+
+  /**
+   * @param idField stored field holding the collection docid
+   * @param metrics metric names, as in {@link Eval}
+   */
+  public StreamingEval(QueryJudgments qrels, String idField, String... metrics) {
+    this.qrels = qrels;
+    this.idField = idField;
+    this.metrics = metrics.clone();
+    this.evaluator = new MultiMetricEval(metrics);
+  }
+
+  /**
+   * Evaluates the final results of one query.
+   *
+   * @return the value of each metric, or null if the query was left out
+   */
+  public synchronized double[] add(String qid, ScoredDocuments docs) {
+    Qrels.Judgments judgments = qrels.getJudgments(qid);
+    if (judgments == null || docs.documents.length == 0) {
+      return null;
+    }
+    double[] values = evaluator.evaluate(rank(docs), judgments, new double[metrics.length]);
+    perQuery.put(qid, values);
+    LOG.info(String.format("%s: %s; over %d queries: %s", qid, format(values), perQuery.size(),
+        format(getAggregated())));
+    return values;
+  }
+
+  private RankingResults.Ranking rank(ScoredDocuments docs) {
+    String[] docids = new String[docs.documents.length];
+    for (int i = 0; i < docids.length; i++) {
+      docids[i] = docs.documents[i].get(idField);
+    }
+    // Unknown docids aren't judged, which an ordinal of -1 already says
+    return RankingResults.rank(docids, docs.scores, qrels.getDictionary());
+  }
+
+  private String format(double[] values) {
+    StringBuilder builder = new StringBuilder();
+    for (int m = 0; m < metrics.length; m++) {
+      builder.append(m == 0 ? "" : " ").append(metrics[m]).append(' ')
+          .append(String.format("%" + evaluator.getFormat(m), values[m]));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return the values of each metric by qid
+   */
+  public synchronized Map<String, double[]> getPerQuery() {
+    return new TreeMap<>(perQuery);
+  }
+
+  /**
+   * @return the values of each metric over the queries so far, aggregated as by {@link Eval}
+   */
+  public synchronized double[] getAggregated() {
+    return evaluator.aggregate(perQuery);
+  }
+
+  /**
+   * Writes the values in the format of {@link Eval}, per query if asked for, then over all queries.
+   */
+  public synchronized void print(boolean printPerQuery, PrintStream out) {
+    String format = "%1$-22s\t%2$s\t%3$";
+    if (printPerQuery) {
+      for (Map.Entry<String, double[]> entry : perQuery.entrySet()) {
+        for (int m = 0; m < metrics.length; m++) {
+          out.format(format + evaluator.getFormat(m) + "\n", metrics[m], entry.getKey(), entry.getValue()[m]);
+        }
+      }
+    }
+    double[] aggregated = getAggregated();
+    for (int m = 0; m < metrics.length; m++) {
+      out.format(format + evaluator.getFormat(m) + "\n", metrics[m], "all", aggregated[m]);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary preference (Buckley and Voorhees, SIGIR 2004), as in trec_eval: for each relevant
+ * document, the fraction of the judged non-relevant documents (at most R of them) ranked below it.
+ * Documents that aren't judged, or are judged with a negative grade, are left out.
+ */
+public class Bpref extends MetricBase {
+  @Override
+  public String getName() {
+    return "bpref";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    int numRel = 0;
+    int numNonRel = 0;
+    for (int grade : judgments.values()) {
+      if (grade > 0) {
+        numRel++;
+      } else if (grade == 0) {
+        numNonRel++;
+      }
+    }
+    if (numRel == 0) {
+      return 0.0;
+    }
+
+    double res = 0.0;
+    int nonRelAbove = 0;
+    for (ResultDoc doc : resultList) {
+      Integer grade = judgments.get(doc.getDocid());
+      if (grade == null || grade < 0) {
+        continue;
+      }
+      if (grade == 0) {
+        nonRelAbove++;
+      } else if (nonRelAbove == 0) {
+        res += 1.0;
+      } else {
+        res += 1.0 - (double) Math.min(nonRelAbove, numRel) / Math.min(numNonRel, numRel);
+      }
+    }
+    return res / numRel;
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
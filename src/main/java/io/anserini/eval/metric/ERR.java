@@ -0,0 +1,66 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expected reciprocal rank (Chapelle et al., CIKM 2009), as in gdeval.pl: the probability of
+ * stopping at a document with grade g is (2^g - 1) / 2^4.
+ */
+public class ERR extends MetricBase {
+  private static final int MAX_GRADE = 4;
+  protected int cutoff;
+
+  public ERR() {
+    this(Integer.MAX_VALUE);
+  }
+
+  public ERR(int cutoff) {
+    super();
+    this.cutoff = cutoff;
+  }
+
+  @Override
+  public String getName() {
+    return "err";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    double res = 0.0;
+    double reached = 1.0;
+    for (int i = 0; i < Math.min(resultList.size(), cutoff); i++) {
+      Integer grade = judgments.get(resultList.get(i).getDocid());
+      if (grade == null || grade <= 0) {
+        continue;
+      }
+      double stop = (Math.pow(2, Math.min(grade, MAX_GRADE)) - 1.0) / Math.pow(2, MAX_GRADE);
+      res += stop * reached / (i + 1);
+      reached *= 1.0 - stop;
+    }
+    return res;
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inferred average precision (Yilmaz and Aslam, CIKM 2006), as in trec_eval. Documents judged
+ * with a negative grade are in the pool but weren't sampled for judging, documents missing from
+ * the judgments are outside the pool.
+ */
+public class InfAP extends MetricBase {
+  private static final double EPSILON = 0.00001;
+
+  @Override
+  public String getName() {
+    return "infap";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    int numRel = (int) new RelCount().evaluate(resultList, judgments);
+    if (numRel == 0) {
+      return 0.0;
+    }
+
+    double res = 0.0;
+    int rel = 0;
+    int nonRel = 0;
+    int unjudged = 0;
+    for (int i = 0; i < resultList.size(); i++) {
+      Integer grade = judgments.get(resultList.get(i).getDocid());
+      if (grade == null) {
+        continue;
+      }
+      if (grade < 0) {
+        unjudged++;
+      } else if (grade == 0) {
+        nonRel++;
+      } else {
+        if (i == 0) {
+          res += 1.0;
+        } else {
+          // Precision above the document, estimated from the judged pooled documents above it
+          double pooled = (double) (rel + nonRel + unjudged) / i;
+          double precision = (rel + EPSILON) / (rel + nonRel + 2 * EPSILON);
+          res += 1.0 / (i + 1) + ((double) i / (i + 1)) * pooled * precision;
+        }
+        rel++;
+      }
+    }
+    return res / numRel;
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
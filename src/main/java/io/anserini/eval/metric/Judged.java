@@ -0,0 +1,65 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fraction of the top k documents that are judged, as in trec_eval. Without a cutoff, the fraction
+ * of the whole list.
+ */
+public class Judged extends MetricBase {
+  protected int cutoff;
+
+  public Judged() {
+    this(Integer.MAX_VALUE);
+  }
+
+  public Judged(int cutoff) {
+    super();
+    this.cutoff = cutoff;
+  }
+
+  @Override
+  public String getName() {
+    return "judged";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    int depth = cutoff == Integer.MAX_VALUE ? resultList.size() : cutoff;
+    if (depth == 0) {
+      return 0.0;
+    }
+    int judged = 0;
+    for (int i = 0; i < Math.min(resultList.size(), depth); i++) {
+      Integer grade = judgments.get(resultList.get(i).getDocid());
+      if (grade != null && grade >= 0) {
+        judged++;
+      }
+    }
+    return (double) judged / depth;
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
@@ -17,11 +17,12 @@
 
 package io.anserini.eval.metric;
 
+import java.util.Locale;
 
 public class MetricFactory {
 
   public static MetricBase instance(String metric) {
-    String lower = metric.toLowerCase();
+    String lower = metric.toLowerCase(Locale.ROOT);
     switch (lower) {
       case "num_ret":
         return new RetCount();
@@ -32,6 +33,38 @@ public class MetricFactory {
       case "map":
       case "ap":
         return new AvgPrecision();
+      case "rprec":
+        return new RPrec();
+      case "bpref":
+        return new Bpref();
+      case "infap":
+        return new InfAP();
+      case "recip_rank":
+      case "mrr":
+        return new RecipRank();
+      case "rbp":
+        return new RBP();
+    }
+
+    // The parameter of RBP is a fraction, e.g. rbp.0.95
+    if (lower.startsWith("rbp.")) {
+      return new RBP(Double.parseDouble(lower.substring(4)));
+    }
+
+    if (lower.equals("judged") || lower.startsWith("judged.") || lower.equals("err") || lower.startsWith("err.")) {
+      int cutoff = Integer.MAX_VALUE;
+      if (lower.contains(".")) {
+        cutoff = Integer.parseInt(lower.split("\\.")[1]);
+      }
+      return lower.startsWith("judged") ? new Judged(cutoff) : new ERR(cutoff);
+    }
+
+    if (lower.equals("recall") || lower.startsWith("recall.")) {
+      int cutoff = Integer.MAX_VALUE;
+      if (lower.contains(".")) {
+        cutoff = Integer.parseInt(lower.split("\\.")[1]);
+      }
+      return new Recall(cutoff);
     }
 
     if(lower.startsWith("p") || lower.startsWith("ndcg") ) {
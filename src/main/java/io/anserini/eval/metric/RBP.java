@@ -0,0 +1,61 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rank-biased precision (Moffat and Zobel, TOIS 2008) over binary relevance, for a user who goes
+ * on to the next document with probability p
+ */
+public class RBP extends MetricBase {
+  protected double persistence;
+
+  public RBP() {
+    this(0.8);
+  }
+
+  public RBP(double persistence) {
+    super();
+    this.persistence = persistence;
+  }
+
+  @Override
+  public String getName() {
+    return "rbp";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    double res = 0.0;
+    for (int i = 0; i < resultList.size(); i++) {
+      Integer grade = judgments.get(resultList.get(i).getDocid());
+      if (grade != null && grade > 0) {
+        res += Math.pow(persistence, i);
+      }
+    }
+    return (1.0 - persistence) * res;
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precision at R, the number of relevant documents, as in trec_eval
+ */
+public class RPrec extends MetricBase {
+  @Override
+  public String getName() {
+    return "rprec";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    int numRel = (int) new RelCount().evaluate(resultList, judgments);
+    if (numRel == 0) {
+      return 0.0;
+    }
+    return new Recall(numRel).evaluate(resultList, judgments);
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
@@ -0,0 +1,48 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval.metric;
+
+import io.anserini.eval.ResultDoc;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reciprocal rank of the first relevant document
+ */
+public class RecipRank extends MetricBase {
+  @Override
+  public String getName() {
+    return "recip_rank";
+  }
+
+  @Override
+  public double evaluate(List<ResultDoc> resultList, Map<String, Integer> judgments) {
+    for (int i = 0; i < resultList.size(); i++) {
+      Integer grade = judgments.get(resultList.get(i).getDocid());
+      if (grade != null && grade > 0) {
+        return 1.0 / (i + 1);
+      }
+    }
+    return 0.0;
+  }
+
+  @Override
+  public String getFormat() {
+    return ".4f";
+  }
+}
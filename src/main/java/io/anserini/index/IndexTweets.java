@@ -64,7 +64,10 @@ public class IndexTweets {
     STATUSES_COUNT("statuses_count"),
     RETWEETED_STATUS_ID("retweeted_status_id"),
     RETWEETED_USER_ID("retweeted_user_id"),
-    RETWEET_COUNT("retweet_count");
+    RETWEET_COUNT("retweet_count"),
+    // Doc values only, computed from the text at index time
+    HASHTAG_COUNT("hashtag_count"),
+    LINK_COUNT("link_count");
 
     public final String name;
 
@@ -73,6 +76,30 @@ public class IndexTweets {
     }
   };
 
+  /**
+   * @return number of hashtags in the text of a tweet, as counted by the hashtag feature
+   */
+  public static int countHashtags(String text) {
+    return countOccurrences(text, "#");
+  }
+
+  /**
+   * @return number of links in the text of a tweet, as counted by the link feature
+   */
+  public static int countLinks(String text) {
+    return countOccurrences(text, "http://");
+  }
+
+  private static int countOccurrences(String text, String match) {
+    int count = 0;
+    int lastIndex = text.indexOf(match);
+    while (lastIndex != -1) {
+      count++;
+      lastIndex = text.indexOf(match, lastIndex + match.length());
+    }
+    return count;
+  }
+
   private static final String HELP_OPTION = "h";
   private static final String COLLECTION_OPTION = "collection";
   private static final String INDEX_OPTION = "index";
@@ -198,16 +225,19 @@ public class IndexTweets {
         Document doc = new Document();
         doc.add(new LongPoint(StatusField.ID.name, status.getId()));
         doc.add(new StoredField(StatusField.ID.name, status.getId()));
+        doc.add(new NumericDocValuesField(StatusField.ID.name, status.getId()));
         doc.add(new LongPoint(StatusField.EPOCH.name, status.getEpoch()));
         doc.add(new StoredField(StatusField.EPOCH.name, status.getEpoch()));
         doc.add(new TextField(StatusField.SCREEN_NAME.name, status.getScreenname(), Store.YES));
 
         doc.add(new Field(StatusField.TEXT.name, status.getText(), textOptions));
 
-        doc.add(new IntPoint(StatusField.FRIENDS_COUNT.name, status.getFollowersCount()));
-        doc.add(new StoredField(StatusField.FRIENDS_COUNT.name, status.getFollowersCount()));
-        doc.add(new IntPoint(StatusField.FOLLOWERS_COUNT.name, status.getFriendsCount()));
-        doc.add(new StoredField(StatusField.FOLLOWERS_COUNT.name, status.getFriendsCount()));
+        doc.add(new IntPoint(StatusField.FRIENDS_COUNT.name, status.getFriendsCount()));
+        doc.add(new StoredField(StatusField.FRIENDS_COUNT.name, status.getFriendsCount()));
+        doc.add(new NumericDocValuesField(StatusField.FRIENDS_COUNT.name, status.getFriendsCount()));
+        doc.add(new IntPoint(StatusField.FOLLOWERS_COUNT.name, status.getFollowersCount()));
+        doc.add(new StoredField(StatusField.FOLLOWERS_COUNT.name, status.getFollowersCount()));
+        doc.add(new NumericDocValuesField(StatusField.FOLLOWERS_COUNT.name, status.getFollowersCount()));
         doc.add(new IntPoint(StatusField.STATUSES_COUNT.name, status.getStatusesCount()));
         doc.add(new StoredField(StatusField.STATUSES_COUNT.name, status.getStatusesCount()));
 
@@ -215,10 +245,14 @@ public class IndexTweets {
         if (inReplyToStatusId > 0) {
           doc.add(new LongPoint(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyToStatusId));
           doc.add(new StoredField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyToStatusId));
+          doc.add(new NumericDocValuesField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyToStatusId));
           doc.add(new LongPoint(StatusField.IN_REPLY_TO_USER_ID.name, status.getInReplyToUserId()));
           doc.add(new StoredField(StatusField.IN_REPLY_TO_USER_ID.name, status.getInReplyToUserId()));
         }
-        
+
+        doc.add(new NumericDocValuesField(StatusField.HASHTAG_COUNT.name, countHashtags(status.getText())));
+        doc.add(new NumericDocValuesField(StatusField.LINK_COUNT.name, countLinks(status.getText())));
+
         String lang = status.getLang();
         if (!lang.equals("unknown")) {
           doc.add(new TextField(StatusField.LANG.name, status.getLang(), Store.YES));
@@ -228,6 +262,7 @@ public class IndexTweets {
         if (retweetStatusId > 0) {
           doc.add(new LongPoint(StatusField.RETWEETED_STATUS_ID.name, retweetStatusId));
           doc.add(new StoredField(StatusField.RETWEETED_STATUS_ID.name, retweetStatusId));
+          doc.add(new NumericDocValuesField(StatusField.RETWEETED_STATUS_ID.name, retweetStatusId));
           doc.add(new LongPoint(StatusField.RETWEETED_USER_ID.name, status.getRetweetedUserId()));
           doc.add(new StoredField(StatusField.RETWEETED_USER_ID.name, status.getRetweetedUserId()));
           doc.add(new IntPoint(StatusField.RETWEET_COUNT.name, status.getRetweetCount()));
@@ -1,9 +1,15 @@
 package io.anserini.ltr;
 
+import io.anserini.ltr.feature.FeatureExtractor;
 import io.anserini.ltr.feature.FeatureExtractors;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.util.AnalyzerUtils;
+import io.anserini.util.AsyncLineWriter;
+import io.anserini.util.DocidDictionary;
 import io.anserini.util.Qrels;
+import io.anserini.util.QrelsIndex;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
@@ -17,17 +23,34 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.Bits;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Feature extractor class that forms the base for other feature extractors
  */
 abstract public class BaseFeatureExtractor {
     private static final Logger LOG = LogManager.getLogger(BaseFeatureExtractor.class);
+    // Number of judged documents of a query extracted together by one worker
+    private static final int BLOCK_SIZE = 64;
     private IndexReader reader;
     private Qrels qrels;
+    // Prebuilt judgments to take the labels of printFeatureForAllDocs from, if there are any
+    private QrelsIndex qrelsIndex;
     private Map<String, String> topics;
     private Analyzer queryAnalyzer;
     private final FeatureExtractors customFeatureExtractors;
@@ -64,6 +87,35 @@ abstract public class BaseFeatureExtractor {
       sb.append(docId);
       return sb.toString();
     }
+
+    /**
+     * Reads the {@code id:value} pairs of a feature vector line into a dense array, where index
+     * {@code i} holds feature {@code i+1}. Features that are not present are left as 0.
+     */
+    public static float[] parseFeatures(String[] pieces) {
+      int maxFeature = 0;
+      int end = pieces.length;
+      for (int i = 2; i < pieces.length; i++) {
+        if (pieces[i].startsWith("#")) {
+          end = i;
+          break;
+        }
+        int colon = pieces[i].indexOf(':');
+        if (colon > 0) {
+          maxFeature = Math.max(maxFeature, Integer.parseInt(pieces[i].substring(0, colon)));
+        }
+      }
+
+      float[] features = new float[maxFeature];
+      for (int i = 2; i < end; i++) {
+        int colon = pieces[i].indexOf(':');
+        if (colon > 0) {
+          features[Integer.parseInt(pieces[i].substring(0, colon)) - 1] = Float.parseFloat(pieces[i].substring(colon + 1));
+        }
+      }
+      return features;
+    }
+
     /**
      * Method used to print a line of feature vector to the output file
      * @param out           The output stream
@@ -107,6 +159,14 @@ abstract public class BaseFeatureExtractor {
         this.customFeatureExtractors = extractors;
     }
 
+    /**
+     * Takes the labels of {@link #printFeatureForAllDocs} from a prebuilt index of the same qrels,
+     * which saves looking every document of the index up in the qrels
+     */
+    public void setQrelsIndex(QrelsIndex qrelsIndex) {
+        this.qrelsIndex = qrelsIndex;
+    }
+
     // Build all the reranker contexts because they will be reused once per query
     private Map<String, RerankerContext> buildRerankerContextMap() throws IOException {
         Map<String, RerankerContext> queryContextMap = new HashMap<>();
@@ -136,10 +196,26 @@ abstract public class BaseFeatureExtractor {
         return queryContextMap;
     }
 
+    private static List<String> headerLines(FeatureExtractors extractors) {
+        List<String> names = new ArrayList<>();
+        for (FeatureExtractor extractor : extractors.extractors) {
+            names.add(extractor.getName());
+        }
+        return headerLines(names);
+    }
+
+    static List<String> headerLines(List<String> featureNames) {
+        List<String> lines = new ArrayList<>();
+        lines.add("#Extracting features with the following feature vector:");
+        for (int i = 0; i < featureNames.size(); i++) {
+            lines.add(String.format("#%d:%s", i +1, featureNames.get(i)));
+        }
+        return lines;
+    }
+
     private void printHeader(PrintStream out, FeatureExtractors extractors) {
-        out.println("#Extracting features with the following feature vector:");
-        for (int i = 0; i < extractors.extractors.size(); i++) {
-            out.println(String.format("#%d:%s", i +1, extractors.extractors.get(i).getName()));
+        for (String line : headerLines(extractors)) {
+            out.println(line);
         }
     }
 
@@ -157,6 +233,17 @@ abstract public class BaseFeatureExtractor {
 
       this.printHeader(out, extractors);
 
+      float[] featureValues = new float[extractors.extractors.size()];
+      // With an index, a document's grades for every query are read at once, by qid ordinal
+      List<Map.Entry<String, RerankerContext>> contexts = new ArrayList<>(queryContextMap.entrySet());
+      int[] qidOrdinals = new int[contexts.size()];
+      int[] grades = null;
+      if (qrelsIndex != null) {
+        for (int i = 0; i < contexts.size(); i++) {
+          qidOrdinals[i] = qrelsIndex.getQidOrdinal(contexts.get(i).getKey());
+        }
+        grades = new int[qrelsIndex.numQids()];
+      }
       for (int docId = 0; docId < reader.maxDoc(); docId ++) {
         // Only check live docs if we have some
         if (reader.hasDeletions() && (liveDocs == null || !liveDocs.get(docId))) {
@@ -167,20 +254,121 @@ abstract public class BaseFeatureExtractor {
         String docIdString = doc.get(getIdField());
         // NOTE doc frequencies should not be retrieved from here, term vector returned is as if on single document
         // index
-        Terms terms = MultiFields.getTerms(reader, getTermVectorField());//reader.getTermVector(docId, getTermVectorField());
+        Terms terms = reader.getTermVector(docId, getTermVectorField());
 
         if (terms == null) {
           continue;
         }
 
-        for (Map.Entry<String, RerankerContext> entry : queryContextMap.entrySet()) {
-          float[] featureValues = extractors.extractAll(doc, terms, entry.getValue());
-          writeFeatureVector(out, entry.getKey(),qrels.getRelevanceGrade(entry.getKey(),docIdString),
-                  docIdString, featureValues);
+        // Looked up once, the grade for each query is then found by ordinal
+        int ordinal = -1;
+        if (qrelsIndex != null) {
+          qrelsIndex.getRelevanceGrades(qrelsIndex.getDocidOrdinal(docIdString), grades);
+        } else {
+          ordinal = qrels.getDictionary().get(docIdString);
+        }
+        for (int i = 0; i < contexts.size(); i++) {
+          Map.Entry<String, RerankerContext> entry = contexts.get(i);
+          extractors.extractAll(doc, docId, terms, entry.getValue(), featureValues);
+          int grade;
+          if (qrelsIndex != null) {
+            grade = qidOrdinals[i] < 0 ? 0 : grades[qidOrdinals[i]];
+          } else {
+            Qrels.Judgments judgments = qrels.getJudgments(entry.getKey());
+            grade = judgments == null ? 0 : Math.max(0, judgments.getGrade(ordinal));
+          }
+          writeFeatureVector(out, entry.getKey(), grade, docIdString, featureValues);
         }
-        out.flush();
         LOG.debug(String.format("Completed computing feature vectors for doc %d", docId));
       }
+      out.flush();
+    }
+
+    /**
+     * A run of judged documents of one query, extracted together by one worker
+     */
+    private static class Block {
+      final String qid;
+      final Qrels.Judgments judgments;
+      // Indexes into the judgments of the documents to extract
+      final int[] judged;
+
+      Block(String qid, Qrels.Judgments judgments, int[] judged) {
+        this.qid = qid;
+        this.judgments = judgments;
+        this.judged = judged;
+      }
+    }
+
+    /**
+     * Splits the qrels into blocks, in qid then docid order so that the output is the same from run
+     * to run. Pairs in {@code completed} (as "qid docid") are left out.
+     */
+    private List<Block> buildBlocks(Set<String> completed) {
+      List<String> qids = new ArrayList<>(qrels.getQids());
+      Collections.sort(qids);
+
+      DocidDictionary dictionary = qrels.getDictionary();
+      List<Block> blocks = new ArrayList<>();
+      for (String qid : qids) {
+        Qrels.Judgments judgments = qrels.getJudgments(qid);
+        // Judgments are in ordinal order, the output is in docid order
+        String[] docIds = new String[judgments.size()];
+        int[] order = new int[judgments.size()];
+        for (int i = 0; i < docIds.length; i++) {
+          docIds[i] = dictionary.get(judgments.docidAt(i));
+          order[i] = i;
+        }
+        IntArrays.quickSort(order, 0, order.length, new AbstractIntComparator() {
+          @Override
+          public int compare(int a, int b) {
+            return docIds[a].compareTo(docIds[b]);
+          }
+        });
+
+        int count = 0;
+        for (int i : order) {
+          if (!completed.contains(qid + " " + docIds[i])) {
+            order[count++] = i;
+          }
+        }
+        for (int i = 0; i < count; i += BLOCK_SIZE) {
+          blocks.add(new Block(qid, judgments, Arrays.copyOfRange(order, i, Math.min(i + BLOCK_SIZE, count))));
+        }
+      }
+      return blocks;
+    }
+
+    /**
+     * Extracts the feature vectors of one block, as output lines
+     */
+    private List<String> extractBlock(Block block, RerankerContext context, FeatureExtractors extractors,
+                                      IndexSearcher searcher, Set<String> fieldsToLoad) throws IOException {
+      List<String> lines = new ArrayList<>(block.judged.length);
+      float[] featureValues = new float[extractors.extractors.size()];
+      for (int judged : block.judged) {
+        String docId = qrels.getDictionary().get(block.judgments.docidAt(judged));
+        // We issue a specific query
+        TopDocs topDocs = searcher.search(docIdQuery(docId), 1);
+        if (topDocs.totalHits == 0) {
+          LOG.warn(String.format("Document Id %s expected but not found in index, skipping...", docId));
+          continue;
+        }
+
+        ScoreDoc hit = topDocs.scoreDocs[0];
+        Document doc = reader.document(hit.doc, fieldsToLoad);
+
+        //TODO factor for test
+        Terms terms = reader.getTermVector(hit.doc, getTermVectorField());
+
+        if (terms == null) {
+          LOG.debug(String.format("No term vectors found for doc %s, qid %s", docId, block.qid));
+          continue;
+        }
+        extractors.extractAll(doc, hit.doc, terms, context, featureValues);
+        lines.add(constructOutputString(block.qid, block.judgments.gradeAt(judged), docId, featureValues));
+      }
+      return lines;
     }
 
     /**
@@ -191,7 +379,6 @@ abstract public class BaseFeatureExtractor {
     public void printFeatures(PrintStream out) throws IOException {
       Map<String, RerankerContext> queryContextMap = buildRerankerContextMap();
       FeatureExtractors extractors = getExtractors();
-      Bits liveDocs = MultiFields.getLiveDocs(reader);
       Set<String> fieldsToLoad = getFieldsToLoad();
 
       // We need to open a searcher
@@ -201,37 +388,122 @@ abstract public class BaseFeatureExtractor {
       // Iterate through all the qrels and for each document id we have for them
       LOG.debug("Processing queries");
 
-      for (String qid : this.qrels.getQids()) {
-        LOG.debug(String.format("Processing qid: %s", qid));
-        // Get the map of documents
-        RerankerContext context = queryContextMap.get(qid);
-
-        for (Map.Entry<String, Integer> entry : this.qrels.getDocMap(qid).entrySet()) {
-          String docId = entry.getKey();
-          int qrelScore = entry.getValue();
-          // We issue a specific query
-          TopDocs topDocs = searcher.search(docIdQuery(docId), 1);
-          if (topDocs.totalHits == 0) {
-            LOG.warn(String.format("Document Id %s expected but not found in index, skipping...", docId));
-            continue;
+      for (Block block : buildBlocks(Collections.<String>emptySet())) {
+        for (String line : extractBlock(block, queryContextMap.get(block.qid), extractors, searcher, fieldsToLoad)) {
+          out.print(line);
+          out.print("\n");
+        }
+      }
+      out.flush();
+    }
+
+    /**
+     * Writes feature vectors wrt to the qrels, one vector per qrel, extracting blocks of documents
+     * on {@code threads} workers. Lines are written in the same order as {@link #printFeatures}.
+     *
+     * When {@code resume} is set and the output already exists, a trailing partial line is cut off,
+     * the vectors already in the file are kept, and only the missing ones are appended. If it holds
+     * no complete vector, the output is written from scratch.
+     *
+     * @param output    output file
+     * @param threads   number of extraction threads
+     * @param resume    whether to continue a partially written output
+     * @throws IOException
+     */
+    public void dumpFeatures(Path output, int threads, boolean resume) throws IOException {
+      Map<String, RerankerContext> queryContextMap = buildRerankerContextMap();
+      Set<String> fieldsToLoad = getFieldsToLoad();
+      IndexSearcher searcher = new IndexSearcher(reader);
+
+      Set<String> completed = resume && Files.exists(output) ?
+          readCompleted(output) : Collections.<String>emptySet();
+      // With no vectors to keep, e.g. when the cut fell in the header, start over and write the header
+      boolean append = !completed.isEmpty();
+      List<Block> blocks = buildBlocks(completed);
+      LOG.info(String.format("%d feature vectors already written, %d blocks to extract", completed.size(), blocks.size()));
+
+      // Extractors are not required to be thread safe, so every worker gets its own copy of the chain
+      final FeatureExtractors prototype = getExtractors();
+      ThreadLocal<FeatureExtractors> extractors = ThreadLocal.withInitial(prototype::copy);
+
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      int maxPending = threads * 4;
+      Writer writer = append ?
+          Files.newBufferedWriter(output, StandardCharsets.UTF_8, StandardOpenOption.APPEND) :
+          Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+      try (AsyncLineWriter out = new AsyncLineWriter(writer, maxPending)) {
+        if (!append) {
+          out.write(headerLines(prototype));
+        }
+
+        Deque<Future<List<String>>> pending = new ArrayDeque<>();
+        for (Block block : blocks) {
+          RerankerContext context = queryContextMap.get(block.qid);
+          pending.addLast(pool.submit(() -> extractBlock(block, context, extractors.get(), searcher, fieldsToLoad)));
+          // Write out finished blocks at the head of the queue, waiting if too many are in flight
+          while (pending.size() >= maxPending || (!pending.isEmpty() && pending.peekFirst().isDone())) {
+            out.write(getLines(pending.removeFirst()));
           }
+        }
+        while (!pending.isEmpty()) {
+          out.write(getLines(pending.removeFirst()));
+        }
+      } finally {
+        pool.shutdownNow();
+      }
+    }
 
-          ScoreDoc hit = topDocs.scoreDocs[0];
-          Document doc = reader.document(hit.doc, fieldsToLoad);
+    private static List<String> getLines(Future<List<String>> future) throws IOException {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while extracting features");
+      } catch (ExecutionException e) {
+        throw new IOException("Error extracting features", e.getCause());
+      }
+    }
 
-          //TODO factor for test
-          Terms terms = reader.getTermVector(hit.doc, getTermVectorField());
+    /**
+     * Cuts a partially written last line off the output and returns the (qid, docid) pairs of the
+     * feature vectors already in it, as "qid docid"
+     */
+    private static Set<String> readCompleted(Path output) throws IOException {
+      try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        long end = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        while (end > 0) {
+          buffer.clear();
+          channel.read(buffer, end - 1);
+          if (buffer.get(0) == '\n') {
+            break;
+          }
+          end--;
+        }
+        if (end < channel.size()) {
+          LOG.info(String.format("Truncating partial line at the end of %s", output));
+          channel.truncate(end);
+        }
+      }
 
-          if (terms == null) {
-            LOG.debug(String.format("No term vectors found for doc %s, qid %s", docId, qid));
+      Set<String> completed = new HashSet<>();
+      try (BufferedReader in = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (line.startsWith("#")) {
+            continue;
+          }
+          // <qrel> qid:<qid> ... # <docid>
+          int qidStart = line.indexOf("qid:");
+          int comment = line.lastIndexOf(" # ");
+          if (qidStart < 0 || comment < 0) {
             continue;
           }
-          float[] featureValues = extractors.extractAll(doc, terms, context);
-          writeFeatureVector(out, qid ,qrelScore,
-                  docId, featureValues);
+          int qidEnd = line.indexOf(' ', qidStart);
+          String qid = line.substring(qidStart + 4, qidEnd < 0 ? line.length() : qidEnd);
+          completed.add(qid + " " + line.substring(comment + 3).trim());
         }
-        LOG.debug(String.format("Finished processing for qid: %s", qid));
-        out.flush();
       }
+      return completed;
     }
 }
@@ -0,0 +1,214 @@
+package io.anserini.ltr;
+
+import io.anserini.index.generator.LuceneDocumentGenerator;
+import io.anserini.ltr.feature.CooccurrenceTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Precomputes the document co-occurrence counts of every pair of the most frequent terms of a
+ * field into a {@link CooccurrenceTable}, for co-occurrence features such as PMI to read at query
+ * time instead of intersecting the postings of frequent terms.
+ *
+ * The postings of all the chosen terms are read once, a window of documents at a time: each
+ * document in the window gets the list of chosen terms it contains, and every pair in the list is
+ * counted.
+ */
+public class BuildCooccurrenceTable {
+  private static final Logger LOG = LogManager.getLogger(BuildCooccurrenceTable.class);
+
+  // Documents whose term lists are gathered before counting their pairs
+  private static final int WINDOW = 1 << 16;
+  // The pair counts are one array indexed by pair, and CooccurrenceTable.write hashes them into at
+  // least twice as many slots, which must fit in an array: at most 2^30 slots, so at most 2^29
+  // pairs. 32768 terms make 536854528 pairs, just under.
+  static final int MAX_TERMS = 32768;
+
+  private BuildCooccurrenceTable() {}
+
+  private static class BuildArgs {
+    @Option(name = "-index", metaVar = "[path]", required = true, usage = "Lucene index directory")
+    public String index;
+
+    @Option(name = "-output", metaVar = "[file]", required = true, usage = "co-occurrence table to write")
+    public String output;
+
+    @Option(name = "-field", metaVar = "[name]", required = false, usage = "field to count terms of")
+    public String field = LuceneDocumentGenerator.FIELD_BODY;
+
+    @Option(name = "-terms", metaVar = "[number]", required = false,
+        usage = "number of most frequent terms whose pairs are counted")
+    public int terms = 1000;
+  }
+
+  private static class TermDf implements Comparable<TermDf> {
+    final BytesRef term;
+    final int docFreq;
+
+    TermDf(BytesRef term, int docFreq) {
+      this.term = term;
+      this.docFreq = docFreq;
+    }
+
+    @Override
+    public int compareTo(TermDf other) {
+      return Integer.compare(docFreq, other.docFreq);
+    }
+  }
+
+  /**
+   * @return the {@code count} terms of the field with the highest document frequency
+   */
+  static List<BytesRef> mostFrequentTerms(IndexReader reader, String field, int count) throws IOException {
+    Terms terms = MultiFields.getTerms(reader, field);
+    if (terms == null) {
+      return new ArrayList<>();
+    }
+
+    PriorityQueue<TermDf> top = new PriorityQueue<>(count + 1);
+    TermsEnum termsEnum = terms.iterator();
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      int docFreq = termsEnum.docFreq();
+      if (top.size() < count) {
+        top.add(new TermDf(BytesRef.deepCopyOf(term), docFreq));
+      } else if (docFreq > top.peek().docFreq) {
+        top.poll();
+        top.add(new TermDf(BytesRef.deepCopyOf(term), docFreq));
+      }
+    }
+
+    List<BytesRef> selected = new ArrayList<>(top.size());
+    for (TermDf termDf : top) {
+      selected.add(termDf.term);
+    }
+    return selected;
+  }
+
+  /**
+   * Counts the co-occurrences of every pair of the most frequent terms and writes them out.
+   *
+   * @param numTerms number of most frequent terms to count the pairs of
+   * @return number of pairs written
+   */
+  public static int build(IndexReader reader, String field, int numTerms, Path output) throws IOException {
+    if (numTerms <= 0 || numTerms > MAX_TERMS) {
+      throw new IllegalArgumentException(String.format(Locale.ROOT, "Number of terms must be from 1 to %d, got %d", MAX_TERMS,
+          numTerms));
+    }
+    List<BytesRef> terms = mostFrequentTerms(reader, field, numTerms);
+    int n = terms.size();
+    LOG.info(String.format("Counting co-occurrences of %d terms of field %s", n, field));
+
+    PostingsEnum[] postings = new PostingsEnum[n];
+    int[] current = new int[n];
+    TermsEnum termsEnum = n == 0 ? null : MultiFields.getTerms(reader, field).iterator();
+    for (int t = 0; t < n; t++) {
+      termsEnum.seekExact(terms.get(t));
+      postings[t] = termsEnum.postings(null, PostingsEnum.NONE);
+      current[t] = postings[t].nextDoc();
+    }
+
+    // Pair (a, b) with a < b, in row order of the upper triangle
+    int[] counts = new int[(int) ((long) n * (n - 1) / 2)];
+    int[][] docTerms = new int[WINDOW][];
+    int[] docTermCounts = new int[WINDOW];
+
+    for (int base = 0; base < reader.maxDoc(); base += WINDOW) {
+      int end = (int) Math.min((long) base + WINDOW, reader.maxDoc());
+      Arrays.fill(docTermCounts, 0);
+
+      // Terms are visited in order, so each document's list comes out sorted
+      for (int t = 0; t < n; t++) {
+        int doc = current[t];
+        while (doc < end) {
+          int slot = doc - base;
+          if (docTerms[slot] == null) {
+            docTerms[slot] = new int[8];
+          } else if (docTermCounts[slot] == docTerms[slot].length) {
+            docTerms[slot] = Arrays.copyOf(docTerms[slot], docTerms[slot].length * 2);
+          }
+          docTerms[slot][docTermCounts[slot]++] = t;
+          doc = postings[t].nextDoc();
+        }
+        current[t] = doc;
+      }
+
+      for (int slot = 0; slot < end - base; slot++) {
+        int[] list = docTerms[slot];
+        int length = docTermCounts[slot];
+        for (int i = 0; i < length; i++) {
+          int a = list[i];
+          int row = (int) ((long) a * (2 * n - a - 1) / 2) - a - 1;
+          for (int j = i + 1; j < length; j++) {
+            counts[row + list[j]]++;
+          }
+        }
+      }
+      LOG.info(String.format("Counted co-occurrences in %d of %d docs", end, reader.maxDoc()));
+    }
+
+    String[] strings = new String[n];
+    for (int t = 0; t < n; t++) {
+      strings[t] = terms.get(t).utf8ToString();
+    }
+    long[] keys = new long[counts.length];
+    int pair = 0;
+    for (int a = 0; a < n; a++) {
+      for (int b = a + 1; b < n; b++) {
+        keys[pair++] = CooccurrenceTable.key(strings[a], strings[b]);
+      }
+    }
+
+    CooccurrenceTable.write(output, field, reader.maxDoc(), keys, counts, counts.length);
+    return counts.length;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    BuildArgs args = new BuildArgs();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println("Example: BuildCooccurrenceTable" + parser.printExample(OptionHandlerFilter.REQUIRED));
+      return;
+    }
+
+    if (args.terms <= 0 || args.terms > MAX_TERMS) {
+      System.err.println(String.format("-terms must be from 1 to %d, got %d...exit", MAX_TERMS, args.terms));
+      return;
+    }
+
+    long curTime = System.nanoTime();
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(args.index)))) {
+      int pairs = build(reader, args.field, args.terms, Paths.get(args.output));
+      LOG.info(String.format("Wrote %d pairs to %s in %d ms", pairs, args.output,
+          (System.nanoTime() - curTime) / 1000000));
+    }
+  }
+}
@@ -0,0 +1,363 @@
+package io.anserini.ltr;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A RankLib LambdaMART or MART model compiled into flat arrays, scoring {@code float[]} feature
+ * vectors (as produced by {@link io.anserini.ltr.feature.FeatureExtractors#extractAll}) directly,
+ * without building a RankLib {@code DataPoint} per document.
+ *
+ * When every tree has at most 64 leaves the model is laid out for QuickScorer (Lucchese et al.,
+ * SIGIR 2015): the nodes of all trees are grouped by feature and sorted by threshold, and a
+ * document is scored by masking out, per tree, the leaves that each false node rules out. This
+ * touches every feature once with no branching on tree structure. Larger trees fall back to a
+ * plain traversal of flat node arrays.
+ *
+ * Scores follow RankLib: a node sends a document left when its feature value is at most the
+ * threshold, feature ids are 1-based (feature {@code i} is {@code features[i-1]}), missing or NaN
+ * features count as 0, and each tree output is multiplied by its tree weight and added to the
+ * score in single precision, in tree order, as RankLib 2.1's {@code Ensemble.eval} does. The sum
+ * is returned as a double only to match RankLib's {@code Ranker.eval} signature.
+ */
+public class CompiledTreeEnsemble {
+  private static final int MAX_QUICKSCORER_LEAVES = 64;
+
+  private final int numTrees;
+  private final int numFeatures;
+
+  // Leaf outputs, already multiplied by the weight of their tree, in left-to-right order per tree.
+  private final float[] leafValues;
+  private final int[] treeLeafOffsets;
+
+  // QuickScorer layout: nodes of feature f are [featureOffsets[f], featureOffsets[f+1]), by threshold.
+  private final boolean quickScorer;
+  private int[] featureOffsets;
+  private float[] qsThresholds;
+  private int[] qsTrees;
+  private long[] qsMasks;
+  private final ThreadLocal<long[]> leafVectors;
+
+  // Traversal layout: children >= 0 are nodes, children < 0 are leaves (~child indexes leafValues).
+  private final int[] treeRoots;
+  private final int[] nodeFeatures;
+  private final float[] nodeThresholds;
+  private final int[] nodeLeft;
+  private final int[] nodeRight;
+
+  /**
+   * Returns true if the model file holds an ensemble this class can compile, i.e., RankLib wrote it
+   * as LambdaMART or MART.
+   *
+   * @param modelFile RankLib model file
+   * @return whether {@link #load} can read the model
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isSupported(String modelFile) throws IOException {
+    for (String line : Files.readAllLines(Paths.get(modelFile), StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      return line.equals("## LambdaMART") || line.equals("## MART");
+    }
+    return false;
+  }
+
+  /**
+   * Compiles a RankLib LambdaMART or MART model file.
+   *
+   * @param modelFile RankLib model file
+   * @return compiled model
+   * @throws IOException if the file cannot be read or parsed
+   */
+  public static CompiledTreeEnsemble load(String modelFile) throws IOException {
+    // The header lines start with "##"; everything else is the <ensemble> XML.
+    StringBuilder xml = new StringBuilder();
+    for (String line : Files.readAllLines(Paths.get(modelFile), StandardCharsets.UTF_8)) {
+      if (!line.trim().startsWith("#")) {
+        xml.append(line).append("\n");
+      }
+    }
+    return fromXml(xml.toString());
+  }
+
+  /**
+   * Compiles the {@code <ensemble>} part of a RankLib model.
+   *
+   * @param xml ensemble XML
+   * @return compiled model
+   * @throws IOException if the XML cannot be parsed
+   */
+  public static CompiledTreeEnsemble fromXml(String xml) throws IOException {
+    Element ensemble;
+    try {
+      ensemble = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .parse(new InputSource(new StringReader(xml))).getDocumentElement();
+    } catch (Exception e) {
+      throw new IOException("Unable to parse tree ensemble", e);
+    }
+
+    List<Tree> trees = new ArrayList<>();
+    for (Element tree : childElements(ensemble, "tree")) {
+      Tree t = new Tree(Float.parseFloat(tree.getAttribute("weight").trim()));
+      t.root = t.add(childElements(tree, "split").get(0));
+      trees.add(t);
+    }
+
+    return new CompiledTreeEnsemble(trees);
+  }
+
+  private CompiledTreeEnsemble(List<Tree> trees) {
+    this.numTrees = trees.size();
+
+    int totalLeaves = 0;
+    int totalNodes = 0;
+    int maxFeature = 0;
+    int maxLeaves = 0;
+    for (Tree tree : trees) {
+      totalLeaves += tree.leafValues.size();
+      totalNodes += tree.features.size();
+      maxLeaves = Math.max(maxLeaves, tree.leafValues.size());
+      for (int feature : tree.features) {
+        maxFeature = Math.max(maxFeature, feature + 1);
+      }
+    }
+    this.numFeatures = maxFeature;
+
+    this.leafValues = new float[totalLeaves];
+    this.treeLeafOffsets = new int[numTrees];
+    this.treeRoots = new int[numTrees];
+    this.nodeFeatures = new int[totalNodes];
+    this.nodeThresholds = new float[totalNodes];
+    this.nodeLeft = new int[totalNodes];
+    this.nodeRight = new int[totalNodes];
+
+    int leafBase = 0;
+    int nodeBase = 0;
+    for (int t = 0; t < numTrees; t++) {
+      Tree tree = trees.get(t);
+      treeLeafOffsets[t] = leafBase;
+      for (int i = 0; i < tree.leafValues.size(); i++) {
+        leafValues[leafBase + i] = tree.leafValues.get(i) * tree.weight;
+      }
+      treeRoots[t] = tree.relocate(tree.root, nodeBase, leafBase);
+      for (int i = 0; i < tree.features.size(); i++) {
+        nodeFeatures[nodeBase + i] = tree.features.get(i);
+        nodeThresholds[nodeBase + i] = tree.thresholds.get(i);
+        nodeLeft[nodeBase + i] = tree.relocate(tree.left.get(i), nodeBase, leafBase);
+        nodeRight[nodeBase + i] = tree.relocate(tree.right.get(i), nodeBase, leafBase);
+      }
+      leafBase += tree.leafValues.size();
+      nodeBase += tree.features.size();
+    }
+
+    this.quickScorer = maxLeaves <= MAX_QUICKSCORER_LEAVES;
+    if (quickScorer) {
+      buildQuickScorer(trees, totalNodes);
+      final int n = numTrees;
+      this.leafVectors = ThreadLocal.withInitial(() -> new long[n]);
+    } else {
+      this.leafVectors = null;
+    }
+  }
+
+  private void buildQuickScorer(List<Tree> trees, int totalNodes) {
+    // Sort all nodes by (feature, threshold); ties keep tree order, which does not affect the result.
+    Integer[] order = new Integer[totalNodes];
+    int[] nodeTrees = new int[totalNodes];
+    long[] nodeMasks = new long[totalNodes];
+    int base = 0;
+    for (int t = 0; t < numTrees; t++) {
+      Tree tree = trees.get(t);
+      for (int i = 0; i < tree.features.size(); i++) {
+        order[base + i] = base + i;
+        nodeTrees[base + i] = t;
+        nodeMasks[base + i] = ~tree.leftLeafMask(i);
+      }
+      base += tree.features.size();
+    }
+    Arrays.sort(order, (a, b) -> {
+      if (nodeFeatures[a] != nodeFeatures[b]) {
+        return Integer.compare(nodeFeatures[a], nodeFeatures[b]);
+      }
+      return Float.compare(nodeThresholds[a], nodeThresholds[b]);
+    });
+
+    featureOffsets = new int[numFeatures + 1];
+    qsThresholds = new float[totalNodes];
+    qsTrees = new int[totalNodes];
+    qsMasks = new long[totalNodes];
+    for (int i = 0; i < totalNodes; i++) {
+      int node = order[i];
+      qsThresholds[i] = nodeThresholds[node];
+      qsTrees[i] = nodeTrees[node];
+      qsMasks[i] = nodeMasks[node];
+      featureOffsets[nodeFeatures[node] + 1]++;
+    }
+    for (int f = 0; f < numFeatures; f++) {
+      featureOffsets[f + 1] += featureOffsets[f];
+    }
+  }
+
+  /**
+   * Scores a feature vector. Safe to call from several threads at once.
+   *
+   * @param features feature values; {@code features[i]} is RankLib feature {@code i+1}
+   * @return model score
+   */
+  public double score(float[] features) {
+    return quickScorer ? scoreQuickScorer(features) : scoreTraversal(features);
+  }
+
+  private static float featureValue(float[] features, int feature) {
+    if (feature >= features.length) {
+      return 0f;
+    }
+    float value = features[feature];
+    return Float.isNaN(value) ? 0f : value;
+  }
+
+  private double scoreQuickScorer(float[] features) {
+    long[] v = leafVectors.get();
+    Arrays.fill(v, -1L);
+
+    for (int f = 0; f < numFeatures; f++) {
+      float x = featureValue(features, f);
+      int end = featureOffsets[f + 1];
+      // Thresholds are ascending, so once x <= threshold every remaining node of f is true.
+      for (int k = featureOffsets[f]; k < end && x > qsThresholds[k]; k++) {
+        v[qsTrees[k]] &= qsMasks[k];
+      }
+    }
+
+    float score = 0f;
+    for (int t = 0; t < numTrees; t++) {
+      // The exit leaf is the leftmost leaf that no false node has ruled out.
+      score += leafValues[treeLeafOffsets[t] + Long.numberOfTrailingZeros(v[t])];
+    }
+    return score;
+  }
+
+  private double scoreTraversal(float[] features) {
+    float score = 0f;
+    for (int t = 0; t < numTrees; t++) {
+      int node = treeRoots[t];
+      while (node >= 0) {
+        node = featureValue(features, nodeFeatures[node]) <= nodeThresholds[node] ? nodeLeft[node] : nodeRight[node];
+      }
+      score += leafValues[~node];
+    }
+    return score;
+  }
+
+  public int getNumTrees() {
+    return numTrees;
+  }
+
+  public boolean usesQuickScorer() {
+    return quickScorer;
+  }
+
+  private static List<Element> childElements(Element parent, String name) {
+    List<Element> children = new ArrayList<>();
+    NodeList nodes = parent.getChildNodes();
+    for (int i = 0; i < nodes.getLength(); i++) {
+      Node node = nodes.item(i);
+      if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals(name)) {
+        children.add((Element) node);
+      }
+    }
+    return children;
+  }
+
+  private static String childText(Element parent, String name) {
+    List<Element> children = childElements(parent, name);
+    return children.isEmpty() ? null : children.get(0).getTextContent().trim();
+  }
+
+  /**
+   * One tree while parsing, with nodes and leaves numbered within the tree. Leaves are numbered
+   * left to right, which QuickScorer relies on.
+   */
+  private static class Tree {
+    final float weight;
+    int root;
+    final List<Integer> features = new ArrayList<>();
+    final List<Float> thresholds = new ArrayList<>();
+    final List<Integer> left = new ArrayList<>();
+    final List<Integer> right = new ArrayList<>();
+    final List<Float> leafValues = new ArrayList<>();
+
+    Tree(float weight) {
+      this.weight = weight;
+    }
+
+    // Returns the node index, or ~leaf index if the split is a leaf.
+    int add(Element split) {
+      String output = childText(split, "output");
+      if (output != null) {
+        leafValues.add(Float.parseFloat(output));
+        return ~(leafValues.size() - 1);
+      }
+
+      int node = features.size();
+      // RankLib feature ids are 1-based.
+      features.add(Integer.parseInt(childText(split, "feature")) - 1);
+      thresholds.add(Float.parseFloat(childText(split, "threshold")));
+      left.add(0);
+      right.add(0);
+
+      Element leftChild = null;
+      Element rightChild = null;
+      for (Element child : childElements(split, "split")) {
+        if ("left".equals(child.getAttribute("pos"))) {
+          leftChild = child;
+        } else if ("right".equals(child.getAttribute("pos"))) {
+          rightChild = child;
+        }
+      }
+      if (leftChild == null || rightChild == null) {
+        throw new IllegalArgumentException("Split node without both children");
+      }
+      // Left before right, so leaves end up numbered left to right.
+      left.set(node, add(leftChild));
+      right.set(node, add(rightChild));
+      return node;
+    }
+
+    int relocate(int child, int nodeBase, int leafBase) {
+      return child >= 0 ? child + nodeBase : ~(~child + leafBase);
+    }
+
+    // Bitmask of the leaves under the left child of the given node.
+    long leftLeafMask(int node) {
+      int from = firstLeaf(left.get(node));
+      int to = firstLeaf(right.get(node));
+      long mask = 0L;
+      for (int i = from; i < to; i++) {
+        mask |= 1L << i;
+      }
+      return mask;
+    }
+
+    private int firstLeaf(int child) {
+      while (child >= 0) {
+        child = left.get(child);
+      }
+      return ~child;
+    }
+  }
+}
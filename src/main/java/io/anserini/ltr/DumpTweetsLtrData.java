@@ -106,7 +106,7 @@ public class DumpTweetsLtrData {
       RerankerContext context = new RerankerContext(searcher, query, topic.getId(), topic.getQuery(),
           queryTokens, StatusField.TEXT.name, filter);
 
-      cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
+      cascade.run(ScoredDocuments.fromTopDocs(rs, searcher, cascade.getInputDepth()), context);
       long qtime = (System.nanoTime()-curQueryTime)/1000000;
       LOG.info("Query " + topic.getId() + " (elapsed time = " + qtime + "ms)");
       totalTime += qtime;
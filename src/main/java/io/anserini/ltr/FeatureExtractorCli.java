@@ -4,6 +4,7 @@ import io.anserini.ltr.feature.FeatureExtractors;
 import io.anserini.search.MicroblogTopicSet;
 import io.anserini.search.query.TopicReader;
 import io.anserini.util.Qrels;
+import io.anserini.util.QrelsIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.DirectoryReader;
@@ -15,9 +16,11 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -49,6 +52,20 @@ public class FeatureExtractorCli {
     @Option(name = "-extractors", metaVar = "[path]", required = false, usage = "FeatureExtractors File")
     public String extractors = null;
 
+    @Option(name = "-threads", metaVar = "[number]", required = false, usage = "number of extraction threads")
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-resume", required = false, usage = "continue a partially written output file")
+    public boolean resume = false;
+
+    @Option(name = "-allDocs", required = false,
+        usage = "write a feature vector for every document in the index for every query, not just the judged ones")
+    public boolean allDocs = false;
+
+    @Option(name = "-qrelsIndex", metaVar = "[path]", required = false,
+        usage = "qrels index built by BuildQrelsIndex from the qrel file, to take the labels of -allDocs from")
+    public String qrelsIndex = null;
+
   }
   /**
    * requires the user to supply the index directory and also the directory containing the qrels and topics
@@ -77,8 +94,7 @@ public class FeatureExtractorCli {
       extractors = FeatureExtractors.loadExtractor(parsedArgs.extractors);
     }
 
-    // Query parser needed to construct the query object for feature extraction in the loop
-    PrintStream out = new PrintStream (new FileOutputStream(new File(parsedArgs.outputFile)));
+    Path output = Paths.get(parsedArgs.outputFile);
     if (parsedArgs.collection.equals("Trec") || parsedArgs.collection.equals("Webxml")) {
       // Open the topics file and read it
       String className = parsedArgs.collection.equals("gov2") ? "Trec" : "Webxml";
@@ -88,17 +104,30 @@ public class FeatureExtractorCli {
       LOG.debug(String.format("%d topics found", topics.size()));
 
       WebFeatureExtractor extractor = new WebFeatureExtractor(reader, qrels, convertTopicsFormat(topics), extractors);
-      extractor.printFeatures(out);
+      dump(extractor, output, parsedArgs);
     } else if (parsedArgs.collection.equals("twitter")) {
       Map<String,String> topics = MicroblogTopicSet.fromFile(new File(parsedArgs.topicsFile)).toMap();
       LOG.debug(String.format("%d topics found", topics.size()));
       TwitterFeatureExtractor extractor = new TwitterFeatureExtractor(reader, qrels, topics, extractors);
-      extractor.printFeatures(out);
+      dump(extractor, output, parsedArgs);
     } else {
       System.err.println("Unrecognized collection " + parsedArgs.collection );
     }
   }
 
+  private static void dump(BaseFeatureExtractor extractor, Path output, FeatureExtractionArgs args) throws IOException {
+    if (!args.allDocs) {
+      extractor.dumpFeatures(output, args.threads, args.resume);
+      return;
+    }
+    if (args.qrelsIndex != null) {
+      extractor.setQrelsIndex(QrelsIndex.shared(Paths.get(args.qrelsIndex)));
+    }
+    try (PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(output)), false, "UTF-8")) {
+      extractor.printFeatureForAllDocs(out);
+    }
+  }
+
   private static Map<String,String> convertTopicsFormat(Map<Integer,String> topics) {
     HashMap<String, String> convertedTopics = new HashMap<>(topics.size());
 
@@ -0,0 +1,62 @@
+package io.anserini.ltr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Binary columnar format for learning to rank feature vectors, written by {@link FeatureFileWriter}
+ * and read by {@link FeatureFileReader}. All numbers are little endian.
+ *
+ * <pre>
+ * magic        8 bytes, "ANSFEAT1"
+ * numFeatures  int
+ * numRows      long
+ * numQids      int
+ * numDocids    int
+ * dataOffset   long, start of the columns
+ * names        numFeatures strings, from FeatureExtractor.getName()
+ * qids         numQids strings
+ * docids       numDocids strings
+ * (padding up to dataOffset)
+ * qid          int column, index into qids
+ * docid        int column, index into docids
+ * label        int column, relevance grade
+ * features     numFeatures float columns
+ * </pre>
+ *
+ * Strings are an int byte length followed by UTF-8 bytes. Every column is numRows values long.
+ */
+public final class FeatureFile {
+  static final byte[] MAGIC = "ANSFEAT1".getBytes(StandardCharsets.US_ASCII);
+  // magic, numFeatures, numRows, numQids, numDocids, dataOffset
+  static final int FIXED_HEADER_SIZE = 8 + 4 + 8 + 4 + 4 + 8;
+  // qid, docid and label columns come before the features
+  static final int ID_COLUMNS = 3;
+  // Columns start on a multiple of this
+  static final int ALIGNMENT = 8;
+
+  private FeatureFile() {}
+
+  /**
+   * @param path a feature file
+   * @return whether the file is in the binary format rather than SVMLight text
+   */
+  public static boolean isBinary(Path path) throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    try (InputStream in = Files.newInputStream(path)) {
+      int read = 0;
+      while (read < magic.length) {
+        int n = in.read(magic, read, magic.length - read);
+        if (n < 0) {
+          return false;
+        }
+        read += n;
+      }
+    }
+    return Arrays.equals(magic, MAGIC);
+  }
+}
@@ -0,0 +1,137 @@
+package io.anserini.ltr;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts feature files between the SVMLight text written by {@link BaseFeatureExtractor} and the
+ * binary format described in {@link FeatureFile}. The direction is picked from the input file.
+ */
+public class FeatureFileConverter {
+  private static final Logger LOG = LogManager.getLogger(FeatureFileConverter.class);
+
+  // Header lines naming the features, e.g. "#3:BM25Feature"
+  private static final Pattern FEATURE_NAME = Pattern.compile("^#(\\d+):(.*)$");
+
+  private FeatureFileConverter() {}
+
+  private static class ConverterArgs {
+    @Option(name = "-input", metaVar = "[file]", required = true, usage = "feature file, SVMLight or binary")
+    public String input;
+
+    @Option(name = "-output", metaVar = "[file]", required = true, usage = "converted feature file")
+    public String output;
+  }
+
+  /**
+   * Converts an SVMLight feature file to the binary format. Feature names come from the header
+   * lines written by the extractors; features without a header line are named by their id.
+   *
+   * @return the number of rows written
+   */
+  public static long toBinary(Path input, Path output) throws IOException {
+    List<String> names = new ArrayList<>();
+    long rows = 0;
+    try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+      String line = reader.readLine();
+      // The header comes before the first row, so the writer starts out with every named feature
+      while (line != null && (line.isEmpty() || line.startsWith("#"))) {
+        Matcher matcher = FEATURE_NAME.matcher(line);
+        if (matcher.matches()) {
+          int id = Integer.parseInt(matcher.group(1));
+          while (names.size() < id) {
+            names.add(String.valueOf(names.size() + 1));
+          }
+          names.set(id - 1, matcher.group(2));
+        }
+        line = reader.readLine();
+      }
+
+      try (FeatureFileWriter writer = new FeatureFileWriter(output, names)) {
+        // We are expecting a line of the form:
+        // qrel qid:X featureVector # docid
+        for (; line != null; line = reader.readLine()) {
+          if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+          }
+          String[] pieces = line.split(" ");
+          if (pieces.length < 2 || !pieces[1].startsWith("qid:")) {
+            LOG.warn("Skipping malformed line: " + line);
+            continue;
+          }
+          int label = (int) Float.parseFloat(pieces[0]);
+          String qid = pieces[1].substring("qid:".length());
+          String docid = pieces[pieces.length - 1];
+          writer.add(qid, docid, label, BaseFeatureExtractor.parseFeatures(pieces));
+          rows++;
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Converts a binary feature file back to SVMLight text, with the same header lines the
+   * extractors write.
+   *
+   * @return the number of rows written
+   */
+  public static long toSvmLight(Path input, Path output) throws IOException {
+    try (FeatureFileReader reader = new FeatureFileReader(input);
+         BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+      for (String line : BaseFeatureExtractor.headerLines(reader.getFeatureNames())) {
+        writer.write(line);
+        writer.newLine();
+      }
+      float[] features = new float[reader.getNumFeatures()];
+      for (int row = 0; row < reader.getNumRows(); row++) {
+        writer.write(BaseFeatureExtractor.constructOutputString(reader.getQid(row), reader.getLabel(row),
+            reader.getDocid(row), reader.getFeatures(row, features)));
+        writer.newLine();
+      }
+      return reader.getNumRows();
+    }
+  }
+
+  public static void main(String[] argv) throws Exception {
+    ConverterArgs args = new ConverterArgs();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println("Example: FeatureFileConverter" + parser.printExample(OptionHandlerFilter.REQUIRED));
+      return;
+    }
+
+    Path input = Paths.get(args.input);
+    Path output = Paths.get(args.output);
+    long curTime = System.nanoTime();
+    long rows;
+    if (FeatureFile.isBinary(input)) {
+      rows = toSvmLight(input, output);
+    } else {
+      rows = toBinary(input, output);
+    }
+    LOG.info(String.format("Converted %d rows in %d ms", rows, (System.nanoTime() - curTime) / 1000000));
+  }
+}
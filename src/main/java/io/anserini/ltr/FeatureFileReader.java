@@ -0,0 +1,158 @@
+package io.anserini.ltr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a feature file in the binary format described in {@link FeatureFile}. The columns are
+ * memory mapped, so opening a file only costs reading its header and dictionaries.
+ *
+ * A reader can be shared between threads once opened.
+ */
+public class FeatureFileReader implements Closeable {
+  private final FileChannel channel;
+  private final int numRows;
+  private final List<String> featureNames;
+  private final String[] qids;
+  private final String[] docids;
+
+  private final IntBuffer qidColumn;
+  private final IntBuffer docidColumn;
+  private final IntBuffer labelColumn;
+  private final FloatBuffer[] featureColumns;
+
+  public FeatureFileReader(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+    ByteBuffer fixed = ByteBuffer.allocate(FeatureFile.FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (fixed.hasRemaining()) {
+      if (channel.read(fixed) < 0) {
+        break;
+      }
+    }
+    fixed.flip();
+    byte[] magic = new byte[FeatureFile.MAGIC.length];
+    if (fixed.remaining() < FeatureFile.FIXED_HEADER_SIZE || !Arrays.equals(readBytes(fixed, magic), FeatureFile.MAGIC)) {
+      channel.close();
+      throw new IOException(path + " is not a binary feature file");
+    }
+    int numFeatures = fixed.getInt();
+    long rows = fixed.getLong();
+    int numQids = fixed.getInt();
+    int numDocids = fixed.getInt();
+    long dataOffset = fixed.getLong();
+
+    // Columns are mapped one at a time, and a single mapping can't exceed 2GB
+    if (rows * 4 > Integer.MAX_VALUE) {
+      channel.close();
+      throw new IOException(String.format("%s has %d rows, more than can be mapped per column", path, rows));
+    }
+    this.numRows = (int) rows;
+
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataOffset);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    header.position(FeatureFile.FIXED_HEADER_SIZE);
+    List<String> names = new ArrayList<>(numFeatures);
+    for (int i = 0; i < numFeatures; i++) {
+      names.add(readString(header));
+    }
+    this.featureNames = Collections.unmodifiableList(names);
+    this.qids = new String[numQids];
+    for (int i = 0; i < numQids; i++) {
+      qids[i] = readString(header);
+    }
+    this.docids = new String[numDocids];
+    for (int i = 0; i < numDocids; i++) {
+      docids[i] = readString(header);
+    }
+
+    long columnSize = (long) numRows * 4;
+    this.qidColumn = map(dataOffset, columnSize).asIntBuffer();
+    this.docidColumn = map(dataOffset + columnSize, columnSize).asIntBuffer();
+    this.labelColumn = map(dataOffset + 2 * columnSize, columnSize).asIntBuffer();
+    this.featureColumns = new FloatBuffer[numFeatures];
+    for (int i = 0; i < numFeatures; i++) {
+      featureColumns[i] = map(dataOffset + (FeatureFile.ID_COLUMNS + i) * columnSize, columnSize).asFloatBuffer();
+    }
+  }
+
+  private ByteBuffer map(long offset, long size) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer, byte[] bytes) {
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    return new String(readBytes(buffer, bytes), StandardCharsets.UTF_8);
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public int getNumFeatures() {
+    return featureColumns.length;
+  }
+
+  public List<String> getFeatureNames() {
+    return featureNames;
+  }
+
+  public String getQid(int row) {
+    return qids[qidColumn.get(row)];
+  }
+
+  public String getDocid(int row) {
+    return docids[docidColumn.get(row)];
+  }
+
+  public int getLabel(int row) {
+    return labelColumn.get(row);
+  }
+
+  public float getFeature(int row, int feature) {
+    return featureColumns[feature].get(row);
+  }
+
+  /**
+   * Copies the feature vector of a row into {@code features}, which must hold
+   * {@link #getNumFeatures()} values.
+   *
+   * @return {@code features}
+   */
+  public float[] getFeatures(int row, float[] features) {
+    for (int i = 0; i < featureColumns.length; i++) {
+      features[i] = featureColumns[i].get(row);
+    }
+    return features;
+  }
+
+  /**
+   * @return the values of one feature for every row, as a read only view of the mapped file
+   */
+  public FloatBuffer getColumn(int feature) {
+    return featureColumns[feature].duplicate();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,185 @@
+package io.anserini.ltr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes feature vectors in the binary format described in {@link FeatureFile}.
+ *
+ * Rows are appended one at a time. Each column is spooled to its own temporary file next to the
+ * output, and the columns are concatenated behind the header on {@link #close()}, so memory use
+ * doesn't grow with the number of rows (only with the number of distinct qids and docids).
+ */
+public class FeatureFileWriter implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Path path;
+  private final List<String> featureNames;
+  private final Map<String, Integer> qids = new LinkedHashMap<>();
+  private final Map<String, Integer> docids = new LinkedHashMap<>();
+  private final List<Column> columns = new ArrayList<>();
+  private long numRows = 0;
+
+  /**
+   * One column being spooled to a temporary file
+   */
+  private static class Column implements Closeable {
+    final Path file;
+    final FileChannel channel;
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    Column(Path dir, long zeros) throws IOException {
+      this.file = Files.createTempFile(dir, "column", ".tmp");
+      this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+      // A column added after some rows were written starts out with 0 for those rows
+      for (long i = 0; i < zeros; i++) {
+        putInt(0);
+      }
+    }
+
+    void putInt(int value) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.putInt(value);
+    }
+
+    void putFloat(float value) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.putFloat(value);
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * @param path          output file
+   * @param featureNames  names of the features, in order
+   */
+  public FeatureFileWriter(Path path, List<String> featureNames) throws IOException {
+    this.path = path;
+    this.featureNames = new ArrayList<>(featureNames);
+    for (int i = 0; i < FeatureFile.ID_COLUMNS + featureNames.size(); i++) {
+      columns.add(new Column(tempDir(), 0));
+    }
+  }
+
+  private Path tempDir() {
+    Path parent = path.toAbsolutePath().getParent();
+    return parent == null ? path.toAbsolutePath() : parent;
+  }
+
+  private static int ordinal(Map<String, Integer> dictionary, String value) {
+    Integer ordinal = dictionary.get(value);
+    if (ordinal == null) {
+      ordinal = dictionary.size();
+      dictionary.put(value, ordinal);
+    }
+    return ordinal;
+  }
+
+  /**
+   * Appends a row. Vectors longer than the feature names add unnamed features, which are 0 in the
+   * rows before; shorter vectors are padded with 0.
+   */
+  public void add(String qid, String docid, int label, float[] features) throws IOException {
+    while (featureNames.size() < features.length) {
+      featureNames.add(String.valueOf(featureNames.size() + 1));
+      columns.add(new Column(tempDir(), numRows));
+    }
+
+    columns.get(0).putInt(ordinal(qids, qid));
+    columns.get(1).putInt(ordinal(docids, docid));
+    columns.get(2).putInt(label);
+    for (int i = 0; i < featureNames.size(); i++) {
+      columns.get(FeatureFile.ID_COLUMNS + i).putFloat(i < features.length ? features[i] : 0.0f);
+    }
+    numRows++;
+  }
+
+  private ByteBuffer header() {
+    List<byte[]> strings = new ArrayList<>();
+    for (String name : featureNames) {
+      strings.add(name.getBytes(StandardCharsets.UTF_8));
+    }
+    for (String qid : qids.keySet()) {
+      strings.add(qid.getBytes(StandardCharsets.UTF_8));
+    }
+    for (String docid : docids.keySet()) {
+      strings.add(docid.getBytes(StandardCharsets.UTF_8));
+    }
+
+    long size = FeatureFile.FIXED_HEADER_SIZE;
+    for (byte[] bytes : strings) {
+      size += 4 + bytes.length;
+    }
+    long dataOffset = (size + FeatureFile.ALIGNMENT - 1) / FeatureFile.ALIGNMENT * FeatureFile.ALIGNMENT;
+    if (dataOffset > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Too many distinct qids and docids for one feature file");
+    }
+
+    ByteBuffer header = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(FeatureFile.MAGIC);
+    header.putInt(featureNames.size());
+    header.putLong(numRows);
+    header.putInt(qids.size());
+    header.putInt(docids.size());
+    header.putLong(dataOffset);
+    for (byte[] bytes : strings) {
+      header.putInt(bytes.length);
+      header.put(bytes);
+    }
+    header.position(0);
+    return header;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = header();
+      while (header.hasRemaining()) {
+        out.write(header);
+      }
+      for (Column column : columns) {
+        column.flush();
+        long size = column.channel.size();
+        try (FileChannel in = FileChannel.open(column.file, StandardOpenOption.READ)) {
+          long copied = 0;
+          while (copied < size) {
+            copied += in.transferTo(copied, size - copied, out);
+          }
+        }
+      }
+    } finally {
+      for (Column column : columns) {
+        column.close();
+      }
+    }
+  }
+}
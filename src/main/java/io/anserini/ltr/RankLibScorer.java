@@ -8,6 +8,8 @@ import io.anserini.util.Qrels;
 import org.kohsuke.args4j.*;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -47,34 +49,60 @@ public class RankLibScorer {
       return;
     }
     Qrels qrels = new Qrels(parsedArgs.qrels);
-    BufferedReader reader = new BufferedReader(new FileReader(parsedArgs.featureFile));
-    // Map of qid:docId -> datapoint
-    Map<String, DataPoint> featureMap = new HashMap<>();
-    Ranker ranker = new RankerFactory().loadRanker(parsedArgs.model);
+    // Map of qid:docId -> score
+    Map<String, Double> scoreMap = new HashMap<>();
+    // Tree ensembles are scored by the compiled model, without going through DataPoint
+    CompiledTreeEnsemble compiledModel = CompiledTreeEnsemble.isSupported(parsedArgs.model) ?
+        CompiledTreeEnsemble.load(parsedArgs.model) : null;
+    Ranker ranker = compiledModel == null ? new RankerFactory().loadRanker(parsedArgs.model) : null;
 
-    String line= reader.readLine();
-    // We are expecting a line of the form:
-    // qrel qid featureVector # docid
-    while (line != null) {
-      DataPoint dp = new DataPoint(line);
-      String[] pieces = line.split(" ");
-      String key = pieces[1] + " " + pieces[pieces.length-1];
-      featureMap.put(key, dp);
-      line = reader.readLine();
+    Path featureFile = Paths.get(parsedArgs.featureFile);
+    if (FeatureFile.isBinary(featureFile)) {
+      // Binary feature files are read straight from the mapped columns, without any text parsing
+      try (FeatureFileReader reader = new FeatureFileReader(featureFile)) {
+        float[] features = new float[reader.getNumFeatures()];
+        for (int row = 0; row < reader.getNumRows(); row++) {
+          String qid = reader.getQid(row);
+          String docid = reader.getDocid(row);
+          reader.getFeatures(row, features);
+          double score = compiledModel != null ? compiledModel.score(features) :
+              ranker.eval(new DataPoint(BaseFeatureExtractor.constructOutputString(qid, reader.getLabel(row), docid, features)));
+          scoreMap.put(qid + " " + docid, score);
+        }
+      }
+    } else {
+      BufferedReader reader = new BufferedReader(new FileReader(parsedArgs.featureFile));
+      String line= reader.readLine();
+      // We are expecting a line of the form:
+      // qrel qid featureVector # docid
+      while (line != null) {
+        // Skip the header naming the features
+        if (line.startsWith("#")) {
+          line = reader.readLine();
+          continue;
+        }
+        String[] pieces = line.split(" ");
+        // Strip "qid:" so the run has the same topic ids as the qrels
+        String qid = pieces[1].startsWith("qid:") ? pieces[1].substring("qid:".length()) : pieces[1];
+        String key = qid + " " + pieces[pieces.length-1];
+        double score = compiledModel != null ? compiledModel.score(BaseFeatureExtractor.parseFeatures(pieces)) : ranker.eval(new DataPoint(line));
+        scoreMap.put(key, score);
+        line = reader.readLine();
+      }
+      reader.close();
     }
 
     BufferedWriter writer = new BufferedWriter(new FileWriter(parsedArgs.output));
     // Now we want it of the form:
     //qid, Q0, docid, 0(rank), score, LUCENE
-    for (String key : featureMap.keySet()) {
+    for (String key : scoreMap.keySet()) {
       StringBuilder sb = new StringBuilder();
       String pieces[] = key.split(" ");
       sb.append(pieces[0]);
       sb.append(" Q0 ");
       sb.append(pieces[1]);
       sb.append(" 0 ");
-      double score = ranker.eval(featureMap.get(key));
-      sb.append(score);
+      sb.append(scoreMap.get(key));
       sb.append(" LUCENE");
       writer.write(sb.toString());
       writer.newLine();
@@ -1,6 +1,7 @@
 package io.anserini.ltr;
 
 import io.anserini.index.IndexTweets.StatusField;
+import io.anserini.ltr.feature.FeatureCache;
 import io.anserini.ltr.feature.FeatureExtractors;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
@@ -18,18 +19,35 @@ public class TweetsLtrDataGenerator implements Reranker {
   private final PrintStream out;
   private final Qrels qrels;
   private final FeatureExtractors extractorChain;
+  private final FeatureCache.View cached;
 
 
   public TweetsLtrDataGenerator(PrintStream out, Qrels qrels, FeatureExtractors extractors) throws FileNotFoundException {
     this.out = out;
     this.qrels = qrels;
     this.extractorChain = extractors == null ? WebFeatureExtractor.getDefaultExtractors() : extractors;
+    this.cached = null;
+  }
 
+  /**
+   * @param cache feature values computed by earlier runs, or null to compute all of them
+   */
+  public TweetsLtrDataGenerator(PrintStream out, Qrels qrels, FeatureExtractors extractors, FeatureCache cache)
+      throws IOException {
+    this.out = out;
+    this.qrels = qrels;
+    this.extractorChain = extractors == null ? WebFeatureExtractor.getDefaultExtractors() : extractors;
+    this.cached = cache == null ? null : cache.bind(this.extractorChain);
   }
 
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
     IndexReader reader = context.getIndexSearcher().getIndexReader();
+    String qid = context.getQueryId().replaceFirst("^MB0*", "");
+    // Judgments of the query are looked up once, then each document by docid
+    Qrels.Judgments judgments = qrels.getJudgments(qid);
+    // Each vector is written out before the next is extracted, so they can share a buffer
+    float[] buffer = new float[this.extractorChain.extractors.size()];
 
     for (int i = 0; i < docs.documents.length; i++) {
       Terms terms = null;
@@ -39,14 +57,14 @@ public class TweetsLtrDataGenerator implements Reranker {
         continue;
       }
 
-      String qid = context.getQueryId().replaceFirst("^MB0*", "");
       String docid = docs.documents[i].getField(StatusField.ID.name).stringValue();
 
-      out.print(qrels.getRelevanceGrade(qid, docid));
+      out.print(judgments == null ? 0 : judgments.getRelevanceGrade(docid));
       out.print(" qid:" + qid);
       out.print(" 1:" + docs.scores[i]);
 
-      float[] intFeatures = this.extractorChain.extractAll(docs.documents[i], terms, context);
+      float[] intFeatures = cached == null ? this.extractorChain.extractAll(docs.documents[i], docs.ids[i], terms, context, buffer) :
+          this.extractorChain.extractAll(docs.documents[i], docs.ids[i], terms, context, cached, docid);
 
       for (int j=0; j<intFeatures.length; j++ ) {
         out.print(" " + (j+2) + ":" + intFeatures[j]);
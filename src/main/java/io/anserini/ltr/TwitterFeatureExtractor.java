@@ -14,9 +14,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.Query;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 
@@ -52,6 +56,12 @@ public class TwitterFeatureExtractor extends BaseFeatureExtractor{
                   new IsTweetReply(),
                   new HashtagCount()
           );
+  // Stored fields the Twitter features fall back to when the index has no doc values for them
+  private static final String[] STORED_SIGNALS = {IndexTweets.StatusField.FOLLOWERS_COUNT.name,
+      IndexTweets.StatusField.FRIENDS_COUNT.name, IndexTweets.StatusField.IN_REPLY_TO_STATUS_ID.name};
+
+  private final boolean loadStoredSignals;
+
   /**
    * Constructor that requires a reader to the index, the qrels and the topics
    *
@@ -61,6 +71,7 @@ public class TwitterFeatureExtractor extends BaseFeatureExtractor{
    */
   public TwitterFeatureExtractor(IndexReader reader, Qrels qrels, Map<String, String> topics) {
     super(reader, qrels, topics, getDefaultExtractors());
+    this.loadStoredSignals = !hasDocValues(reader);
     LOG.debug("Twitter Feature Extractor initialized.");
   }
 
@@ -74,6 +85,7 @@ public class TwitterFeatureExtractor extends BaseFeatureExtractor{
   public TwitterFeatureExtractor(IndexReader reader, Qrels qrels, Map<String, String> topics,
                                  FeatureExtractors featureExtractors) {
     super(reader, qrels, topics, featureExtractors == null ? getDefaultExtractors() : featureExtractors);
+    this.loadStoredSignals = !hasDocValues(reader);
     LOG.debug("Twitter Feature Extractor initialized with custom feature extractors.");
   }
 
@@ -98,12 +110,28 @@ public class TwitterFeatureExtractor extends BaseFeatureExtractor{
     return IndexTweets.ANALYZER;
   }
 
+  /**
+   * Whether every segment was written with the doc values the Twitter features read. Older
+   * indexes only have the stored fields.
+   */
+  private static boolean hasDocValues(IndexReader reader) {
+    for (LeafReaderContext leaf : reader.leaves()) {
+      FieldInfo info = leaf.reader().getFieldInfos().fieldInfo(IndexTweets.StatusField.FOLLOWERS_COUNT.name);
+      if (info == null || info.getDocValuesType() == DocValuesType.NONE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   protected Set<String> getFieldsToLoad() {
-    return Sets.newHashSet(getIdField(), getTermVectorField(),
-            IndexTweets.StatusField.FOLLOWERS_COUNT.name,
-            IndexTweets.StatusField.FRIENDS_COUNT.name,
-            IndexTweets.StatusField.IN_REPLY_TO_STATUS_ID.name);
+    Set<String> fields = Sets.newHashSet(getIdField(), getTermVectorField());
+    // With doc values the Twitter features need no other fields
+    if (loadStoredSignals) {
+      fields.addAll(Arrays.asList(STORED_SIGNALS));
+    }
+    return fields;
   }
 
   @Override
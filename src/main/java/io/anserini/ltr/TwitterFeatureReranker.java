@@ -29,6 +29,9 @@ public class TwitterFeatureReranker implements Reranker{
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
     IndexReader reader = context.getIndexSearcher().getIndexReader();
+    String qid = context.getQueryId().replaceFirst("^MB0*", "");
+    // Judgments of the query are looked up once, then each document by docid
+    Qrels.Judgments judgments = qrels.getJudgments(qid);
 
     for (int i = 0; i < docs.documents.length; i++) {
       Terms terms = null;
@@ -38,13 +41,13 @@ public class TwitterFeatureReranker implements Reranker{
         continue;
       }
 
-      String qid = context.getQueryId().replaceFirst("^MB0*", "");
       String docid = docs.documents[i].getField(IndexTweets.StatusField.ID.name).stringValue();
 
-      out.print(qrels.getRelevanceGrade(qid, docid));
+      out.print(judgments == null ? 0 : judgments.getRelevanceGrade(docid));
       out.print(" qid:" + qid);
 
-      float[] intFeatures = this.extractors.extractAll(docs.documents[i], terms, context);
+      float[] intFeatures = this.extractors.extractAll(docs.documents[i], docs.ids[i], terms, context,
+          new float[this.extractors.extractors.size()]);
 
       // TODO use model to rerank
     }
@@ -1,6 +1,7 @@
 package io.anserini.ltr;
 
 import io.anserini.index.generator.LuceneDocumentGenerator;
+import io.anserini.ltr.feature.FeatureCache;
 import io.anserini.ltr.feature.FeatureExtractors;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
@@ -25,6 +26,7 @@ public class WebCollectionLtrDataGenerator implements Reranker{
   private PrintStream out;
   private Qrels qrels;
   private final FeatureExtractors extractorChain;
+  private final FeatureCache.View cached;
 
   /**
    * Constructor
@@ -34,6 +36,20 @@ public class WebCollectionLtrDataGenerator implements Reranker{
     this.out = out;
     this.qrels = qrels;
     this.extractorChain = extractors == null ? WebFeatureExtractor.getDefaultExtractors() : extractors;
+    this.cached = null;
+  }
+
+  /**
+   * Constructor
+   * @param out         The output stream to actually print it
+   * @param cache       Feature values computed by earlier runs, or null to compute all of them
+   */
+  public WebCollectionLtrDataGenerator(PrintStream out, Qrels qrels, FeatureExtractors extractors,
+                                       FeatureCache cache) throws IOException {
+    this.out = out;
+    this.qrels = qrels;
+    this.extractorChain = extractors == null ? WebFeatureExtractor.getDefaultExtractors() : extractors;
+    this.cached = cache == null ? null : cache.bind(this.extractorChain);
   }
 
   @Override
@@ -41,15 +57,20 @@ public class WebCollectionLtrDataGenerator implements Reranker{
     Document[] documents = docs.documents;
     IndexReader reader = context.getIndexSearcher().getIndexReader();
     String qid = context.getQueryId();
+    // Judgments of the query are looked up once, then each document by docid
+    Qrels.Judgments judgments = qrels.getJudgments(qid);
     LOG.info("Beginning rerank");
+    // Each vector is written out before the next is extracted, so they can share a buffer
+    float[] buffer = new float[this.extractorChain.extractors.size()];
     for (int i =0; i < docs.documents.length; i++ ) {
       try {
         Terms terms = reader.getTermVector(docs.ids[i], LuceneDocumentGenerator.FIELD_BODY);
-        float[] features = this.extractorChain.extractAll(documents[i], terms, context);
         String docId = documents[i].get(LuceneDocumentGenerator.FIELD_ID);
+        float[] features = cached == null ? this.extractorChain.extractAll(documents[i], docs.ids[i], terms, context, buffer) :
+            this.extractorChain.extractAll(documents[i], docs.ids[i], terms, context, cached, docId);
         // QREL 0 in this case, will be assigned if needed later
         //qid
-        BaseFeatureExtractor.writeFeatureVector(out,qid, this.qrels.getRelevanceGrade(qid, docId), docId,  features);
+        BaseFeatureExtractor.writeFeatureVector(out,qid, judgments == null ? 0 : judgments.getRelevanceGrade(docId), docId,  features);
         LOG.info("Finished writing vectors");
       } catch (IOException e) {
         LOG.error(String.format("IOExecption trying to retrieve feature vector for %d doc", docs.ids[i]));
@@ -0,0 +1,284 @@
+package io.anserini.ltr.feature;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed document co-occurrence counts of term pairs: the number of documents in which both
+ * terms of a pair occur. Intersecting the postings of two frequent terms at query time is
+ * expensive, so features such as {@link io.anserini.ltr.feature.base.PMIFeatureExtractor} look pairs
+ * up here first and only fall back to {@link #countLive} for pairs that weren't precomputed.
+ *
+ * The table is an open-addressing hash table with linear probing, memory-mapped from a file
+ * written by {@code io.anserini.ltr.BuildCooccurrenceTable}. The file starts with a header:
+ *
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    maxDoc of the index the counts were taken from
+ * UTF    field the counts were taken from
+ * long   number of slots, a power of two
+ * long   number of pairs
+ * </pre>
+ *
+ * followed by the slots, each a long key ({@link #key}, 0 for an empty slot) and an int count.
+ * Pairs that never co-occur are stored with a count of 0, so that a miss in the table always means
+ * the pair wasn't precomputed.
+ */
+public class CooccurrenceTable {
+  private static final Logger LOG = LogManager.getLogger(CooccurrenceTable.class);
+
+  public static final int MAGIC = 0x414e4343; // "ANCC"
+  public static final int VERSION = 1;
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  private static final int SLOT_SIZE = 8 + 4;
+  // Slots per mapped buffer, a whole number of slots just under 2GB
+  private static final int CHUNK_BITS = 27;
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  // Tables are read only, so every extractor using the same file can share one mapping
+  private static final ConcurrentMap<Path, CooccurrenceTable> SHARED = new ConcurrentHashMap<>();
+
+  private final Path path;
+  private final String field;
+  private final int maxDoc;
+  private final long slotMask;
+  private final long size;
+  private final ByteBuffer[] chunks;
+  private volatile boolean warned = false;
+
+  private CooccurrenceTable(Path path) throws IOException {
+    this.path = path;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // The header is tiny, read it through the first page of the file
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 4096));
+      if (header.getInt() != MAGIC) {
+        throw new IOException(String.format("%s is not a co-occurrence table", path));
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException(String.format("Unsupported co-occurrence table version %d in %s", version, path));
+      }
+      this.maxDoc = header.getInt();
+      byte[] fieldBytes = new byte[header.getShort() & 0xFFFF];
+      header.get(fieldBytes);
+      this.field = new String(fieldBytes, StandardCharsets.UTF_8);
+      long slots = header.getLong();
+      this.size = header.getLong();
+      this.slotMask = slots - 1;
+
+      long offset = header.position();
+      int chunkCount = (int) ((slots + CHUNK_MASK) >>> CHUNK_BITS);
+      this.chunks = new ByteBuffer[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        long chunkSlots = Math.min(CHUNK_MASK + 1, slots - ((long) i << CHUNK_BITS));
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, chunkSlots * SLOT_SIZE);
+        chunks[i] = chunk;
+        offset += chunkSlots * SLOT_SIZE;
+      }
+    }
+  }
+
+  /**
+   * Maps a table written by {@code io.anserini.ltr.BuildCooccurrenceTable}.
+   */
+  public static CooccurrenceTable open(Path path) throws IOException {
+    return new CooccurrenceTable(path);
+  }
+
+  /**
+   * Returns the table at a path, mapping it on first use. Feature extractors are copied for each
+   * thread, so they should get their table from here rather than each mapping their own.
+   */
+  public static CooccurrenceTable shared(Path path) throws IOException {
+    Path key = path.toAbsolutePath().normalize();
+    CooccurrenceTable table = SHARED.get(key);
+    if (table == null) {
+      synchronized (SHARED) {
+        table = SHARED.get(key);
+        if (table == null) {
+          table = open(key);
+          SHARED.put(key, table);
+          LOG.info(String.format("Loaded %d co-occurrence counts from %s", table.size(), key));
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * @return key of an unordered pair of terms, never 0
+   */
+  public static long key(String first, String second) {
+    if (first.compareTo(second) > 0) {
+      String swap = first;
+      first = second;
+      second = swap;
+    }
+    long key = HASH.newHasher()
+        .putString(first, StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(second, StandardCharsets.UTF_8)
+        .hash().asLong();
+    return key == 0 ? 1 : key;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public int getMaxDoc() {
+    return maxDoc;
+  }
+
+  /**
+   * @return number of pairs in the table
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Checks that the counts were taken from this field of this index, as far as can be told from
+   * the number of documents. Logs a warning the first time they weren't.
+   */
+  public boolean matches(IndexReader reader, String field) {
+    boolean matches = this.field.equals(field) && this.maxDoc == reader.maxDoc();
+    if (!matches && !warned) {
+      warned = true;
+      LOG.warn(String.format("Co-occurrence table %s was built from field %s of an index with %d docs, "
+          + "not field %s of this one with %d docs, ignoring it", path, this.field, this.maxDoc, field, reader.maxDoc()));
+    }
+    return matches;
+  }
+
+  /**
+   * @return number of documents containing both terms, or -1 if the pair wasn't precomputed
+   */
+  public int get(String first, String second) {
+    long key = key(first, second);
+    for (long slot = key & slotMask; ; slot = (slot + 1) & slotMask) {
+      ByteBuffer chunk = chunks[(int) (slot >>> CHUNK_BITS)];
+      int offset = (int) (slot & CHUNK_MASK) * SLOT_SIZE;
+      long stored = chunk.getLong(offset);
+      if (stored == key) {
+        return chunk.getInt(offset + 8);
+      }
+      if (stored == 0) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Writes a table. Keys must be distinct and come from {@link #key}.
+   *
+   * @param keys   pair keys
+   * @param counts co-occurrence count of each pair
+   * @param pairs  number of pairs, the prefix of {@code keys} and {@code counts} to write
+   */
+  public static void write(Path output, String field, int maxDoc, long[] keys, int[] counts, int pairs)
+      throws IOException {
+    // Keep the table at most half full so probe sequences stay short
+    long slots = Long.highestOneBit(Math.max(2L * pairs, 2L) - 1) << 1;
+    long mask = slots - 1;
+    if (slots > Integer.MAX_VALUE) {
+      throw new IOException(String.format("Too many pairs for a co-occurrence table: %d", pairs));
+    }
+
+    long[] slotKeys = new long[(int) slots];
+    int[] slotCounts = new int[(int) slots];
+    for (int i = 0; i < pairs; i++) {
+      long slot = keys[i] & mask;
+      while (slotKeys[(int) slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slotKeys[(int) slot] = keys[i];
+      slotCounts[(int) slot] = counts[i];
+    }
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(maxDoc);
+      out.writeUTF(field);
+      out.writeLong(slots);
+      out.writeLong(pairs);
+      for (int i = 0; i < slots; i++) {
+        out.writeLong(slotKeys[i]);
+        out.writeInt(slotCounts[i]);
+      }
+    }
+  }
+
+  /**
+   * Counts the documents containing both terms by intersecting their postings.
+   *
+   * @return number of documents containing both terms
+   */
+  public static int countLive(IndexReader reader, String field, String first, String second) throws IOException {
+    Terms terms = MultiFields.getTerms(reader, field);
+    if (terms == null) {
+      return 0;
+    }
+    TermsEnum firstTerms = terms.iterator();
+    TermsEnum secondTerms = terms.iterator();
+    if (!firstTerms.seekExact(new BytesRef(first)) || !secondTerms.seekExact(new BytesRef(second))) {
+      return 0;
+    }
+
+    // Only the docids are needed, so skip decoding frequencies
+    PostingsEnum firstPostings = firstTerms.postings(null, PostingsEnum.NONE);
+    PostingsEnum secondPostings = secondTerms.postings(null, PostingsEnum.NONE);
+    return firstTerms.docFreq() <= secondTerms.docFreq() ? countIntersection(firstPostings, secondPostings)
+        : countIntersection(secondPostings, firstPostings);
+  }
+
+  /**
+   * Counts the docids in both postings by leapfrogging: each list {@code advance}s to the other's
+   * current docid, which skips whole blocks of the longer list instead of stepping through it.
+   *
+   * @param rarer the shorter list, which drives the intersection
+   * @param other the longer list
+   */
+  public static int countIntersection(PostingsEnum rarer, PostingsEnum other) throws IOException {
+    int count = 0;
+    int doc = rarer.nextDoc();
+    while (doc != PostingsEnum.NO_MORE_DOCS) {
+      // advance() needs a target past the current docid, and the other list may already be on doc
+      int otherDoc = other.docID() < doc ? other.advance(doc) : other.docID();
+      if (otherDoc == PostingsEnum.NO_MORE_DOCS) {
+        break;
+      }
+      if (otherDoc == doc) {
+        count++;
+        doc = rarer.nextDoc();
+      } else {
+        doc = rarer.advance(otherDoc);
+      }
+    }
+    return count;
+  }
+}
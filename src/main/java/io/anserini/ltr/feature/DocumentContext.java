@@ -0,0 +1,302 @@
+package io.anserini.ltr.feature;
+
+import io.anserini.rerank.MappedQuery;
+import io.anserini.rerank.RerankerContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-document statistics shared by all {@link FeatureExtractor}s in a chain. Built once by
+ * {@link FeatureExtractors#extractAll} so that the term vector is walked once per document rather
+ * than once per extractor.
+ *
+ * Term frequencies, document length and the number of unique terms are computed up front. The
+ * token sequence and the {@link ProximityEngine} needed by proximity features are built on first
+ * use.
+ *
+ * A context is scratch space: {@link #reset} points it at the next document and reuses the arrays
+ * of the previous one, so a thread extracting features for many documents doesn't allocate per
+ * document. Extractors must not hold on to it after {@link FeatureExtractor#extract} returns.
+ */
+public class DocumentContext {
+  private static final Logger LOG = LogManager.getLogger(DocumentContext.class);
+
+  private Document doc;
+  private int docid = -1;
+  private Terms terms;
+  private MappedQuery query;
+
+  // Indexed by query term ordinal
+  private long[] termFreqs = new long[16];
+
+  private long docLength = 0;
+  private long uniqueTermCount = 0;
+  private int matchingTermCount = 0;
+
+  private boolean tokensBuilt = false;
+  private int tokenCount = 0;
+  private int[] tokenOrdinals = new int[16];
+  // Sort buffer for building tokenOrdinals
+  private long[] packed = new long[16];
+  private PostingsEnum postings = null;
+
+  private boolean proximityBuilt = false;
+  private final ProximityEngine proximityEngine = new ProximityEngine();
+
+  /**
+   * Creates an empty context, to be {@link #reset} before use.
+   */
+  public DocumentContext() {}
+
+  public DocumentContext(Document doc, Terms terms, MappedQuery query) {
+    reset(doc, terms, query);
+  }
+
+  public DocumentContext reset(Document doc, Terms terms, MappedQuery query) {
+    return reset(doc, -1, terms, query);
+  }
+
+  /**
+   * Points this context at a document, discarding the statistics of the previous one.
+   *
+   * @param doc   stored fields of the document
+   * @param docid Lucene docid of the document in the searcher's reader, or -1 if unknown
+   * @param terms term vector of the document, possibly null
+   * @param query the query, from {@link RerankerContext#getMappedQuery()}
+   * @return this context
+   */
+  public DocumentContext reset(Document doc, int docid, Terms terms, MappedQuery query) {
+    this.doc = doc;
+    this.docid = docid;
+    this.terms = terms;
+    this.query = query;
+    if (termFreqs.length < query.size()) {
+      termFreqs = new long[query.size()];
+    }
+    Arrays.fill(termFreqs, 0, query.size(), 0L);
+    docLength = 0;
+    uniqueTermCount = 0;
+    matchingTermCount = 0;
+    tokensBuilt = false;
+    tokenCount = 0;
+    proximityBuilt = false;
+
+    if (terms != null) {
+      try {
+        collectStatistics();
+      } catch (IOException e) {
+        LOG.warn("Error reading term vector, treating document as empty");
+        Arrays.fill(termFreqs, 0, query.size(), 0L);
+        docLength = 0;
+        uniqueTermCount = 0;
+      }
+    }
+    for (int i = 0; i < query.size(); i++) {
+      if (termFreqs[i] > 0) {
+        matchingTermCount++;
+      }
+    }
+    return this;
+  }
+
+  private void collectStatistics() throws IOException {
+    TermsEnum termsEnum = terms.iterator();
+    long sumTotalTermFreq = terms.getSumTotalTermFreq();
+
+    if (sumTotalTermFreq != -1) {
+      // Statistics are stored, so only the query terms need to be looked up.
+      docLength = sumTotalTermFreq;
+      uniqueTermCount = terms.size();
+      for (int i = 0; i < query.size(); i++) {
+        if (termsEnum.seekExact(query.getBytes(i))) {
+          termFreqs[i] = termsEnum.totalTermFreq();
+        }
+      }
+      return;
+    }
+
+    // Term vectors don't store their totals, so walk every term once.
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      long tf = termsEnum.totalTermFreq();
+      docLength += tf;
+      uniqueTermCount++;
+      int ordinal = query.getOrdinal(term);
+      if (ordinal >= 0) {
+        termFreqs[ordinal] = tf;
+      }
+    }
+  }
+
+  public Document getDocument() {
+    return doc;
+  }
+
+  /**
+   * @return Lucene docid of the document, for reading its doc values, or -1 if unknown
+   */
+  public int getDocid() {
+    return docid;
+  }
+
+  /**
+   * @return the term vector this context was built from, possibly null
+   */
+  public Terms getTerms() {
+    return terms;
+  }
+
+  /**
+   * @return the query, with its tokens mapped to ordinals
+   */
+  public MappedQuery getQuery() {
+    return query;
+  }
+
+  /**
+   * @return unique query terms, in order of first occurrence in the query
+   */
+  public List<String> getQueryTerms() {
+    return query.getTerms();
+  }
+
+  /**
+   * @param term query term
+   * @return index of the term in {@link #getQueryTerms()}, or -1 if it is not a query term
+   */
+  public int getOrdinal(String term) {
+    return query.getOrdinal(term);
+  }
+
+  /**
+   * @param ordinal index into {@link #getQueryTerms()}
+   * @return frequency of the query term in this document
+   */
+  public long getTermFreq(int ordinal) {
+    return termFreqs[ordinal];
+  }
+
+  /**
+   * @param term query term
+   * @return frequency of the term in this document, or 0 if it is not a query term
+   */
+  public long getTermFreq(String term) {
+    int ordinal = query.getOrdinal(term);
+    return ordinal < 0 ? 0 : termFreqs[ordinal];
+  }
+
+  /**
+   * @return number of unique query terms that occur in this document
+   */
+  public int getMatchingTermCount() {
+    return matchingTermCount;
+  }
+
+  /**
+   * @return total number of tokens in this document
+   */
+  public long getDocLength() {
+    return docLength;
+  }
+
+  /**
+   * @return number of unique terms in this document, or -1 if the terms don't record it
+   */
+  public long getUniqueTermCount() {
+    return uniqueTermCount;
+  }
+
+  /**
+   * Returns the document as a sequence of tokens, in the same order that a
+   * {@code TokenStreamFromTermVector} would produce them: element {@code i} is the ordinal of the
+   * {@code i}-th token in {@link #getQueryTerms()}, or -1 if that token is not a query term.
+   * Positions left empty by removed stopwords are skipped, as in the token stream.
+   *
+   * The array is reused between documents, only the first {@link #getTokenCount()} elements
+   * belong to this one.
+   *
+   * @return query term ordinals of the document tokens
+   */
+  public int[] getTokenOrdinals() {
+    if (!tokensBuilt) {
+      tokensBuilt = true;
+      try {
+        buildTokenOrdinals();
+      } catch (IOException e) {
+        LOG.warn("Error reading positions from term vector, treating document as empty");
+        tokenCount = 0;
+      }
+    }
+    return tokenOrdinals;
+  }
+
+  /**
+   * @return number of tokens in {@link #getTokenOrdinals()}
+   */
+  public int getTokenCount() {
+    getTokenOrdinals();
+    return tokenCount;
+  }
+
+  /**
+   * @return positions of the query terms in this document, built on first use
+   */
+  public ProximityEngine getProximityEngine() {
+    if (!proximityBuilt) {
+      proximityBuilt = true;
+      proximityEngine.reset(this);
+    }
+    return proximityEngine;
+  }
+
+  private void buildTokenOrdinals() throws IOException {
+    tokenCount = 0;
+    if (terms == null || (!terms.hasPositions() && !terms.hasOffsets())) {
+      return;
+    }
+    boolean usePositions = terms.hasPositions();
+
+    // Pack (position, ordinal + 1) into a long so one sort orders the tokens by position.
+    if (packed.length < docLength) {
+      packed = new long[(int) Math.min(docLength, Integer.MAX_VALUE - 8)];
+    }
+    int count = 0;
+    TermsEnum termsEnum = terms.iterator();
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      int value = query.getOrdinal(term) + 1;
+
+      postings = termsEnum.postings(postings, usePositions ? PostingsEnum.POSITIONS : PostingsEnum.OFFSETS);
+      if (postings.nextDoc() == PostingsEnum.NO_MORE_DOCS) {
+        continue;
+      }
+      int freq = postings.freq();
+      for (int i = 0; i < freq; i++) {
+        int position = postings.nextPosition();
+        long key = usePositions ? position : postings.startOffset();
+        if (count == packed.length) {
+          packed = Arrays.copyOf(packed, packed.length * 2);
+        }
+        packed[count++] = (key << 32) | value;
+      }
+    }
+
+    Arrays.sort(packed, 0, count);
+    if (tokenOrdinals.length < count) {
+      tokenOrdinals = new int[packed.length];
+    }
+    for (int i = 0; i < count; i++) {
+      tokenOrdinals[i] = (int) (packed[i] & 0xFFFFFFFFL) - 1;
+    }
+    tokenCount = count;
+  }
+}
@@ -0,0 +1,190 @@
+package io.anserini.ltr.feature;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An on-disk cache of feature values, so that rerunning feature extraction after changing a few
+ * extractors in a chain only computes the new or changed ones.
+ *
+ * A value is keyed by the query text, the docid and the config of the extractor that produced it,
+ * i.e. its class and parameters as serialized by {@link FeatureExtractor#BUILDER}. Each distinct
+ * config has its own append-only file in the cache directory holding (key, value) records, where
+ * the key is a 64-bit hash of the query text and docid. The files are loaded when a chain is
+ * bound to the cache and new values are appended as they are computed.
+ *
+ * The key doesn't cover the index or the analyzer, so a cache directory should only be reused
+ * against the same index.
+ */
+public class FeatureCache implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(FeatureCache.class);
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  // Key and value of a record
+  private static final int RECORD_SIZE = 8 + 4;
+
+  private final Path directory;
+  private final ConcurrentMap<String, Segment> segments = new ConcurrentHashMap<>();
+
+  /**
+   * The cached values of one extractor config
+   */
+  private static class Segment {
+    private final Long2FloatOpenHashMap values = new Long2FloatOpenHashMap();
+    private final DataOutputStream out;
+
+    Segment(Path file) throws IOException {
+      if (Files.exists(file)) {
+        // A run that was killed can leave a partial record behind, drop it before appending
+        long records = Files.size(file) / RECORD_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+          for (long i = 0; i < records; i++) {
+            values.put(in.readLong(), in.readFloat());
+          }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+          channel.truncate(records * RECORD_SIZE);
+        }
+      }
+      this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+
+    synchronized boolean contains(long key) {
+      return values.containsKey(key);
+    }
+
+    synchronized float get(long key) {
+      return values.get(key);
+    }
+
+    synchronized void put(long key, float value) throws IOException {
+      values.put(key, value);
+      out.writeLong(key);
+      out.writeFloat(value);
+    }
+
+    synchronized int size() {
+      return values.size();
+    }
+
+    synchronized void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * A chain of extractors bound to their cached values, by position in the chain. A view can be
+   * shared between threads, and with copies of the chain it was created from.
+   */
+  public class View {
+    private final Segment[] segments;
+
+    private View(Segment[] segments) {
+      this.segments = segments;
+    }
+
+    /**
+     * @return whether the extractor at {@code index} has a cached value, which may itself be NaN
+     */
+    public boolean contains(int index, long key) {
+      return segments[index].contains(key);
+    }
+
+    /**
+     * @return the cached value of the extractor at {@code index}, only meaningful if {@link #contains}
+     */
+    public float get(int index, long key) {
+      return segments[index].get(key);
+    }
+
+    public void put(int index, long key, float value) {
+      try {
+        segments[index].put(key, value);
+      } catch (IOException e) {
+        // The value was still computed, it just won't be there next time
+        LOG.error(String.format("Error writing feature value to cache %s", directory), e);
+      }
+    }
+  }
+
+  public FeatureCache(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+  }
+
+  /**
+   * Stable identifier of an extractor's config: its class and parameters.
+   */
+  public static String configKey(FeatureExtractor extractor) {
+    Gson gson = FeatureExtractor.BUILDER.create();
+    String config = extractor.getClass().getName() + gson.toJson(gson.toJsonTree(extractor));
+    return HASH.hashString(config, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * @return key of the values of one query and document
+   */
+  public static long key(String queryText, String docid) {
+    return HASH.newHasher()
+        .putString(queryText, StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(docid, StandardCharsets.UTF_8)
+        .hash().asLong();
+  }
+
+  private Segment segment(FeatureExtractor extractor) throws IOException {
+    String config = configKey(extractor);
+    Segment segment = segments.get(config);
+    if (segment != null) {
+      return segment;
+    }
+    synchronized (segments) {
+      segment = segments.get(config);
+      if (segment == null) {
+        segment = new Segment(directory.resolve(config + ".cache"));
+        segments.put(config, segment);
+        LOG.info(String.format("Loaded %d cached values of %s", segment.size(), extractor.getName()));
+      }
+      return segment;
+    }
+  }
+
+  /**
+   * Loads the cached values of every extractor in a chain.
+   */
+  public View bind(FeatureExtractors chain) throws IOException {
+    List<Segment> bound = new ArrayList<>(chain.extractors.size());
+    for (FeatureExtractor extractor : chain.extractors) {
+      bound.add(segment(extractor));
+    }
+    return new View(bound.toArray(new Segment[bound.size()]));
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Segment segment : segments.values()) {
+      segment.close();
+    }
+  }
+}
@@ -7,7 +7,6 @@ import io.anserini.ltr.feature.twitter.*;
 import io.anserini.rerank.RerankerContext;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Terms;
 
 import java.util.Map;
 
@@ -46,7 +45,13 @@ public interface FeatureExtractor {
           .registerTypeAdapter(UnorderedQueryPairsFeatureExtractor.class, new UnorderedQueryPairsFeatureExtractor.Deserializer())
           .registerTypeAdapter(UnorderedSequentialPairsFeatureExtractor.class, new UnorderedSequentialPairsFeatureExtractor.Deserializer());
 
-  float extract(Document doc, Terms terms, RerankerContext context);
+  /**
+   * @param doc        stored fields of the document
+   * @param docContext term statistics of the document, shared by all extractors in the chain
+   * @param context    the query
+   * @return feature value
+   */
+  float extract(Document doc, DocumentContext docContext, RerankerContext context);
 
   String getName();
 
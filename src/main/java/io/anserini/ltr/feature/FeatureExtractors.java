@@ -71,6 +71,9 @@ public class FeatureExtractors {
 
   public List<FeatureExtractor> extractors = Lists.newArrayList();
 
+  // Per-document statistics, reused by each thread from one document to the next
+  private final ThreadLocal<DocumentContext> scratch = ThreadLocal.withInitial(DocumentContext::new);
+
   public FeatureExtractors() {}
 
   public FeatureExtractors add(FeatureExtractor extractor) {
@@ -78,11 +81,91 @@ public class FeatureExtractors {
     return this;
   }
 
+  /**
+   * Returns a chain with fresh instances of the same extractors and parameters. Some extractors
+   * cache per-query state, so each thread extracting features needs its own copy.
+   *
+   * @return a copy of this chain
+   */
+  public FeatureExtractors copy() {
+    Gson gson = FeatureExtractor.BUILDER.create();
+    FeatureExtractors copy = new FeatureExtractors();
+    for (FeatureExtractor extractor : extractors) {
+      copy.add(gson.fromJson(gson.toJsonTree(extractor), extractor.getClass()));
+    }
+
+    return copy;
+  }
+
   public float[] extractAll(Document doc, Terms terms, RerankerContext context) {
+    return extractAll(doc, terms, context, new float[extractors.size()]);
+  }
+
+  /**
+   * Extracts all features into a buffer supplied by the caller, so that extracting features for
+   * many documents doesn't allocate per document. The per-document statistics live in scratch
+   * space owned by the calling thread and are overwritten by its next call.
+   *
+   * @param features buffer of at least {@code extractors.size()} values
+   * @return {@code features}
+   */
+  public float[] extractAll(Document doc, Terms terms, RerankerContext context, float[] features) {
+    return extractAll(doc, -1, terms, context, features);
+  }
+
+  /**
+   * As {@link #extractAll(Document, Terms, RerankerContext, float[])}, for a document whose Lucene
+   * docid is known, so that extractors can read its doc values instead of stored fields.
+   *
+   * @param docid Lucene docid of the document in the searcher's reader
+   */
+  public float[] extractAll(Document doc, int docid, Terms terms, RerankerContext context, float[] features) {
+    // Walk the term vector once, every extractor reads from this
+    DocumentContext docContext = scratch.get().reset(doc, docid, terms, context.getMappedQuery());
+
+    for (int i=0; i<extractors.size(); i++) {
+      features[i] = extractors.get(i).extract(doc, docContext, context);
+    }
+
+    return features;
+  }
+
+  /**
+   * Extracts all features, reading the ones already computed for this query and document from a
+   * cache. The document's term statistics are only gathered if some feature is missing, and the
+   * missing features are added to the cache.
+   *
+   * @param cached this chain bound to a {@link FeatureCache}
+   * @param docid  collection docid of the document
+   */
+  public float[] extractAll(Document doc, Terms terms, RerankerContext context, FeatureCache.View cached, String docid) {
+    return extractAll(doc, -1, terms, context, cached, docid);
+  }
+
+  /**
+   * As {@link #extractAll(Document, Terms, RerankerContext, FeatureCache.View, String)}, for a
+   * document whose Lucene docid is known.
+   *
+   * @param luceneDocid Lucene docid of the document in the searcher's reader
+   */
+  public float[] extractAll(Document doc, int luceneDocid, Terms terms, RerankerContext context,
+                            FeatureCache.View cached, String docid) {
     float[] features = new float[extractors.size()];
+    long key = FeatureCache.key(context.getQueryText(), docid);
+    DocumentContext docContext = null;
 
     for (int i=0; i<extractors.size(); i++) {
-      features[i] = extractors.get(i).extract(doc, terms, context);
+      float value;
+      if (cached.contains(i, key)) {
+        value = cached.get(i, key);
+      } else {
+        if (docContext == null) {
+          docContext = scratch.get().reset(doc, luceneDocid, terms, context.getMappedQuery());
+        }
+        value = extractors.get(i).extract(doc, docContext, context);
+        cached.put(i, key, value);
+      }
+      features[i] = value;
     }
 
     return features;
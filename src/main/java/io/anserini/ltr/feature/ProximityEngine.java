@@ -0,0 +1,166 @@
+package io.anserini.ltr.feature;
+
+import java.util.Arrays;
+
+/**
+ * Counts co-occurrences of query terms within windows of a document. Query terms are identified
+ * by their ordinal in {@link DocumentContext#getQueryTerms()}, and each one has a sorted run of
+ * the positions where it occurs, so a window count is a single merge over two runs.
+ *
+ * Positions are indices into {@link DocumentContext#getTokenOrdinals()}, i.e. gaps left by removed
+ * stopwords are collapsed, as they would be by a {@code TokenStreamFromTermVector}.
+ *
+ * The runs are kept back to back in one array that is reused from one document to the next.
+ */
+public class ProximityEngine {
+  private int length = 0;
+  private int numTerms = 0;
+  // Positions of term i are positions[starts[i]] to positions[starts[i + 1] - 1]
+  private int[] starts = new int[16];
+  private int[] positions = new int[16];
+
+  ProximityEngine() {}
+
+  public ProximityEngine(DocumentContext docContext) {
+    reset(docContext);
+  }
+
+  /**
+   * Rebuilds the position runs for the document in {@code docContext}.
+   */
+  void reset(DocumentContext docContext) {
+    int[] tokens = docContext.getTokenOrdinals();
+    this.length = docContext.getTokenCount();
+    this.numTerms = docContext.getQueryTerms().size();
+
+    if (starts.length < numTerms + 1) {
+      starts = new int[numTerms + 1];
+    }
+    if (positions.length < length) {
+      positions = new int[tokens.length];
+    }
+
+    // Count the occurrences of each term into starts[i + 1], then turn the counts into offsets
+    Arrays.fill(starts, 0, numTerms + 1, 0);
+    for (int position = 0; position < length; position++) {
+      if (tokens[position] >= 0) {
+        starts[tokens[position] + 1]++;
+      }
+    }
+    for (int i = 0; i < numTerms; i++) {
+      starts[i + 1] += starts[i];
+    }
+    // Fill each run, using starts[i] as the write cursor of term i, which shifts the offsets down
+    // by one term; shift them back afterwards
+    for (int position = 0; position < length; position++) {
+      int ordinal = tokens[position];
+      if (ordinal >= 0) {
+        positions[starts[ordinal]++] = position;
+      }
+    }
+    for (int i = numTerms; i > 0; i--) {
+      starts[i] = starts[i - 1];
+    }
+    starts[0] = 0;
+  }
+
+  /**
+   * @return number of tokens in the document
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @param ordinal query term ordinal
+   * @return number of occurrences of the query term in the document
+   */
+  public int getFrequency(int ordinal) {
+    return ordinal < 0 || ordinal >= numTerms ? 0 : starts[ordinal + 1] - starts[ordinal];
+  }
+
+  /**
+   * Counts the pairs of occurrences where {@code second} follows {@code first} by at most
+   * {@code window} positions. With a window of 1 this is the count of the bigram.
+   *
+   * @param first  ordinal of the first term
+   * @param second ordinal of the second term
+   * @param window largest distance between the two terms
+   * @return number of ordered co-occurrences
+   */
+  public int countOrdered(int first, int second, int window) {
+    if (getFrequency(first) == 0 || getFrequency(second) == 0) {
+      return 0;
+    }
+    int secondEnd = starts[second + 1];
+
+    int count = 0;
+    // [lo, hi) are the positions of the second term in (p, p + window] for the current p
+    int lo = starts[second];
+    int hi = lo;
+    for (int i = starts[first]; i < starts[first + 1]; i++) {
+      int p = positions[i];
+      while (lo < secondEnd && positions[lo] <= p) {
+        lo++;
+      }
+      if (hi < lo) {
+        hi = lo;
+      }
+      while (hi < secondEnd && positions[hi] <= (long) p + window) {
+        hi++;
+      }
+      count += hi - lo;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the pairs of occurrences of the two terms, in either order, at most {@code window}
+   * positions apart.
+   *
+   * @param first  ordinal of one term
+   * @param second ordinal of the other term
+   * @param window largest distance between the two terms
+   * @return number of unordered co-occurrences
+   */
+  public int countUnordered(int first, int second, int window) {
+    if (first == second) {
+      return countOrdered(first, second, window);
+    }
+    return countOrdered(first, second, window) + countOrdered(second, first, window);
+  }
+
+  /**
+   * Counts the occurrences of {@code first} with at least one occurrence of {@code second}, other
+   * than itself, at most {@code window} positions before or after it. Unlike
+   * {@link #countUnordered}, each occurrence of {@code first} counts once however many occurrences
+   * of {@code second} are near it.
+   *
+   * @param first  ordinal of the term whose occurrences are counted
+   * @param second ordinal of the term that has to be near them
+   * @param window largest distance between the two terms
+   * @return number of occurrences of {@code first} near {@code second}
+   */
+  public int countNear(int first, int second, int window) {
+    if (getFrequency(first) == 0 || getFrequency(second) == 0) {
+      return 0;
+    }
+    int secondEnd = starts[second + 1];
+
+    int count = 0;
+    // lo is the first position of the second term at or after p - window for the current p
+    int lo = starts[second];
+    for (int i = starts[first]; i < starts[first + 1]; i++) {
+      int p = positions[i];
+      while (lo < secondEnd && positions[lo] < (long) p - window) {
+        lo++;
+      }
+      // The same term is at p itself, and nothing before it is close enough, so look past it
+      int near = lo < secondEnd && positions[lo] == p ? lo + 1 : lo;
+      if (near < secondEnd && positions[near] <= (long) p + window) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
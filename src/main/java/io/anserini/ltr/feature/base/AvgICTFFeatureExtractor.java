@@ -1,16 +1,9 @@
 package io.anserini.ltr.feature.base;
 
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
 import io.anserini.rerank.RerankerContext;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Average Inverse Collection Term Frequency as defined in
@@ -18,36 +11,24 @@ import java.util.List;
  * log(|D| / tf)
  */
 public class AvgICTFFeatureExtractor implements FeatureExtractor{
-  private static final Logger LOG = LogManager.getLogger(AvgICTFFeatureExtractor.class);
 
-  // Calculate term frequencies, if error returns an empty map, couting all tf = 0
-  private float getSumICTF(Terms terms, List<String> queryTokens) {
+  // Sum of log(|D| / tf) over the query terms that occur in the document
+  private float getSumICTF(DocumentContext docContext) {
     float sumICTF = 0.0f;
-    float docSize = 0.0f;
-    List<Long> termFreqs = new ArrayList<>();
-    try {
-      TermsEnum termsEnum = terms.iterator();
-      while (termsEnum.next() != null) {
-        String termString = termsEnum.term().utf8ToString();
-        docSize += termsEnum.totalTermFreq();
-        if (queryTokens.contains(termString) && termsEnum.totalTermFreq() > 0) {
-          termFreqs.add(termsEnum.totalTermFreq());
-        }
+    float docSize = docContext.getDocLength();
+    for (int i = 0; i < docContext.getQueryTerms().size(); i++) {
+      long termFreq = docContext.getTermFreq(i);
+      if (termFreq > 0) {
+        sumICTF += Math.log(docSize/termFreq);
       }
-    } catch (IOException e) {
-      LOG.warn("Error retrieving term frequencies");
-      return 0.0f;
-    }
-
-    for (Long termFreq : termFreqs) {
-      sumICTF += Math.log(docSize/termFreq);
     }
     return sumICTF;
   }
+
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
     // We need docSize, and tf for each term
-    float sumIctf = getSumICTF(terms, context.getQueryTokens());
+    float sumIctf = getSumICTF(docContext);
     // Compute the average by dividing
     return sumIctf / context.getQueryTokens().size();
   }
@@ -1,15 +1,11 @@
 package io.anserini.ltr.feature.base;
 
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
+import io.anserini.rerank.QueryStatistics;
 import io.anserini.rerank.RerankerContext;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
 
-import java.io.IOException;
 import java.util.List;
 
 /**
@@ -17,30 +13,16 @@ import java.util.List;
  * where N is the total number of docs, calculated like in BM25
  */
 public class AvgIDFFeatureExtractor implements FeatureExtractor{
-  private static final Logger LOG = LogManager.getLogger(AvgIDFFeatureExtractor.class);
-
-  private float sumIdf(IndexReader reader, List<String> queryTokens,
-                       long numDocs, String field) throws IOException {
-    float sumIdf = 0.0f;
-    for(String token : queryTokens) {
-      int docFreq = reader.docFreq(new Term(field, token));
-      sumIdf += Math.log(1 + (numDocs - docFreq + 0.5d) / (docFreq + 0.5d));
-    }
-    return sumIdf;
-  }
 
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
-    IndexReader reader = context.getIndexSearcher().getIndexReader();
-
-    long numDocs = reader.numDocs() - reader.numDeletedDocs();
-    try {
-      float sumIdf = sumIdf(reader, context.getQueryTokens(), numDocs, context.getField());
-      return sumIdf / (float) context.getQueryTokens().size();
-    } catch (IOException e) {
-      LOG.warn("Error computing AvgIdf, returning 0");
-      return 0.0f;
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+    QueryStatistics statistics = context.getQueryStatistics();
+    float sumIdf = 0.0f;
+    List<String> queryTokens = context.getQueryTokens();
+    for (int i = 0; i < queryTokens.size(); i++) {
+      sumIdf += statistics.getIdf(queryTokens.get(i));
     }
+    return sumIdf / (float) context.getQueryTokens().size();
   }
 
   @Override
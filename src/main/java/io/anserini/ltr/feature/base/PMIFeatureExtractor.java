@@ -1,119 +1,111 @@
 package io.anserini.ltr.feature.base;
 
+import io.anserini.ltr.feature.CooccurrenceTable;
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
+import io.anserini.rerank.QueryStatistics;
 import io.anserini.rerank.RerankerContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.MultiFields;
-import org.apache.lucene.index.PostingsEnum;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 
 /**
  * PMI implemented as
  * PMI(t1, t2) = log (Pr(t1, t2|D) / Pr(t1|D)Pr(t2|D)),
  * where pr are the MLE
  * described on page 22 of Carmel, Yom-Tov 2010
+ *
+ * Pair counts are read from a {@link CooccurrenceTable} if one is configured, otherwise the
+ * postings of each pair are intersected.
  */
 public class PMIFeatureExtractor implements FeatureExtractor{
 
-  private String lastQueryProcessed = "";
-  private float lastComputedValue = 0f;
+  private static final Logger LOG = LogManager.getLogger(PMIFeatureExtractor.class);
 
-  private int countPostingIntersect(PostingsEnum firstEnum, PostingsEnum secondEnum) throws IOException {
+  // Optional path to a table built by BuildCooccurrenceTable, checked before intersecting postings
+  private String cooccurrenceTable = null;
 
-    int count = 0;
-    int firstDocId = firstEnum.nextDoc();
-    int secondDocId = secondEnum.nextDoc();
-    // We are assuming that docEnum are in doc id order
-    // According to Lucene documentation, the doc ids are in non decreasing order
-    while (true) {
-      if (firstDocId == PostingsEnum.NO_MORE_DOCS
-              || secondDocId == PostingsEnum.NO_MORE_DOCS) {
-        break;
-      }
+  // Created once rather than per document, the value is computed once per query
+  private final transient BiFunction<QueryStatistics, RerankerContext, Float> compute =
+      (statistics, context) -> computePMI(statistics, context, loadTable());
 
-      if (firstDocId > secondDocId) {
-        secondDocId = secondEnum.nextDoc();
-      } else if (secondDocId > firstDocId) {
-        firstDocId = firstEnum.nextDoc();
-      } else {
-        count ++;
-        firstDocId = firstEnum.nextDoc();
-        secondDocId = secondEnum.nextDoc();
-      }
-    }
+  public PMIFeatureExtractor() { }
 
-    return count;
+  public PMIFeatureExtractor(String cooccurrenceTable) {
+    this.cooccurrenceTable = cooccurrenceTable;
   }
 
-  @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
+  private CooccurrenceTable loadTable() {
+    if (cooccurrenceTable == null) {
+      return null;
+    }
+    try {
+      return CooccurrenceTable.shared(Paths.get(cooccurrenceTable));
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to load co-occurrence table %s, intersecting postings instead", cooccurrenceTable));
+      return null;
+    }
+  }
+
+  private static float computePMI(QueryStatistics statistics, RerankerContext context, CooccurrenceTable table) {
     // We need docfreqs of each token
     // and also doc freqs of each pair
-    if (!this.lastQueryProcessed.equals(context.getQueryText())) {
-      this.lastQueryProcessed = context.getQueryText();
-      this.lastComputedValue = 0.0f;
-
-      Set<String> querySet = new HashSet<>(context.getQueryTokens());
-      IndexReader reader = context.getIndexSearcher().getIndexReader();
-      Map<String, Integer> docFreqs = new HashMap<>();
-      List<String> queryTokens = new ArrayList<>(querySet);
-
-      try {
+    Set<String> querySet = new HashSet<>(context.getQueryTokens());
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    List<String> queryTokens = new ArrayList<>(querySet);
+    if (table != null && !table.matches(reader, context.getField())) {
+      table = null;
+    }
 
-        for (String token : querySet) {
-          docFreqs.put(token, reader.docFreq(new Term(context.getField(), token)));
-        }
+    try {
+      float sumPMI = 0.0f;
+      float pairsComputed = 0.0f;
+
+      for (int i = 0; i < queryTokens.size(); i++) {
+        String firstToken = queryTokens.get(i);
+        for (int j = i +1; j < queryTokens.size(); j++) {
+          pairsComputed ++;
+          String secondToken = queryTokens.get(j);
+          int intersect = table == null ? -1 : table.get(firstToken, secondToken);
+          if (intersect < 0) {
+            intersect = CooccurrenceTable.countLive(reader, context.getField(), firstToken, secondToken);
+          }
 
-        float sumPMI = 0.0f;
-        float pairsComputed = 0.0f;
-
-        for (int i = 0; i < queryTokens.size(); i++) {
-          String firstToken = queryTokens.get(i);
-          for (int j = i +1; j < queryTokens.size(); j++) {
-            pairsComputed ++;
-            String secondToken = queryTokens.get(j);
-            PostingsEnum firstEnum = MultiFields.getTermDocsEnum(reader,context.getField(), new BytesRef(firstToken));
-            PostingsEnum secondEnum = MultiFields.getTermDocsEnum(reader,context.getField(), new BytesRef(secondToken));
-            int intersect;
-            if (firstEnum == null || secondEnum == null) {
-              intersect = 0;
-            } else {
-              intersect = countPostingIntersect(firstEnum, secondEnum);
-            }
-
-            if (intersect == 0) continue;
-            // We should never reach this point and have doc freq =0 because then there would
-            // be no intersect between docIds
-            int firstDocFreq = docFreqs.containsKey(firstToken) ? docFreqs.get(firstToken) : 1;
-            int secondDocFreq = docFreqs.containsKey(secondToken) ? docFreqs.get(secondToken) :1;
-            float fraction = (intersect / (float) (firstDocFreq * secondDocFreq));
-            if (fraction <= 0) {
-              continue;
-            }
-            sumPMI += Math.log(fraction);
+          if (intersect == 0) continue;
+          // We should never reach this point and have doc freq =0 because then there would
+          // be no intersect between docIds
+          int firstDocFreq = statistics.getDocFreq(firstToken);
+          int secondDocFreq = statistics.getDocFreq(secondToken);
+          float fraction = (intersect / (float) (firstDocFreq * secondDocFreq));
+          if (fraction <= 0) {
+            continue;
           }
+          sumPMI += Math.log(fraction);
         }
+      }
 
-        // Now compute the average
-        if (pairsComputed != 0) {
-          this.lastComputedValue = sumPMI / pairsComputed;
-        }
-      } catch (IOException e) {
-        this.lastComputedValue = 0.0f;
+      // Now compute the average
+      if (pairsComputed != 0) {
+        return sumPMI / pairsComputed;
       }
+    } catch (IOException e) {
+      return 0.0f;
     }
-    return this.lastComputedValue;
+    return 0.0f;
+  }
+
+  @Override
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+    return context.getQueryStatistics().getQueryFeature(getName(), context, compute);
   }
 
   @Override
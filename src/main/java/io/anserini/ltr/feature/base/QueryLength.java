@@ -1,12 +1,12 @@
 package io.anserini.ltr.feature.base;
 
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
 import io.anserini.rerank.RerankerContext;
 
 import java.util.List;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Terms;
 
 /**
  * QueryCount
@@ -15,7 +15,7 @@ import org.apache.lucene.index.Terms;
 public class QueryLength implements FeatureExtractor {
 
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
     List<String> queryTokens = context.getQueryTokens();
     return queryTokens.size();
   }
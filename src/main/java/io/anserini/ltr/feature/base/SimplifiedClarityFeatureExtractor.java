@@ -1,13 +1,11 @@
 package io.anserini.ltr.feature.base;
 
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
+import io.anserini.rerank.QueryStatistics;
 import io.anserini.rerank.RerankerContext;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.index.Terms;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,10 +16,7 @@ import java.util.Map;
  */
 public class SimplifiedClarityFeatureExtractor implements FeatureExtractor{
 
-  private String lastQueryProcessed = "";
-  private float lastComputedScore = 0.0f;
-
-  private Map<String, Integer> queryTermMap(List<String> queryTokens) {
+  private static Map<String, Integer> queryTermMap(List<String> queryTokens) {
     Map<String, Integer> map = new HashMap<>();
     for (String token : queryTokens) {
       if (map.containsKey(token)) {
@@ -33,15 +28,13 @@ public class SimplifiedClarityFeatureExtractor implements FeatureExtractor{
     return map;
   }
 
-  private float sumSC(IndexReader reader, Map<String, Integer> queryTokenMap,
-                      int queryLength, String field) throws IOException {
-
-    long termCount = reader.getSumTotalTermFreq(field);
+  private static float sumSC(QueryStatistics statistics, Map<String, Integer> queryTokenMap, int queryLength) {
+    long termCount = statistics.getSumTotalTermFreq();
     // We now have a doc size, compute the actual value
     float score = 0.0f;
     for (String token : queryTokenMap.keySet()) {
       float prtq = queryTokenMap.get(token) / (float) queryLength;
-      long tf = reader.totalTermFreq(new Term(field, token));
+      long tf = statistics.getCollectionFreq(token);
       float prtd = (float)tf /termCount;
       if (prtd == 0 || prtq == 0) continue;
       score += prtq * Math.log(prtq / prtd);
@@ -50,24 +43,9 @@ public class SimplifiedClarityFeatureExtractor implements FeatureExtractor{
   }
 
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
-
-    if (!this.lastQueryProcessed.equals(context.getQueryText())) {
-      this.lastQueryProcessed = context.getQueryText();
-      this.lastComputedScore = 0.0f;
-
-      Map<String, Integer> queryCountMap = queryTermMap(context.getQueryTokens());
-      try {
-        float score = sumSC(context.getIndexSearcher().getIndexReader(),
-                queryCountMap, context.getQueryTokens().size(),
-                context.getField());
-        this.lastComputedScore = score;
-      } catch (IOException e) {
-        this.lastComputedScore = 0.0f;
-      }
-    }
-
-    return this.lastComputedScore;
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+    return context.getQueryStatistics().getQueryFeature(getName(), context, (statistics, query) ->
+        sumSC(statistics, queryTermMap(query.getQueryTokens()), query.getQueryTokens().size()));
   }
 
   @Override
@@ -1,15 +1,10 @@
 package io.anserini.ltr.feature.base;
 
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
 import io.anserini.rerank.RerankerContext;
 
-import java.io.IOException;
-import java.util.List;
-
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Terms;
-import org.apache.lucene.index.TermsEnum;
-import org.apache.lucene.util.BytesRef;
 
 /**
  * Computes the sum of the term frequencies of the matching terms. That is, if there are two query
@@ -19,24 +14,12 @@ import org.apache.lucene.util.BytesRef;
 public class SumMatchingTf implements FeatureExtractor {
 
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
-    try {
-      List<String> queryTokens = context.getQueryTokens();
-      TermsEnum termsEnum = terms.iterator();
-      int sum = 0;
-
-      BytesRef text = null;
-      while ((text = termsEnum.next()) != null) {
-        String term = text.utf8ToString();
-        if (queryTokens.contains(term)) {
-          sum += (int) termsEnum.totalTermFreq();
-        }
-      }
-      return sum;
-
-    } catch (IOException e) {
-      return 0;
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+    int sum = 0;
+    for (int i = 0; i < docContext.getQueryTerms().size(); i++) {
+      sum += (int) docContext.getTermFreq(i);
     }
+    return sum;
   }
 
   @Override
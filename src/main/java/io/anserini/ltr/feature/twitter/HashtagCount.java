@@ -1,31 +1,26 @@
 package io.anserini.ltr.feature.twitter;
 
+import io.anserini.index.IndexTweets;
 import io.anserini.index.IndexTweets.StatusField;
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
 import io.anserini.rerank.RerankerContext;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.IndexableField;
 
 public class HashtagCount implements FeatureExtractor {
 
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
-    String str = doc.getField(StatusField.TEXT.name).stringValue();
-    final String matchStr = "#";
-
-    int lastIndex = 0;
-    int count = 0;
-
-    while (lastIndex != -1) {
-      lastIndex = str.indexOf(matchStr, lastIndex);
-      if (lastIndex != -1) {
-        count++;
-        lastIndex += matchStr.length();
-      }
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+    Long count = TweetDocValues.get(docContext, context, StatusField.HASHTAG_COUNT.name);
+    if (count != null) {
+      return (float) count;
     }
 
-    return (float) count;
+    // Indexed without the count, so work it out from the text
+    IndexableField text = doc.getField(StatusField.TEXT.name);
+    return text == null ? 0.0f : (float) IndexTweets.countHashtags(text.stringValue());
   }
 
   @Override
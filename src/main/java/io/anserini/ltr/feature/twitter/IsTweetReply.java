@@ -1,15 +1,20 @@
 package io.anserini.ltr.feature.twitter;
 
 import io.anserini.index.IndexTweets.StatusField;
+import io.anserini.ltr.feature.DocumentContext;
 import io.anserini.ltr.feature.FeatureExtractor;
 import io.anserini.rerank.RerankerContext;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Terms;
 
 public class IsTweetReply implements FeatureExtractor {
   @Override
-  public float extract(Document doc, Terms terms, RerankerContext context) {
+  public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+    // Tweets that aren't replies have no value, which doc values read as 0
+    Long inReplyTo = TweetDocValues.get(docContext, context, StatusField.IN_REPLY_TO_STATUS_ID.name);
+    if (inReplyTo != null) {
+      return inReplyTo > 0 ? 1.0f : 0.0f;
+    }
     return doc.getField(StatusField.IN_REPLY_TO_STATUS_ID.name) == null ? 0.0f : 1.0f;
   }
 
@@ -0,0 +1,57 @@
+package io.anserini.ltr.feature.twitter;
+
+import io.anserini.ltr.feature.DocumentContext;
+import io.anserini.rerank.RerankerContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads the per-tweet signals that {@link io.anserini.index.IndexTweets} writes as numeric doc
+ * values, so that the Twitter features don't depend on which stored fields were loaded.
+ */
+final class TweetDocValues {
+  private static final Logger LOG = LogManager.getLogger(TweetDocValues.class);
+
+  private TweetDocValues() {}
+
+  /**
+   * @return the doc value of the field for this document, or null if the docid is unknown or the
+   * document's segment has no doc values for the field
+   */
+  static Long get(DocumentContext docContext, RerankerContext context, String field) {
+    int docid = docContext.getDocid();
+    if (docid < 0) {
+      return null;
+    }
+
+    List<LeafReaderContext> leaves = context.getIndexSearcher().getIndexReader().leaves();
+    LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docid, leaves));
+    try {
+      NumericDocValues values = leaf.reader().getNumericDocValues(field);
+      return values == null ? null : values.get(docid - leaf.docBase);
+    } catch (IOException e) {
+      LOG.warn(String.format("Error reading doc values of %s for doc %d", field, docid));
+      return null;
+    }
+  }
+
+  /**
+   * @return the doc value of the field, falling back to the stored field for indexes written
+   * without doc values, or 0 if neither is there
+   */
+  static float getOrStored(DocumentContext docContext, RerankerContext context, String field) {
+    Long value = get(docContext, context, field);
+    if (value != null) {
+      return (float) value;
+    }
+    IndexableField stored = docContext.getDocument().getField(field);
+    return stored == null ? 0.0f : stored.numericValue().floatValue();
+  }
+}
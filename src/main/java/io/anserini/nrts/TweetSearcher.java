@@ -14,6 +14,9 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
 
@@ -30,18 +33,47 @@ public class TweetSearcher {
 
   private static final String INDEX_OPTION = "index";
   private static final String PORT_OPTION = "port";
+  private static final String STALENESS_OPTION = "staleness";
+
+  // Default time, in ms, a search may lag behind the tweets indexed
+  public static final long DEFAULT_STALENESS_MS = 100;
 
   public static Directory index;
   public static IndexWriter indexWriter;
+  // Searchers over the latest tweets; acquire one for each request and release it when done
+  public static SearcherManager searcherManager;
   public static final Analyzer ANALYZER = new TweetAnalyzer();
 
+  private final ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
   public TweetSearcher(String dir) throws IOException {
+    this(dir, DEFAULT_STALENESS_MS);
+  }
+
+  /**
+   * @param stalenessMs how long, in ms, a search may lag behind the tweets indexed before the
+   *                    searcher is reopened in the background; must be positive
+   */
+  public TweetSearcher(String dir, long stalenessMs) throws IOException {
+    if (stalenessMs <= 0) {
+      throw new IllegalArgumentException("Staleness must be positive, got " + stalenessMs + " ms");
+    }
     index = new MMapDirectory(Paths.get(dir));
     IndexWriterConfig config = new IndexWriterConfig(ANALYZER);
     indexWriter = new IndexWriter(index, config);
+    searcherManager = new SearcherManager(indexWriter, true, true, null);
+
+    // No request waits for a particular generation, so the searcher is reopened every stalenessMs
+    double staleness = stalenessMs / 1000.0;
+    reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, staleness, staleness);
+    reopenThread.setName("NRT Reopen Thread");
+    reopenThread.setDaemon(true);
+    reopenThread.start();
   }
 
   public void close() throws IOException {
+    reopenThread.close();
+    searcherManager.close();
     indexWriter.close();
   }
 
@@ -49,6 +81,8 @@ public class TweetSearcher {
     Options options = new Options();
     options.addOption(INDEX_OPTION, true, "index path");
     options.addOption(PORT_OPTION, true, "port");
+    options.addOption(STALENESS_OPTION, true, "ms a search may lag behind the tweets indexed, "
+        + DEFAULT_STALENESS_MS + " if not given");
 
     CommandLine cmdline = null;
     CommandLineParser parser = new GnuParser();
@@ -66,7 +100,13 @@ public class TweetSearcher {
     }
 
     int port = cmdline.hasOption(PORT_OPTION) ? Integer.parseInt(cmdline.getOptionValue(PORT_OPTION)) : 8080;
-    TweetSearcher nrtsearch = new TweetSearcher(cmdline.getOptionValue(INDEX_OPTION));
+    long staleness = cmdline.hasOption(STALENESS_OPTION) ?
+        Long.parseLong(cmdline.getOptionValue(STALENESS_OPTION)) : DEFAULT_STALENESS_MS;
+    if (staleness <= 0) {
+      System.err.println("Staleness must be positive, got " + staleness + " ms");
+      System.exit(-1);
+    }
+    TweetSearcher nrtsearch = new TweetSearcher(cmdline.getOptionValue(INDEX_OPTION), staleness);
 
     TweetStreamIndexer its = new TweetStreamIndexer();
     Thread itsThread = new Thread(its);
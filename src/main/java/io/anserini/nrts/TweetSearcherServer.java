@@ -6,8 +6,6 @@ import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
@@ -15,186 +13,568 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopScoreDocCollector;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * A bare-bones HTTP server for tweet search, answering {@code GET /search?query=...[&top=n]} and
+ * {@code GET /metrics}.
+ *
+ * One thread multiplexes every connection with a selector: connections are kept alive, requests
+ * may be pipelined, and the responses on a connection go back in the order its requests came in.
+ * Searches run on a fixed pool behind a bounded queue; a search that finds the queue full is
+ * answered with 503 at once rather than waiting. How long searches wait in the queue and how long
+ * they then take are tracked separately, see {@link #getMetrics()}.
+ */
 public class TweetSearcherServer extends Thread {
   private static final Logger LOG = LogManager.getLogger(TweetSearcherServer.class);
 
-  private ServerSocket server;
-  private int numThreads = 50;
+  public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+  private static final int DEFAULT_TOP_N = 20;
+  // Largest request head (and body) we read
+  private static final int MAX_REQUEST_BYTES = 8192;
+  // Requests read ahead on a connection before we wait for their responses to be written
+  private static final int MAX_PIPELINED = 16;
+  private static final byte[] END_OF_HEAD = {'\r', '\n', '\r', '\n'};
 
-  public TweetSearcherServer(int port) throws IOException {
-    this.server = new ServerSocket(port);
-  }
+  private final ServerSocketChannel server;
+  private final Selector selector;
+  private final ThreadPoolExecutor pool;
+  // Connections with a finished search to write, handed from the pool to the selector thread
+  private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+  private final Metrics metrics = new Metrics();
+  private volatile boolean running = true;
 
-  public void run() {
-    for (int i = 0; i < numThreads; i++) {
-      Thread strThread = new Thread(new SearcherThread());
-      strThread.start();
+  /**
+   * A response on its way back; the selector thread writes it once {@code bytes} is set
+   */
+  private static final class Response {
+    final boolean close;
+    volatile ByteBuffer bytes;
+
+    Response(boolean close) {
+      this.close = close;
     }
+  }
 
-    LOG.info("Accepting connections on port " + server.getLocalPort());
-    while (true) {
-      try {
-        Socket request = server.accept();
-        SearcherThread.processRequest(request);
-      } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      }
+  /**
+   * State of a connection, only touched by the selector thread
+   */
+  private static final class Connection {
+    final SocketChannel channel;
+    final SelectionKey key;
+    ByteBuffer in = ByteBuffer.allocate(1024);
+    // Responses to the requests read so far, in request order
+    final Queue<Response> responses = new ArrayDeque<>();
+    ByteBuffer out;
+    boolean closeAfterOut;
+    // No more requests are read once the client has closed its side or asked us to close
+    boolean closing;
+
+    Connection(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
     }
   }
 
-  public static class SearcherThread implements Runnable {
+  /**
+   * Latencies, in microseconds, in buckets an eighth of a power of two wide
+   */
+  public static final class Histogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
 
-    private static int topN = 20;
-    private static List<Socket> pool = new LinkedList<Socket>();
-    private IndexReader reader;
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (Long.SIZE - SUB_BITS) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
 
-    public SearcherThread() {
-      try {
-        reader = DirectoryReader.open(TweetSearcher.indexWriter, true, true);
-      } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+    private static int bucket(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
       }
+      int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+      int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
     }
 
-    public static Map<String, String> readParamsIntoMap(String url) throws URISyntaxException {
-      Map<String, String> params = new HashMap<String, String>();
-      List<NameValuePair> result = URLEncodedUtils.parse(new URI(url), "UTF-8");
-      for (NameValuePair nvp : result) {
-        params.put(nvp.getName(), nvp.getValue());
+    private static long highestValue(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
       }
-      return params;
+      int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+      long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+      return lowest + (1L << shift) - 1;
+    }
+
+    public void record(long micros) {
+      long value = Math.max(0L, micros);
+      counts.incrementAndGet(bucket(value));
+      count.increment();
+      sum.add(value);
+      max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+      return count.sum();
     }
 
-    public static void processRequest(Socket request) {
-      synchronized (pool) {
-        pool.add(pool.size(), request);
-        pool.notifyAll();
+    public double getMean() {
+      long n = count.sum();
+      return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * @return a value at least as large as the given fraction of those recorded, to within an
+     *         eighth
+     */
+    public long getPercentile(double fraction) {
+      long target = (long) Math.ceil(fraction * count.sum());
+      long seen = 0;
+      for (int b = 0; b < counts.length(); b++) {
+        seen += counts.get(b);
+        if (seen >= Math.max(1L, target)) {
+          return Math.min(highestValue(b), getMax());
+        }
       }
+      return getMax();
     }
 
     @Override
-    public void run() {
-      while (true) {
-        Socket connection;
-        synchronized (pool) {
-          while (pool.isEmpty()) {
-            try {
-              pool.wait();
-            } catch (InterruptedException e) {
-              // TODO Auto-generated catch block
-              e.printStackTrace();
-            }
+    public String toString() {
+      return String.format(Locale.ROOT, "count %d mean %.1f p50 %d p90 %d p99 %d max %d", getCount(), getMean(),
+          getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), getMax());
+    }
+  }
 
-          }
-          connection = (Socket) pool.remove(0);
-        }
+  /**
+   * Counts of the searches served, with the time they spent queued for the pool apart from the
+   * time the pool then took to answer them
+   */
+  public static final class Metrics {
+    public final LongAdder requests = new LongAdder();
+    public final LongAdder rejected = new LongAdder();
+    public final Histogram queueWait = new Histogram();
+    public final Histogram serviceTime = new Histogram();
 
-        PrintStream out = null;
-        try {
-          out = new PrintStream(connection.getOutputStream(), true, "UTF-8");
-          BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+    @Override
+    public String toString() {
+      return "requests " + requests.sum() + "\n"
+          + "rejected " + rejected.sum() + "\n"
+          + "queue_wait_us " + queueWait + "\n"
+          + "service_time_us " + serviceTime + "\n";
+    }
+  }
 
-          String get = in.readLine();
-          LOG.info(get);
+  public TweetSearcherServer(int port) throws IOException {
+    this(port, DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY);
+  }
 
-          StringTokenizer st = new StringTokenizer(get);
-          String method = st.nextToken();
-          String version = "";
-          if (method.equals("GET")) {
-            String query = st.nextToken();
+  /**
+   * @param threads       number of searches run at once
+   * @param queueCapacity number of searches that may wait for a thread before more are turned away
+   */
+  public TweetSearcherServer(int port, int threads, int queueCapacity) throws IOException {
+    super("TweetSearcherServer");
+    this.selector = Selector.open();
+    this.server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port));
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+    this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+  }
 
-            if (st.hasMoreTokens()) {
-              version = st.nextToken();
-            }
+  public int getPort() {
+    return server.socket().getLocalPort();
+  }
 
-            if (query.startsWith("/search?")) {
-              if (version.startsWith("HTTP")) {
-                out.println("HTTP/1.0 200 OK");
-                Date now = new Date();
-                out.println("Date: " + now);
-                out.println("Server: JHTTP 1.0");
-                out.println("Content-Type: text/html");
-                out.println();
-              }
-
-              Map<String, String> params = readParamsIntoMap(query);
-              Query q = new QueryParser(StatusField.TEXT.name, TweetSearcher.ANALYZER).parse(params.get("query"));
-              IndexReader newReader = DirectoryReader.openIfChanged((DirectoryReader) reader,
-                  TweetSearcher.indexWriter, true);
-              if (newReader != null) {
-                reader.close();
-                reader = newReader;
-              }
-              IndexSearcher searcher = new IndexSearcher(reader);
-              TopScoreDocCollector collector = TopScoreDocCollector.create(topN);
-              searcher.search(q, collector);
-              ScoreDoc[] hits = collector.topDocs().scoreDocs;
-
-              out.println("<HTML>");
-              out.println("<HEAD><TITLE>Query</TITLE></HRAD>");
-              out.println("<BODY>");
-              out.println("<H1>Query = \"" + params.get("query") + "\". Found " + hits.length
-                  + " hits.</H1>");
-              out.println("<OL>");
-              for (int i = 0; i < hits.length; ++i) {
-                int docId = hits[i].doc;
-                Document d = searcher.doc(docId);
-                out.println("<LI>" + d.get(StatusField.TEXT.name) + "</LI>");
-              }
-              out.println("</OL>");
-              out.println("</BODY></HTML>");
-            } else {
-              if (version.startsWith("HTTP")) {
-                out.println("HTTP/1.0 404 File Not Found");
-                Date now = new Date();
-                out.println("Date: " + now);
-                out.println("Server: JHTTP 1.0");
-                out.println("Content-Type: text/html");
-                out.println();
-              }
-            }
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Stops accepting connections, closes those open, and lets the searches already running finish
+   */
+  public void close() {
+    running = false;
+    selector.wakeup();
+  }
+
+  public static Map<String, String> readParamsIntoMap(String url) throws URISyntaxException {
+    Map<String, String> params = new HashMap<String, String>();
+    List<NameValuePair> result = URLEncodedUtils.parse(new URI(url), "UTF-8");
+    for (NameValuePair nvp : result) {
+      params.put(nvp.getName(), nvp.getValue());
+    }
+    return params;
+  }
+
+  @Override
+  public void run() {
+    LOG.info("Accepting connections on port " + getPort());
+    try {
+      while (running) {
+        selector.select();
+        Connection connection;
+        while ((connection = ready.poll()) != null) {
+          serve(connection);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
           } else {
-            if (version.startsWith("HTTP")) {
-              out.println("HTTP/1.0 501 Not Implemented");
-              Date now = new Date();
-              out.println("Date: " + now);
-              out.println("Server: JHTTP 1.0");
-              out.println("Content-Type: text/html");
-              out.println();
+            connection = (Connection) key.attachment();
+            if (key.isReadable()) {
+              read(connection);
+            } else {
+              serve(connection);
             }
           }
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Error in the selector loop", e);
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof Connection) {
+          close((Connection) key.attachment());
+        }
+      }
+      try {
+        server.close();
+        selector.close();
+      } catch (IOException e) {
+        LOG.warn("Error closing the server socket", e);
+      }
+      pool.shutdown();
+    }
+  }
 
-        } catch (IOException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        } catch (URISyntaxException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        } catch (ParseException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        } finally {
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      key.attach(new Connection(channel, key));
+    }
+  }
+
+  private void read(Connection connection) {
+    try {
+      if (connection.channel.read(connection.in) < 0) {
+        // Answer what the client has sent so far, then close
+        connection.closing = true;
+      }
+    } catch (IOException e) {
+      close(connection);
+      return;
+    }
+    serve(connection);
+  }
+
+  /**
+   * Reads the requests buffered on a connection and writes the responses that are ready, as far as
+   * the connection allows, then waits for whatever it is still missing.
+   */
+  private void serve(Connection connection) {
+    try {
+      boolean progress = true;
+      while (progress && connection.channel.isOpen()) {
+        progress = parse(connection);
+        progress |= write(connection);
+      }
+      if (!connection.channel.isOpen()) {
+        return;
+      }
+      if (connection.closing && connection.responses.isEmpty() && connection.out == null) {
+        close(connection);
+        return;
+      }
+      int ops = 0;
+      if (!connection.closing && connection.responses.size() < MAX_PIPELINED) {
+        ops |= SelectionKey.OP_READ;
+      }
+      if (connection.out != null) {
+        ops |= SelectionKey.OP_WRITE;
+      }
+      connection.key.interestOps(ops);
+    } catch (IOException e) {
+      close(connection);
+    }
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+    byte[] bytes = buffer.array();
+    for (int i = 0; i + pattern.length <= buffer.position(); i++) {
+      int j = 0;
+      while (j < pattern.length && bytes[i + j] == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+    if (buffer.capacity() >= capacity) {
+      return buffer;
+    }
+    ByteBuffer grown = ByteBuffer.allocate(Math.max(capacity, Math.min(2 * buffer.capacity(), MAX_REQUEST_BYTES)));
+    buffer.flip();
+    grown.put(buffer);
+    return grown;
+  }
+
+  /**
+   * Takes the next whole request off a connection's buffer and starts answering it.
+   *
+   * @return whether a request was taken
+   */
+  private boolean parse(Connection connection) {
+    if (connection.closing && connection.in.position() == 0 || connection.responses.size() >= MAX_PIPELINED) {
+      return false;
+    }
+    int end = indexOf(connection.in, END_OF_HEAD);
+    if (end < 0) {
+      if (!connection.in.hasRemaining()) {
+        if (connection.in.capacity() >= MAX_REQUEST_BYTES) {
+          reject(connection, 431, "Request Header Fields Too Large");
+        } else {
+          connection.in = grow(connection.in, connection.in.capacity() + 1);
+        }
+      } else if (connection.closing) {
+        // The client closed in the middle of a request
+        connection.in.clear();
+      }
+      return false;
+    }
+
+    String[] lines = new String(connection.in.array(), 0, end, StandardCharsets.ISO_8859_1).split("\r\n");
+    String[] requestLine = lines[0].trim().split("\\s+");
+    String method = requestLine[0];
+    String target = requestLine.length > 1 ? requestLine[1] : "/";
+    String version = requestLine.length > 2 ? requestLine[2] : "HTTP/1.0";
+    boolean keepAlive = "HTTP/1.1".equals(version);
+    int contentLength = 0;
+    for (int i = 1; i < lines.length; i++) {
+      int colon = lines[i].indexOf(':');
+      if (colon < 0) {
+        continue;
+      }
+      String name = lines[i].substring(0, colon).trim();
+      String value = lines[i].substring(colon + 1).trim();
+      if (name.equalsIgnoreCase("Connection")) {
+        keepAlive = value.equalsIgnoreCase("keep-alive") || (keepAlive && !value.equalsIgnoreCase("close"));
+      } else if (name.equalsIgnoreCase("Content-Length")) {
+        try {
+          contentLength = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          contentLength = -1;
+        }
+      }
+    }
+    if (contentLength < 0 || end + END_OF_HEAD.length + contentLength > MAX_REQUEST_BYTES) {
+      reject(connection, 413, "Payload Too Large");
+      return false;
+    }
+    int length = end + END_OF_HEAD.length + contentLength;
+    if (connection.in.position() < length) {
+      // Wait for the rest of the body, which we don't use
+      connection.in = grow(connection.in, length);
+      return false;
+    }
+    connection.in.flip();
+    connection.in.position(length);
+    connection.in.compact();
+
+    Response response = new Response(!keepAlive);
+    connection.responses.add(response);
+    if (!keepAlive) {
+      connection.closing = true;
+      connection.in.clear();
+    }
+    dispatch(connection, response, method, target, version);
+    return true;
+  }
+
+  private void reject(Connection connection, int status, String reason) {
+    Response response = new Response(true);
+    response.bytes = response(status, reason, "HTTP/1.1", "text/plain", new byte[0], false);
+    connection.responses.add(response);
+    connection.closing = true;
+    connection.in.clear();
+  }
+
+  private void dispatch(Connection connection, Response response, String method, String target, String version) {
+    boolean keepAlive = !response.close;
+    if (!method.equals("GET")) {
+      response.bytes = response(501, "Not Implemented", version, "text/plain", new byte[0], keepAlive);
+    } else if (target.equals("/metrics")) {
+      response.bytes = response(200, "OK", version, "text/plain",
+          metrics.toString().getBytes(StandardCharsets.UTF_8), keepAlive);
+    } else if (target.startsWith("/search?")) {
+      long queued = System.nanoTime();
+      try {
+        pool.execute(() -> {
+          long started = System.nanoTime();
+          metrics.queueWait.record((started - queued) / 1000);
+          ByteBuffer bytes;
           try {
-            out.close();
-            connection.close();
-          } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            bytes = response(200, "OK", version, "text/html; charset=UTF-8", search(target), keepAlive);
+          } catch (ParseException | URISyntaxException e) {
+            bytes = response(400, "Bad Request", version, "text/plain", new byte[0], keepAlive);
+          } catch (Exception e) {
+            LOG.error("Error searching " + target, e);
+            bytes = response(500, "Internal Server Error", version, "text/plain", new byte[0], keepAlive);
           }
+          metrics.serviceTime.record((System.nanoTime() - started) / 1000);
+          metrics.requests.increment();
+          response.bytes = bytes;
+          ready.add(connection);
+          selector.wakeup();
+        });
+      } catch (RejectedExecutionException e) {
+        metrics.rejected.increment();
+        response.bytes = response(503, "Service Unavailable", version, "text/plain", new byte[0], keepAlive);
+      }
+    } else {
+      response.bytes = response(404, "File Not Found", version, "text/plain", new byte[0], keepAlive);
+    }
+  }
+
+  /**
+   * Writes the responses at the head of a connection's queue that are ready.
+   *
+   * @return whether a response was written in full
+   */
+  private boolean write(Connection connection) throws IOException {
+    boolean written = false;
+    while (true) {
+      if (connection.out == null) {
+        Response next = connection.responses.peek();
+        if (next == null || next.bytes == null) {
+          return written;
         }
+        connection.responses.poll();
+        connection.out = next.bytes;
+        connection.closeAfterOut = next.close;
+      }
+      connection.channel.write(connection.out);
+      if (connection.out.hasRemaining()) {
+        return written;
+      }
+      connection.out = null;
+      written = true;
+      if (connection.closeAfterOut) {
+        close(connection);
+        return true;
+      }
+    }
+  }
+
+  private void close(Connection connection) {
+    connection.key.cancel();
+    try {
+      connection.channel.close();
+    } catch (IOException e) {
+      LOG.warn("Error closing a connection", e);
+    }
+  }
+
+  private static ByteBuffer response(int status, String reason, String version, String contentType, byte[] body,
+                                     boolean keepAlive) {
+    String head = (version.equals("HTTP/1.0") ? "HTTP/1.0" : "HTTP/1.1") + " " + status + " " + reason + "\r\n"
+        + "Date: " + new Date() + "\r\n"
+        + "Server: Anserini\r\n"
+        + "Content-Type: " + contentType + "\r\n"
+        + "Content-Length: " + body.length + "\r\n"
+        + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n";
+    byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+    ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + body.length);
+    buffer.put(headBytes).put(body).flip();
+    return buffer;
+  }
+
+  private static byte[] search(String target) throws URISyntaxException, ParseException, IOException {
+    Map<String, String> params = readParamsIntoMap(target);
+    if (params.get("query") == null) {
+      throw new ParseException("No query");
+    }
+    int topN = DEFAULT_TOP_N;
+    if (params.get("top") != null) {
+      try {
+        topN = Integer.parseInt(params.get("top"));
+      } catch (NumberFormatException e) {
+        throw new ParseException("Bad top: " + params.get("top"));
+      }
+      if (topN <= 0) {
+        throw new ParseException("Bad top: " + topN);
+      }
+    }
+    Query q = new QueryParser(StatusField.TEXT.name, TweetSearcher.ANALYZER).parse(params.get("query"));
+    StringBuilder html = new StringBuilder();
+    IndexSearcher searcher = TweetSearcher.searcherManager.acquire();
+    try {
+      TopScoreDocCollector collector = TopScoreDocCollector.create(topN);
+      searcher.search(q, collector);
+      ScoreDoc[] hits = collector.topDocs().scoreDocs;
+
+      html.append("<HTML>\n");
+      html.append("<HEAD><TITLE>Query</TITLE></HEAD>\n");
+      html.append("<BODY>\n");
+      html.append("<H1>Query = \"").append(params.get("query")).append("\". Found ").append(hits.length)
+          .append(" hits.</H1>\n");
+      html.append("<OL>\n");
+      for (int i = 0; i < hits.length; ++i) {
+        int docId = hits[i].doc;
+        Document d = searcher.doc(docId);
+        html.append("<LI>").append(d.get(StatusField.TEXT.name)).append("</LI>\n");
       }
+      html.append("</OL>\n");
+      html.append("</BODY></HTML>\n");
+    } finally {
+      TweetSearcher.searcherManager.release(searcher);
     }
+    return html.toString().getBytes(StandardCharsets.UTF_8);
   }
 }
@@ -5,8 +5,6 @@ import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
 import io.anserini.nrts.TweetStreamIndexer.StatusField;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
@@ -27,7 +25,6 @@ public class TweetServlet extends HttpServlet {
   // TODO Auto-generated serialVersionUID
   private static final long serialVersionUID = 1L;
   String MustacheTemplatePath="src/main/java/io/anserini/nrts/ServletResponseTemplate.mustache";
-  private IndexReader reader;
   
   static class TweetHits {
     
@@ -64,40 +61,31 @@ public class TweetServlet extends HttpServlet {
       Query q;
       try {
         q = new QueryParser(StatusField.TEXT.name, TweetSearcher.ANALYZER).parse(request.getParameter("query"));
+        IndexSearcher searcher = TweetSearcher.searcherManager.acquire();
         try {
-          reader = DirectoryReader.open(TweetSearcher.indexWriter, true, true);
-        } catch (IOException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
-        }
-        IndexReader newReader = DirectoryReader.openIfChanged((DirectoryReader) reader, TweetSearcher.indexWriter,
-            true);
-        if (newReader != null) {
-          reader.close();
-          reader = newReader;
-        }
-        IndexSearcher searcher = new IndexSearcher(reader);
-        
-        int topN;
-        if (request.getParameter("top") != null) {
-          topN = Integer.parseInt(request.getParameter("top"));
-        } else {
-          // TODO configurable, default(parameter unspecified in url) topN = 20
-          topN = 20;
-        }
-        TopScoreDocCollector collector = TopScoreDocCollector.create(topN);
-        searcher.search(q, collector);
-        ScoreDoc[] hits = collector.topDocs().scoreDocs;        
-        TweetHits tweetHits=new TweetHits(request.getParameter("query"),hits.length);
+          int topN;
+          if (request.getParameter("top") != null) {
+            topN = Integer.parseInt(request.getParameter("top"));
+          } else {
+            // TODO configurable, default(parameter unspecified in url) topN = 20
+            topN = 20;
+          }
+          TopScoreDocCollector collector = TopScoreDocCollector.create(topN);
+          searcher.search(q, collector);
+          ScoreDoc[] hits = collector.topDocs().scoreDocs;        
+          TweetHits tweetHits=new TweetHits(request.getParameter("query"),hits.length);
         
-        for (int i = 0; i < hits.length; ++i) {
-          int docId = hits[i].doc;
-          Document d = searcher.doc(docId);         
-          tweetHits.addHit(i,String.valueOf(d.get(StatusField.ID.name)));          
+          for (int i = 0; i < hits.length; ++i) {
+            int docId = hits[i].doc;
+            Document d = searcher.doc(docId);         
+            tweetHits.addHit(i,String.valueOf(d.get(StatusField.ID.name)));          
+          }
+          MustacheFactory mf = new DefaultMustacheFactory();
+          Mustache mustache = mf.compile(MustacheTemplatePath);
+          mustache.execute(response.getWriter(), tweetHits).flush();
+        } finally {
+          TweetSearcher.searcherManager.release(searcher);
         }
-        MustacheFactory mf = new DefaultMustacheFactory();
-        Mustache mustache = mf.compile(MustacheTemplatePath);
-        mustache.execute(response.getWriter(), tweetHits).flush();
       } catch (ParseException e) {
         // TODO Auto-generated catch block
         e.printStackTrace();
@@ -3,6 +3,7 @@ package io.anserini.nrts;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.anserini.document.twitter.Status;
+import io.anserini.index.IndexTweets;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.*;
@@ -32,7 +33,10 @@ public class TweetStreamIndexer implements Runnable {
     STATUSES_COUNT("statuses_count"),
     RETWEETED_STATUS_ID("retweeted_status_id"),
     RETWEETED_USER_ID("retweeted_user_id"),
-    RETWEET_COUNT("retweet_count");
+    RETWEET_COUNT("retweet_count"),
+    // Doc values only, computed from the text at index time
+    HASHTAG_COUNT("hashtag_count"),
+    LINK_COUNT("link_count");
 
     public final String name;
 
@@ -83,16 +87,19 @@ public class TweetStreamIndexer implements Runnable {
         Document doc = new Document();
         doc.add(new LongPoint(StatusField.ID.name, status.getId()));
         doc.add(new StoredField(StatusField.ID.name, status.getId()));
+        doc.add(new NumericDocValuesField(StatusField.ID.name, status.getId()));
         doc.add(new LongPoint(StatusField.EPOCH.name, status.getEpoch()));
         doc.add(new StoredField(StatusField.EPOCH.name, status.getEpoch()));
         doc.add(new TextField(StatusField.SCREEN_NAME.name, status.getScreenname(), Store.YES));
 
         doc.add(new Field(StatusField.TEXT.name, status.getText(), textOptions));
 
-        doc.add(new IntPoint(StatusField.FRIENDS_COUNT.name, status.getFollowersCount()));
-        doc.add(new StoredField(StatusField.FRIENDS_COUNT.name, status.getFollowersCount()));
-        doc.add(new IntPoint(StatusField.FOLLOWERS_COUNT.name, status.getFriendsCount()));
-        doc.add(new StoredField(StatusField.FOLLOWERS_COUNT.name, status.getFriendsCount()));
+        doc.add(new IntPoint(StatusField.FRIENDS_COUNT.name, status.getFriendsCount()));
+        doc.add(new StoredField(StatusField.FRIENDS_COUNT.name, status.getFriendsCount()));
+        doc.add(new NumericDocValuesField(StatusField.FRIENDS_COUNT.name, status.getFriendsCount()));
+        doc.add(new IntPoint(StatusField.FOLLOWERS_COUNT.name, status.getFollowersCount()));
+        doc.add(new StoredField(StatusField.FOLLOWERS_COUNT.name, status.getFollowersCount()));
+        doc.add(new NumericDocValuesField(StatusField.FOLLOWERS_COUNT.name, status.getFollowersCount()));
         doc.add(new IntPoint(StatusField.STATUSES_COUNT.name, status.getStatusesCount()));
         doc.add(new StoredField(StatusField.STATUSES_COUNT.name, status.getStatusesCount()));
 
@@ -100,10 +107,14 @@ public class TweetStreamIndexer implements Runnable {
         if (inReplyToStatusId > 0) {
           doc.add(new LongPoint(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyToStatusId));
           doc.add(new StoredField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyToStatusId));
+          doc.add(new NumericDocValuesField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyToStatusId));
           doc.add(new LongPoint(StatusField.IN_REPLY_TO_USER_ID.name, status.getInReplyToUserId()));
           doc.add(new StoredField(StatusField.IN_REPLY_TO_USER_ID.name, status.getInReplyToUserId()));
         }
 
+        doc.add(new NumericDocValuesField(StatusField.HASHTAG_COUNT.name, IndexTweets.countHashtags(status.getText())));
+        doc.add(new NumericDocValuesField(StatusField.LINK_COUNT.name, IndexTweets.countLinks(status.getText())));
+
         String lang = status.getLang();
         if (!lang.equals("unknown")) {
           doc.add(new TextField(StatusField.LANG.name, status.getLang(), Store.YES));
@@ -113,6 +124,7 @@ public class TweetStreamIndexer implements Runnable {
         if (retweetStatusId > 0) {
           doc.add(new LongPoint(StatusField.RETWEETED_STATUS_ID.name, retweetStatusId));
           doc.add(new StoredField(StatusField.RETWEETED_STATUS_ID.name, retweetStatusId));
+          doc.add(new NumericDocValuesField(StatusField.RETWEETED_STATUS_ID.name, retweetStatusId));
           doc.add(new LongPoint(StatusField.RETWEETED_USER_ID.name, status.getRetweetedUserId()));
           doc.add(new StoredField(StatusField.RETWEETED_USER_ID.name, status.getRetweetedUserId()));
           doc.add(new IntPoint(StatusField.RETWEET_COUNT.name, status.getRetweetCount()));
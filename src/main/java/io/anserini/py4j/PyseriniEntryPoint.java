@@ -93,7 +93,7 @@ public class PyseriniEntryPoint {
       List<String> queryTokens = AnalyzerUtils.tokenize(ea, queryString);
       RerankerContext context = new RerankerContext(searcher, query, String.valueOf(qID), queryString,
               queryTokens, FIELD_BODY, null);
-      ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
+      ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher, cascade.getInputDepth()), context);
       for (int i = 0; i < docs.documents.length; i++) {
         String docid = docs.documents[i].getField(FIELD_ID).stringValue();
         docids.add(docid);
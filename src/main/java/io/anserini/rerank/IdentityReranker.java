@@ -5,4 +5,9 @@ public class IdentityReranker implements Reranker {
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
     return docs;
   }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
 }
@@ -0,0 +1,136 @@
+package io.anserini.rerank;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The query tokens mapped to int ordinals, built once per query and shared by every feature
+ * extractor and every thread scoring documents for that query. Obtained from
+ * {@link RerankerContext#getMappedQuery()}.
+ *
+ * Each unique query term gets an ordinal, in order of first occurrence in the query, so that
+ * per-document state can be kept in arrays indexed by ordinal instead of maps keyed by term.
+ */
+public class MappedQuery {
+  private final List<String> terms;
+  private final BytesRef[] termBytes;
+  private final Map<String, Integer> ordinals = new HashMap<>();
+  private final Map<BytesRef, Integer> bytesOrdinals = new HashMap<>();
+  private final int[] tokenOrdinals;
+  private final int[] sequentialPairs;
+  private final int[] allPairs;
+
+  MappedQuery(List<String> queryTokens) {
+    List<String> unique = new ArrayList<>();
+    this.tokenOrdinals = new int[queryTokens.size()];
+    for (int i = 0; i < queryTokens.size(); i++) {
+      String token = queryTokens.get(i);
+      Integer ordinal = ordinals.get(token);
+      if (ordinal == null) {
+        ordinal = unique.size();
+        ordinals.put(token, ordinal);
+        unique.add(token);
+      }
+      tokenOrdinals[i] = ordinal;
+    }
+    this.terms = Collections.unmodifiableList(unique);
+
+    this.termBytes = new BytesRef[unique.size()];
+    for (int i = 0; i < termBytes.length; i++) {
+      termBytes[i] = new BytesRef(unique.get(i));
+      bytesOrdinals.put(termBytes[i], i);
+    }
+
+    // Distinct pairs (x, y) where y directly follows x, or follows x anywhere later in the query
+    Set<Long> sequential = new HashSet<>();
+    Set<Long> all = new HashSet<>();
+    List<Long> sequentialOrder = new ArrayList<>();
+    List<Long> allOrder = new ArrayList<>();
+    for (int i = 0; i < tokenOrdinals.length - 1; i++) {
+      for (int j = i + 1; j < tokenOrdinals.length; j++) {
+        long pair = ((long) tokenOrdinals[i] << 32) | tokenOrdinals[j];
+        if (j == i + 1 && sequential.add(pair)) {
+          sequentialOrder.add(pair);
+        }
+        if (all.add(pair)) {
+          allOrder.add(pair);
+        }
+      }
+    }
+    this.sequentialPairs = flatten(sequentialOrder);
+    this.allPairs = flatten(allOrder);
+  }
+
+  private static int[] flatten(List<Long> pairs) {
+    int[] flat = new int[pairs.size() * 2];
+    for (int i = 0; i < pairs.size(); i++) {
+      flat[2 * i] = (int) (pairs.get(i) >>> 32);
+      flat[2 * i + 1] = (int) (long) pairs.get(i);
+    }
+    return flat;
+  }
+
+  /**
+   * @return unique query terms, in order of first occurrence in the query
+   */
+  public List<String> getTerms() {
+    return terms;
+  }
+
+  public int size() {
+    return termBytes.length;
+  }
+
+  /**
+   * @param ordinal index into {@link #getTerms()}
+   * @return the term as indexed, for looking it up in a term vector
+   */
+  public BytesRef getBytes(int ordinal) {
+    return termBytes[ordinal];
+  }
+
+  /**
+   * @return ordinal of the term, or -1 if it is not a query term
+   */
+  public int getOrdinal(String term) {
+    Integer ordinal = ordinals.get(term);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * @return ordinal of the term, or -1 if it is not a query term
+   */
+  public int getOrdinal(BytesRef term) {
+    Integer ordinal = bytesOrdinals.get(term);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * @return the ordinal of every query token, in query order (repeated tokens included)
+   */
+  public int[] getTokenOrdinals() {
+    return tokenOrdinals;
+  }
+
+  /**
+   * @return distinct pairs of adjacent query tokens as {@code [first0, second0, first1, ...]}
+   */
+  public int[] getSequentialPairs() {
+    return sequentialPairs;
+  }
+
+  /**
+   * @return distinct pairs of query tokens where the second comes anywhere after the first, as
+   * {@code [first0, second0, first1, ...]}
+   */
+  public int[] getAllPairs() {
+    return allPairs;
+  }
+}
@@ -0,0 +1,130 @@
+package io.anserini.rerank;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Runs a {@link RerankerCascade} as a pipeline across queries. Each reranker in the cascade is a
+ * stage with its own thread pool and bounded queue, so stage N of one query can run while stage
+ * N-1 of the next query is still in progress. Rerankers that are not
+ * {@link Reranker#isThreadSafe() thread safe} are given a single thread.
+ *
+ * When a stage's queue is full the thread handing work to it blocks, so a slow stage throttles
+ * the stages (and the caller) in front of it instead of buffering every query in memory.
+ */
+public class PipelinedRerankerCascade implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(PipelinedRerankerCascade.class);
+
+  // Blocks the submitting thread until the stage has room, rather than rejecting the query.
+  private static final RejectedExecutionHandler BLOCK_WHEN_FULL = new RejectedExecutionHandler() {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Reranker stage has been shut down");
+      }
+      try {
+        executor.getQueue().put(r);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted while waiting for reranker stage", e);
+      }
+    }
+  };
+
+  private final List<RerankerCascade.Stage> stages;
+  private final List<ThreadPoolExecutor> executors = Lists.newArrayList();
+
+  /**
+   * Creates a pipeline over the rerankers of the given cascade.
+   *
+   * @param cascade         cascade to run
+   * @param threadsPerStage number of threads for each thread-safe stage
+   * @param queueSize       number of queries that may wait in front of each stage
+   */
+  public PipelinedRerankerCascade(RerankerCascade cascade, int threadsPerStage, int queueSize) {
+    this.stages = Lists.newArrayList(cascade.stages);
+
+    for (int i = 0; i < stages.size(); i++) {
+      Reranker reranker = stages.get(i).reranker;
+      int threads = reranker.isThreadSafe() ? threadsPerStage : 1;
+      LOG.info(String.format("Stage %d (%s): %d thread(s)", i, reranker.getClass().getSimpleName(), threads));
+
+      executors.add(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(queueSize), new StageThreadFactory(i), BLOCK_WHEN_FULL));
+    }
+  }
+
+  /**
+   * Submits one query to the pipeline. Blocks if the first stage is full.
+   *
+   * @param docs    input documents
+   * @param context reranker context for this query
+   * @return future holding the output of the last stage
+   */
+  public CompletableFuture<ScoredDocuments> submit(ScoredDocuments docs, RerankerContext context) {
+    CompletableFuture<ScoredDocuments> results = CompletableFuture.completedFuture(docs);
+
+    for (int i = 0; i < stages.size(); i++) {
+      final RerankerCascade.Stage stage = stages.get(i);
+      // Once a stage returns nothing the remaining stages just pass the empty results along.
+      results = results.thenApplyAsync(d -> d.documents.length == 0 ? d : stage.run(d, context), executors.get(i));
+    }
+
+    return results;
+  }
+
+  /**
+   * Waits for all submitted queries to leave the pipeline and stops the stage threads. Callers
+   * should close the pipeline in a finally block, so the threads are stopped even when a stage
+   * has failed.
+   */
+  @Override
+  public void close() {
+    // Stages are shut down front to back so that work still in flight can move downstream.
+    for (int i = 0; i < executors.size(); i++) {
+      ThreadPoolExecutor executor = executors.get(i);
+      executor.shutdown();
+      try {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          LOG.info("Waiting for reranker stage to drain...");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        // Not waiting any longer, but the later stages' threads must not be left behind.
+        for (ThreadPoolExecutor rest : executors.subList(i, executors.size())) {
+          rest.shutdownNow();
+        }
+        return;
+      }
+    }
+  }
+
+  private static class StageThreadFactory implements ThreadFactory {
+    private final int stage;
+    private final AtomicInteger count = new AtomicInteger();
+
+    StageThreadFactory(int stage) {
+      this.stage = stage;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "reranker-stage-" + stage + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
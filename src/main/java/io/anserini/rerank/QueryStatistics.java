@@ -0,0 +1,135 @@
+package io.anserini.rerank;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Collection statistics of the query terms, looked up once per query and shared by every feature
+ * extractor and every thread scoring documents for that query. Obtained from
+ * {@link RerankerContext#getQueryStatistics()}.
+ *
+ * Statistics of terms that are not in the query are reported as 0.
+ */
+public class QueryStatistics {
+  private static final Logger LOG = LogManager.getLogger(QueryStatistics.class);
+
+  private static class TermStatistics {
+    final int docFreq;
+    final long collectionFreq;
+
+    TermStatistics(int docFreq, long collectionFreq) {
+      this.docFreq = docFreq;
+      this.collectionFreq = collectionFreq;
+    }
+  }
+
+  private static final TermStatistics MISSING = new TermStatistics(0, 0);
+
+  private final long numDocs;
+  private final long sumTotalTermFreq;
+  private final Map<String, TermStatistics> termStatistics = new HashMap<>();
+
+  // Query level feature values, keyed by feature name
+  private final Map<String, Float> queryFeatures = new ConcurrentHashMap<>();
+
+  QueryStatistics(IndexReader reader, String field, List<String> queryTokens) {
+    this.numDocs = reader.numDocs();
+
+    long sumTotalTermFreq = 0;
+    try {
+      sumTotalTermFreq = Math.max(reader.getSumTotalTermFreq(field), 0);
+    } catch (IOException e) {
+      LOG.warn("Unable to get total term frequency, it might not be indexed");
+    }
+    this.sumTotalTermFreq = sumTotalTermFreq;
+
+    for (String token : queryTokens) {
+      if (termStatistics.containsKey(token)) {
+        continue;
+      }
+      try {
+        // One seek per segment gives both the document and the collection frequency
+        TermContext termContext = TermContext.build(reader.getContext(), new Term(field, token));
+        termStatistics.put(token, new TermStatistics(termContext.docFreq(),
+            Math.max(termContext.totalTermFreq(), 0)));
+      } catch (IOException e) {
+        LOG.warn(String.format("Unable to look up statistics for %s, treating as 0", token));
+        termStatistics.put(token, MISSING);
+      }
+    }
+  }
+
+  private TermStatistics get(String term) {
+    TermStatistics statistics = termStatistics.get(term);
+    return statistics == null ? MISSING : statistics;
+  }
+
+  /**
+   * @return number of live documents in the index
+   */
+  public long getNumDocs() {
+    return numDocs;
+  }
+
+  /**
+   * @return total number of tokens in the field over the whole collection
+   */
+  public long getSumTotalTermFreq() {
+    return sumTotalTermFreq;
+  }
+
+  /**
+   * @return sumTotalTermFreq / numDocs, or 1 if the total term frequency is not stored
+   */
+  public double getAvgDocLength() {
+    if (sumTotalTermFreq == 0) {
+      return 1.0d;
+    }
+    return sumTotalTermFreq / (double) numDocs;
+  }
+
+  public int getDocFreq(String term) {
+    return get(term).docFreq;
+  }
+
+  public long getCollectionFreq(String term) {
+    return get(term).collectionFreq;
+  }
+
+  /**
+   * Computed as log(1 + (numDocs - docFreq + 0.5)/(docFreq + 0.5)), as in BM25.
+   */
+  public double getIdf(String term) {
+    int docFreq = get(term).docFreq;
+    return Math.log(1 + (numDocs - docFreq + 0.5d) / (docFreq + 0.5d));
+  }
+
+  /**
+   * Returns a feature value that depends on the query only, computing it on first use. Once the
+   * value is known this is a single map lookup, so as long as {@code compute} doesn't capture
+   * anything (e.g. a static method reference) calling it per document allocates nothing.
+   *
+   * @param name    name of the feature
+   * @param context the query these statistics belong to
+   * @param compute computes the value from these statistics and the query
+   * @return the value of the feature for this query
+   */
+  public float getQueryFeature(String name, RerankerContext context,
+                               BiFunction<QueryStatistics, RerankerContext, Float> compute) {
+    Float value = queryFeatures.get(name);
+    if (value == null) {
+      value = queryFeatures.computeIfAbsent(name, key -> compute.apply(this, context));
+    }
+    return value;
+  }
+}
@@ -4,82 +4,191 @@ import ciir.umass.edu.learning.DataPoint;
 import ciir.umass.edu.learning.Ranker;
 import ciir.umass.edu.learning.RankerFactory;
 import io.anserini.ltr.BaseFeatureExtractor;
+import io.anserini.ltr.CompiledTreeEnsemble;
 import io.anserini.ltr.feature.FeatureExtractors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Terms;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This reranker class will load in a RankLib model and then score and rerank the documents
  * using that
+ *
+ * Candidates are split into chunks that are scored on a fork-join pool, the common pool unless the
+ * caller supplies one (and then the caller shuts it down). Each worker thread has its own copy of
+ * the feature extractors (some of them cache per-query state) and of the model, and scores each
+ * document as soon as its feature vector has been extracted.
+ *
+ * LambdaMART and MART models are compiled into a {@link CompiledTreeEnsemble}, which scores the
+ * extracted feature vectors directly; other models go through RankLib.
  */
 public class RankLibReranker implements Reranker {
   private static final Logger LOG = LogManager.getLogger(RankLibReranker.class);
 
+  // Below this many documents a chunk is scored directly instead of being split further.
+  private static final int CHUNK_SIZE = 32;
+
   private static final RankerFactory FACTORY = new RankerFactory();
-  private final Ranker ranker;
-  private final FeatureExtractors extractors;
+  private final String modelFile;
   private final String termsField;
+  private final ForkJoinPool pool;
 
-  private DataPoint convertToDataPoint(Document doc, RerankerContext context) {
-    Terms terms = null;
-    try {
-      terms = MultiFields.getTerms(context.getIndexSearcher().getIndexReader(), this.termsField);
-    } catch (IOException e) {
-      LOG.error("Unable to retrieve term vectors");
-    }
+  private final CompiledTreeEnsemble compiledModel;
+  private final ThreadLocal<Ranker> ranker;
+  private final ThreadLocal<FeatureExtractors> extractors;
 
-    float[] features = this.extractors.extractAll(doc, terms, context);
-    String rankLibEntryString = BaseFeatureExtractor.constructOutputString("0", 0, "0", features);
-    DataPoint dp = new DataPoint(rankLibEntryString);
-    return dp;
+  public RankLibReranker(String modelFile, String termsField, FeatureExtractors extractors) {
+    this(modelFile, termsField, extractors, ForkJoinPool.commonPool());
   }
 
-  public RankLibReranker(String modelFile, String termsField, FeatureExtractors extractors) {
-    this.ranker = FACTORY.loadRanker(modelFile);
-    this.extractors = extractors;
+  public RankLibReranker(String modelFile, String termsField, FeatureExtractors extractors, ForkJoinPool pool) {
+    this.modelFile = modelFile;
     this.termsField = termsField;
+    this.pool = pool;
+
+    this.compiledModel = compileModel(modelFile);
+
+    final FeatureExtractors prototype = extractors;
+    this.ranker = new ThreadLocal<Ranker>() {
+      @Override
+      protected Ranker initialValue() {
+        return loadRanker(RankLibReranker.this.modelFile);
+      }
+    };
+    this.extractors = new ThreadLocal<FeatureExtractors>() {
+      @Override
+      protected FeatureExtractors initialValue() {
+        return prototype.copy();
+      }
+    };
   }
 
   public RankLibReranker (String modelFile, String termsField, String extractorDefinition) throws Exception {
-    this.ranker = FACTORY.loadRanker(modelFile);
-    this.extractors = FeatureExtractors.loadExtractor(extractorDefinition);
-    this.termsField = termsField;
+    this(modelFile, termsField, FeatureExtractors.loadExtractor(extractorDefinition));
+  }
+
+  private static CompiledTreeEnsemble compileModel(String modelFile) {
+    try {
+      if (CompiledTreeEnsemble.isSupported(modelFile)) {
+        CompiledTreeEnsemble model = CompiledTreeEnsemble.load(modelFile);
+        LOG.info(String.format("Compiled tree ensemble with %d trees from %s", model.getNumTrees(), modelFile));
+        return model;
+      }
+    } catch (IOException e) {
+      LOG.warn(String.format("Unable to compile %s, scoring with RankLib instead", modelFile));
+    }
+    return null;
+  }
+
+  private static Ranker loadRanker(String modelFile) {
+    // RankerFactory keeps no per-call state we rely on, but it was never written with threads in mind.
+    synchronized (FACTORY) {
+      return FACTORY.loadRanker(modelFile);
+    }
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
   }
 
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+    int numResults = docs.documents.length;
+    float[] scores = new float[numResults];
+    pool.invoke(new ScoreTask(this, docs, context, scores, 0, numResults));
+
+    // Sort by score, breaking ties by docid so the order doesn't depend on how the work was split.
+    Result[] results = new Result[numResults];
+    for (int i = 0; i < numResults; i++) {
+      results[i] = new Result(docs.documents[i], docs.ids[i], scores[i], docs.ids[i]);
+    }
+    Arrays.sort(results);
+
     // Used to hold our rescored docs
     ScoredDocuments rerankedDocs = new ScoredDocuments();
-    int numResults = docs.documents.length;
     rerankedDocs.documents = new Document[numResults];
     rerankedDocs.ids = new int[numResults];
     rerankedDocs.scores = new float[numResults];
+    for (int i = 0; i < numResults; i++) {
+      rerankedDocs.documents[i] = results[i].document;
+      rerankedDocs.ids[i] = results[i].id;
+      rerankedDocs.scores[i] = results[i].score;
+    }
 
-    SortedSet<Result> results = new TreeSet<>();
+    return rerankedDocs;
+  }
 
-    // To use the rank lib scoring models, we need to construct DataPoint objects for scoring
-    // So we need to construct each feature vector in string representation then
-    // parse it...
-    for (int i = 0; i < numResults; i++) {
-      DataPoint dp = convertToDataPoint(docs.documents[i], context);
-      float score = (float) this.ranker.eval(dp);
-      results.add(new Result(docs.documents[i], i, score, docs.ids[i]));
+  /**
+   * Scores documents {@code [start, end)}, splitting the range in half until it is small enough.
+   */
+  private static class ScoreTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RankLibReranker reranker;
+    private final ScoredDocuments docs;
+    private final RerankerContext context;
+    private final float[] scores;
+    private final int start;
+    private final int end;
+
+    ScoreTask(RankLibReranker reranker, ScoredDocuments docs, RerankerContext context, float[] scores, int start,
+              int end) {
+      this.reranker = reranker;
+      this.docs = docs;
+      this.context = context;
+      this.scores = scores;
+      this.start = start;
+      this.end = end;
     }
 
-    int index = 0;
-    for (Result result : results) {
-      rerankedDocs.documents[index] = result.document;
-      rerankedDocs.ids[index] = result.id;
-      rerankedDocs.scores[index] = result.score;
-      index++;
+    @Override
+    protected void compute() {
+      if (end - start > CHUNK_SIZE) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new ScoreTask(reranker, docs, context, scores, start, mid),
+            new ScoreTask(reranker, docs, context, scores, mid, end));
+        return;
+      }
+
+      IndexReader reader = context.getIndexSearcher().getIndexReader();
+      FeatureExtractors chain = reranker.extractors.get();
+
+      // Feature vectors are scored straight away, so one buffer serves the whole chunk
+      float[] features = new float[chain.extractors.size()];
+      CompiledTreeEnsemble compiledModel = reranker.compiledModel;
+      if (compiledModel != null) {
+        for (int i = start; i < end; i++) {
+          scores[i] = (float) compiledModel.score(
+              chain.extractAll(docs.documents[i], docs.ids[i], termVector(reader, i), context, features));
+        }
+        return;
+      }
+
+      // To use the rank lib scoring models, we need to construct DataPoint objects for scoring
+      // So we need to construct each feature vector in string representation then
+      // parse it...
+      Ranker model = reranker.ranker.get();
+      for (int i = start; i < end; i++) {
+        chain.extractAll(docs.documents[i], docs.ids[i], termVector(reader, i), context, features);
+        scores[i] = (float) model.eval(new DataPoint(BaseFeatureExtractor.constructOutputString("0", 0, "0", features)));
+      }
     }
 
-    return rerankedDocs;
+    private Terms termVector(IndexReader reader, int i) {
+      try {
+        return reader.getTermVector(docs.ids[i], reranker.termsField);
+      } catch (IOException e) {
+        LOG.error("Unable to retrieve term vectors");
+        return null;
+      }
+    }
   }
 }
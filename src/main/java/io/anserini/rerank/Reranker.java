@@ -5,4 +5,26 @@ import org.apache.lucene.document.Document;
 public interface Reranker {
 
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context);
+
+  /**
+   * Reranks, knowing that only the top {@code depth} results will be used. Rerankers that retrieve
+   * documents of their own need not load any past that; the others can leave this as it is.
+   *
+   * @param depth number of top results the caller keeps
+   * @return reranked results, of which only the top {@code depth} are used
+   */
+  default ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context, int depth) {
+    return rerank(docs, context);
+  }
+
+  /**
+   * Whether {@link #rerank} may be called concurrently for different queries. Rerankers that
+   * hold per-query state or write to a shared stream should leave this as {@code false}, in which
+   * case {@link PipelinedRerankerCascade} runs them on a single thread.
+   *
+   * @return true if this reranker can be shared between threads
+   */
+  default boolean isThreadSafe() {
+    return false;
+  }
 }
@@ -5,23 +5,78 @@ import java.util.List;
 import com.google.common.collect.Lists;
 
 /**
- * Representation of a cascade of rerankers, applied in sequence.
+ * Representation of a cascade of rerankers, applied in sequence. Each stage may declare an input
+ * depth (how many of the previous stage's results it looks at) and an output depth (how many of its
+ * own results are passed on), so that expensive rerankers only see the top of the ranked list.
+ * Documents past a cut are dropped from the final results.
  */
 public class RerankerCascade {
-  final List<Reranker> rerankers = Lists.newArrayList();
+  final List<Stage> stages = Lists.newArrayList();
 
   /**
-   * Adds a reranker to this cascade.
+   * A reranker together with the depths at which the cascade truncates around it.
+   */
+  static class Stage {
+    final Reranker reranker;
+    final int inputDepth;
+    final int outputDepth;
+    // Number of this stage's results that make it to the next one, if any
+    int cutoff;
+
+    Stage(Reranker reranker, int inputDepth, int outputDepth) {
+      this.reranker = reranker;
+      this.inputDepth = inputDepth;
+      this.outputDepth = outputDepth;
+      this.cutoff = outputDepth;
+    }
+
+    ScoredDocuments run(ScoredDocuments docs, RerankerContext context) {
+      ScoredDocuments results = reranker.rerank(docs.truncate(inputDepth), context, cutoff);
+      return results.truncate(outputDepth);
+    }
+  }
+
+  /**
+   * Adds a reranker to this cascade that sees all results of the previous stage.
    *
    * @param reranker reranker to add
    * @return this cascade for method chaining
    */
   public RerankerCascade add(Reranker reranker) {
-    rerankers.add(reranker);
+    return add(reranker, Integer.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Adds a reranker to this cascade.
+   *
+   * @param reranker    reranker to add
+   * @param inputDepth  number of top results from the previous stage given to this reranker
+   * @param outputDepth number of top results of this reranker passed on to the next stage
+   * @return this cascade for method chaining
+   */
+  public RerankerCascade add(Reranker reranker, int inputDepth, int outputDepth) {
+    if (inputDepth <= 0 || outputDepth <= 0) {
+      throw new IllegalArgumentException("Reranker depths must be positive");
+    }
+    if (!stages.isEmpty()) {
+      Stage previous = stages.get(stages.size() - 1);
+      previous.cutoff = Math.min(previous.outputDepth, inputDepth);
+    }
+    stages.add(new Stage(reranker, inputDepth, outputDepth));
 
     return this;
   }
 
+  /**
+   * Returns the number of first-stage results this cascade will look at, so that callers can avoid
+   * loading documents that the first reranker would discard anyway.
+   *
+   * @return input depth of the first stage
+   */
+  public int getInputDepth() {
+    return stages.isEmpty() ? Integer.MAX_VALUE : stages.get(0).inputDepth;
+  }
+
   /**
    * Runs this cascade.
    *
@@ -31,8 +86,12 @@ public class RerankerCascade {
   public ScoredDocuments run(ScoredDocuments docs, RerankerContext context) {
     ScoredDocuments results = docs;
 
-    for (Reranker reranker : rerankers) {
-      results = reranker.rerank(results, context);
+    for (Stage stage : stages) {
+      // Nothing left to rerank, so later stages have no work to do.
+      if (results.documents.length == 0) {
+        break;
+      }
+      results = stage.run(results, context);
     }
 
     return results;
@@ -15,6 +15,10 @@ public class RerankerContext {
   private final Query filter;
   private final String termVectorField;
 
+  // Looked up on first use, feature extraction is the only user
+  private volatile QueryStatistics queryStatistics;
+  private volatile MappedQuery mappedQuery;
+
   public RerankerContext(IndexSearcher searcher, Query query, String queryId, String queryText,
                          List<String> queryTokens, String termVectorField, Query filter) throws IOException {
     this.searcher = searcher;
@@ -51,4 +55,40 @@ public class RerankerContext {
   }
 
   public String getField() {return termVectorField; }
+
+  /**
+   * @return collection statistics of the query tokens in the term vector field, computed once per
+   * query and safe to share between threads
+   */
+  public QueryStatistics getQueryStatistics() {
+    QueryStatistics statistics = queryStatistics;
+    if (statistics == null) {
+      synchronized (this) {
+        statistics = queryStatistics;
+        if (statistics == null) {
+          statistics = new QueryStatistics(searcher.getIndexReader(), termVectorField, queryTokens);
+          queryStatistics = statistics;
+        }
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * @return the query tokens mapped to ordinals, built once per query and safe to share between
+   * threads
+   */
+  public MappedQuery getMappedQuery() {
+    MappedQuery mapped = mappedQuery;
+    if (mapped == null) {
+      synchronized (this) {
+        mapped = mappedQuery;
+        if (mapped == null) {
+          mapped = new MappedQuery(queryTokens);
+          mappedQuery = mapped;
+        }
+      }
+    }
+    return mapped;
+  }
 }
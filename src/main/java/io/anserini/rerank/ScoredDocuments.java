@@ -1,6 +1,7 @@
 package io.anserini.rerank;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.IndexSearcher;
@@ -18,12 +19,25 @@ public class ScoredDocuments {
   public float[] scores;
   
   public static ScoredDocuments fromTopDocs(TopDocs rs, IndexSearcher searcher) {
+    return fromTopDocs(rs, searcher, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Converts the top {@code depth} hits of a TopDocs, loading stored fields only for those hits.
+   *
+   * @param rs       hits from the searcher
+   * @param searcher searcher used to load documents
+   * @param depth    maximum number of hits to keep
+   * @return scored documents
+   */
+  public static ScoredDocuments fromTopDocs(TopDocs rs, IndexSearcher searcher, int depth) {
+    int size = Math.min(rs.scoreDocs.length, depth);
     ScoredDocuments scoredDocs = new ScoredDocuments();
-    scoredDocs.documents = new Document[rs.scoreDocs.length];
-    scoredDocs.ids = new int[rs.scoreDocs.length];
-    scoredDocs.scores = new float[rs.scoreDocs.length];
+    scoredDocs.documents = new Document[size];
+    scoredDocs.ids = new int[size];
+    scoredDocs.scores = new float[size];
 
-    for (int i=0; i<rs.scoreDocs.length; i++) {
+    for (int i=0; i<size; i++) {
       try {
         scoredDocs.documents[i] = searcher.doc(rs.scoreDocs[i].doc);
       } catch (IOException e) {
@@ -36,4 +50,24 @@ public class ScoredDocuments {
 
     return scoredDocs;
   }
+
+  /**
+   * Returns the top {@code depth} documents. This object is returned unchanged if it already holds
+   * no more than {@code depth} documents.
+   *
+   * @param depth maximum number of documents to keep
+   * @return truncated documents
+   */
+  public ScoredDocuments truncate(int depth) {
+    if (documents.length <= depth) {
+      return this;
+    }
+
+    ScoredDocuments truncated = new ScoredDocuments();
+    truncated.documents = Arrays.copyOf(documents, depth);
+    truncated.ids = Arrays.copyOf(ids, depth);
+    truncated.scores = Arrays.copyOf(scores, depth);
+
+    return truncated;
+  }
 }
@@ -29,17 +29,40 @@ public class Rm3Reranker implements Reranker {
   private int fbTerms = 20;
   private int fbDocs = 50;
   private float originalQueryWeight = 0.6f;
+  private final int hits;
 
   private Rm3Stopper stopper;
 
   public Rm3Reranker(Analyzer analyzer, String field, String stoplist) {
+    this(analyzer, field, stoplist, 1000);
+  }
+
+  /**
+   * @param hits number of documents retrieved with the expanded query
+   */
+  public Rm3Reranker(Analyzer analyzer, String field, String stoplist, int hits) {
     this.analyzer = analyzer;
     this.field = field;
     this.stopper = new Rm3Stopper(stoplist);
+    this.hits = hits;
+  }
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
   }
 
   @Override
   public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+    return rerank(docs, context, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Retrieves no more than {@code depth} documents with the expanded query, so that stored fields
+   * aren't loaded for hits the next stage would drop.
+   */
+  @Override
+  public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context, int depth) {
     Preconditions.checkState(docs.documents.length == docs.scores.length);
 
     IndexSearcher searcher = context.getIndexSearcher();
@@ -73,23 +96,24 @@ public class Rm3Reranker implements Reranker {
 
     LOG.info("Running new query: " + nq);
 
+    int numHits = Math.min(hits, depth);
     TopDocs rs = null;
     try {
       if (context.getFilter() == null) {
-        rs = searcher.search(nq, 1000);
+        rs = searcher.search(nq, numHits);
       } else {
         BooleanQuery.Builder bqBuilder = new BooleanQuery.Builder();
         bqBuilder.add(context.getFilter(), BooleanClause.Occur.FILTER);
         bqBuilder.add(nq, BooleanClause.Occur.MUST);
         Query q = bqBuilder.build();
-        rs = searcher.search(q, 1000);
+        rs = searcher.search(q, numHits);
       }
     } catch (IOException e) {
       e.printStackTrace();
       return docs;
     }
 
-    return ScoredDocuments.fromTopDocs(rs, searcher);
+    return ScoredDocuments.fromTopDocs(rs, searcher, depth);
   }
 
   public FeatureVector estimateRelevanceModel(ScoredDocuments docs, IndexReader reader) {
@@ -4,75 +4,112 @@ import io.anserini.index.IndexTweets.StatusField;
 import io.anserini.rerank.Reranker;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.io.IOException;
+import java.util.List;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 
+/**
+ * Removes retweets and sorts by score, breaking ties by higher tweet id first (i.e., more
+ * temporally recent first). Hits with the same score and tweet id as an earlier hit (the same tweet
+ * indexed twice) are dropped, keeping the first one. Tweet ids and retweet status are read from numeric doc values; for
+ * indexes built without them, the stored fields of the documents are used instead.
+ */
 public class RemoveRetweetsTemporalTiebreakReranker implements Reranker {
-  // Sort by score, break ties by higher docid first (i.e., more temporally recent first)
-  public static class Result implements Comparable<Result> {
-    public float score;
-    public long docid;
-    public int id;
-    public Document document;
-
-    public int compareTo(Result other) {
-      if (this.score > other.score) {
-        return -1;
-      } else if (this.score < other.score) {
-        return 1;
-      } else {
-        if (this.docid > other.docid) {
-          return -1;
-        } else if (this.docid < other.docid) {
-          return 1;
-        } else {
-          return 0;
+  private static final Logger LOG = LogManager.getLogger(RemoveRetweetsTemporalTiebreakReranker.class);
+
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
+  @Override
+  public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    List<LeafReaderContext> leaves = reader.leaves();
+    NumericDocValues[] idValues = new NumericDocValues[leaves.size()];
+    NumericDocValues[] retweetValues = new NumericDocValues[leaves.size()];
+    boolean[] loaded = new boolean[leaves.size()];
+
+    final float[] scores = docs.scores;
+    final long[] tweetIds = new long[docs.ids.length];
+    int[] order = new int[docs.ids.length];
+    int numResults = 0;
+
+    for (int i = 0; i < docs.ids.length; i++) {
+      int leafIndex = ReaderUtil.subIndex(docs.ids[i], leaves);
+      LeafReaderContext leaf = leaves.get(leafIndex);
+      if (!loaded[leafIndex]) {
+        try {
+          idValues[leafIndex] = leaf.reader().getNumericDocValues(StatusField.ID.name);
+          retweetValues[leafIndex] = leaf.reader().getNumericDocValues(StatusField.RETWEETED_STATUS_ID.name);
+        } catch (IOException e) {
+          LOG.warn("Unable to read doc values, falling back to stored fields");
         }
+        loaded[leafIndex] = true;
       }
-    }
 
-    public boolean equals(Object other) {
-      if (other == null) {
-        return false;
-      } if (other.getClass() != this.getClass()) {
-        return false;
+      boolean retweet;
+      if (idValues[leafIndex] != null) {
+        int docid = docs.ids[i] - leaf.docBase;
+        tweetIds[i] = idValues[leafIndex].get(docid);
+        // Only retweets have a retweeted status id, so a segment without the field has none.
+        retweet = retweetValues[leafIndex] != null && retweetValues[leafIndex].get(docid) != 0;
+      } else {
+        tweetIds[i] = (long) docs.documents[i].getField(StatusField.ID.name).numericValue();
+        retweet = docs.documents[i].getField(StatusField.RETWEETED_STATUS_ID.name) != null;
       }
 
-      return ((Result) other).docid == this.docid;
+      // Throw away retweets.
+      if (!retweet) {
+        order[numResults++] = i;
+      }
     }
-  }
 
-  @Override
-  public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
-    // Resort results based on score, breaking ties by larger docid first (i.e., recent first).
-    SortedSet<Result> sortedResults = new TreeSet<Result>();
-    for (int i=0; i<docs.documents.length; i++ ) {
-      Result result = new Result();
-      result.document = docs.documents[i];
-      result.score = docs.scores[i];
-      result.id = docs.ids[i];
-      result.docid = (long) docs.documents[i].getField(StatusField.ID.name).numericValue();
+    // Resort results based on score, breaking ties by larger tweet id first (i.e., recent first).
+    IntArrays.quickSort(order, 0, numResults, new AbstractIntComparator() {
+      @Override
+      public int compare(int a, int b) {
+        if (scores[a] != scores[b]) {
+          return scores[a] > scores[b] ? -1 : 1;
+        }
+        if (tweetIds[a] != tweetIds[b]) {
+          return Long.compare(tweetIds[b], tweetIds[a]);
+        }
+        // Keeps the first of a set of duplicates in front, so that it is the one that survives.
+        return Integer.compare(a, b);
+      }
+    });
 
-      // Throw away retweets.
-      if (docs.documents[i].getField(StatusField.RETWEETED_STATUS_ID.name) == null) {
-        sortedResults.add(result);
+    // Drop hits with the same score and tweet id as the previous one.
+    int numUnique = 0;
+    for (int i = 0; i < numResults; i++) {
+      if (numUnique == 0 || scores[order[i]] != scores[order[numUnique - 1]] ||
+          tweetIds[order[i]] != tweetIds[order[numUnique - 1]]) {
+        order[numUnique++] = order[i];
       }
     }
+    numResults = numUnique;
 
-    int numResults = sortedResults.size();
     ScoredDocuments rerankedDocs = new ScoredDocuments();
     rerankedDocs.documents = new Document[numResults];
     rerankedDocs.ids = new int[numResults];
     rerankedDocs.scores = new float[numResults];
 
-    int i = 0;
     int dup = 0;
     float prevScore = 0;
-    for (Result result : sortedResults) {
-      float curScore = result.score;
+    for (int i = 0; i < numResults; i++) {
+      int index = order[i];
+      float curScore = scores[index];
       // If we encounter ties, we want to perturb the final score a bit.
       if (Math.abs(curScore - prevScore) > 0.001f) {
         dup = 0;
@@ -81,11 +118,10 @@ public class RemoveRetweetsTemporalTiebreakReranker implements Reranker {
         curScore = curScore - 0.000001f * dup;
       }
 
-      rerankedDocs.documents[i] = result.document;
-      rerankedDocs.ids[i] = result.id;
-      rerankedDocs.scores[i] = (float) curScore;
-      prevScore = result.score;
-      i++;
+      rerankedDocs.documents[i] = docs.documents[index];
+      rerankedDocs.ids[i] = docs.ids[index];
+      rerankedDocs.scores[i] = curScore;
+      prevScore = scores[index];
     }
 
     return rerankedDocs;
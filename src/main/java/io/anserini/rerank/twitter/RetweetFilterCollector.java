@@ -0,0 +1,43 @@
+package io.anserini.rerank.twitter;
+
+import io.anserini.index.IndexTweets.StatusField;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+
+/**
+ * Collector that drops retweets before they reach the wrapped collector, so that first-stage
+ * retrieval returns the top non-retweets instead of the top hits minus whatever retweets they
+ * contained. Relies on the numeric doc values of {@code retweeted_status_id}; segments without
+ * them are passed through unchanged and are left to {@link RemoveRetweetsTemporalTiebreakReranker}.
+ */
+public class RetweetFilterCollector extends FilterCollector {
+
+  public RetweetFilterCollector(Collector in) {
+    super(in);
+  }
+
+  @Override
+  public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+    final NumericDocValues retweets = context.reader().getNumericDocValues(StatusField.RETWEETED_STATUS_ID.name);
+    LeafCollector leafCollector = super.getLeafCollector(context);
+    if (retweets == null) {
+      return leafCollector;
+    }
+
+    return new FilterLeafCollector(leafCollector) {
+      @Override
+      public void collect(int doc) throws IOException {
+        if (retweets.get(doc) == 0) {
+          super.collect(doc);
+        }
+      }
+    };
+  }
+}
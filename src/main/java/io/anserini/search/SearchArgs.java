@@ -1,6 +1,8 @@
 package io.anserini.search;
 
+import io.anserini.search.query.SdmQueryBuilder;
 import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 public class SearchArgs {
 
@@ -11,7 +13,7 @@ public class SearchArgs {
   @Option(name = "-topics", metaVar = "[file]", required = true, usage = "topics file")
   public String topics;
 
-  @Option(name = "-output", metaVar = "[file]", required = true, usage = "output file")
+  @Option(name = "-output", metaVar = "[file]", usage = "output file, required unless evaluating with -eval")
   public String output;
 
   @Option(name = "-topicreader", required = true, usage = "define how to read the topic(query) file: one of [Trec|Webxml]")
@@ -56,6 +58,21 @@ public class SearchArgs {
   @Option(name = "-b", metaVar = "[value]", required = false, usage = "BM25 b parameter")
   public float b = 0.4f;
 
+  @Option(name = "-sdm", usage = "use the sequential dependence model for first-stage retrieval (index needs positions)")
+  public boolean sdm = false;
+
+  @Option(name = "-sdm.tw", metaVar = "[value]", required = false, usage = "SDM weight of the unigram clause")
+  public float sdmTermWeight = SdmQueryBuilder.DEFAULT_TERM_WEIGHT;
+
+  @Option(name = "-sdm.ow", metaVar = "[value]", required = false, usage = "SDM weight of the ordered window clause")
+  public float sdmOrderedWeight = SdmQueryBuilder.DEFAULT_ORDERED_WEIGHT;
+
+  @Option(name = "-sdm.uw", metaVar = "[value]", required = false, usage = "SDM weight of the unordered window clause")
+  public float sdmUnorderedWeight = SdmQueryBuilder.DEFAULT_UNORDERED_WEIGHT;
+
+  @Option(name = "-sdm.window", metaVar = "[number]", required = false, usage = "SDM unordered window size")
+  public int sdmWindow = SdmQueryBuilder.DEFAULT_UNORDERED_WINDOW;
+
   @Option(name = "-rm3", usage = "use RM3 query expansion model (implies using query likelihood)")
   public boolean rm3 = false;
 
@@ -68,10 +85,32 @@ public class SearchArgs {
   @Option(name = "-featureFile", metaVar = "[file]", required = false, usage = "output for the feature vector file")
   public String featureFile = "";
 
-  @Option(name = "-qrels", metaVar = "[file]", required = false, usage = "patht to the qrels file, needed for feature vectors")
+  @Option(name = "-qrels", metaVar = "[file]", required = false, usage = "patht to the qrels file, needed for feature vectors and -eval")
   public String qrels= "";
 
   @Option(name = "-extractors", metaVar = "[file]", required = false, usage = "Optional definition to feature extractors")
   public String extractors = null;
 
+  @Option(name = "-featureCache", metaVar = "[path]", required = false,
+      usage = "directory caching dumped feature values across runs, only reuse it with the same index")
+  public String featureCache = null;
+
+  @Option(name = "-rerankThreads", metaVar = "[number]", required = false,
+      usage = "number of threads per reranker stage; values above 1 pipeline reranking across queries")
+  public int rerankThreads = 1;
+
+  @Option(name = "-eval", usage = "evaluate each topic's results against -qrels as it finishes, printing running and final metrics")
+  public boolean eval = false;
+
+  @Option(name = "-metrics", handler = StringArrayOptionHandler.class, required = false,
+      usage = "metrics for -eval, as in Eval")
+  public String[] metrics = null;
+
+  @Option(name = "-evalPerQuery", usage = "with -eval, also print the metrics of each topic")
+  public boolean evalPerQuery = false;
+
+  @Option(name = "-rerankDepth", metaVar = "[number]", required = false,
+      usage = "number of top documents passed to the learning-to-rank stage (features are only computed for these)")
+  public int rerankDepth = Integer.MAX_VALUE;
+
 }
\ No newline at end of file
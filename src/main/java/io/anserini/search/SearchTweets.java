@@ -19,13 +19,16 @@ package io.anserini.search;
 import io.anserini.index.IndexTweets;
 import io.anserini.index.IndexTweets.StatusField;
 import io.anserini.ltr.TweetsLtrDataGenerator;
+import io.anserini.ltr.feature.FeatureCache;
 import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.rerank.PipelinedRerankerCascade;
 import io.anserini.rerank.RankLibReranker;
 import io.anserini.rerank.RerankerCascade;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
 import io.anserini.rerank.rm3.Rm3Reranker;
 import io.anserini.rerank.twitter.RemoveRetweetsTemporalTiebreakReranker;
+import io.anserini.rerank.twitter.RetweetFilterCollector;
 import io.anserini.util.AnalyzerUtils;
 import io.anserini.util.Qrels;
 import org.apache.logging.log4j.LogManager;
@@ -48,7 +51,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings("deprecation")
 public class SearchTweets {
@@ -97,7 +103,8 @@ public class SearchTweets {
 
     RerankerCascade cascade = new RerankerCascade();
     if (searchArgs.rm3) {
-      cascade.add(new Rm3Reranker(IndexTweets.ANALYZER, StatusField.TEXT.name, "src/main/resources/io/anserini/rerank/rm3/rm3-stoplist.twitter.txt"));
+      cascade.add(new Rm3Reranker(IndexTweets.ANALYZER, StatusField.TEXT.name, "src/main/resources/io/anserini/rerank/rm3/rm3-stoplist.twitter.txt",
+          searchArgs.hits));
       cascade.add(new RemoveRetweetsTemporalTiebreakReranker());
     } else {
       cascade.add(new RemoveRetweetsTemporalTiebreakReranker());
@@ -105,7 +112,8 @@ public class SearchTweets {
 
     if (!searchArgs.model.isEmpty() && searchArgs.extractors != null) {
       LOG.debug(String.format("Ranklib model used, modeled loaded from %s", searchArgs.model));
-      cascade.add(new RankLibReranker(searchArgs.model, StatusField.TEXT.name, searchArgs.extractors));
+      cascade.add(new RankLibReranker(searchArgs.model, StatusField.TEXT.name, searchArgs.extractors),
+          searchArgs.rerankDepth, searchArgs.rerankDepth);
     }
 
     FeatureExtractors extractorChain = null;
@@ -113,46 +121,85 @@ public class SearchTweets {
       extractorChain = FeatureExtractors.loadExtractor(searchArgs.extractors);
     }
 
+    FeatureCache featureCache = null;
     if (searchArgs.dumpFeatures) {
       PrintStream out = new PrintStream(searchArgs.featureFile);
       Qrels qrels = new Qrels(searchArgs.qrels);
-      cascade.add(new TweetsLtrDataGenerator(out, qrels, extractorChain));
+      if (searchArgs.featureCache != null) {
+        LOG.info("Caching feature values in " + searchArgs.featureCache);
+        featureCache = new FeatureCache(Paths.get(searchArgs.featureCache));
+      }
+      cascade.add(new TweetsLtrDataGenerator(out, qrels, extractorChain, featureCache), searchArgs.rerankDepth,
+          searchArgs.rerankDepth);
     }
 
     MicroblogTopicSet topics = MicroblogTopicSet.fromFile(new File(searchArgs.topics));
 
+    if (searchArgs.output == null) {
+      LOG.error("Error: Must specify -output!");
+      System.exit(-1);
+    }
+
     PrintStream out = new PrintStream(new FileOutputStream(new File(searchArgs.output)));
     LOG.info("Writing output to " + searchArgs.output);
 
     LOG.info("Initialized complete! (elapsed time = " + (System.nanoTime()-curTime)/1000000 + "ms)");
+    PipelinedRerankerCascade pipeline = searchArgs.rerankThreads > 1 ?
+        new PipelinedRerankerCascade(cascade, searchArgs.rerankThreads, searchArgs.rerankThreads * 2) : null;
+    Deque<PendingQuery> pending = new ArrayDeque<>();
+    long startTime = System.nanoTime();
     long totalTime = 0;
     int cnt = 0;
-    for ( MicroblogTopic topic : topics ) {
-      long curQueryTime = System.nanoTime();
-
-      Query filter = LongPoint.newRangeQuery(StatusField.ID.name, 0L, topic.getQueryTweetTime());
-      Query query = AnalyzerUtils.buildBagOfWordsQuery(StatusField.TEXT.name, IndexTweets.ANALYZER, topic.getQuery());
-      BooleanQuery.Builder builder = new BooleanQuery.Builder();
-      builder.add(filter, BooleanClause.Occur.FILTER);
-      builder.add(query, BooleanClause.Occur.MUST);
-      Query q = builder.build();
-
-      TopDocs rs = searcher.search(q, searchArgs.hits);
-      List<String> queryTokens = AnalyzerUtils.tokenize(IndexTweets.ANALYZER, topic.getQuery());
-
-      RerankerContext context = new RerankerContext(searcher, query, topic.getId(), topic.getQuery(),
-         queryTokens, StatusField.TEXT.name, filter);
-      ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
-
-      for (int i=0; i<docs.documents.length; i++) {
-        String qid = topic.getId().replaceFirst("^MB0*", "");
-        out.println(String.format("%s Q0 %s %d %f %s", qid,
-            docs.documents[i].getField(StatusField.ID.name).numericValue(), (i+1), docs.scores[i], searchArgs.runtag));
+    try {
+      for ( MicroblogTopic topic : topics ) {
+        long curQueryTime = System.nanoTime();
+
+        Query filter = LongPoint.newRangeQuery(StatusField.ID.name, 0L, topic.getQueryTweetTime());
+        Query query = AnalyzerUtils.buildBagOfWordsQuery(StatusField.TEXT.name, IndexTweets.ANALYZER, topic.getQuery());
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(filter, BooleanClause.Occur.FILTER);
+        builder.add(query, BooleanClause.Occur.MUST);
+        Query q = builder.build();
+
+        // Retweets are dropped while collecting, so we get the top hits that aren't retweets.
+        TopScoreDocCollector collector = TopScoreDocCollector.create(searchArgs.hits);
+        searcher.search(q, new RetweetFilterCollector(collector));
+        TopDocs rs = collector.topDocs();
+        List<String> queryTokens = AnalyzerUtils.tokenize(IndexTweets.ANALYZER, topic.getQuery());
+
+        RerankerContext context = new RerankerContext(searcher, query, topic.getId(), topic.getQuery(),
+           queryTokens, StatusField.TEXT.name, filter);
+
+        if (pipeline == null) {
+          ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher, cascade.getInputDepth()), context);
+          printResults(out, topic, docs, searchArgs.runtag);
+          long qtime = (System.nanoTime()-curQueryTime)/1000000;
+          LOG.info("Query " + topic.getId() + " (elapsed time = " + qtime + "ms)");
+          totalTime += qtime;
+          cnt++;
+          continue;
+        }
+
+        pending.addLast(new PendingQuery(topic, curQueryTime, pipeline.submit(ScoredDocuments.fromTopDocs(rs, searcher, cascade.getInputDepth()), context)));
+        // Results are written in topic order, so only drain queries at the head of the queue.
+        while (!pending.isEmpty() && pending.peekFirst().results.isDone()) {
+          totalTime += pending.removeFirst().finish(out, searchArgs.runtag);
+          cnt++;
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        totalTime += pending.removeFirst().finish(out, searchArgs.runtag);
+        cnt++;
+      }
+    } finally {
+      if (pipeline != null) {
+        pipeline.close();
       }
-      long qtime = (System.nanoTime()-curQueryTime)/1000000;
-      LOG.info("Query " + topic.getId() + " (elapsed time = " + qtime + "ms)");
-      totalTime += qtime;
-      cnt++;
+    }
+    if (pipeline != null) {
+      // Queries overlap in the pipeline, so the sum of latencies overstates the wall-clock time.
+      LOG.info("Wall-clock time = " + (System.nanoTime()-startTime)/1000000 + "ms");
     }
 
     LOG.info("All queries completed!");
@@ -161,5 +208,36 @@ public class SearchTweets {
 
     reader.close();
     out.close();
+    if (featureCache != null) {
+      featureCache.close();
+    }
+  }
+
+  private static void printResults(PrintStream out, MicroblogTopic topic, ScoredDocuments docs, String runtag) {
+    for (int i=0; i<docs.documents.length; i++) {
+      String qid = topic.getId().replaceFirst("^MB0*", "");
+      out.println(String.format("%s Q0 %s %d %f %s", qid,
+          docs.documents[i].getField(StatusField.ID.name).numericValue(), (i+1), docs.scores[i], runtag));
+    }
+  }
+
+  // A topic submitted to the reranking pipeline whose results have not been written yet.
+  private static class PendingQuery {
+    final MicroblogTopic topic;
+    final long startTime;
+    final CompletableFuture<ScoredDocuments> results;
+
+    PendingQuery(MicroblogTopic topic, long startTime, CompletableFuture<ScoredDocuments> results) {
+      this.topic = topic;
+      this.startTime = startTime;
+      this.results = results;
+    }
+
+    long finish(PrintStream out, String runtag) {
+      printResults(out, topic, results.join(), runtag);
+      long qtime = (System.nanoTime()-startTime)/1000000;
+      LOG.info("Query " + topic.getId() + " (elapsed time = " + qtime + "ms)");
+      return qtime;
+    }
   }
 }
@@ -17,13 +17,19 @@ package io.anserini.search;
  * limitations under the License.
  */
 
+import io.anserini.eval.Eval;
+import io.anserini.eval.QueryJudgments;
+import io.anserini.eval.StreamingEval;
 import io.anserini.ltr.WebCollectionLtrDataGenerator;
+import io.anserini.ltr.feature.FeatureCache;
 import io.anserini.ltr.feature.FeatureExtractors;
 import io.anserini.rerank.IdentityReranker;
+import io.anserini.rerank.PipelinedRerankerCascade;
 import io.anserini.rerank.RerankerCascade;
 import io.anserini.rerank.RerankerContext;
 import io.anserini.rerank.ScoredDocuments;
 import io.anserini.rerank.rm3.Rm3Reranker;
+import io.anserini.search.query.SdmQueryBuilder;
 import io.anserini.search.query.TopicReader;
 import io.anserini.util.AnalyzerUtils;
 import io.anserini.util.Qrels;
@@ -59,9 +65,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_BODY;
@@ -105,7 +115,43 @@ public final class SearchWebCollection implements Closeable {
 
   public void search(SortedMap<Integer, String> topics, String submissionFile, Similarity similarity, int numHits, RerankerCascade cascade,
                      boolean useQueryParser, boolean keepstopwords) throws IOException, ParseException {
+    search(topics, submissionFile, similarity, numHits, cascade, useQueryParser, keepstopwords, 1);
+  }
 
+  /**
+   * Same as above, but when {@code rerankThreads} is greater than one the cascade is run as a
+   * {@link PipelinedRerankerCascade} so that first-stage retrieval and each reranker overlap across
+   * queries. Results are still written in topic order.
+   */
+  public void search(SortedMap<Integer, String> topics, String submissionFile, Similarity similarity, int numHits, RerankerCascade cascade,
+                     boolean useQueryParser, boolean keepstopwords, int rerankThreads) throws IOException, ParseException {
+    search(topics, submissionFile, similarity, numHits, cascade, useQueryParser, keepstopwords, rerankThreads, null);
+  }
+
+  /**
+   * Same as above, but when {@code sdm} is not null queries are built as sequential dependence
+   * model queries instead of bags of words. Ignored when {@code useQueryParser} is set.
+   */
+  public void search(SortedMap<Integer, String> topics, String submissionFile, Similarity similarity, int numHits, RerankerCascade cascade,
+                     boolean useQueryParser, boolean keepstopwords, int rerankThreads, SdmQueryBuilder sdm)
+      throws IOException, ParseException {
+    search(topics, submissionFile, similarity, numHits, cascade, useQueryParser, keepstopwords, rerankThreads, sdm, null);
+  }
+
+  /**
+   * Same as above, but when {@code eval} is not null each topic's final results are also evaluated
+   * as they come out of the cascade. {@code submissionFile} may then be null, in which case no run
+   * file is written.
+   */
+  public void search(SortedMap<Integer, String> topics, String submissionFile, Similarity similarity, int numHits, RerankerCascade cascade,
+                     boolean useQueryParser, boolean keepstopwords, int rerankThreads, SdmQueryBuilder sdm,
+                     StreamingEval eval) throws IOException, ParseException {
+    if (submissionFile == null && eval == null) {
+      throw new IllegalArgumentException("Either a submission file or an evaluation is needed.");
+    }
+    if (sdm != null && !useQueryParser && !sdm.isSupported(reader)) {
+      throw new IllegalArgumentException("SDM needs positions, the index must be built with -storePositions.");
+    }
 
     IndexSearcher searcher = new IndexSearcher(reader);
     searcher.setSimilarity(similarity);
@@ -113,44 +159,95 @@ public final class SearchWebCollection implements Closeable {
 
     final String runTag = "BM25_EnglishAnalyzer_" + (keepstopwords ? "KeepStopwords_" : "") + FIELD_BODY + "_" + similarity.toString();
 
-    PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(submissionFile), StandardCharsets.US_ASCII));
+    PrintWriter out = submissionFile == null ? null :
+        new PrintWriter(Files.newBufferedWriter(Paths.get(submissionFile), StandardCharsets.US_ASCII));
 
     EnglishAnalyzer ea = keepstopwords ? new EnglishAnalyzer(CharArraySet.EMPTY_SET) : new EnglishAnalyzer();
     QueryParser queryParser = new QueryParser(FIELD_BODY, ea);
     queryParser.setDefaultOperator(QueryParser.Operator.OR);
 
-    for (Map.Entry<Integer, String> entry : topics.entrySet()) {
-
-      int qID = entry.getKey();
-      String queryString = entry.getValue();
-      Query query = useQueryParser? queryParser.parse(queryString) :
-              AnalyzerUtils.buildBagOfWordsQuery(FIELD_BODY, ea, queryString);
-
-      /**
-       * For Web Tracks 2010,2011,and 2012; an experimental run consists of the top 10,000 documents for each topic query.
-       */
-      TopDocs rs = searcher.search(query, numHits);
-      ScoreDoc[] hits = rs.scoreDocs;
-      List<String> queryTokens = AnalyzerUtils.tokenize(ea, queryString);
-      RerankerContext context = new RerankerContext(searcher, query, String.valueOf(qID), queryString,
-              queryTokens, FIELD_BODY, null);
-      ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher), context);
-
-      /**
-       * the first column is the topic number.
-       * the second column is currently unused and should always be "Q0".
-       * the third column is the official document identifier of the retrieved document.
-       * the fourth column is the rank the document is retrieved.
-       * the fifth column shows the score (integer or floating point) that generated the ranking.
-       * the sixth column is called the "run tag" and should be a unique identifier for your
-       */
-      for (int i = 0; i < docs.documents.length; i++) {
-        out.println(String.format("%d Q0 %s %d %f %s", qID,
-                docs.documents[i].getField(FIELD_ID).stringValue(), (i + 1), docs.scores[i], runTag));
+    PipelinedRerankerCascade pipeline = rerankThreads > 1 ?
+        new PipelinedRerankerCascade(cascade, rerankThreads, rerankThreads * 2) : null;
+    Deque<Map.Entry<Integer, CompletableFuture<ScoredDocuments>>> pending = new ArrayDeque<>();
+
+    try {
+      for (Map.Entry<Integer, String> entry : topics.entrySet()) {
+
+        int qID = entry.getKey();
+        String queryString = entry.getValue();
+        Query query;
+        if (useQueryParser) {
+          query = queryParser.parse(queryString);
+        } else if (sdm != null) {
+          query = sdm.build(queryString);
+        } else {
+          query = AnalyzerUtils.buildBagOfWordsQuery(FIELD_BODY, ea, queryString);
+        }
+
+        /**
+         * For Web Tracks 2010,2011,and 2012; an experimental run consists of the top 10,000 documents for each topic query.
+         */
+        TopDocs rs = searcher.search(query, numHits);
+        ScoreDoc[] hits = rs.scoreDocs;
+        List<String> queryTokens = AnalyzerUtils.tokenize(ea, queryString);
+        RerankerContext context = new RerankerContext(searcher, query, String.valueOf(qID), queryString,
+                queryTokens, FIELD_BODY, null);
+
+        if (pipeline == null) {
+          ScoredDocuments docs = cascade.run(ScoredDocuments.fromTopDocs(rs, searcher, cascade.getInputDepth()), context);
+          emitResults(out, eval, qID, docs, runTag);
+          continue;
+        }
+
+        pending.addLast(new AbstractMap.SimpleEntry<>(qID, pipeline.submit(ScoredDocuments.fromTopDocs(rs, searcher, cascade.getInputDepth()), context)));
+        // Write out whatever has finished at the head of the queue, so output stays in topic order.
+        while (!pending.isEmpty() && pending.peekFirst().getValue().isDone()) {
+          Map.Entry<Integer, CompletableFuture<ScoredDocuments>> head = pending.removeFirst();
+          emitResults(out, eval, head.getKey(), head.getValue().join(), runTag);
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        Map.Entry<Integer, CompletableFuture<ScoredDocuments>> head = pending.removeFirst();
+        emitResults(out, eval, head.getKey(), head.getValue().join(), runTag);
+      }
+    } finally {
+      if (pipeline != null) {
+        pipeline.close();
       }
     }
-    out.flush();
-    out.close();
+
+    if (out != null) {
+      out.flush();
+      out.close();
+    }
+  }
+
+  /**
+   * Writes out one topic's final results and hands them to the evaluation, either being optional.
+   */
+  private static void emitResults(PrintWriter out, StreamingEval eval, int qID, ScoredDocuments docs, String runTag) {
+    if (out != null) {
+      printResults(out, qID, docs, runTag);
+    }
+    if (eval != null) {
+      eval.add(String.valueOf(qID), docs);
+    }
+  }
+
+  /**
+   * the first column is the topic number.
+   * the second column is currently unused and should always be "Q0".
+   * the third column is the official document identifier of the retrieved document.
+   * the fourth column is the rank the document is retrieved.
+   * the fifth column shows the score (integer or floating point) that generated the ranking.
+   * the sixth column is called the "run tag" and should be a unique identifier for your
+   */
+  private static void printResults(PrintWriter out, int qID, ScoredDocuments docs, String runTag) {
+    for (int i = 0; i < docs.documents.length; i++) {
+      out.println(String.format("%d Q0 %s %d %f %s", qID,
+              docs.documents[i].getField(FIELD_ID).stringValue(), (i + 1), docs.scores[i], runTag));
+    }
   }
 
   public void search(SortedMap<Integer, String> topics, String submissionFile, Similarity similarity, int numHits, RerankerCascade cascade)
@@ -199,7 +296,8 @@ public final class SearchWebCollection implements Closeable {
     RerankerCascade cascade = new RerankerCascade();
     boolean useQueryParser = false;
     if (searchArgs.rm3) {
-      cascade.add(new Rm3Reranker(new EnglishAnalyzer(), FIELD_BODY, "src/main/resources/io/anserini/rerank/rm3/rm3-stoplist.gov2.txt"));
+      cascade.add(new Rm3Reranker(new EnglishAnalyzer(), FIELD_BODY, "src/main/resources/io/anserini/rerank/rm3/rm3-stoplist.gov2.txt",
+          searchArgs.hits));
       useQueryParser = true;
     } else {
       cascade.add(new IdentityReranker());
@@ -209,10 +307,16 @@ public final class SearchWebCollection implements Closeable {
       extractors = FeatureExtractors.loadExtractor(searchArgs.extractors);
     }
 
+    FeatureCache featureCache = null;
     if (searchArgs.dumpFeatures) {
       PrintStream out = new PrintStream(searchArgs.featureFile);
       Qrels qrels = new Qrels(searchArgs.qrels);
-      cascade.add(new WebCollectionLtrDataGenerator(out,  qrels, extractors));
+      if (searchArgs.featureCache != null) {
+        LOG.info("Caching feature values in " + searchArgs.featureCache);
+        featureCache = new FeatureCache(Paths.get(searchArgs.featureCache));
+      }
+      cascade.add(new WebCollectionLtrDataGenerator(out,  qrels, extractors, featureCache), searchArgs.rerankDepth,
+          searchArgs.rerankDepth);
     }
 
     Path topicsFile = Paths.get(searchArgs.topics);
@@ -225,10 +329,35 @@ public final class SearchWebCollection implements Closeable {
             .getConstructor(Path.class).newInstance(topicsFile);
     SortedMap<Integer, String> topics = tr.read();
 
+    SdmQueryBuilder sdm = null;
+    if (searchArgs.sdm) {
+      LOG.info("Using SDM queries");
+      EnglishAnalyzer ea = searchArgs.keepstop ? new EnglishAnalyzer(CharArraySet.EMPTY_SET) : new EnglishAnalyzer();
+      sdm = new SdmQueryBuilder(FIELD_BODY, ea, searchArgs.sdmTermWeight, searchArgs.sdmOrderedWeight,
+          searchArgs.sdmUnorderedWeight, searchArgs.sdmWindow);
+    }
+
+    StreamingEval eval = null;
+    if (searchArgs.eval) {
+      LOG.info("Evaluating against " + searchArgs.qrels);
+      eval = new StreamingEval(new QueryJudgments(searchArgs.qrels), FIELD_ID,
+          searchArgs.metrics == null ? Eval.defaultMetrics : searchArgs.metrics);
+    } else if (searchArgs.output == null) {
+      LOG.error("Error: Must specify -output unless evaluating with -eval!");
+      System.exit(-1);
+    }
+
     final long start = System.nanoTime();
     SearchWebCollection searcher = new SearchWebCollection(searchArgs.index);
-    searcher.search(topics, searchArgs.output, similarity, searchArgs.hits, cascade, useQueryParser, searchArgs.keepstop);
+    searcher.search(topics, searchArgs.output, similarity, searchArgs.hits, cascade, useQueryParser, searchArgs.keepstop,
+        searchArgs.rerankThreads, sdm, eval);
     searcher.close();
+    if (eval != null) {
+      eval.print(searchArgs.evalPerQuery, System.out);
+    }
+    if (featureCache != null) {
+      featureCache.close();
+    }
     final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     LOG.info("Total " + topics.size() + " topics searched in " + DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss"));
   }
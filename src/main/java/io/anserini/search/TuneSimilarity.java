@@ -0,0 +1,667 @@
+package io.anserini.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.anserini.eval.MultiMetricEval;
+import io.anserini.eval.QueryJudgments;
+import io.anserini.eval.RankingResults;
+import io.anserini.search.query.TopicReader;
+import io.anserini.util.AnalyzerUtils;
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.LMDirichletSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.FSDirectory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_BODY;
+import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_ID;
+
+/**
+ * Tunes the parameters of BM25 or query likelihood on a set of topics, searching the same index
+ * with every point of a grid of parameter values, or with the points a coordinate ascent over the
+ * grid visits, instead of a shell loop of {@link SearchWebCollection} and
+ * {@link io.anserini.eval.Eval} runs that opens the index and reads the topics for every point.
+ *
+ * The index is opened and the topics are analyzed once. Each query's term statistics are looked up
+ * once and kept in its {@link TermQuery}s, and the collection statistics and the docids of the
+ * documents retrieved are cached, so each point costs only the scoring. Points are searched in
+ * parallel, each on its own {@link IndexSearcher}, and evaluated in process with
+ * {@link MultiMetricEval}; every point is searched at most once however many times it is visited.
+ *
+ * With more than one fold, the best point for each metric is picked on all but one fold and
+ * evaluated on that fold, and the cross-validated value of the metric is over every topic as
+ * evaluated with the point picked without it, which doesn't reward overfitting the topics.
+ */
+public final class TuneSimilarity implements Closeable {
+  private static final Logger LOG = LogManager.getLogger(TuneSimilarity.class);
+
+  private static final Set<String> ID_FIELDS = Collections.singleton(FIELD_ID);
+
+  /**
+   * A retrieval model and the names of its parameters
+   */
+  public enum Model {
+    BM25("k1", "b") {
+      @Override
+      Similarity similarity(double[] values) {
+        return new BM25Similarity((float) values[0], (float) values[1]);
+      }
+    },
+    QL("mu") {
+      @Override
+      Similarity similarity(double[] values) {
+        return new LMDirichletSimilarity((float) values[0]);
+      }
+    };
+
+    final String[] parameters;
+
+    Model(String... parameters) {
+      this.parameters = parameters;
+    }
+
+    abstract Similarity similarity(double[] values);
+  }
+
+  /**
+   * A model with a value for each of its parameters
+   */
+  public static final class Point {
+    final Model model;
+    final double[] values;
+
+    public Point(Model model, double... values) {
+      if (values.length != model.parameters.length) {
+        throw new IllegalArgumentException(String.format("%s needs %d parameters", model, model.parameters.length));
+      }
+      this.model = model;
+      this.values = values.clone();
+    }
+
+    public Similarity getSimilarity() {
+      return model.similarity(values);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Point && model == ((Point) other).model && Arrays.equals(values, ((Point) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * model.hashCode() + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder(model.name().toLowerCase());
+      for (int i = 0; i < values.length; i++) {
+        builder.append(' ').append(model.parameters[i]).append('=').append(values[i]);
+      }
+      return builder.toString();
+    }
+  }
+
+  /**
+   * The outcome of tuning, for each metric
+   */
+  public static class Tuned {
+    // Best point on all topics, and its value there
+    public final Point[] best;
+    public final double[] bestValues;
+    // For each fold, the best point on the other folds, its value there and on the fold
+    public final Point[][] foldBest;
+    public final double[][] foldTrainValues;
+    public final double[][] foldTestValues;
+    // Over every topic, as evaluated with the point picked for its fold, if there are folds
+    public final double[] crossValidated;
+
+    Tuned(Point[] best, double[] bestValues, Point[][] foldBest, double[][] foldTrainValues,
+          double[][] foldTestValues, double[] crossValidated) {
+      this.best = best;
+      this.bestValues = bestValues;
+      this.foldBest = foldBest;
+      this.foldTrainValues = foldTrainValues;
+      this.foldTestValues = foldTestValues;
+      this.crossValidated = crossValidated;
+    }
+  }
+
+  /**
+   * Collection statistics of a field don't change between points, so they're looked up once
+   */
+  private static class CachedStatisticsSearcher extends IndexSearcher {
+    private final ConcurrentMap<String, CollectionStatistics> collectionStatistics;
+
+    CachedStatisticsSearcher(IndexReader reader, ConcurrentMap<String, CollectionStatistics> collectionStatistics) {
+      super(reader);
+      this.collectionStatistics = collectionStatistics;
+    }
+
+    @Override
+    public CollectionStatistics collectionStatistics(String field) throws IOException {
+      CollectionStatistics statistics = collectionStatistics.get(field);
+      if (statistics == null) {
+        statistics = super.collectionStatistics(field);
+        collectionStatistics.putIfAbsent(field, statistics);
+      }
+      return statistics;
+    }
+  }
+
+  private final IndexReader reader;
+  private final QueryJudgments qrels;
+  private final String[] metrics;
+  // Only used to aggregate, which doesn't touch its scratch space
+  private final MultiMetricEval aggregator;
+  private final int hits;
+  private final ExecutorService pool;
+
+  // Judged topics in topic order, by qid
+  private final Map<String, Query> queries = new LinkedHashMap<>();
+  private final ConcurrentMap<String, CollectionStatistics> collectionStatistics = new ConcurrentHashMap<>();
+  // Docids of the documents retrieved so far, by Lucene docid
+  private final ConcurrentMap<Integer, String> docids = new ConcurrentHashMap<>();
+  // Values of each metric by qid, for every point searched or being searched
+  private final ConcurrentMap<Point, Future<Map<String, double[]>>> results = new ConcurrentHashMap<>();
+
+  /**
+   * @param topics   topics to tune on; those without judgments are left out
+   * @param analyzer analyzer the topics are turned into bag of words queries with
+   * @param hits     number of documents retrieved for each topic
+   * @param threads  number of points searched at once
+   * @param metrics  metric names, as in {@link io.anserini.eval.Eval}
+   */
+  public TuneSimilarity(IndexReader reader, SortedMap<Integer, String> topics, QueryJudgments qrels,
+                        Analyzer analyzer, int hits, int threads, String... metrics) throws IOException {
+    this.reader = reader;
+    this.qrels = qrels;
+    this.metrics = metrics.clone();
+    this.aggregator = new MultiMetricEval(metrics);
+    this.hits = hits;
+    this.pool = Executors.newFixedThreadPool(threads);
+
+    Map<Term, TermContext> contexts = new HashMap<>();
+    for (Map.Entry<Integer, String> topic : topics.entrySet()) {
+      String qid = String.valueOf(topic.getKey());
+      if (qrels.getJudgments(qid) == null) {
+        LOG.warn(String.format("Topic %s has no judgments, leaving it out", qid));
+        continue;
+      }
+      BooleanQuery.Builder builder = new BooleanQuery.Builder();
+      for (String token : AnalyzerUtils.tokenize(analyzer, topic.getValue())) {
+        Term term = new Term(FIELD_BODY, token);
+        TermContext context = contexts.get(term);
+        if (context == null) {
+          context = TermContext.build(reader.getContext(), term);
+          contexts.put(term, context);
+        }
+        builder.add(new TermQuery(term, context), BooleanClause.Occur.SHOULD);
+      }
+      queries.put(qid, builder.build());
+    }
+    LOG.info(String.format("Tuning on %d judged topics with %d distinct terms", queries.size(), contexts.size()));
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+
+  /**
+   * @return qids of the judged topics, in topic order
+   */
+  public List<String> getQids() {
+    return new ArrayList<>(queries.keySet());
+  }
+
+  /**
+   * Splits the topics into folds, topic i going into fold i mod {@code count}.
+   */
+  public List<List<String>> folds(int count) {
+    if (count > queries.size()) {
+      throw new IllegalArgumentException(String.format("Can't split %d topics into %d folds", queries.size(), count));
+    }
+    List<List<String>> folds = new ArrayList<>();
+    for (int f = 0; f < count; f++) {
+      folds.add(new ArrayList<>());
+    }
+    int i = 0;
+    for (String qid : queries.keySet()) {
+      folds.get(i++ % count).add(qid);
+    }
+    return folds;
+  }
+
+  /**
+   * @return values of each metric by qid with the point's parameters. Topics nothing was retrieved
+   * for score 0, as in trec_eval -c.
+   */
+  public Map<String, double[]> evaluate(Point point) throws IOException {
+    return evaluate(Collections.singletonList(point)).get(point);
+  }
+
+  /**
+   * Searches the points not searched yet in parallel.
+   *
+   * @return values of each metric by qid, for each point
+   */
+  public Map<Point, Map<String, double[]>> evaluate(List<Point> points) throws IOException {
+    for (Point point : points) {
+      results.computeIfAbsent(point, p -> pool.submit(() -> search(p)));
+    }
+    Map<Point, Map<String, double[]>> evaluated = new LinkedHashMap<>();
+    for (Point point : points) {
+      try {
+        evaluated.put(point, results.get(point).get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while searching " + point);
+      } catch (ExecutionException e) {
+        throw new IOException("Error searching " + point, e.getCause());
+      }
+    }
+    return evaluated;
+  }
+
+  private Map<String, double[]> search(Point point) throws IOException {
+    IndexSearcher searcher = new CachedStatisticsSearcher(reader, collectionStatistics);
+    searcher.setSimilarity(point.getSimilarity());
+    MultiMetricEval evaluator = new MultiMetricEval(metrics);
+
+    Map<String, double[]> perQuery = new TreeMap<>();
+    for (Map.Entry<String, Query> entry : queries.entrySet()) {
+      TopDocs rs = searcher.search(entry.getValue(), hits);
+      ScoreDoc[] scoreDocs = rs.scoreDocs;
+      // An empty ranking still counts, otherwise a point that retrieves nothing for a hard topic
+      // would be averaged over the easier topics only
+      String[] ids = new String[scoreDocs.length];
+      float[] scores = new float[scoreDocs.length];
+      for (int i = 0; i < scoreDocs.length; i++) {
+        ids[i] = docid(scoreDocs[i].doc);
+        scores[i] = scoreDocs[i].score;
+      }
+      RankingResults.Ranking ranking = RankingResults.rank(ids, scores, qrels.getDictionary());
+      perQuery.put(entry.getKey(), evaluator.evaluate(ranking, qrels.getJudgments(entry.getKey()),
+          new double[metrics.length]));
+    }
+    LOG.info(String.format("%s: %s", point, format(aggregator.aggregate(perQuery))));
+    return perQuery;
+  }
+
+  private String docid(int doc) throws IOException {
+    String docid = docids.get(doc);
+    if (docid == null) {
+      docid = reader.document(doc, ID_FIELDS).get(FIELD_ID);
+      docids.putIfAbsent(doc, docid);
+    }
+    return docid;
+  }
+
+  private String format(double[] values) {
+    StringBuilder builder = new StringBuilder();
+    for (int m = 0; m < metrics.length; m++) {
+      builder.append(m == 0 ? "" : " ").append(metrics[m]).append(' ')
+          .append(String.format("%" + aggregator.getFormat(m), values[m]));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return value of a metric over some of the topics
+   */
+  private double score(Map<String, double[]> perQuery, Collection<String> qids, int metric) {
+    Map<String, double[]> subset = new HashMap<>();
+    for (String qid : qids) {
+      double[] values = perQuery.get(qid);
+      if (values != null) {
+        subset.put(qid, values);
+      }
+    }
+    return aggregator.aggregate(subset)[metric];
+  }
+
+  /**
+   * @return every combination of the parameter values
+   */
+  public static List<Point> grid(Model model, double[][] values) {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i].length == 0) {
+        throw new IllegalArgumentException(String.format("No values of %s given", model.parameters[i]));
+      }
+    }
+    List<Point> points = new ArrayList<>();
+    int[] at = new int[values.length];
+    while (true) {
+      points.add(point(model, values, at));
+      int i = values.length - 1;
+      while (i >= 0 && ++at[i] == values[i].length) {
+        at[i--] = 0;
+      }
+      if (i < 0) {
+        return points;
+      }
+    }
+  }
+
+  private static Point point(Model model, double[][] values, int[] at) {
+    double[] point = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      point[i] = values[i][at[i]];
+    }
+    return new Point(model, point);
+  }
+
+  /**
+   * @return best point of the grid on the topics for each metric, the first one on a tie
+   */
+  public Point[] gridSearch(Model model, double[][] values, Collection<String> qids) throws IOException {
+    List<Point> grid = grid(model, values);
+    Map<Point, Map<String, double[]>> evaluated = evaluate(grid);
+    Point[] best = new Point[metrics.length];
+    for (int m = 0; m < metrics.length; m++) {
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for (Point point : grid) {
+        double score = score(evaluated.get(point), qids, m);
+        if (score > bestScore) {
+          best[m] = point;
+          bestScore = score;
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Coordinate ascent over the grid for each metric: starting from the middle value of each
+   * parameter, moves one parameter at a time to its best value with the others held, until a round
+   * over all the parameters doesn't move or {@code rounds} rounds are done. The values of a
+   * parameter are searched in parallel.
+   *
+   * @return point the ascent ends at for each metric
+   */
+  public Point[] coordinateAscent(Model model, double[][] values, Collection<String> qids, int rounds)
+      throws IOException {
+    Point[] best = new Point[metrics.length];
+    for (int m = 0; m < metrics.length; m++) {
+      int[] at = new int[values.length];
+      for (int i = 0; i < values.length; i++) {
+        at[i] = values[i].length / 2;
+      }
+      Point current = point(model, values, at);
+      double currentScore = score(evaluate(current), qids, m);
+
+      for (int round = 0; round < rounds; round++) {
+        boolean moved = false;
+        for (int i = 0; i < values.length; i++) {
+          List<Point> candidates = new ArrayList<>();
+          int[] candidate = at.clone();
+          for (int j = 0; j < values[i].length; j++) {
+            candidate[i] = j;
+            candidates.add(point(model, values, candidate));
+          }
+          Map<Point, Map<String, double[]>> evaluated = evaluate(candidates);
+          for (int j = 0; j < values[i].length; j++) {
+            double score = score(evaluated.get(candidates.get(j)), qids, m);
+            if (score > currentScore) {
+              at[i] = j;
+              current = candidates.get(j);
+              currentScore = score;
+              moved = true;
+            }
+          }
+        }
+        if (!moved) {
+          break;
+        }
+      }
+      best[m] = current;
+    }
+    return best;
+  }
+
+  /**
+   * Picks the best point for each metric on all the topics and, with more than one fold, on all
+   * but each fold in turn.
+   *
+   * @param ascent whether to use coordinate ascent rather than search the whole grid
+   * @param folds  number of folds to cross-validate with, none if less than 2
+   * @param rounds most rounds of coordinate ascent
+   */
+  public Tuned tune(Model model, double[][] values, boolean ascent, int folds, int rounds) throws IOException {
+    List<String> qids = getQids();
+    Point[] best = ascent ? coordinateAscent(model, values, qids, rounds) : gridSearch(model, values, qids);
+    double[] bestValues = new double[metrics.length];
+    for (int m = 0; m < metrics.length; m++) {
+      bestValues[m] = score(evaluate(best[m]), qids, m);
+    }
+    if (folds < 2) {
+      return new Tuned(best, bestValues, new Point[0][], new double[0][], new double[0][], null);
+    }
+
+    List<List<String>> split = folds(folds);
+    Point[][] foldBest = new Point[folds][];
+    double[][] foldTrainValues = new double[folds][metrics.length];
+    double[][] foldTestValues = new double[folds][metrics.length];
+    // Each topic's values of each metric, with the point picked for that metric without its fold
+    List<Map<String, double[]>> heldOut = new ArrayList<>();
+    for (int m = 0; m < metrics.length; m++) {
+      heldOut.add(new HashMap<>());
+    }
+    for (int f = 0; f < folds; f++) {
+      List<String> train = new ArrayList<>();
+      for (int other = 0; other < folds; other++) {
+        if (other != f) {
+          train.addAll(split.get(other));
+        }
+      }
+      foldBest[f] = ascent ? coordinateAscent(model, values, train, rounds) : gridSearch(model, values, train);
+      for (int m = 0; m < metrics.length; m++) {
+        Map<String, double[]> perQuery = evaluate(foldBest[f][m]);
+        foldTrainValues[f][m] = score(perQuery, train, m);
+        foldTestValues[f][m] = score(perQuery, split.get(f), m);
+        for (String qid : split.get(f)) {
+          if (perQuery.containsKey(qid)) {
+            heldOut.get(m).put(qid, perQuery.get(qid));
+          }
+        }
+      }
+    }
+    double[] crossValidated = new double[metrics.length];
+    for (int m = 0; m < metrics.length; m++) {
+      crossValidated[m] = aggregator.aggregate(heldOut.get(m))[m];
+    }
+    return new Tuned(best, bestValues, foldBest, foldTrainValues, foldTestValues, crossValidated);
+  }
+
+  /**
+   * Writes for each metric the best point on all topics, the point picked for each fold with its
+   * values on the other folds and on the fold, and the cross-validated value.
+   */
+  public void print(Tuned tuned, PrintStream out) {
+    for (int m = 0; m < metrics.length; m++) {
+      String format = "%" + aggregator.getFormat(m);
+      out.format("%1$-22s\t%2$s\t%3$s\t" + format + "\n", metrics[m], "all", tuned.best[m], tuned.bestValues[m]);
+      for (int f = 0; f < tuned.foldBest.length; f++) {
+        out.format("%1$-22s\t%2$s\t%3$s\t" + format + "\t" + format + "\n", metrics[m], "fold" + (f + 1),
+            tuned.foldBest[f][m], tuned.foldTrainValues[f][m], tuned.foldTestValues[f][m]);
+      }
+      if (tuned.crossValidated != null) {
+        out.format("%1$-22s\t%2$s\t" + format + "\n", metrics[m], "cv", tuned.crossValidated[m]);
+      }
+    }
+  }
+
+  private static class TuneArgs {
+    @Option(name = "-index", metaVar = "[path]", required = true, usage = "Lucene index")
+    public String index;
+
+    @Option(name = "-topics", metaVar = "[file]", required = true, usage = "topics file")
+    public String topics;
+
+    @Option(name = "-topicreader", required = true, usage = "define how to read the topic(query) file: one of [Trec|Webxml]")
+    public String topicReader;
+
+    @Option(name = "-qrels", metaVar = "[file]", required = true, usage = "qrels file")
+    public String qrels;
+
+    @Option(name = "-keepstopwords", usage = "Boolean switch to keep stopwords in the query topics")
+    public boolean keepstop = false;
+
+    @Option(name = "-hits", metaVar = "[number]", required = false, usage = "max number of hits to return")
+    public int hits = 1000;
+
+    @Option(name = "-ql", usage = "tune query likelihood")
+    public boolean ql = false;
+
+    @Option(name = "-bm25", usage = "tune BM25")
+    public boolean bm25 = false;
+
+    @Option(name = "-k1", handler = StringArrayOptionHandler.class, required = false, usage = "BM25 k1 values")
+    public String[] k1 = {"0.5", "0.6", "0.7", "0.8", "0.9", "1.0", "1.1", "1.2", "1.3", "1.4", "1.5"};
+
+    @Option(name = "-b", handler = StringArrayOptionHandler.class, required = false, usage = "BM25 b values")
+    public String[] b = {"0.1", "0.2", "0.3", "0.4", "0.5", "0.6", "0.7", "0.8", "0.9"};
+
+    @Option(name = "-mu", handler = StringArrayOptionHandler.class, required = false,
+        usage = "Dirichlet smoothing parameter values")
+    public String[] mu = {"250", "500", "750", "1000", "1500", "2000", "2500", "3000", "4000", "5000"};
+
+    @Option(name = "-ascent", usage = "coordinate ascent over the values instead of a search of the whole grid")
+    public boolean ascent = false;
+
+    @Option(name = "-rounds", metaVar = "[number]", required = false, usage = "most rounds of coordinate ascent")
+    public int rounds = 5;
+
+    @Option(name = "-folds", metaVar = "[number]", required = false,
+        usage = "number of cross-validation folds, 1 to only pick the best values on all topics")
+    public int folds = 5;
+
+    @Option(name = "-metrics", handler = StringArrayOptionHandler.class, required = false,
+        usage = "metrics to pick the best values by, as for Eval")
+    public String[] metrics = {"map", "p.30", "ndcg.20"};
+
+    @Option(name = "-threads", metaVar = "[number]", required = false, usage = "number of points searched at once")
+    public int threads = Runtime.getRuntime().availableProcessors();
+  }
+
+  private static double[] parseValues(String name, String[] values) {
+    double[] parsed = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      try {
+        parsed[i] = Double.parseDouble(values[i]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(String.format("Bad value %s of -%s", values[i], name));
+      }
+    }
+    return parsed;
+  }
+
+  public static void main(String[] args) throws Exception {
+    TuneArgs tuneArgs = new TuneArgs();
+    CmdLineParser parser = new CmdLineParser(tuneArgs, ParserProperties.defaults().withUsageWidth(90));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println("Example: TuneSimilarity" + parser.printExample(OptionHandlerFilter.REQUIRED));
+      return;
+    }
+
+    Model model;
+    double[][] values;
+    if (tuneArgs.ql) {
+      model = Model.QL;
+      values = new double[][] {parseValues("mu", tuneArgs.mu)};
+    } else if (tuneArgs.bm25) {
+      model = Model.BM25;
+      values = new double[][] {parseValues("k1", tuneArgs.k1), parseValues("b", tuneArgs.b)};
+    } else {
+      LOG.error("Error: Must specify scoring model!");
+      System.exit(-1);
+      return;
+    }
+
+    Path topicsFile = Paths.get(tuneArgs.topics);
+    TopicReader tr = (TopicReader) Class.forName("io.anserini.search.query." + tuneArgs.topicReader + "TopicReader")
+        .getConstructor(Path.class).newInstance(topicsFile);
+    SortedMap<Integer, String> topics = tr.read();
+    QueryJudgments qrels = new QueryJudgments(tuneArgs.qrels);
+    Analyzer analyzer = tuneArgs.keepstop ? new EnglishAnalyzer(CharArraySet.EMPTY_SET) : new EnglishAnalyzer();
+
+    final long start = System.nanoTime();
+    try (IndexReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(tuneArgs.index)));
+         TuneSimilarity tuner = new TuneSimilarity(reader, topics, qrels, analyzer, tuneArgs.hits, tuneArgs.threads,
+             tuneArgs.metrics)) {
+      Tuned tuned = tuner.tune(model, values, tuneArgs.ascent, tuneArgs.folds, tuneArgs.rounds);
+      tuner.print(tuned, System.out);
+    }
+    final long durationMillis = TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    LOG.info("Tuning took " + DurationFormatUtils.formatDuration(durationMillis, "HH:mm:ss"));
+  }
+}
@@ -0,0 +1,133 @@
+package io.anserini.search.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.anserini.util.AnalyzerUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+
+import java.util.List;
+
+/**
+ * Builds a Sequential Dependence Model (Metzler and Croft, SIGIR 2005) query for first-stage
+ * retrieval, in Indri terms:
+ *
+ * <pre>
+ * #weight( wT #combine(q1 q2 ... qn)
+ *          wO #combine(#1(q1 q2) ... #1(qn-1 qn))
+ *          wU #combine(#uwN(q1 q2) ... #uwN(qn-1 qn)) )
+ * </pre>
+ *
+ * Ordered windows are {@link SpanNearQuery}s with no slop, unordered windows are unordered
+ * {@link SpanNearQuery}s that fit in N positions. Both are scored from the positional postings by
+ * the searcher's similarity, so the index needs positions (i.e., built with -storePositions).
+ *
+ * The unigram clause is required: a document matching a window always matches its terms, so the
+ * results are the same, but the window clauses are then only evaluated on documents the unigrams
+ * matched rather than being iterated on their own.
+ */
+public class SdmQueryBuilder {
+  // Defaults from Metzler and Croft
+  public static final float DEFAULT_TERM_WEIGHT = 0.85f;
+  public static final float DEFAULT_ORDERED_WEIGHT = 0.1f;
+  public static final float DEFAULT_UNORDERED_WEIGHT = 0.05f;
+  public static final int DEFAULT_UNORDERED_WINDOW = 8;
+
+  private final String field;
+  private final Analyzer analyzer;
+  private final float termWeight;
+  private final float orderedWeight;
+  private final float unorderedWeight;
+  private final int unorderedWindow;
+
+  public SdmQueryBuilder(String field, Analyzer analyzer) {
+    this(field, analyzer, DEFAULT_TERM_WEIGHT, DEFAULT_ORDERED_WEIGHT, DEFAULT_UNORDERED_WEIGHT,
+        DEFAULT_UNORDERED_WINDOW);
+  }
+
+  public SdmQueryBuilder(String field, Analyzer analyzer, float termWeight, float orderedWeight,
+                         float unorderedWeight, int unorderedWindow) {
+    if (unorderedWindow < 2) {
+      throw new IllegalArgumentException("Unordered window must fit two terms: " + unorderedWindow);
+    }
+    this.field = field;
+    this.analyzer = analyzer;
+    this.termWeight = termWeight;
+    this.orderedWeight = orderedWeight;
+    this.unorderedWeight = unorderedWeight;
+    this.unorderedWindow = unorderedWindow;
+  }
+
+  /**
+   * Checks that the field was indexed with positions, which the window clauses need.
+   *
+   * @param reader index to search
+   * @return whether SDM queries can be run against the index
+   */
+  public boolean isSupported(IndexReader reader) {
+    FieldInfo info = MultiFields.getMergedFieldInfos(reader).fieldInfo(field);
+    return info != null && info.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
+  }
+
+  public Query build(String queryText) {
+    return build(AnalyzerUtils.tokenize(analyzer, queryText));
+  }
+
+  public Query build(List<String> tokens) {
+    BooleanQuery.Builder unigrams = new BooleanQuery.Builder();
+    for (String token : tokens) {
+      unigrams.add(new TermQuery(new Term(field, token)), BooleanClause.Occur.SHOULD);
+    }
+    Query unigramQuery = unigrams.build();
+
+    // Nothing to pair up, so this is just the bag of words
+    if (tokens.size() < 2) {
+      return unigramQuery;
+    }
+
+    BooleanQuery.Builder ordered = new BooleanQuery.Builder();
+    BooleanQuery.Builder unordered = new BooleanQuery.Builder();
+    for (int i = 0; i < tokens.size() - 1; i++) {
+      SpanQuery[] pair = new SpanQuery[] {
+          new SpanTermQuery(new Term(field, tokens.get(i))),
+          new SpanTermQuery(new Term(field, tokens.get(i + 1)))};
+      // #1: adjacent and in order
+      ordered.add(new SpanNearQuery(pair, 0, true), BooleanClause.Occur.SHOULD);
+      // #uwN: both within a window of N positions, in any order
+      unordered.add(new SpanNearQuery(pair, unorderedWindow - 2, false), BooleanClause.Occur.SHOULD);
+    }
+
+    BooleanQuery.Builder sdm = new BooleanQuery.Builder();
+    sdm.add(new BoostQuery(unigramQuery, termWeight), BooleanClause.Occur.MUST);
+    sdm.add(new BoostQuery(ordered.build(), orderedWeight), BooleanClause.Occur.SHOULD);
+    sdm.add(new BoostQuery(unordered.build(), unorderedWeight), BooleanClause.Occur.SHOULD);
+    return sdm.build();
+  }
+}
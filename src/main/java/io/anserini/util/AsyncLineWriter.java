@@ -0,0 +1,102 @@
+package io.anserini.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes batches of lines on a background thread, so that producers only block when the writer
+ * falls more than {@code capacity} batches behind. Batches are written in the order they are
+ * submitted, each line followed by a newline.
+ *
+ * An error on the writer thread is rethrown to the producer on its next call.
+ */
+public class AsyncLineWriter implements Closeable {
+  // Marks the end of the input, compared by identity
+  private static final List<String> END = Collections.emptyList();
+
+  private final BufferedWriter out;
+  private final BlockingQueue<List<String>> queue;
+  private final Thread thread;
+  private volatile IOException error = null;
+
+  public AsyncLineWriter(Writer out, int capacity) {
+    this.out = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.thread = new Thread(this::drain, "async-line-writer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  private void drain() {
+    try {
+      List<String> lines;
+      while ((lines = queue.take()) != END) {
+        // After an error keep taking batches, so that producers don't block forever
+        if (error != null) {
+          continue;
+        }
+        try {
+          for (String line : lines) {
+            out.write(line);
+            out.newLine();
+          }
+        } catch (IOException e) {
+          error = e;
+        }
+      }
+      if (error == null) {
+        out.flush();
+      }
+    } catch (IOException e) {
+      error = e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkError() throws IOException {
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Queues lines to be written, blocking while the queue is full.
+   */
+  public void write(List<String> lines) throws IOException {
+    checkError();
+    if (lines.isEmpty()) {
+      return;
+    }
+    try {
+      queue.put(lines);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while queueing lines");
+    }
+  }
+
+  /**
+   * Waits for every queued line to be written, then flushes and closes the underlying writer.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      queue.put(END);
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for lines to be written");
+    } finally {
+      out.close();
+    }
+    checkError();
+  }
+}
@@ -0,0 +1,49 @@
+package io.anserini.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.OptionHandlerFilter;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.nio.file.Paths;
+
+/**
+ * Builds a {@link QrelsIndex} from a qrels file, for feature extraction jobs to map instead of
+ * parsing the qrels in every process.
+ */
+public class BuildQrelsIndex {
+  private static final Logger LOG = LogManager.getLogger(BuildQrelsIndex.class);
+
+  private BuildQrelsIndex() {}
+
+  private static class BuildArgs {
+    @Option(name = "-qrels", metaVar = "[file]", required = true, usage = "qrels file, gzipped if it ends with .gz")
+    public String qrels;
+
+    @Option(name = "-output", metaVar = "[file]", required = true, usage = "qrels index to write")
+    public String output;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    BuildArgs args = new BuildArgs();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.err.println("Example: BuildQrelsIndex" + parser.printExample(OptionHandlerFilter.REQUIRED));
+      return;
+    }
+
+    long curTime = System.nanoTime();
+    Qrels qrels = Qrels.read(args.qrels, true, false);
+    QrelsIndex.write(qrels, Paths.get(args.output));
+    LOG.info(String.format("Wrote the judgments of %d queries for %d docids to %s in %d ms", qrels.getQids().size(),
+        qrels.getDictionary().size(), args.output, (System.nanoTime() - curTime) / 1000000));
+  }
+}
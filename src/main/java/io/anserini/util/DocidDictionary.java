@@ -0,0 +1,145 @@
+package io.anserini.util;
+
+import java.util.Arrays;
+
+/**
+ * Maps collection docids to dense int ordinals, so that qrels and runs can be held as int arrays
+ * and compared by ordinal instead of by string. Qrels and the runs evaluated against them share one
+ * dictionary.
+ *
+ * The docids are stored back to back in one char array and found through an open-addressing hash
+ * table of ordinals, a few bytes per docid on top of its characters instead of a String, its array
+ * and a hash map entry each.
+ *
+ * Adding docids isn't thread safe. Lookups are safe from any thread once the dictionary is no
+ * longer added to, which is how it's used: qrels are loaded first, then runs only look docids up.
+ */
+public class DocidDictionary {
+  private char[] chars = new char[1 << 12];
+  private int charCount = 0;
+  // offsets[i] is where docid i starts, offsets[size] where the last one ends
+  private int[] offsets = new int[257];
+  private int size = 0;
+  // Ordinal + 1 of the docid hashed to each slot, 0 for an empty slot
+  private int[] slots = new int[512];
+  // 32 - log2(slots.length), the slot is the top bits of the spread hash
+  private int shift = 32 - 9;
+
+  public int size() {
+    return size;
+  }
+
+  private static int hash(CharSequence s, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+    return h;
+  }
+
+  // Fibonacci hashing: the multiply mixes every bit of h into the high bits, so those pick the slot.
+  // The low bits of the product only depend on the low bits of h, and would collide far more.
+  private static int slot(int h, int shift) {
+    return (h * 0x9E3779B9) >>> shift;
+  }
+
+  private boolean matches(int ordinal, CharSequence s, int start, int end) {
+    int from = offsets[ordinal];
+    if (offsets[ordinal + 1] - from != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (chars[from++] != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return ordinal of the docid held in {@code s[start, end)}, or -1 if it isn't in the dictionary
+   */
+  public int get(CharSequence s, int start, int end) {
+    int mask = slots.length - 1;
+    for (int slot = slot(hash(s, start, end), shift); ; slot = (slot + 1) & mask) {
+      int entry = slots[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (matches(entry - 1, s, start, end)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  /**
+   * @return ordinal of the docid, or -1 if it isn't in the dictionary
+   */
+  public int get(String docid) {
+    return get(docid, 0, docid.length());
+  }
+
+  /**
+   * @return ordinal of the docid held in {@code s[start, end)}, adding it if it's new
+   */
+  public int intern(CharSequence s, int start, int end) {
+    int mask = slots.length - 1;
+    int slot = slot(hash(s, start, end), shift);
+    for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+      if (matches(slots[slot] - 1, s, start, end)) {
+        return slots[slot] - 1;
+      }
+    }
+
+    int length = end - start;
+    if (charCount + length > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+    }
+    for (int i = start; i < end; i++) {
+      chars[charCount++] = s.charAt(i);
+    }
+    if (size + 2 > offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    int ordinal = size++;
+    offsets[size] = charCount;
+    slots[slot] = ordinal + 1;
+
+    // Keep the table at most half full
+    if (size * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    return ordinal;
+  }
+
+  public int intern(String docid) {
+    return intern(docid, 0, docid.length());
+  }
+
+  private void rehash(int capacity) {
+    int[] rehashed = new int[capacity];
+    int mask = capacity - 1;
+    int rehashedShift = 32 - Integer.numberOfTrailingZeros(capacity);
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      int from = offsets[ordinal];
+      int h = 0;
+      for (int i = from; i < offsets[ordinal + 1]; i++) {
+        h = 31 * h + chars[i];
+      }
+      int slot = slot(h, rehashedShift);
+      while (rehashed[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      rehashed[slot] = ordinal + 1;
+    }
+    slots = rehashed;
+    shift = rehashedShift;
+  }
+
+  /**
+   * @return the docid with this ordinal
+   */
+  public String get(int ordinal) {
+    return new String(chars, offsets[ordinal], offsets[ordinal + 1] - offsets[ordinal]);
+  }
+}
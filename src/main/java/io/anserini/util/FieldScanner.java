@@ -0,0 +1,104 @@
+package io.anserini.util;
+
+/**
+ * Walks the whitespace separated fields of a line, such as a line of a qrels or run file, without
+ * splitting it into strings. Fields are read as offsets into the line, and only turned into strings
+ * or numbers when needed. A scanner is reset for every line, so one can be used for a whole file.
+ */
+public class FieldScanner {
+  private String line;
+  private int start;
+  private int end;
+
+  public FieldScanner reset(String line) {
+    this.line = line;
+    this.start = 0;
+    this.end = 0;
+    return this;
+  }
+
+  /**
+   * Moves to the next field.
+   *
+   * @return false if there are no more fields on the line
+   */
+  public boolean next() {
+    int i = end;
+    int length = line.length();
+    while (i < length && Character.isWhitespace(line.charAt(i))) {
+      i++;
+    }
+    if (i == length) {
+      start = end = length;
+      return false;
+    }
+    start = i;
+    while (i < length && !Character.isWhitespace(line.charAt(i))) {
+      i++;
+    }
+    end = i;
+    return true;
+  }
+
+  public String line() {
+    return line;
+  }
+
+  public int start() {
+    return start;
+  }
+
+  public int end() {
+    return end;
+  }
+
+  /**
+   * @return whether the current field is equal to {@code s}
+   */
+  public boolean matches(String s) {
+    return s != null && s.length() == end - start && line.regionMatches(start, s, 0, s.length());
+  }
+
+  public String string() {
+    return line.substring(start, end);
+  }
+
+  public int parseInt() {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+      negative = line.charAt(i) == '-';
+      i++;
+    }
+    if (i == end) {
+      throw new NumberFormatException("For input string: \"" + string() + "\"");
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = line.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("For input string: \"" + string() + "\"");
+      }
+      value = value * 10 + digit;
+      if (value > Integer.MAX_VALUE + 1L) {
+        throw new NumberFormatException("For input string: \"" + string() + "\"");
+      }
+    }
+    if (negative) {
+      value = -value;
+    }
+    if (value > Integer.MAX_VALUE) {
+      throw new NumberFormatException("For input string: \"" + string() + "\"");
+    }
+    return (int) value;
+  }
+
+  /**
+   * Parses the current field as a double, with the same syntax and rounding as
+   * {@link Double#parseDouble(String)}.
+   */
+  public double parseDouble() {
+    // Getting the rounding right by hand isn't worth it, only the field is copied
+    return Double.parseDouble(string());
+  }
+}
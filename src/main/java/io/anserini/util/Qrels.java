@@ -1,40 +1,278 @@
 package io.anserini.util;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
 
-import com.google.common.collect.Maps;
-
+/**
+ * Relevance judgments in TREC qrels format, e.g.
+ * <pre>
+ *  19    0   doc303       1
+ *  19    0   doc7295      0
+ * </pre>
+ *
+ * Docids are interned into a {@link DocidDictionary}, and the judgments of a query are kept as two
+ * int arrays sorted by docid ordinal, so a lookup is a binary search and a judgment takes 8 bytes
+ * instead of a map entry, a String and an Integer. Runs read with the same dictionary (see
+ * {@link io.anserini.eval.RankingResults}) can be evaluated by ordinal without any string lookups.
+ */
 public class Qrels {
-  final private Map<String, Map<String, Integer>> qrels;
+  private static final Logger LOG = LogManager.getLogger(Qrels.class);
+
+  private final DocidDictionary dictionary;
+  private final Map<String, Judgments> qrels;
+
+  /**
+   * The judgments of one query. It's also a read-only map from docid to grade, for code that looks
+   * judgments up by docid string.
+   */
+  public static class Judgments extends AbstractMap<String, Integer> {
+    private final DocidDictionary dictionary;
+    // Docid ordinals in ascending order, and the grade of each
+    private final int[] docids;
+    private final int[] grades;
+
+    Judgments(DocidDictionary dictionary, int[] docids, int[] grades) {
+      this.dictionary = dictionary;
+      this.docids = docids;
+      this.grades = grades;
+    }
+
+    @Override
+    public int size() {
+      return docids.length;
+    }
+
+    /**
+     * @return index of the judgment of the docid with this ordinal, or a negative number if the
+     * docid isn't judged
+     */
+    public int indexOf(int docid) {
+      return docid < 0 ? -1 : Arrays.binarySearch(docids, docid);
+    }
+
+    /**
+     * @return grade of the docid with this ordinal, or 0 if it isn't judged
+     */
+    public int getGrade(int docid) {
+      int i = indexOf(docid);
+      return i < 0 ? 0 : grades[i];
+    }
+
+    /**
+     * @return grade of the docid, or 0 if it isn't judged or its grade is negative
+     */
+    public int getRelevanceGrade(String docid) {
+      return Math.max(0, getGrade(dictionary.get(docid)));
+    }
+
+    /**
+     * @return docid ordinal of the i-th judgment
+     */
+    public int docidAt(int i) {
+      return docids[i];
+    }
+
+    /**
+     * @return grade of the i-th judgment
+     */
+    public int gradeAt(int i) {
+      return grades[i];
+    }
+
+    @Override
+    public boolean containsKey(Object docid) {
+      return docid instanceof String && indexOf(dictionary.get((String) docid)) >= 0;
+    }
+
+    @Override
+    public Integer get(Object docid) {
+      if (!(docid instanceof String)) {
+        return null;
+      }
+      int i = indexOf(dictionary.get((String) docid));
+      return i < 0 ? null : grades[i];
+    }
+
+    @Override
+    public Set<Entry<String, Integer>> entrySet() {
+      return new AbstractSet<Entry<String, Integer>>() {
+        @Override
+        public int size() {
+          return docids.length;
+        }
+
+        @Override
+        public Iterator<Entry<String, Integer>> iterator() {
+          return new Iterator<Entry<String, Integer>>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+              return i < docids.length;
+            }
+
+            @Override
+            public Entry<String, Integer> next() {
+              if (i == docids.length) {
+                throw new NoSuchElementException();
+              }
+              Entry<String, Integer> entry = new SimpleImmutableEntry<>(dictionary.get(docids[i]), grades[i]);
+              i++;
+              return entry;
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * Judgments of one query while the file is read, in file order
+   */
+  private static class Builder {
+    int[] docids = new int[16];
+    int[] grades = new int[16];
+    int size = 0;
+
+    void add(int docid, int grade) {
+      if (size == docids.length) {
+        docids = Arrays.copyOf(docids, size * 2);
+        grades = Arrays.copyOf(grades, size * 2);
+      }
+      docids[size] = docid;
+      grades[size] = grade;
+      size++;
+    }
+
+    Judgments build(DocidDictionary dictionary) {
+      // Sort by docid, then by position in the file so that the last judgment of a docid wins
+      long[] order = new long[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = ((long) docids[i] << 32) | i;
+      }
+      Arrays.sort(order);
+      int[] sortedDocids = new int[size];
+      int[] sortedGrades = new int[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        int docid = (int) (order[i] >>> 32);
+        if (i + 1 < size && (int) (order[i + 1] >>> 32) == docid) {
+          continue;
+        }
+        sortedDocids[count] = docid;
+        sortedGrades[count] = grades[(int) order[i]];
+        count++;
+      }
+      return new Judgments(dictionary, Arrays.copyOf(sortedDocids, count), Arrays.copyOf(sortedGrades, count));
+    }
+  }
 
+  /**
+   * Reads a qrels file, logging an error and leaving the qrels empty if it can't be read.
+   */
   public Qrels(String file) {
-    qrels = Maps.newHashMap();
+    Qrels read;
+    try {
+      read = read(file, true, false);
+    } catch (IOException e) {
+      LOG.error(String.format("Unable to read qrels %s: %s", file, e.getMessage()));
+      read = new Qrels(new DocidDictionary(), Collections.emptyMap());
+    }
+    this.dictionary = read.dictionary;
+    this.qrels = read.qrels;
+  }
 
-    try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+  private Qrels(DocidDictionary dictionary, Map<String, Judgments> qrels) {
+    this.dictionary = dictionary;
+    this.qrels = qrels;
+  }
+
+  /**
+   * Reads a qrels file, gzipped if its name ends with .gz.
+   *
+   * @param graded          keep the grades, otherwise every positive grade becomes 1
+   * @param ignoreNegative  leave out judgments with a negative grade
+   */
+  public static Qrels read(String file, boolean graded, boolean ignoreNegative) throws IOException {
+    DocidDictionary dictionary = new DocidDictionary();
+    Map<String, Builder> builders = new TreeMap<>();
+
+    InputStream stream = new FileInputStream(file);
+    if (file.endsWith(".gz")) {
+      stream = new GZIPInputStream(stream);
+    }
+    FieldScanner fields = new FieldScanner();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, "UTF-8"))) {
+      String qid = null;
+      Builder builder = null;
+      int lineNumber = 0;
       String line;
-      String[] arr;
-      while ((line = br.readLine()) != null) {
-        arr = line.split("[\\s\\t]+");
-        String qid = arr[0];
-        String docno = arr[2];
-        int grade = Integer.parseInt(arr[3]);
-        //System.out.println(qid + " " + docno + " " + grade);
-
-        if (qrels.containsKey(qid)) {
-          qrels.get(qid).put(docno, grade);
-        } else {
-          Map<String, Integer> t = Maps.newHashMap();
-          t.put(docno, grade);
-          qrels.put(qid, t);
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        if (!fields.reset(line).next()) {
+          continue;
+        }
+        // Qrels are grouped by query, so the qid is usually the one of the line before
+        if (!fields.matches(qid)) {
+          qid = fields.string();
+          builder = builders.computeIfAbsent(qid, k -> new Builder());
+        }
+        if (!fields.next() || !fields.next()) {
+          throw new RuntimeException("Malformed line at line " + lineNumber + " in " + file + ": " + line);
         }
+        int docStart = fields.start();
+        int docEnd = fields.end();
+        if (!fields.next()) {
+          throw new RuntimeException("Malformed line at line " + lineNumber + " in " + file + ": " + line);
+        }
+        // Anything after the grade, e.g. the probabilities of statAP qrels, is ignored
+        int grade = fields.parseInt();
+
+        if (grade < 0 && ignoreNegative) {
+          continue;
+        }
+        if (!graded) {
+          grade = grade > 0 ? 1 : 0;
+        }
+        builder.add(dictionary.intern(line, docStart, docEnd), grade);
       }
-    } catch (IOException e) {
+    }
 
+    Map<String, Judgments> qrels = new TreeMap<>();
+    for (Map.Entry<String, Builder> entry : builders.entrySet()) {
+      qrels.put(entry.getKey(), entry.getValue().build(dictionary));
     }
+    return new Qrels(dictionary, qrels);
+  }
+
+  /**
+   * @return the dictionary the docids of these qrels are interned in
+   */
+  public DocidDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return the judgments of the query, or null if it has none
+   */
+  public Judgments getJudgments(String qid) {
+    return qrels.get(qid);
   }
 
   /**
@@ -45,39 +283,30 @@ public class Qrels {
    * @return
    */
   public boolean isDocJudged(String qid, String docId) {
-    if (!qrels.containsKey(qid)) {
-      return false;
-    }
-
-    if (!qrels.get(qid).containsKey(docId)) {
-      return false;
-    } else {
-      return true;
-    }
+    Judgments judgments = qrels.get(qid);
+    return judgments != null && judgments.containsKey(docId);
   }
 
   public int getRelevanceGrade(String qid, String docid) {
-    if (!qrels.containsKey(qid)) {
+    Judgments judgments = qrels.get(qid);
+    if (judgments == null) {
       return 0;
     }
-
-    if (!qrels.get(qid).containsKey(docid)) {
-      return 0;
-    }
-
-    if ( qrels.get(qid).get(docid) <= 0 ) return 0;
-    return qrels.get(qid).get(docid);
+    return judgments.getRelevanceGrade(docid);
   }
 
   public Set<String> getQids() {
-      return this.qrels.keySet();
+    return this.qrels.keySet();
   }
 
   public Map<String, Integer> getDocMap(String qid) {
-    if (this.qrels.containsKey(qid)) {
-      return this.qrels.get(qid);
-    } else {
-      return null;
-    }
+    return this.qrels.get(qid);
+  }
+
+  /**
+   * @return the judgments of every query, as maps from docid to grade
+   */
+  public Map<String, Map<String, Integer>> asMap() {
+    return Collections.unmodifiableMap(qrels);
   }
 }
@@ -0,0 +1,375 @@
+package io.anserini.util;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Relevance judgments prebuilt into a file that is memory-mapped rather than parsed, for jobs such
+ * as {@code io.anserini.ltr.BaseFeatureExtractor#printFeatureForAllDocs} that look up the grade of
+ * every document in the index for every query. The mapping is read only, so every process on a
+ * machine reading the same file shares one copy of it in the page cache.
+ *
+ * Qids and docids are numbered by ordinal. A docid is found through an open-addressing hash table
+ * of its 64-bit hash, checked against the stored docid, and the judgments of each docid are sorted
+ * by qid ordinal, so that a grade is a binary search within the few judgments of one document, and
+ * the grades of a document for every query are read in one pass. The file, written by
+ * {@link #write} or {@link BuildQrelsIndex}, starts with a header:
+ *
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    number of qids
+ * int    number of docids
+ * int    number of judgments
+ * int    number of hash slots, a power of two
+ * UTF    each qid, in ascending order, its position being its ordinal
+ * </pre>
+ *
+ * followed by the hash slots, each a long hash and an int docid ordinal plus one (0 for an empty
+ * slot); the start of each docid in the docid bytes, then the UTF-8 docid bytes; the start of the
+ * judgments of each docid; and the qid ordinal and grade of each judgment.
+ */
+public class QrelsIndex {
+  private static final Logger LOG = LogManager.getLogger(QrelsIndex.class);
+
+  public static final int MAGIC = 0x414e5152; // "ANQR"
+  public static final int VERSION = 1;
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  private static final int SLOT_SIZE = 8 + 4;
+
+  // Indexes are read only, so every user of the same file in a process can share one mapping
+  private static final ConcurrentMap<Path, QrelsIndex> SHARED = new ConcurrentHashMap<>();
+
+  // Only ever read with absolute gets, so it can be shared between threads
+  private final ByteBuffer buffer;
+  private final String[] qids;
+  private final Map<String, Integer> qidOrdinals;
+  private final int numDocids;
+  private final int numJudgments;
+  private final int slotMask;
+  // Offsets of the sections into the buffer
+  private final int slotsStart;
+  private final int docidStartsStart;
+  private final int docidBytesStart;
+  private final int judgmentStartsStart;
+  private final int judgedQidsStart;
+  private final int gradesStart;
+
+  private QrelsIndex(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(String.format("%s is too large for a qrels index", path));
+      }
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    ByteBuffer header = buffer.duplicate();
+    if (header.remaining() < 8 || header.getInt() != MAGIC) {
+      throw new IOException(String.format("%s is not a qrels index", path));
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException(String.format("Unsupported qrels index version %d in %s", version, path));
+    }
+    int numQids = header.getInt();
+    this.numDocids = header.getInt();
+    this.numJudgments = header.getInt();
+    int slots = header.getInt();
+    this.slotMask = slots - 1;
+
+    this.qids = new String[numQids];
+    this.qidOrdinals = new HashMap<>();
+    for (int q = 0; q < numQids; q++) {
+      byte[] bytes = new byte[header.getShort() & 0xFFFF];
+      header.get(bytes);
+      qids[q] = new String(bytes, StandardCharsets.UTF_8);
+      qidOrdinals.put(qids[q], q);
+    }
+
+    this.slotsStart = header.position();
+    this.docidStartsStart = slotsStart + slots * SLOT_SIZE;
+    this.docidBytesStart = docidStartsStart + (numDocids + 1) * 4;
+    this.judgmentStartsStart = docidBytesStart + buffer.getInt(docidStartsStart + numDocids * 4);
+    this.judgedQidsStart = judgmentStartsStart + (numDocids + 1) * 4;
+    this.gradesStart = judgedQidsStart + numJudgments * 4;
+    if ((long) gradesStart + numJudgments * 4L != buffer.capacity()) {
+      throw new IOException(String.format("%s is truncated or corrupt", path));
+    }
+  }
+
+  /**
+   * Maps an index written by {@link #write}.
+   */
+  public static QrelsIndex open(Path path) throws IOException {
+    return new QrelsIndex(path);
+  }
+
+  /**
+   * Returns the index at a path, mapping it on first use.
+   */
+  public static QrelsIndex shared(Path path) throws IOException {
+    Path key = path.toAbsolutePath().normalize();
+    QrelsIndex index = SHARED.get(key);
+    if (index == null) {
+      synchronized (SHARED) {
+        index = SHARED.get(key);
+        if (index == null) {
+          index = open(key);
+          SHARED.put(key, index);
+          LOG.info(String.format("Loaded %d judgments of %d queries from %s", index.numJudgments,
+              index.qids.length, key));
+        }
+      }
+    }
+    return index;
+  }
+
+  private static long hash(byte[] docid) {
+    return HASH.hashBytes(docid).asLong();
+  }
+
+  /**
+   * @return number of queries, whose ordinals are 0 to {@code numQids() - 1}
+   */
+  public int numQids() {
+    return qids.length;
+  }
+
+  /**
+   * @return number of judgments
+   */
+  public int size() {
+    return numJudgments;
+  }
+
+  /**
+   * @return qids in ordinal order
+   */
+  public List<String> getQids() {
+    return Collections.unmodifiableList(Arrays.asList(qids));
+  }
+
+  public String getQid(int qid) {
+    return qids[qid];
+  }
+
+  /**
+   * @return ordinal of the qid, or -1 if the query has no judgments
+   */
+  public int getQidOrdinal(String qid) {
+    Integer ordinal = qidOrdinals.get(qid);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * @return ordinal of the docid, or -1 if it isn't judged for any query
+   */
+  public int getDocidOrdinal(String docid) {
+    byte[] bytes = docid.getBytes(StandardCharsets.UTF_8);
+    long hash = hash(bytes);
+    for (int slot = (int) hash & slotMask; ; slot = (slot + 1) & slotMask) {
+      int offset = slotsStart + slot * SLOT_SIZE;
+      int stored = buffer.getInt(offset + 8);
+      if (stored == 0) {
+        return -1;
+      }
+      if (buffer.getLong(offset) == hash && docidEquals(stored - 1, bytes)) {
+        return stored - 1;
+      }
+    }
+  }
+
+  private boolean docidEquals(int docid, byte[] bytes) {
+    int start = buffer.getInt(docidStartsStart + docid * 4);
+    int end = buffer.getInt(docidStartsStart + (docid + 1) * 4);
+    if (end - start != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (buffer.get(docidBytesStart + start + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String getDocid(int docid) {
+    int start = buffer.getInt(docidStartsStart + docid * 4);
+    int end = buffer.getInt(docidStartsStart + (docid + 1) * 4);
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(docidBytesStart + start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return index of the judgment of the docid for the query, or -1 if there is none
+   */
+  private int find(int qid, int docid) {
+    if (qid < 0 || docid < 0) {
+      return -1;
+    }
+    int low = buffer.getInt(judgmentStartsStart + docid * 4);
+    int high = buffer.getInt(judgmentStartsStart + (docid + 1) * 4) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int judged = buffer.getInt(judgedQidsStart + mid * 4);
+      if (judged < qid) {
+        low = mid + 1;
+      } else if (judged > qid) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  public boolean isDocJudged(int qid, int docid) {
+    return find(qid, docid) >= 0;
+  }
+
+  /**
+   * @return grade of the docid for the query, or 0 if it isn't judged or its grade is negative
+   */
+  public int getRelevanceGrade(int qid, int docid) {
+    int i = find(qid, docid);
+    return i < 0 ? 0 : Math.max(0, buffer.getInt(gradesStart + i * 4));
+  }
+
+  public int getRelevanceGrade(String qid, String docid) {
+    return getRelevanceGrade(getQidOrdinal(qid), getDocidOrdinal(docid));
+  }
+
+  /**
+   * Reads the grades of the docid for every query at once.
+   *
+   * @param grades set to the grade of the docid for each qid ordinal, 0 if it isn't judged or its
+   *               grade is negative; at least {@link #numQids} long
+   */
+  public void getRelevanceGrades(int docid, int[] grades) {
+    Arrays.fill(grades, 0, qids.length, 0);
+    if (docid < 0) {
+      return;
+    }
+    int end = buffer.getInt(judgmentStartsStart + (docid + 1) * 4);
+    for (int i = buffer.getInt(judgmentStartsStart + docid * 4); i < end; i++) {
+      grades[buffer.getInt(judgedQidsStart + i * 4)] = Math.max(0, buffer.getInt(gradesStart + i * 4));
+    }
+  }
+
+  /**
+   * Writes the judgments of some qrels as an index.
+   */
+  public static void write(Qrels qrels, Path output) throws IOException {
+    DocidDictionary dictionary = qrels.getDictionary();
+    List<String> qids = new ArrayList<>(qrels.getQids());
+    int numDocids = dictionary.size();
+
+    // Judgments grouped by docid, in qid order within each docid
+    int[] judgmentStarts = new int[numDocids + 1];
+    for (String qid : qids) {
+      Qrels.Judgments judgments = qrels.getJudgments(qid);
+      for (int i = 0; i < judgments.size(); i++) {
+        judgmentStarts[judgments.docidAt(i) + 1]++;
+      }
+    }
+    for (int d = 0; d < numDocids; d++) {
+      judgmentStarts[d + 1] += judgmentStarts[d];
+    }
+    int numJudgments = judgmentStarts[numDocids];
+    int[] judgedQids = new int[numJudgments];
+    int[] grades = new int[numJudgments];
+    int[] next = Arrays.copyOf(judgmentStarts, numDocids);
+    for (int q = 0; q < qids.size(); q++) {
+      Qrels.Judgments judgments = qrels.getJudgments(qids.get(q));
+      for (int i = 0; i < judgments.size(); i++) {
+        int slot = next[judgments.docidAt(i)]++;
+        judgedQids[slot] = q;
+        grades[slot] = judgments.gradeAt(i);
+      }
+    }
+
+    byte[][] docids = new byte[numDocids][];
+    long docidBytes = 0;
+    for (int d = 0; d < numDocids; d++) {
+      docids[d] = dictionary.get(d).getBytes(StandardCharsets.UTF_8);
+      docidBytes += docids[d].length;
+    }
+
+    // Keep the table at most half full so probe sequences stay short
+    long slots = Long.highestOneBit(Math.max(2L * numDocids, 2L) - 1) << 1;
+    long size = 6 * 4 + slots * SLOT_SIZE + docidBytes + 2 * (numDocids + 1) * 4L + 2 * numJudgments * 4L;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException(String.format("Too many judgments for a qrels index: %d", numJudgments));
+    }
+    int mask = (int) slots - 1;
+    long[] slotHashes = new long[(int) slots];
+    int[] slotDocids = new int[(int) slots];
+    for (int d = 0; d < numDocids; d++) {
+      long hash = hash(docids[d]);
+      int slot = (int) hash & mask;
+      while (slotDocids[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slotHashes[slot] = hash;
+      slotDocids[slot] = d + 1;
+    }
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(qids.size());
+      out.writeInt(numDocids);
+      out.writeInt(numJudgments);
+      out.writeInt((int) slots);
+      for (String qid : qids) {
+        out.writeUTF(qid);
+      }
+      for (int i = 0; i < slots; i++) {
+        out.writeLong(slotHashes[i]);
+        out.writeInt(slotDocids[i]);
+      }
+      int start = 0;
+      for (int d = 0; d < numDocids; d++) {
+        out.writeInt(start);
+        start += docids[d].length;
+      }
+      out.writeInt(start);
+      for (byte[] docid : docids) {
+        out.write(docid);
+      }
+      for (int judgmentStart : judgmentStarts) {
+        out.writeInt(judgmentStart);
+      }
+      for (int qid : judgedQids) {
+        out.writeInt(qid);
+      }
+      for (int grade : grades) {
+        out.writeInt(grade);
+      }
+    }
+  }
+}
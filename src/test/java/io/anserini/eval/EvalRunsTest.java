@@ -0,0 +1,129 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.SuppressFileSystems;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// ExtrasFS would add its own files to the run directories
+@SuppressFileSystems("ExtrasFS")
+public class EvalRunsTest extends LuceneTestCase {
+  private static final double DELTA = 1e-6;
+
+  @Test
+  public void testPairedTTest() {
+    // t = 1 with one degree of freedom, where P(|T| > 1) = 0.5
+    assertEquals(0.5, SignificanceTests.pairedTTest(new double[] {1.0, 0.0}, new double[] {0.0, 0.0}), DELTA);
+
+    // t = 2 with 10 degrees of freedom
+    double[] a = new double[11];
+    double[] b = new double[11];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = i % 2 == 0 ? 1.0 : -1.0;
+    }
+    a[10] = 0.0;
+    double mean = Arrays.stream(a).average().getAsDouble();
+    double sd = Math.sqrt(Arrays.stream(a).map(x -> (x - mean) * (x - mean)).sum() / 10);
+    double shift = 2.0 * sd / Math.sqrt(11) - mean;
+    for (int i = 0; i < a.length; i++) {
+      a[i] += shift;
+    }
+    assertEquals(0.0733880348, SignificanceTests.pairedTTest(a, b), DELTA);
+
+    assertEquals(1.0, SignificanceTests.pairedTTest(b, b), DELTA);
+  }
+
+  @Test
+  public void testRandomizationTest() {
+    double[] a = {0.5, 0.6, 0.7, 0.8, 0.9, 0.55, 0.65, 0.75, 0.85, 0.95};
+    double[] b = new double[a.length];
+    // A run better on every query is significant, one that matches the baseline isn't
+    assertTrue(SignificanceTests.randomizationTest(a, b, 10000, new Random(1)) < 0.01);
+    assertEquals(1.0, SignificanceTests.randomizationTest(a, a, 1000, new Random(1)), DELTA);
+    // The same seed gives the same p-value
+    double[] c = {0.5, 0.1, 0.7, 0.2, 0.9, 0.55, 0.0, 0.75, 0.3, 0.95};
+    assertEquals(SignificanceTests.randomizationTest(a, c, 1000, new Random(7)),
+        SignificanceTests.randomizationTest(a, c, 1000, new Random(7)), 0.0);
+  }
+
+  private static Path write(Path dir, String name, String... lines) throws IOException {
+    return Files.write(dir.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+  }
+
+  private static List<String> fileNames(List<Path> paths) {
+    List<String> names = new ArrayList<>();
+    for (Path path : paths) {
+      names.add(path.getFileName().toString());
+    }
+    return names;
+  }
+
+  @Test
+  public void testEvaluateRuns() throws Exception {
+    Path dir = createTempDir();
+    Path qrels = write(dir, "qrels.txt", "1 0 d1 1", "1 0 d2 0", "1 0 d3 2", "2 0 d4 1", "2 0 d5 1");
+    Path runs = Files.createDirectory(dir.resolve("runs"));
+    write(runs, "a.run", "1 Q0 d1 1 3.0 a", "1 Q0 d2 2 2.0 a", "1 Q0 d3 3 1.0 a", "2 Q0 d5 1 1.0 a");
+    write(runs, "b.run", "1 Q0 d3 1 3.0 b", "1 Q0 d1 2 2.0 b", "2 Q0 d4 1 2.0 b", "2 Q0 d5 2 1.0 b");
+    write(runs, "c.txt", "1 Q0 d2 1 3.0 c");
+
+    List<Path> paths = EvalRuns.expandRuns(runs.resolve("*.run").toString());
+    assertEquals(Arrays.asList("a.run", "b.run"), fileNames(paths));
+    assertEquals(Arrays.asList("a.run", "b.run", "c.txt"), fileNames(EvalRuns.expandRuns(runs.toString())));
+
+    String[] metrics = {"map", "p.1", "num_rel_ret"};
+    QueryJudgments judgments = new QueryJudgments(qrels.toString());
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      List<EvalRuns.RunEval> evals = EvalRuns.evaluate(paths, judgments, metrics, pool);
+      for (int r = 0; r < paths.size(); r++) {
+        assertEquals(paths.get(r), evals.get(r).path);
+        RankingResults results = new RankingResults(paths.get(r).toString());
+        for (int m = 0; m < metrics.length; m++) {
+          BatchEval batch = new BatchEval(metrics[m]);
+          Map<String, Double> expected = batch.evaluate(results, judgments);
+          assertEquals(batch.getAggregated(), evals.get(r).aggregated[m], DELTA);
+          for (Map.Entry<String, Double> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), evals.get(r).perQuery.get(entry.getKey())[m], DELTA);
+          }
+        }
+      }
+
+      List<EvalRuns.Comparison> comparisons = EvalRuns.compare(evals, evals.get(0), metrics.length, 100, 0, pool);
+      // The baseline against itself
+      assertEquals(1.0, comparisons.get(0).tTest[0], DELTA);
+      assertEquals(1.0, comparisons.get(0).randomization[0], DELTA);
+      List<EvalRuns.Comparison> again = EvalRuns.compare(evals, evals.get(0), metrics.length, 100, 0, pool);
+      assertEquals(comparisons.get(1).randomization[0], again.get(1).randomization[0], 0.0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class EvalStoreTest extends LuceneTestCase {
+  private static final double DELTA = 1e-9;
+  private static final String[] METRICS = {"map", "p.10"};
+
+  private static Map<String, double[]> perQuery(double[][] values) {
+    Map<String, double[]> perQuery = new TreeMap<>();
+    for (int q = 0; q < values.length; q++) {
+      perQuery.put(String.valueOf(301 + q), values[q]);
+    }
+    return perQuery;
+  }
+
+  @Test
+  public void testPutAndGet() throws IOException {
+    Path dir = createTempDir();
+    Map<String, double[]> values = perQuery(new double[][] {{0.5, 0.3}, {0.25, 0.1}, {0.0, 0.0}});
+    EvalStore.StoredEval stored = new EvalStore(dir).put("bm25", "k1=0.9 b=0.4", METRICS, values);
+    assertEquals(EvalStore.hashConfig("k1=0.9 b=0.4"), stored.configHash);
+
+    // A fresh store reads it back from disk
+    EvalStore store = new EvalStore(dir);
+    List<EvalStore.StoredEval> evals = store.list();
+    assertEquals(1, evals.size());
+    EvalStore.StoredEval eval = store.get("bm25");
+    assertEquals("bm25", eval.runTag);
+    assertEquals("k1=0.9 b=0.4", eval.config);
+    assertEquals(Arrays.asList(METRICS), Arrays.asList(eval.metrics));
+    assertEquals(values.keySet(), eval.getPerQuery().keySet());
+    for (Map.Entry<String, double[]> entry : values.entrySet()) {
+      assertArrayEquals(entry.getValue(), eval.getPerQuery().get(entry.getKey()), DELTA);
+    }
+    assertArrayEquals(new MultiMetricEval(METRICS).aggregate(values), eval.getAggregated(), DELTA);
+
+    assertSame(eval, store.get("bm25@" + stored.configHash.substring(0, 4)));
+    assertNull(store.get("bm25@zz"));
+    assertNull(store.get("ql"));
+  }
+
+  @Test
+  public void testLatestWins() throws IOException {
+    EvalStore store = new EvalStore(createTempDir());
+    EvalStore.StoredEval first = store.put("bm25", "k1=0.9 b=0.4", METRICS, perQuery(new double[][] {{0.5, 0.3}}));
+    store.put("bm25", "k1=1.2 b=0.75", METRICS, perQuery(new double[][] {{0.4, 0.2}}));
+    assertEquals(2, store.list().size());
+    assertEquals("k1=1.2 b=0.75", store.get("bm25").config);
+    assertEquals("k1=0.9 b=0.4", store.get(first.getName()).config);
+
+    // The same run tag and configuration replace what was stored
+    store.put("bm25", "k1=0.9 b=0.4", METRICS, perQuery(new double[][] {{0.6, 0.3}}));
+    assertEquals(2, store.list().size());
+    assertEquals(0.6, store.get(first.getName()).getValue(0, 0), DELTA);
+    assertEquals("k1=0.9 b=0.4", store.get("bm25").config);
+  }
+
+  @Test
+  public void testCompare() throws IOException {
+    EvalStore store = new EvalStore(createTempDir());
+    store.put("a", "", METRICS, perQuery(new double[][] {{0.5, 0.3}, {0.2, 0.1}, {0.3, 0.3}, {0.1, 0.0}}));
+    // Query 305 only has a value in b, so isn't compared
+    store.put("b", "", new String[] {"p.10", "map"},
+        perQuery(new double[][] {{0.3, 0.4}, {0.0, 0.6}, {0.3, 0.3}, {0.04, 0.05}, {1.0, 1.0}}));
+
+    EvalStore.Comparison map = EvalStore.compare(store.get("a"), store.get("b"), "map",
+        EvalStore.DEFAULT_TIE_THRESHOLD);
+    assertEquals(Arrays.asList("301", "302", "303", "304"), Arrays.asList(map.qids));
+    assertEquals(1, map.wins);
+    assertEquals(2, map.losses);
+    assertEquals(1, map.ties);
+    int[] largest = map.largestDeltas(2);
+    assertEquals(2, largest.length);
+    assertEquals("302", map.qids[largest[0]]);
+    assertEquals(0.4, map.delta(largest[0]), DELTA);
+    assertEquals("301", map.qids[largest[1]]);
+    assertEquals(-0.1, map.delta(largest[1]), DELTA);
+
+    EvalStore.Comparison p10 = EvalStore.compare(store.get("a"), store.get("b"), "p.10", 0.05);
+    assertEquals(0, p10.wins);
+    assertEquals(1, p10.losses);
+    assertEquals(3, p10.ties);
+
+    try {
+      EvalStore.compare(store.get("a"), store.get("b"), "ndcg.20", EvalStore.DEFAULT_TIE_THRESHOLD);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("ndcg.20"));
+    }
+  }
+
+  @Test
+  public void testGetReadsOnlyTheRunsFiles() throws IOException {
+    Path dir = createTempDir();
+    EvalStore store = new EvalStore(dir);
+    EvalStore.StoredEval stored = store.put("bm25", "k1=0.9 b=0.4", METRICS, perQuery(new double[][] {{0.5, 0.3}}));
+    store.put("bm25-rm3", "", METRICS, perQuery(new double[][] {{0.6, 0.4}}));
+    // Both made safe to the same name
+    store.put("a b", "", METRICS, perQuery(new double[][] {{0.1, 0.1}}));
+    store.put("a_b", "", METRICS, perQuery(new double[][] {{0.2, 0.2}}));
+
+    // Anything else in the store is never read
+    Files.write(dir.resolve("broken.eval"), new byte[] {1, 2, 3});
+    assertEquals(4, store.list().size());
+    assertEquals("bm25", store.get("bm25").runTag);
+    assertEquals("bm25", store.get(stored.runTag + "@" + stored.configHash).runTag);
+    assertEquals("bm25-rm3", store.get("bm25-rm3").runTag);
+    assertEquals(0.1, store.get("a b").getValue(0, 0), DELTA);
+    assertEquals(0.2, store.get("a_b").getValue(0, 0), DELTA);
+    assertNull(store.get("bm25@*"));
+    assertNull(store.get("bm25@" + stored.configHash + "0"));
+  }
+
+  @Test
+  public void testSeesReplacedFiles() throws IOException {
+    Path dir = createTempDir();
+    EvalStore store = new EvalStore(dir);
+    store.put("bm25", "k1=0.9 b=0.4", METRICS, perQuery(new double[][] {{0.5, 0.3}}));
+    assertEquals(0.5, store.get("bm25").getValue(0, 0), DELTA);
+
+    // Replaced through another store, e.g. by another process
+    EvalStore.StoredEval replaced = new EvalStore(dir).put("bm25", "k1=0.9 b=0.4", METRICS,
+        perQuery(new double[][] {{0.7, 0.3}}));
+    Path file;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.eval")) {
+      file = stream.iterator().next();
+    }
+    // However coarse the file system's timestamps are
+    Files.setLastModifiedTime(file, FileTime.fromMillis(replaced.timestamp + 1000));
+    assertEquals(0.7, store.get("bm25").getValue(0, 0), DELTA);
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class MultiMetricEvalTest extends LuceneTestCase {
+  private static final double DELTA = 1e-9;
+
+  private static final String[] METRICS = {
+      "num_ret", "num_rel", "num_rel_ret", "map", "p.5", "p.10", "p", "ndcg.10", "ndcg.20", "ndcg",
+      "recall.10", "recall", "p.0", "rprec", "bpref", "infap", "recip_rank", "judged.10", "judged",
+      "err.20", "err", "rbp", "rbp.0.95"
+  };
+
+  @Test
+  public void testSingleQuery() {
+    List<ResultDoc> rankingList = new ArrayList<>();
+    rankingList.add(new ResultDoc("d1", 2.02));
+    rankingList.add(new ResultDoc("d2", 1.9998));
+    rankingList.add(new ResultDoc("d3", 1.9998));
+    rankingList.add(new ResultDoc("d4", 1.576));
+    Collections.sort(rankingList);
+
+    Map<String, Integer> judgments = new TreeMap<>();
+    judgments.put("d2", 1);
+    judgments.put("d4", 3);
+    judgments.put("d5", 2);
+
+    MultiMetricEval eval = new MultiMetricEval("map", "p", "p.3", "ndcg.3", "recall.2", "num_rel_ret");
+    double[] values = eval.evaluate(rankingList, judgments);
+    // d3 outranks d2 on the tie, so the relevant docs are at ranks 3 and 4
+    assertEquals((1.0 / 3 + 2.0 / 4) / 3, values[0], DELTA);
+    assertEquals(0.5, values[1], DELTA);
+    assertEquals(1.0 / 3, values[2], DELTA);
+    double ideal = 7.0 + 3.0 / (Math.log(3) / Math.log(2)) + 1.0 / 2;
+    assertEquals((1.0 / 2) / ideal, values[3], DELTA);
+    assertEquals(0.0, values[4], DELTA);
+    assertEquals(2.0, values[5], DELTA);
+  }
+
+  @Test
+  public void testTrecEvalMeasures() {
+    List<ResultDoc> rankingList = new ArrayList<>();
+    rankingList.add(new ResultDoc("d1", 5.0));
+    rankingList.add(new ResultDoc("d2", 4.0));
+    rankingList.add(new ResultDoc("d3", 3.0));
+    rankingList.add(new ResultDoc("d4", 2.0));
+    rankingList.add(new ResultDoc("d5", 1.0));
+
+    // d3 isn't in the pool, d4 is in the pool but wasn't judged
+    Map<String, Integer> judgments = new TreeMap<>();
+    judgments.put("d1", 0);
+    judgments.put("d2", 1);
+    judgments.put("d4", -1);
+    judgments.put("d5", 2);
+    judgments.put("d6", 1);
+    judgments.put("d7", 0);
+
+    MultiMetricEval eval = new MultiMetricEval("rprec", "bpref", "infap", "recip_rank", "judged.4", "judged",
+        "err", "rbp");
+    double[] values = eval.evaluate(rankingList, judgments);
+    assertEquals(1.0 / 3, values[0], DELTA);
+    // d1 is above both relevant documents, out of min(2, 3) judged non-relevant ones
+    assertEquals((0.5 + 0.5) / 3, values[1], DELTA);
+    double epsilon = 0.00001;
+    double infAp = (0.5 + 0.5 * epsilon / (1 + 2 * epsilon)) + (0.2 + 0.8 * 0.75 * 0.5);
+    assertEquals(infAp / 3, values[2], DELTA);
+    assertEquals(0.5, values[3], DELTA);
+    assertEquals(2.0 / 4, values[4], DELTA);
+    assertEquals(3.0 / 5, values[5], DELTA);
+    assertEquals((1.0 / 16) / 2 + (3.0 / 16) * (15.0 / 16) / 5, values[6], DELTA);
+    assertEquals(0.2 * (0.8 + Math.pow(0.8, 4)), values[7], DELTA);
+  }
+
+  @Test
+  public void testMatchesBatchEval() {
+    Random random = new Random(42);
+    Map<String, List<ResultDoc>> run = new TreeMap<>();
+    Map<String, Map<String, Integer>> qrels = new TreeMap<>();
+    for (int q = 0; q < 30; q++) {
+      String qid = String.valueOf(q);
+      Map<String, Integer> judgments = new TreeMap<>();
+      for (int d = 0; d < 60; d++) {
+        if (random.nextInt(3) == 0) {
+          judgments.put("d" + d, random.nextInt(4) - 1);
+        }
+      }
+      // One query is judged but has nothing relevant
+      if (q == 7) {
+        judgments.replaceAll((docid, grade) -> 0);
+      }
+      qrels.put(qid, judgments);
+
+      // Leave some queries out of the run, and some runs shorter than the cutoffs
+      if (q % 10 == 3) {
+        continue;
+      }
+      List<ResultDoc> results = new ArrayList<>();
+      int length = q % 4 == 0 ? 4 : 40;
+      for (int d = 0; d < length; d++) {
+        results.add(new ResultDoc("d" + random.nextInt(80), random.nextInt(20)));
+      }
+      Collections.sort(results);
+      run.put(qid, results);
+    }
+    run.put("unjudged", new ArrayList<>(run.get("1")));
+
+    MultiMetricEval eval = new MultiMetricEval(METRICS);
+    Map<String, double[]> perQuery = eval.evaluate(run, qrels);
+    double[] aggregated = eval.aggregate(perQuery);
+    // Evaluating again hits the cached judgment statistics
+    Map<String, double[]> again = eval.evaluate(run, qrels);
+
+    for (int m = 0; m < METRICS.length; m++) {
+      BatchEval batch = new BatchEval(METRICS[m]);
+      Map<String, Double> expected = batch.evaluate(run, qrels);
+      assertEquals(expected.keySet(), perQuery.keySet());
+      for (Map.Entry<String, Double> entry : expected.entrySet()) {
+        assertEquals(METRICS[m], entry.getValue(), perQuery.get(entry.getKey())[m], DELTA);
+        assertEquals(METRICS[m], entry.getValue(), again.get(entry.getKey())[m], DELTA);
+      }
+      assertEquals(METRICS[m], batch.getAggregated(), aggregated[m], DELTA);
+      assertEquals(batch.getFormat(), eval.getFormat(m));
+    }
+  }
+
+  @Test
+  public void testInternedRunMatchesMapRun() throws IOException {
+    Random random = new Random(7);
+    Map<String, List<ResultDoc>> run = new TreeMap<>();
+    Map<String, Map<String, Integer>> qrels = new TreeMap<>();
+    List<String> qrelLines = new ArrayList<>();
+    List<String> runLines = new ArrayList<>();
+    for (int q = 0; q < 10; q++) {
+      String qid = String.valueOf(q);
+      Map<String, Integer> judgments = new TreeMap<>();
+      for (int d = 0; d < 30; d++) {
+        if (random.nextInt(2) == 0) {
+          judgments.put("d" + d, random.nextInt(3));
+          qrelLines.add(qid + " 0 d" + d + " " + judgments.get("d" + d));
+        }
+      }
+      qrels.put(qid, judgments);
+
+      // Docids past d29 aren't judged, and scores tie often
+      List<ResultDoc> results = new ArrayList<>();
+      for (int d = 0; d < 50; d++) {
+        if (random.nextInt(3) == 0) {
+          results.add(new ResultDoc("d" + d, random.nextInt(10)));
+        }
+      }
+      // Scores a float can't tell apart, still ranked by their full precision
+      results.add(new ResultDoc("d1", 20.000000001));
+      results.add(new ResultDoc("d0", 20.000000002));
+      for (ResultDoc doc : results) {
+        runLines.add(qid + " Q0 " + doc.getDocid() + " 1 " + doc.getScore() + " test");
+      }
+      Collections.sort(results);
+      run.put(qid, results);
+    }
+    // Runs aren't always written in rank order
+    Collections.shuffle(runLines, random);
+
+    Path dir = createTempDir();
+    Path qrelFile = dir.resolve("qrels.txt");
+    Path runFile = dir.resolve("run.txt");
+    Files.write(qrelFile, qrelLines, StandardCharsets.UTF_8);
+    Files.write(runFile, runLines, StandardCharsets.UTF_8);
+
+    QueryJudgments judgments = new QueryJudgments(qrelFile.toString());
+    RankingResults interned = new RankingResults(runFile.toString(), judgments.getDictionary());
+    assertEquals("d0", interned.getRankingList().get("3").get(0).getDocid());
+
+    Map<String, double[]> expected = new MultiMetricEval(METRICS).evaluate(run, qrels);
+    Map<String, double[]> actual = new MultiMetricEval(METRICS).evaluate(interned, judgments);
+    assertEquals(expected.keySet(), actual.keySet());
+    for (Map.Entry<String, double[]> entry : expected.entrySet()) {
+      assertArrayEquals(entry.getValue(), actual.get(entry.getKey()), DELTA);
+    }
+  }
+
+  private static Path fixture(String name) throws Exception {
+    return Paths.get(MultiMetricEvalTest.class.getResource("fixture." + name).toURI());
+  }
+
+  @Test
+  public void testMetricNamesIgnoreDefaultLocale() {
+    List<ResultDoc> rankingList = new ArrayList<>();
+    rankingList.add(new ResultDoc("d1", 2.0));
+    rankingList.add(new ResultDoc("d2", 1.0));
+    Map<String, Integer> judgments = new TreeMap<>();
+    judgments.put("d2", 1);
+
+    // Lower-casing "I" in Turkish gives a dotless i, which matches no metric
+    Locale previous = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      MultiMetricEval eval = new MultiMetricEval("MAP", "RECIP_RANK", "INFAP", "NUM_RET");
+      assertArrayEquals(new double[] {0.5, 0.5, 0.5, 2.0}, eval.evaluate(rankingList, judgments), DELTA);
+    } finally {
+      Locale.setDefault(previous);
+    }
+  }
+
+  /**
+   * Checks the new measures against the output of the reference tools, trec_eval 9.0 (as shipped in
+   * eval/) for rprec, bpref, infap and recip_rank, and gdeval.pl for err. Both print 4 or 5 decimals.
+   * The fixture has ties in scores, a query with nothing relevant, a judged query that isn't in the
+   * run, a short run, negative grades and grades up to 4.
+   */
+  @Test
+  public void testMatchesReferenceTools() throws Exception {
+    String[] metrics = {"rprec", "bpref", "infap", "recip_rank", "err.20", "err"};
+    MultiMetricEval eval = new MultiMetricEval(metrics);
+    QueryJudgments judgments = new QueryJudgments(fixture("qrels").toString());
+    RankingResults run = new RankingResults(fixture("run").toString(), judgments.getDictionary());
+    Map<String, double[]> perQuery = eval.evaluate(run, judgments);
+    double[] aggregated = eval.aggregate(perQuery);
+
+    // trec_eval -q -m num_q -m Rprec -m bpref -m infAP -m recip_rank
+    String[] trecEvalNames = {"Rprec", "bpref", "infAP", "recip_rank"};
+    int checked = 0;
+    for (String line : Files.readAllLines(fixture("trec_eval"), StandardCharsets.UTF_8)) {
+      String[] fields = line.trim().split("\\s+");
+      if (fields[0].equals("num_q")) {
+        assertEquals(Integer.parseInt(fields[2]), perQuery.size());
+        continue;
+      }
+      int m = Arrays.asList(trecEvalNames).indexOf(fields[0]);
+      double actual = fields[1].equals("all") ? aggregated[m] : perQuery.get(fields[1])[m];
+      assertEquals(line, Double.parseDouble(fields[2]), actual, 0.00005);
+      checked++;
+    }
+    assertEquals(4 * 8, checked);
+
+    // gdeval.pl -k 20, then -k 1000 for the full ranking. gdeval leaves out queries with nothing
+    // relevant, trec_eval (and so this class) averages over them as 0.
+    checked = 0;
+    int m = 4;
+    double sum = 0.0;
+    int count = 0;
+    for (String line : Files.readAllLines(fixture("gdeval"), StandardCharsets.UTF_8)) {
+      String[] fields = line.split(",");
+      if (fields[0].equals("runid")) {
+        continue;
+      }
+      double expected = Double.parseDouble(fields[3]);
+      if (fields[1].equals("amean")) {
+        assertEquals(line, expected, sum / count, 0.000005);
+        m++;
+        sum = 0.0;
+        count = 0;
+      } else {
+        double actual = perQuery.get(fields[1])[m];
+        assertEquals(line, expected, actual, 0.000005);
+        sum += actual;
+        count++;
+      }
+      checked++;
+    }
+    assertEquals(2 * 7, checked);
+    assertEquals(0.0, perQuery.get("104")[4], 0.0);
+    assertEquals(0.0, perQuery.get("104")[5], 0.0);
+  }
+}
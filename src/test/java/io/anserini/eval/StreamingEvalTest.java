@@ -0,0 +1,99 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.eval;
+
+import io.anserini.rerank.ScoredDocuments;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class StreamingEvalTest extends LuceneTestCase {
+  private static final double DELTA = 1e-9;
+  private static final String[] METRICS = {"num_ret", "num_rel_ret", "map", "p.2", "ndcg.3"};
+
+  private static ScoredDocuments scoredDocuments(String[] docids, float[] scores) {
+    ScoredDocuments docs = new ScoredDocuments();
+    docs.documents = new Document[docids.length];
+    docs.ids = new int[docids.length];
+    docs.scores = scores;
+    for (int i = 0; i < docids.length; i++) {
+      docs.documents[i] = new Document();
+      docs.documents[i].add(new StringField("id", docids[i], Field.Store.YES));
+      docs.ids[i] = i;
+    }
+    return docs;
+  }
+
+  @Test
+  public void testMatchesRunFile() throws IOException {
+    Path qrelFile = createTempDir().resolve("qrels.txt");
+    Files.write(qrelFile, Arrays.asList("1 0 d1 1", "1 0 d3 2", "1 0 d4 0", "2 0 d2 1", "3 0 d1 1"),
+        StandardCharsets.UTF_8);
+    QueryJudgments qrels = new QueryJudgments(qrelFile.toString());
+    StreamingEval eval = new StreamingEval(qrels, "id", METRICS);
+
+    // Out of score order, with a tie that the docid breaks, and a document that isn't judged
+    ScoredDocuments first = scoredDocuments(new String[] {"d4", "d1", "d3", "d9"}, new float[] {2.0f, 3.0f, 2.0f, 1.0f});
+    ScoredDocuments second = scoredDocuments(new String[] {"d5", "d2"}, new float[] {1.5f, 0.5f});
+    assertNotNull(eval.add("1", first));
+    assertNotNull(eval.add("2", second));
+    // Not judged, and judged but without results
+    assertNull(eval.add("4", second));
+    assertNull(eval.add("3", scoredDocuments(new String[0], new float[0])));
+
+    Map<String, List<ResultDoc>> run = new TreeMap<>();
+    run.put("1", new ArrayList<>(Arrays.asList(new ResultDoc("d4", 2.0), new ResultDoc("d1", 3.0),
+        new ResultDoc("d3", 2.0), new ResultDoc("d9", 1.0))));
+    run.put("2", new ArrayList<>(Arrays.asList(new ResultDoc("d5", 1.5), new ResultDoc("d2", 0.5))));
+    for (List<ResultDoc> results : run.values()) {
+      Collections.sort(results);
+    }
+    MultiMetricEval batch = new MultiMetricEval(METRICS);
+    Map<String, double[]> expected = batch.evaluate(run, qrels.getQrels());
+
+    Map<String, double[]> actual = eval.getPerQuery();
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String qid : expected.keySet()) {
+      assertArrayEquals(expected.get(qid), actual.get(qid), DELTA);
+    }
+    assertArrayEquals(batch.aggregate(expected), eval.getAggregated(), DELTA);
+    // d4 ranks above d3 on the tie, so the relevant documents are at ranks 1 and 3
+    assertEquals((1.0 + 2.0 / 3) / 2, actual.get("1")[2], DELTA);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    eval.print(false, new PrintStream(bytes, true, "UTF-8"));
+    String[] lines = bytes.toString("UTF-8").split("\n");
+    assertEquals(METRICS.length, lines.length);
+    assertTrue(lines[2].startsWith("map"));
+    assertTrue(lines[2].endsWith(String.format("all\t%.4f", batch.aggregate(expected)[2])));
+  }
+}
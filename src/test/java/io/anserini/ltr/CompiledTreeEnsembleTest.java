@@ -0,0 +1,154 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.ltr;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.Ranker;
+import ciir.umass.edu.learning.RankerFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompiledTreeEnsembleTest {
+  private static final double DELTA = 1e-6;
+
+  private static final String MODEL =
+      "<ensemble>\n" +
+      "  <tree id=\"1\" weight=\"0.1\">\n" +
+      "    <split>\n" +
+      "      <feature> 1 </feature>\n" +
+      "      <threshold> 0.5 </threshold>\n" +
+      "      <split pos=\"left\">\n" +
+      "        <output> 1.0 </output>\n" +
+      "      </split>\n" +
+      "      <split pos=\"right\">\n" +
+      "        <feature> 2 </feature>\n" +
+      "        <threshold> 2.0 </threshold>\n" +
+      "        <split pos=\"left\">\n" +
+      "          <output> 2.0 </output>\n" +
+      "        </split>\n" +
+      "        <split pos=\"right\">\n" +
+      "          <output> 3.0 </output>\n" +
+      "        </split>\n" +
+      "      </split>\n" +
+      "    </split>\n" +
+      "  </tree>\n" +
+      "  <tree id=\"2\" weight=\"0.5\">\n" +
+      "    <split>\n" +
+      "      <feature> 3 </feature>\n" +
+      "      <threshold> 0.0 </threshold>\n" +
+      "      <split pos=\"left\">\n" +
+      "        <output> -1.0 </output>\n" +
+      "      </split>\n" +
+      "      <split pos=\"right\">\n" +
+      "        <output> 1.0 </output>\n" +
+      "      </split>\n" +
+      "    </split>\n" +
+      "  </tree>\n" +
+      "</ensemble>\n";
+
+  @Test
+  public void testScore() throws IOException {
+    CompiledTreeEnsemble model = CompiledTreeEnsemble.fromXml(MODEL);
+    assertEquals(2, model.getNumTrees());
+    assertTrue(model.usesQuickScorer());
+
+    // Values equal to the threshold go left
+    assertEquals(-0.4, model.score(new float[] {0.5f, 9.0f, 0.0f}), DELTA);
+    assertEquals(0.7, model.score(new float[] {1.0f, 2.0f, 1.0f}), DELTA);
+    // Missing features count as 0
+    assertEquals(-0.2, model.score(new float[] {1.0f, 3.0f}), DELTA);
+    // So do NaNs
+    assertEquals(0.6, model.score(new float[] {Float.NaN, 0.0f, 5.0f}), DELTA);
+  }
+
+  @Test
+  public void testLargeTrees() throws IOException {
+    // 64 leaves fit the QuickScorer layout, 128 leaves need the traversal fallback
+    for (int depth : new int[] {6, 7}) {
+      int leaves = 1 << depth;
+      CompiledTreeEnsemble model = CompiledTreeEnsemble.fromXml(
+          "<ensemble><tree id=\"1\" weight=\"0.5\">" + balancedTree(0, leaves) + "</tree></ensemble>");
+      assertEquals(depth == 6, model.usesQuickScorer());
+
+      for (int i = 0; i < leaves; i++) {
+        assertEquals(i * 0.5, model.score(new float[] {i}), DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void testMatchesRankLib() throws IOException {
+    Random random = new Random(11);
+    // Enough trees that double and float accumulation would part ways, some too deep for QuickScorer
+    for (int depth : new int[] {4, 7}) {
+      StringBuilder model = new StringBuilder("## LambdaMART\n## No. of trees = 200\n<ensemble>\n");
+      for (int t = 0; t < 200; t++) {
+        model.append("<tree id=\"").append(t + 1).append("\" weight=\"0.1\">")
+            .append(randomTree(random, depth)).append("</tree>\n");
+      }
+      model.append("</ensemble>\n");
+
+      Path modelFile = Files.createTempFile("lambdamart", ".txt");
+      try {
+        Files.write(modelFile, model.toString().getBytes(StandardCharsets.UTF_8));
+        CompiledTreeEnsemble compiled = CompiledTreeEnsemble.load(modelFile.toString());
+        assertEquals(depth == 4, compiled.usesQuickScorer());
+        Ranker ranker = new RankerFactory().loadRanker(modelFile.toString());
+
+        for (int i = 0; i < 1000; i++) {
+          float[] features = new float[5];
+          for (int f = 0; f < features.length; f++) {
+            // Draw from the thresholds' grid half of the time, so values land exactly on them
+            features[f] = random.nextBoolean() ? random.nextInt(8) / 8.0f : random.nextFloat();
+          }
+          DataPoint point = new DataPoint(BaseFeatureExtractor.constructOutputString("0", 0, "0", features));
+          assertEquals((float) ranker.eval(point), (float) compiled.score(features), 0.0f);
+        }
+      } finally {
+        Files.delete(modelFile);
+      }
+    }
+  }
+
+  private static String randomTree(Random random, int depth) {
+    if (depth == 0 || random.nextInt(5) == 0) {
+      return "<split><output>" + (random.nextFloat() * 4 - 2) + "</output></split>";
+    }
+    String left = randomTree(random, depth - 1).replaceFirst("<split>", "<split pos=\"left\">");
+    String right = randomTree(random, depth - 1).replaceFirst("<split>", "<split pos=\"right\">");
+    return "<split><feature>" + (1 + random.nextInt(5)) + "</feature><threshold>" + (random.nextInt(8) / 8.0f) +
+        "</threshold>" + left + right + "</split>";
+  }
+
+  // A tree over feature 1 whose leaf i is reached when the feature value is i, with output i.
+  private static String balancedTree(int from, int to) {
+    if (to - from == 1) {
+      return "<split><output>" + from + "</output></split>";
+    }
+    int mid = (from + to) / 2;
+    String left = balancedTree(from, mid).replaceFirst("<split>", "<split pos=\"left\">");
+    String right = balancedTree(mid, to).replaceFirst("<split>", "<split pos=\"right\">");
+    return "<split><feature>1</feature><threshold>" + (mid - 0.5) + "</threshold>" + left + right + "</split>";
+  }
+}
@@ -0,0 +1,120 @@
+package io.anserini.ltr;
+
+import io.anserini.ltr.feature.CooccurrenceTable;
+import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.ltr.feature.base.PMIFeatureExtractor;
+import io.anserini.rerank.RerankerContext;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CooccurrenceTableTest extends BaseFeatureExtractorTest {
+
+  private static final List<String> DOCS = Arrays.asList(
+      "test document",
+      "document token",
+      "document no match",
+      "test",
+      "no match token",
+      "no match document token",
+      "just another document");
+
+  private List<Document> addDocs() throws IOException {
+    List<Document> docs = new ArrayList<>();
+    for (String text : DOCS) {
+      docs.add(addTestDocument(text));
+    }
+    return docs;
+  }
+
+  private static int countBruteForce(String first, String second) {
+    int count = 0;
+    for (String text : DOCS) {
+      List<String> tokens = Arrays.asList(text.split(" "));
+      if (tokens.contains(first) && tokens.contains(second)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testCountsMatchIntersection() throws IOException {
+    addDocs();
+    RerankerContext context = makeTestContext("test");
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    Path table = createTempDir().resolve("pairs.cooc");
+    // "no" is a stopword, which leaves 6 terms
+    assertEquals(15, BuildCooccurrenceTable.build(reader, TEST_FIELD_NAME, 100, table));
+
+    CooccurrenceTable counts = CooccurrenceTable.open(table);
+    assertTrue(counts.matches(reader, TEST_FIELD_NAME));
+    List<String> terms = Arrays.asList("test", "document", "token", "match");
+    for (String first : terms) {
+      for (String second : terms) {
+        if (first.equals(second)) {
+          continue;
+        }
+        int expected = countBruteForce(first, second);
+        assertEquals(expected, CooccurrenceTable.countLive(reader, TEST_FIELD_NAME, first, second));
+        assertEquals(expected, counts.get(first, second));
+      }
+    }
+    assertEquals(-1, counts.get("test", "missing"));
+    assertEquals(0, CooccurrenceTable.countLive(reader, TEST_FIELD_NAME, "test", "missing"));
+  }
+
+  @Test
+  public void testOnlyFrequentTerms() throws IOException {
+    addDocs();
+    IndexReader reader = makeTestContext("test").getIndexSearcher().getIndexReader();
+    Path table = createTempDir().resolve("pairs.cooc");
+    // document: 5, then match and token: 3
+    assertEquals(3, BuildCooccurrenceTable.build(reader, TEST_FIELD_NAME, 3, table));
+
+    CooccurrenceTable counts = CooccurrenceTable.open(table);
+    assertEquals(2, counts.get("document", "token"));
+    assertEquals(-1, counts.get("test", "document"));
+  }
+
+  @Test
+  public void testTermLimit() throws IOException {
+    // The pairs of the most terms allowed still fit in a table
+    long pairs = (long) BuildCooccurrenceTable.MAX_TERMS * (BuildCooccurrenceTable.MAX_TERMS - 1) / 2;
+    assertTrue(pairs <= 1L << 29);
+
+    addDocs();
+    IndexReader reader = makeTestContext("test").getIndexSearcher().getIndexReader();
+    for (int numTerms : new int[] {BuildCooccurrenceTable.MAX_TERMS + 1, 0, -1}) {
+      try {
+        BuildCooccurrenceTable.build(reader, TEST_FIELD_NAME, numTerms, createTempDir().resolve("pairs.cooc"));
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains(String.valueOf(BuildCooccurrenceTable.MAX_TERMS)));
+        assertTrue(e.getMessage().endsWith("got " + numTerms));
+      }
+    }
+  }
+
+  @Test
+  public void testPMIWithTable() throws IOException {
+    List<Document> docs = addDocs();
+    testWriter.forceMerge(1);
+    RerankerContext context = makeTestContext("test document token");
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    Path table = createTempDir().resolve("pairs.cooc");
+    BuildCooccurrenceTable.build(reader, TEST_FIELD_NAME, 100, table);
+
+    Terms terms = reader.getTermVector(0, TEST_FIELD_NAME);
+    FeatureExtractors withTable = getChain(new PMIFeatureExtractor(table.toString()));
+    float[] expected = {-1.43916f};
+    assertArrayEquals(expected, withTable.extractAll(docs.get(0), terms, context), DELTA);
+  }
+}
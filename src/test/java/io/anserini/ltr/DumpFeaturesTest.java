@@ -0,0 +1,183 @@
+package io.anserini.ltr;
+
+import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.ltr.feature.base.BM25FeatureExtractor;
+import io.anserini.ltr.feature.base.DocSizeFeatureExtractor;
+import io.anserini.ltr.feature.base.TermFrequencyFeatureExtractor;
+import io.anserini.util.Qrels;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.SuppressSysoutChecks;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_BODY;
+import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_ID;
+
+@SuppressSysoutChecks(bugUrl = "none, progress logging of the feature dump")
+public class DumpFeaturesTest extends LuceneTestCase {
+  private static final String[] VOCABULARY = {"river", "bank", "money", "loan", "water", "fish", "boat", "rate"};
+
+  private Directory directory;
+  private IndexReader reader;
+  private WebFeatureExtractor extractor;
+  private List<String> expected;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    Random random = new Random(3);
+
+    FieldType fieldType = new FieldType();
+    fieldType.setStored(true);
+    fieldType.setStoreTermVectors(true);
+    fieldType.setStoreTermVectorPositions(true);
+    fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+
+    directory = new RAMDirectory();
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new EnglishAnalyzer()))) {
+      for (int i = 0; i < 200; i++) {
+        StringBuilder text = new StringBuilder();
+        int length = 5 + random.nextInt(20);
+        for (int j = 0; j < length; j++) {
+          text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(' ');
+        }
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, String.format("doc%03d", i), Field.Store.YES));
+        doc.add(new Field(FIELD_BODY, text.toString(), fieldType));
+        writer.addDocument(doc);
+      }
+    }
+    reader = DirectoryReader.open(directory);
+
+    // Enough judgments per query for several blocks, and one document that isn't in the index
+    List<String> qrelsLines = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      qrelsLines.add("101 0 " + String.format("doc%03d", i) + " " + random.nextInt(3));
+      if (i % 3 == 0) {
+        qrelsLines.add("102 0 " + String.format("doc%03d", i) + " " + random.nextInt(3));
+      }
+    }
+    qrelsLines.add("102 0 doc999 1");
+    Path qrelsFile = createTempDir().resolve("qrels.txt");
+    Files.write(qrelsFile, qrelsLines, StandardCharsets.UTF_8);
+
+    Map<String, String> topics = new HashMap<>();
+    topics.put("101", "river bank");
+    topics.put("102", "money loan rate");
+
+    FeatureExtractors chain = FeatureExtractors.createFeatureExtractorChain(new TermFrequencyFeatureExtractor(),
+        new BM25FeatureExtractor(), new DocSizeFeatureExtractor());
+    extractor = new WebFeatureExtractor(reader, Qrels.read(qrelsFile.toString(), true, false), topics, chain);
+
+    // The clean sequential output everything is compared against
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (PrintStream out = new PrintStream(bytes, false, "UTF-8")) {
+      extractor.printFeatures(out);
+    }
+    expected = Arrays.asList(new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+    assertEquals(4 + 200 + 67, expected.size());
+  }
+
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    reader.close();
+    directory.close();
+    super.tearDown();
+  }
+
+  @Test
+  public void testDump() throws IOException {
+    Path output = createTempDir().resolve("features.txt");
+    extractor.dumpFeatures(output, 4, false);
+    assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+
+    // Nothing is missing, so resuming leaves the file as it is
+    extractor.dumpFeatures(output, 4, true);
+    assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+
+    // Resuming without an output starts from scratch
+    Path missing = createTempDir().resolve("missing.txt");
+    extractor.dumpFeatures(missing, 2, true);
+    assertEquals(expected, Files.readAllLines(missing, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    Path output = createTempDir().resolve("features.txt");
+    extractor.dumpFeatures(output, 3, false);
+    byte[] full = Files.readAllBytes(output);
+
+    // Cut off mid-line halfway through and near the end, then right after a complete line
+    int middle = full.length / 2;
+    while (full[middle - 1] == '\n') {
+      middle++;
+    }
+    int lineEnd = full.length / 3;
+    while (full[lineEnd - 1] != '\n') {
+      lineEnd++;
+    }
+    for (int cut : new int[] {middle, full.length - 5, lineEnd}) {
+      try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+        channel.truncate(cut);
+      }
+      extractor.dumpFeatures(output, 3, true);
+      assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testResumeWithinHeader() throws IOException {
+    Path output = createTempDir().resolve("features.txt");
+    extractor.dumpFeatures(output, 3, false);
+    byte[] full = Files.readAllBytes(output);
+    int firstLine = 0;
+    while (full[firstLine] != '\n') {
+      firstLine++;
+    }
+
+    // Cut within the first line, which leaves nothing, and after the first line of the header,
+    // which leaves only part of it
+    for (int cut : new int[] {firstLine / 2, firstLine + 1}) {
+      try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+        channel.truncate(cut);
+      }
+      extractor.dumpFeatures(output, 3, true);
+      assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+    }
+
+    // An empty output is also started over
+    Files.write(output, new byte[0]);
+    extractor.dumpFeatures(output, 3, true);
+    assertEquals(expected, Files.readAllLines(output, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,122 @@
+package io.anserini.ltr;
+
+import io.anserini.ltr.feature.DocumentContext;
+import io.anserini.ltr.feature.FeatureCache;
+import io.anserini.ltr.feature.FeatureExtractor;
+import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.ltr.feature.base.BM25FeatureExtractor;
+import io.anserini.ltr.feature.base.DocSizeFeatureExtractor;
+import io.anserini.rerank.RerankerContext;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Terms;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class FeatureCacheTest extends BaseFeatureExtractorTest {
+
+  /**
+   * Counts how many times it was asked for a value
+   */
+  public static class CountingExtractor implements FeatureExtractor {
+    static int calls = 0;
+
+    @Override
+    public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+      calls++;
+      return 42.0f;
+    }
+
+    @Override
+    public String getName() {
+      return "Counting";
+    }
+  }
+
+  private float[] extract(FeatureExtractors chain, Path cacheDir, Document doc, Terms terms, RerankerContext context)
+      throws IOException {
+    try (FeatureCache cache = new FeatureCache(cacheDir)) {
+      return chain.extractAll(doc, terms, context, cache.bind(chain), "doc0");
+    }
+  }
+
+  @Test
+  public void testCachedValuesAreReused() throws IOException {
+    Document doc = addTestDocument("document test");
+    addTestDocument("another document");
+    testWriter.forceMerge(1);
+    RerankerContext context = makeTestContext("document test");
+    Terms terms = context.getIndexSearcher().getIndexReader().getTermVector(0, TEST_FIELD_NAME);
+    Path cacheDir = createTempDir();
+
+    FeatureExtractors chain = getChain(new CountingExtractor(), new BM25FeatureExtractor());
+    float[] expected = chain.extractAll(doc, terms, context);
+    CountingExtractor.calls = 0;
+
+    assertArrayEquals(expected, extract(chain, cacheDir, doc, terms, context), 0.0f);
+    assertEquals(1, CountingExtractor.calls);
+
+    // A second run reads every value back
+    assertArrayEquals(expected, extract(chain, cacheDir, doc, terms, context), 0.0f);
+    assertEquals(1, CountingExtractor.calls);
+
+    // Adding an extractor only computes the new one
+    FeatureExtractors grown = getChain(new CountingExtractor(), new BM25FeatureExtractor(),
+        new DocSizeFeatureExtractor());
+    float[] values = extract(grown, cacheDir, doc, terms, context);
+    assertEquals(1, CountingExtractor.calls);
+    assertEquals(expected[1], values[1], 0.0f);
+    assertEquals(2.0f, values[2], DELTA);
+  }
+
+  /**
+   * Counts its calls too, but has no value to give
+   */
+  public static class NaNExtractor implements FeatureExtractor {
+    static int calls = 0;
+
+    @Override
+    public float extract(Document doc, DocumentContext docContext, RerankerContext context) {
+      calls++;
+      return Float.NaN;
+    }
+
+    @Override
+    public String getName() {
+      return "NaN";
+    }
+  }
+
+  @Test
+  public void testNaNIsCached() throws IOException {
+    Document doc = addTestDocument("document test");
+    testWriter.forceMerge(1);
+    RerankerContext context = makeTestContext("document test");
+    Terms terms = context.getIndexSearcher().getIndexReader().getTermVector(0, TEST_FIELD_NAME);
+    Path cacheDir = createTempDir();
+
+    FeatureExtractors chain = getChain(new NaNExtractor(), new BM25FeatureExtractor());
+    NaNExtractor.calls = 0;
+    float[] first = extract(chain, cacheDir, doc, terms, context);
+    assertTrue(Float.isNaN(first[0]));
+    assertEquals(1, NaNExtractor.calls);
+
+    // A NaN read back from the cache is a value like any other, not a miss
+    float[] second = extract(chain, cacheDir, doc, terms, context);
+    assertTrue(Float.isNaN(second[0]));
+    assertEquals(first[1], second[1], 0.0f);
+    assertEquals(1, NaNExtractor.calls);
+  }
+
+  @Test
+  public void testKeys() {
+    FeatureExtractor bm25 = new BM25FeatureExtractor();
+    assertEquals(FeatureCache.configKey(bm25), FeatureCache.configKey(new BM25FeatureExtractor()));
+    assertFalse(FeatureCache.configKey(bm25).equals(FeatureCache.configKey(new BM25FeatureExtractor(0.9, 0.4))));
+    assertFalse(FeatureCache.configKey(bm25).equals(FeatureCache.configKey(new DocSizeFeatureExtractor())));
+
+    assertEquals(FeatureCache.key("query", "doc"), FeatureCache.key("query", "doc"));
+    assertFalse(FeatureCache.key("query", "doc") == FeatureCache.key("query", "doc2"));
+  }
+}
@@ -0,0 +1,51 @@
+package io.anserini.ltr;
+
+import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.ltr.feature.OrderedSequentialPairsFeatureExtractor;
+import io.anserini.ltr.feature.SequentialDependenceModel;
+import io.anserini.ltr.feature.UnorderedQueryPairsFeatureExtractor;
+import io.anserini.ltr.feature.base.BM25FeatureExtractor;
+import io.anserini.ltr.feature.base.DocSizeFeatureExtractor;
+import io.anserini.ltr.feature.base.UniqueTermCount;
+import io.anserini.rerank.RerankerContext;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FeatureExtractorsTest extends BaseFeatureExtractorTest {
+
+  @Test
+  public void testReusedBufferMatchesFreshExtraction() throws IOException {
+    List<String> docTexts = Arrays.asList(
+        "the quick brown fox jumped over the lazy dog",
+        "fox",
+        "a dog and a fox and another quick dog, brown like the fox");
+    List<Document> docs = new ArrayList<>();
+    for (String docText : docTexts) {
+      docs.add(addTestDocument(docText));
+    }
+    testWriter.forceMerge(1);
+
+    FeatureExtractors chain = getChain(new BM25FeatureExtractor(), new DocSizeFeatureExtractor(),
+        new UniqueTermCount(), new OrderedSequentialPairsFeatureExtractor(2),
+        new UnorderedQueryPairsFeatureExtractor(3), new SequentialDependenceModel(0.5f, 0.2f, 0.3f));
+    float[] buffer = new float[chain.extractors.size()];
+
+    // Queries of different lengths against documents of different lengths, so stale state from the
+    // previous document or query would show up
+    for (String queryText : Arrays.asList("quick brown fox dog", "fox", "lazy dog fox dog")) {
+      RerankerContext context = makeTestContext(queryText);
+      IndexReader reader = context.getIndexSearcher().getIndexReader();
+      for (int i = 0; i < docs.size(); i++) {
+        float[] expected = chain.copy().extractAll(docs.get(i), reader.getTermVector(i, TEST_FIELD_NAME), context);
+        chain.extractAll(docs.get(i), reader.getTermVector(i, TEST_FIELD_NAME), context, buffer);
+        assertArrayEquals(expected, buffer, 0.0f);
+      }
+    }
+  }
+}
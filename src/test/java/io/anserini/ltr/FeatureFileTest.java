@@ -0,0 +1,135 @@
+/**
+ * Anserini: An information retrieval toolkit built on Lucene
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.anserini.ltr;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FeatureFileTest {
+  private static final float DELTA = 0.0f;
+
+  private static Path tempFile() throws IOException {
+    Path dir = Files.createTempDirectory("features");
+    dir.toFile().deleteOnExit();
+    Path file = dir.resolve("features.bin");
+    file.toFile().deleteOnExit();
+    return file;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path file = tempFile();
+    try (FeatureFileWriter writer = new FeatureFileWriter(file, Arrays.asList("BM25Feature", "DocSize"))) {
+      writer.add("301", "doc1", 2, new float[] {1.5f, 100.0f});
+      writer.add("301", "doc2", 0, new float[] {0.25f, 42.0f});
+      writer.add("302", "doc1", -2, new float[] {Float.MIN_VALUE, 0.0f});
+    }
+
+    assertTrue(FeatureFile.isBinary(file));
+    try (FeatureFileReader reader = new FeatureFileReader(file)) {
+      assertEquals(3, reader.getNumRows());
+      assertEquals(Arrays.asList("BM25Feature", "DocSize"), reader.getFeatureNames());
+
+      assertEquals("301", reader.getQid(1));
+      assertEquals("doc2", reader.getDocid(1));
+      assertEquals("302", reader.getQid(2));
+      assertEquals("doc1", reader.getDocid(2));
+      assertEquals(2, reader.getLabel(0));
+      assertEquals(-2, reader.getLabel(2));
+
+      assertArrayEquals(new float[] {0.25f, 42.0f}, reader.getFeatures(1, new float[2]), DELTA);
+      // Floats are stored as is, not through their string form
+      assertEquals(Float.MIN_VALUE, reader.getFeature(2, 0), DELTA);
+
+      float[] column = new float[3];
+      reader.getColumn(1).get(column);
+      assertArrayEquals(new float[] {100.0f, 42.0f, 0.0f}, column, DELTA);
+    }
+  }
+
+  @Test
+  public void testGrowingFeatures() throws IOException {
+    Path file = tempFile();
+    try (FeatureFileWriter writer = new FeatureFileWriter(file, Arrays.asList("a"))) {
+      writer.add("1", "d1", 1, new float[] {1.0f});
+      writer.add("1", "d2", 0, new float[] {2.0f, 3.0f, 4.0f});
+      writer.add("1", "d3", 0, new float[] {});
+    }
+
+    try (FeatureFileReader reader = new FeatureFileReader(file)) {
+      assertEquals(Arrays.asList("a", "2", "3"), reader.getFeatureNames());
+      assertArrayEquals(new float[] {1.0f, 0.0f, 0.0f}, reader.getFeatures(0, new float[3]), DELTA);
+      assertArrayEquals(new float[] {2.0f, 3.0f, 4.0f}, reader.getFeatures(1, new float[3]), DELTA);
+      assertArrayEquals(new float[] {0.0f, 0.0f, 0.0f}, reader.getFeatures(2, new float[3]), DELTA);
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    Path file = tempFile();
+    new FeatureFileWriter(file, Arrays.asList("a", "b")).close();
+
+    try (FeatureFileReader reader = new FeatureFileReader(file)) {
+      assertEquals(0, reader.getNumRows());
+      assertEquals(2, reader.getNumFeatures());
+    }
+  }
+
+  @Test
+  public void testTextIsNotBinary() throws IOException {
+    Path file = tempFile();
+    Files.write(file, "1 qid:1 1:0.5 # d1\n".getBytes(StandardCharsets.UTF_8));
+    assertFalse(FeatureFile.isBinary(file));
+  }
+
+  @Test
+  public void testSvmLightConversion() throws IOException {
+    Path text = tempFile();
+    Path binary = text.resolveSibling("features.converted");
+    binary.toFile().deleteOnExit();
+    Path back = text.resolveSibling("features.txt");
+    back.toFile().deleteOnExit();
+
+    List<String> lines = Arrays.asList(
+        "#Extracting features with the following feature vector:",
+        "#1:BM25Feature",
+        "#2:DocSize",
+        "1 qid:301 1:1.5 2:100.0 # doc1",
+        "0 qid:301 2:3.0 # doc2");
+    Files.write(text, lines, StandardCharsets.UTF_8);
+
+    assertEquals(2, FeatureFileConverter.toBinary(text, binary));
+    try (FeatureFileReader reader = new FeatureFileReader(binary)) {
+      assertEquals(Arrays.asList("BM25Feature", "DocSize"), reader.getFeatureNames());
+      assertEquals("doc2", reader.getDocid(1));
+      assertArrayEquals(new float[] {0.0f, 3.0f}, reader.getFeatures(1, new float[2]), DELTA);
+    }
+
+    assertEquals(2, FeatureFileConverter.toSvmLight(binary, back));
+    List<String> converted = Files.readAllLines(back, StandardCharsets.UTF_8);
+    assertEquals(lines.subList(0, 4), converted.subList(0, 4));
+    assertEquals("0 qid:301 1:0.0 2:3.0 # doc2", converted.get(4));
+  }
+}
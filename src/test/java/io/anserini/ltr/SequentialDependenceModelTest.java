@@ -0,0 +1,54 @@
+package io.anserini.ltr;
+
+import io.anserini.ltr.feature.SequentialDependenceModel;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Test the unordered window part of SDM, which counts each occurrence of the first query token
+ * once if the second is near it
+ */
+public class SequentialDependenceModelTest extends BaseFeatureExtractorTest {
+
+  // Only the unordered window score
+  private static SequentialDependenceModel unordered() {
+    return new SequentialDependenceModel(0.0f, 0.0f, 1.0f);
+  }
+
+  @Test
+  public void testRepeatedSecondTerm() throws IOException {
+    // One apple, near both bananas
+    float[] expected = {(float) Math.log(1.0 / 4)};
+    assertFeatureValues(expected, "apple banana", "apple banana banana", unordered());
+  }
+
+  @Test
+  public void testBothTermsRepeated() throws IOException {
+    // Each apple has a banana on either side, which counts once
+    float[] expected = {(float) Math.log(2.0 / 5)};
+    assertFeatureValues(expected, "apple banana", "banana apple banana apple", unordered());
+  }
+
+  @Test
+  public void testRepeatedQueryToken() throws IOException {
+    // Every banana has another one near it, but not itself
+    float[] expected = {(float) Math.log(3.0 / 5)};
+    assertFeatureValues(expected, "banana banana", "banana banana apple banana", unordered());
+  }
+
+  @Test
+  public void testSingleOccurrenceOfRepeatedQueryToken() throws IOException {
+    // A lone banana isn't near itself, so only the smoothing count is left
+    float[] expected = {(float) Math.log(1.0 / 4)};
+    assertFeatureValues(expected, "banana banana", "banana apple cherry", unordered());
+  }
+
+  @Test
+  public void testOutsideWindow() throws IOException {
+    // The second apple is 9 tokens from the banana, one past the window of 8
+    float[] expected = {(float) Math.log(1.0 / 12)};
+    assertFeatureValues(expected, "apple banana",
+        "apple banana cherry date elder fig grape kiwi lemon mango apple", unordered());
+  }
+}
@@ -0,0 +1,166 @@
+package io.anserini.ltr;
+
+import io.anserini.index.IndexTweets;
+import io.anserini.index.IndexTweets.StatusField;
+import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.ltr.feature.twitter.HashtagCount;
+import io.anserini.ltr.feature.twitter.IsTweetReply;
+import io.anserini.ltr.feature.twitter.LinkCount;
+import io.anserini.ltr.feature.twitter.TwitterFollowerCount;
+import io.anserini.ltr.feature.twitter.TwitterFriendCount;
+import io.anserini.rerank.RerankerContext;
+import io.anserini.util.Qrels;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TwitterFeaturesTest extends BaseFeatureExtractorTest {
+
+  private static final String REPLY_TEXT = "#fox sighted http://t.co/a #wildlife";
+  private static final String TWEET_TEXT = "no fox here";
+
+  private static Document tweet(String text, int followers, int friends, long inReplyTo) {
+    Document doc = new Document();
+    doc.add(new TextField(TEST_FIELD_NAME, text, Store.YES));
+    doc.add(new StoredField(StatusField.FOLLOWERS_COUNT.name, followers));
+    doc.add(new NumericDocValuesField(StatusField.FOLLOWERS_COUNT.name, followers));
+    doc.add(new StoredField(StatusField.FRIENDS_COUNT.name, friends));
+    doc.add(new NumericDocValuesField(StatusField.FRIENDS_COUNT.name, friends));
+    if (inReplyTo > 0) {
+      doc.add(new StoredField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyTo));
+      doc.add(new NumericDocValuesField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyTo));
+    }
+    doc.add(new NumericDocValuesField(StatusField.HASHTAG_COUNT.name, IndexTweets.countHashtags(text)));
+    doc.add(new NumericDocValuesField(StatusField.LINK_COUNT.name, IndexTweets.countLinks(text)));
+    return doc;
+  }
+
+  private static FeatureExtractors twitterChain() {
+    return getChain(new TwitterFollowerCount(), new TwitterFriendCount(), new IsTweetReply(),
+        new HashtagCount(), new LinkCount());
+  }
+
+  @Test
+  public void testCounts() {
+    assertEquals(2, IndexTweets.countHashtags(REPLY_TEXT));
+    assertEquals(1, IndexTweets.countLinks(REPLY_TEXT));
+    assertEquals(0, IndexTweets.countHashtags(TWEET_TEXT));
+    assertEquals(0, IndexTweets.countLinks(TWEET_TEXT));
+  }
+
+  @Test
+  public void testReadsDocValuesWithoutStoredFields() throws IOException {
+    testWriter.addDocument(tweet(TWEET_TEXT, 10, 20, 0));
+    testWriter.commit();
+    testWriter.addDocument(tweet(REPLY_TEXT, 300, 40, 12345L));
+    testWriter.commit();
+
+    RerankerContext context = makeTestContext("fox");
+    FeatureExtractors chain = twitterChain();
+    float[] features = new float[chain.extractors.size()];
+
+    // Nothing loaded from the stored fields, everything comes from doc values
+    chain.extractAll(new Document(), 0, null, context, features);
+    assertArrayEquals(new float[] {10.0f, 20.0f, 0.0f, 0.0f, 0.0f}, features, 0.0f);
+    chain.extractAll(new Document(), 1, null, context, features);
+    assertArrayEquals(new float[] {300.0f, 40.0f, 1.0f, 2.0f, 1.0f}, features, 0.0f);
+  }
+
+  @Test
+  public void testFallsBackToStoredFields() throws IOException {
+    Document doc = tweet(REPLY_TEXT, 300, 40, 12345L);
+    testWriter.addDocument(doc);
+    testWriter.commit();
+
+    // Without a docid the values come from the document itself
+    RerankerContext context = makeTestContext("fox");
+    float[] features = twitterChain().extractAll(doc, null, context);
+    assertArrayEquals(new float[] {300.0f, 40.0f, 1.0f, 2.0f, 1.0f}, features, 0.0f);
+  }
+
+  // A tweet as the indexer writes it, with or without doc values
+  private static Document indexedTweet(long id, String text, int followers, int friends, long inReplyTo,
+                                       boolean docValues) {
+    FieldType textType = new FieldType(TextField.TYPE_STORED);
+    textType.setStoreTermVectors(true);
+    textType.setStoreTermVectorPositions(true);
+
+    Document doc = docValues ? tweet(text, followers, friends, inReplyTo) : new Document();
+    if (docValues) {
+      doc.removeField(TEST_FIELD_NAME);
+    } else {
+      doc.add(new StoredField(StatusField.FOLLOWERS_COUNT.name, followers));
+      doc.add(new StoredField(StatusField.FRIENDS_COUNT.name, friends));
+      if (inReplyTo > 0) {
+        doc.add(new StoredField(StatusField.IN_REPLY_TO_STATUS_ID.name, inReplyTo));
+      }
+    }
+    doc.add(new Field(StatusField.TEXT.name, text, textType));
+    doc.add(new LongPoint(StatusField.ID.name, id));
+    doc.add(new StoredField(StatusField.ID.name, id));
+    return doc;
+  }
+
+  private List<String> dumpTwitterFeatures(boolean docValues) throws IOException {
+    testWriter.addDocument(indexedTweet(1L, TWEET_TEXT, 10, 20, 0, docValues));
+    testWriter.commit();
+    testWriter.addDocument(indexedTweet(2L, REPLY_TEXT, 300, 40, 12345L, docValues));
+    testWriter.commit();
+
+    Path qrelsFile = createTempDir().resolve("qrels.txt");
+    Files.write(qrelsFile, Arrays.asList("MB01 0 1 0", "MB01 0 2 1"), StandardCharsets.UTF_8);
+    Map<String, String> topics = new HashMap<>();
+    topics.put("MB01", "fox");
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (IndexReader reader = DirectoryReader.open(DIRECTORY);
+         PrintStream out = new PrintStream(bytes, false, "UTF-8")) {
+      new TwitterFeatureExtractor(reader, Qrels.read(qrelsFile.toString(), true, false), topics, twitterChain())
+          .printFeatures(out);
+    }
+    List<String> vectors = new ArrayList<>();
+    for (String line : new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+      if (!line.startsWith("#")) {
+        vectors.add(line);
+      }
+    }
+    return vectors;
+  }
+
+  @Test
+  public void testExtractsFromIndexWithoutDocValues() throws IOException {
+    // The stored fields are loaded and read instead
+    List<String> vectors = dumpTwitterFeatures(false);
+    assertEquals(Arrays.asList(
+        "0 qid:MB01 1:10.0 2:20.0 3:0.0 4:0.0 5:0.0 # 1",
+        "1 qid:MB01 1:300.0 2:40.0 3:1.0 4:2.0 5:1.0 # 2"), vectors);
+  }
+
+  @Test
+  public void testExtractsFromIndexWithDocValues() throws IOException {
+    List<String> vectors = dumpTwitterFeatures(true);
+    assertEquals(Arrays.asList(
+        "0 qid:MB01 1:10.0 2:20.0 3:0.0 4:0.0 5:0.0 # 1",
+        "1 qid:MB01 1:300.0 2:40.0 3:1.0 4:2.0 5:1.0 # 2"), vectors);
+  }
+}
@@ -0,0 +1,315 @@
+package io.anserini.nrts;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TweetSearcherServerTest extends LuceneTestCase {
+  private static final String[] TWEETS = {"apple pie", "apple juice", "banana bread", "apple and banana"};
+
+  private TweetSearcher searcher;
+  private TweetSearcherServer server;
+
+  /**
+   * Status, headers and body of a response read off a socket
+   */
+  private static final class Response {
+    final int status;
+    final Map<String, String> headers;
+    final String body;
+
+    Response(int status, Map<String, String> headers, String body) {
+      this.status = status;
+      this.headers = headers;
+      this.body = body;
+    }
+  }
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    searcher = new TweetSearcher(createTempDir().toString());
+    for (int i = 0; i < TWEETS.length; i++) {
+      Document doc = new Document();
+      doc.add(new LongPoint(TweetStreamIndexer.StatusField.ID.name, i));
+      doc.add(new StoredField(TweetStreamIndexer.StatusField.ID.name, i));
+      doc.add(new TextField(TweetStreamIndexer.StatusField.TEXT.name, TWEETS[i], Field.Store.YES));
+      TweetSearcher.indexWriter.addDocument(doc);
+    }
+    TweetSearcher.searcherManager.maybeRefreshBlocking();
+  }
+
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    if (server != null) {
+      server.close();
+      server.join(10000);
+      assertFalse(server.isAlive());
+    }
+    searcher.close();
+    super.tearDown();
+  }
+
+  private void startServer(int threads, int queueCapacity) throws IOException {
+    // Port 0 picks any free port
+    server = new TweetSearcherServer(0, threads, queueCapacity);
+    server.start();
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    socket.setSoTimeout(10000);
+    return socket;
+  }
+
+  private static String get(String target) {
+    return "GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+  }
+
+  private static void send(Socket socket, String... requests) throws IOException {
+    OutputStream out = socket.getOutputStream();
+    out.write(String.join("", requests).getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+  }
+
+  private static Response read(InputStream in) throws IOException {
+    ByteArrayOutputStream head = new ByteArrayOutputStream();
+    int matched = 0;
+    while (matched < 4) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Connection closed in a response head");
+      }
+      head.write(b);
+      matched = b == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : (b == '\r' ? 1 : 0);
+    }
+    String[] lines = new String(head.toByteArray(), StandardCharsets.ISO_8859_1).split("\r\n");
+    int status = Integer.parseInt(lines[0].split(" ")[1]);
+    Map<String, String> headers = new HashMap<>();
+    for (int i = 1; i < lines.length; i++) {
+      int colon = lines[i].indexOf(':');
+      headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+    }
+    byte[] body = new byte[Integer.parseInt(headers.get("content-length"))];
+    for (int n = 0; n < body.length; ) {
+      int read = in.read(body, n, body.length - n);
+      if (read < 0) {
+        throw new EOFException("Connection closed in a response body");
+      }
+      n += read;
+    }
+    return new Response(status, headers, new String(body, StandardCharsets.UTF_8));
+  }
+
+  private static void assertClosed(InputStream in) throws IOException {
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    startServer(2, 16);
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      send(socket, get("/search?query=apple"));
+      Response first = read(in);
+      assertEquals(200, first.status);
+      assertEquals("keep-alive", first.headers.get("connection"));
+      assertTrue(first.body.contains("Found 3 hits"));
+
+      // The same connection serves the next request
+      send(socket, get("/search?query=banana"));
+      Response second = read(in);
+      assertEquals(200, second.status);
+      assertTrue(second.body.contains("Found 2 hits"));
+
+      // Until the client asks for it to be closed
+      send(socket, "GET /search?query=bread HTTP/1.1\r\nConnection: close\r\n\r\n");
+      Response last = read(in);
+      assertEquals(200, last.status);
+      assertEquals("close", last.headers.get("connection"));
+      assertClosed(in);
+    }
+  }
+
+  @Test
+  public void testPipelined() throws Exception {
+    startServer(4, 16);
+    String[] queries = {"apple", "banana", "bread", "juice", "pie", "apple banana"};
+    String[] requests = new String[queries.length];
+    for (int i = 0; i < queries.length; i++) {
+      requests[i] = get("/search?query=" + queries[i].replace(' ', '+') + "&top=" + (i + 1));
+    }
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      // All in one write, so several searches are running at once
+      send(socket, requests);
+      for (int i = 0; i < queries.length; i++) {
+        Response response = read(in);
+        assertEquals(200, response.status);
+        // Answered in the order they were sent
+        assertTrue(response.body, response.body.contains("Query = \"" + queries[i] + "\""));
+      }
+    }
+  }
+
+  @Test
+  public void testBadTop() throws Exception {
+    startServer(1, 16);
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      for (String top : new String[] {"abc", "0", "-5", "99999999999"}) {
+        send(socket, get("/search?query=apple&top=" + top));
+        Response response = read(in);
+        assertEquals(top, 400, response.status);
+        // Still keeps the connection
+        assertEquals("keep-alive", response.headers.get("connection"));
+      }
+      send(socket, get("/search?query=apple&top=1"));
+      Response response = read(in);
+      assertEquals(200, response.status);
+      assertTrue(response.body.contains("Found 1 hits"));
+    }
+    assertEquals(5, server.getMetrics().requests.sum());
+  }
+
+  @Test
+  public void testQueueFull() throws Exception {
+    // Searches wait on a latch, so the one thread and the one slot in the queue stay taken
+    CountDownLatch release = new CountDownLatch(1);
+    SearcherManager blocking = new SearcherManager(TweetSearcher.indexWriter, true, true, new SearcherFactory() {
+      @Override
+      public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+        return new IndexSearcher(reader) {
+          @Override
+          public void search(Query query, Collector results) throws IOException {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            super.search(query, results);
+          }
+        };
+      }
+    });
+    SearcherManager original = TweetSearcher.searcherManager;
+    TweetSearcher.searcherManager = blocking;
+    try {
+      startServer(1, 1);
+      try (Socket socket = connect()) {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        send(socket, get("/search?query=apple"), get("/search?query=banana"), get("/search?query=bread"));
+        // The first runs, the second waits in the queue and the third is turned away
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.getMetrics().rejected.sum() == 0 && System.nanoTime() < deadline) {
+          Thread.sleep(5);
+        }
+        assertEquals(1, server.getMetrics().rejected.sum());
+        release.countDown();
+
+        int[] statuses = new int[3];
+        for (int i = 0; i < statuses.length; i++) {
+          statuses[i] = read(in).status;
+        }
+        assertArrayEquals(new int[] {200, 200, 503}, statuses);
+
+        // Rejected searches are counted apart from those served
+        send(socket, get("/metrics"));
+        Response metrics = read(in);
+        assertEquals(200, metrics.status);
+        assertTrue(metrics.body, metrics.body.startsWith("requests 2\nrejected 1\n"));
+        assertTrue(metrics.body, metrics.body.contains("queue_wait_us count 2 "));
+        assertTrue(metrics.body, metrics.body.contains("service_time_us count 2 "));
+      }
+    } finally {
+      release.countDown();
+      TweetSearcher.searcherManager = original;
+      blocking.close();
+    }
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    startServer(2, 16);
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      send(socket, get("/search?query=apple"), get("/search?query=banana"), get("/search?query=pie"),
+          get("/nothing"));
+      for (int i = 0; i < 3; i++) {
+        assertEquals(200, read(in).status);
+      }
+      assertEquals(404, read(in).status);
+      // Searches are counted before they are answered, and anything but a search isn't
+      send(socket, get("/metrics"));
+      Response metrics = read(in);
+      assertEquals(200, metrics.status);
+      assertTrue(metrics.body, metrics.body.startsWith("requests 3\nrejected 0\n"));
+      assertTrue(metrics.body, metrics.body.contains("queue_wait_us count 3 "));
+      assertTrue(metrics.body, metrics.body.contains("service_time_us count 3 "));
+    }
+    assertEquals(3, server.getMetrics().requests.sum());
+    assertEquals(3, server.getMetrics().serviceTime.getCount());
+  }
+
+  @Test
+  public void testHeadTooLarge() throws Exception {
+    startServer(1, 16);
+    try (Socket socket = connect()) {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      // Exactly as much as the server reads, with no end to the head
+      char[] padding = new char[8192 - "GET /search?query=".length()];
+      Arrays.fill(padding, 'a');
+      send(socket, "GET /search?query=" + new String(padding));
+      Response response = read(in);
+      assertEquals(431, response.status);
+      assertEquals("close", response.headers.get("connection"));
+      assertClosed(in);
+    }
+  }
+
+  @Test
+  public void testBodyTooLarge() throws Exception {
+    startServer(1, 16);
+    for (String length : new String[] {"10000", "-1", "lots"}) {
+      try (Socket socket = connect()) {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        send(socket, "GET /search?query=apple HTTP/1.1\r\nContent-Length: " + length + "\r\n\r\n");
+        Response response = read(in);
+        assertEquals(length, 413, response.status);
+        assertEquals("close", response.headers.get("connection"));
+        assertClosed(in);
+      }
+    }
+    assertEquals(0, server.getMetrics().requests.sum());
+  }
+}
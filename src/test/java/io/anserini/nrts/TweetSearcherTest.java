@@ -0,0 +1,108 @@
+package io.anserini.nrts;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.SuppressSysoutChecks;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@SuppressSysoutChecks(bugUrl = "none, stack traces of the failed requests")
+public class TweetSearcherTest extends LuceneTestCase {
+  private static final long STALENESS_MS = 50;
+  // Slack for the reopen thread to be scheduled on a busy machine
+  private static final long DEADLINE_MS = STALENESS_MS * 100;
+
+  private static void addTweet(long id, String text) throws IOException {
+    Document doc = new Document();
+    doc.add(new LongPoint(TweetStreamIndexer.StatusField.ID.name, id));
+    doc.add(new StoredField(TweetStreamIndexer.StatusField.ID.name, id));
+    doc.add(new TextField(TweetStreamIndexer.StatusField.TEXT.name, text, Field.Store.YES));
+    TweetSearcher.indexWriter.addDocument(doc);
+  }
+
+  private static List<TweetSearcherAPI.SearchResult> search(String query, int count) {
+    return new TweetSearcherAPI().search(new TweetSearcherAPI.SearchAPIQuery(query, count));
+  }
+
+  @Test
+  public void testNewTweetsBecomeVisible() throws Exception {
+    TweetSearcher searcher = new TweetSearcher(createTempDir().toString(), STALENESS_MS);
+    try {
+      addTweet(1L, "first tweet about lucene");
+      // Nothing is committed or refreshed by hand, only the reopen thread makes the tweet visible
+      long start = System.nanoTime();
+      List<TweetSearcherAPI.SearchResult> results = search("lucene", 10);
+      while (results.isEmpty() && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < DEADLINE_MS) {
+        Thread.sleep(5);
+        results = search("lucene", 10);
+      }
+      assertEquals(1, results.size());
+      assertEquals("1", results.get(0).getDocid());
+
+      addTweet(2L, "second tweet about lucene");
+      start = System.nanoTime();
+      results = search("lucene", 10);
+      while (results.size() < 2 && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < DEADLINE_MS) {
+        Thread.sleep(5);
+        results = search("lucene", 10);
+      }
+      assertEquals(2, results.size());
+    } finally {
+      searcher.close();
+    }
+  }
+
+  @Test
+  public void testSearcherReleasedAfterFailedRequest() throws Exception {
+    TweetSearcher searcher = new TweetSearcher(createTempDir().toString(), STALENESS_MS);
+    IndexReader reader;
+    try {
+      addTweet(1L, "a tweet about lucene");
+      TweetSearcher.searcherManager.maybeRefreshBlocking();
+      IndexSearcher current = TweetSearcher.searcherManager.acquire();
+      reader = current.getIndexReader();
+      int refCount = reader.getRefCount();
+      TweetSearcher.searcherManager.release(current);
+
+      // Fails once the searcher is acquired, as a count of 0 is rejected by the collector
+      for (int i = 0; i < 10; i++) {
+        assertTrue(search("lucene", 0).isEmpty());
+      }
+      assertEquals(1, search("lucene", 10).size());
+
+      // Nothing was indexed since, so the searcher is the same one and holds no extra references
+      current = TweetSearcher.searcherManager.acquire();
+      try {
+        assertSame(reader, current.getIndexReader());
+        assertEquals(refCount, reader.getRefCount());
+      } finally {
+        TweetSearcher.searcherManager.release(current);
+      }
+    } finally {
+      searcher.close();
+    }
+    // And is closed along with the searcher manager
+    assertEquals(0, reader.getRefCount());
+  }
+
+  @Test
+  public void testRejectsNonPositiveStaleness() throws IOException {
+    for (long staleness : new long[] {0, -100}) {
+      try {
+        new TweetSearcher(createTempDir().toString(), staleness);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains(String.valueOf(staleness)));
+      }
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package io.anserini.rerank;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PipelinedRerankerCascadeTest extends LuceneTestCase {
+
+  /**
+   * Adds id % 3 to each score and sorts by the new scores, ties broken by id
+   */
+  private static class RescoringReranker implements Reranker {
+    @Override
+    public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+      Integer[] order = new Integer[docs.documents.length];
+      float[] scores = new float[order.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+        scores[i] = docs.scores[i] + docs.ids[i] % 3;
+      }
+      Arrays.sort(order, (a, b) -> scores[a] != scores[b] ? Float.compare(scores[b], scores[a]) :
+          Integer.compare(docs.ids[a], docs.ids[b]));
+
+      ScoredDocuments results = new ScoredDocuments();
+      results.documents = new Document[order.length];
+      results.ids = new int[order.length];
+      results.scores = new float[order.length];
+      for (int i = 0; i < order.length; i++) {
+        results.documents[i] = docs.documents[order[i]];
+        results.ids[i] = docs.ids[order[i]];
+        results.scores[i] = scores[order[i]];
+      }
+      return results;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+      return true;
+    }
+  }
+
+  /**
+   * Reverses the ranking, and records whether it was ever called by two threads at once
+   */
+  private static class ReversingReranker implements Reranker {
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile boolean overlapped = false;
+    private final String failOn;
+
+    ReversingReranker(String failOn) {
+      this.failOn = failOn;
+    }
+
+    @Override
+    public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+      if (running.incrementAndGet() > 1) {
+        overlapped = true;
+      }
+      try {
+        if (context.getQueryId().equals(failOn)) {
+          throw new IllegalStateException("Failed on " + failOn);
+        }
+        int n = docs.documents.length;
+        ScoredDocuments results = new ScoredDocuments();
+        results.documents = new Document[n];
+        results.ids = new int[n];
+        results.scores = new float[n];
+        for (int i = 0; i < n; i++) {
+          results.documents[i] = docs.documents[n - 1 - i];
+          results.ids[i] = docs.ids[n - 1 - i];
+          results.scores[i] = n - i;
+        }
+        return results;
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Passes the ranking through, recording the depth it was told the caller keeps
+   */
+  private static class DepthRecordingReranker implements Reranker {
+    private volatile int depth = -1;
+
+    @Override
+    public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context) {
+      throw new AssertionError("The cascade passes the depth");
+    }
+
+    @Override
+    public ScoredDocuments rerank(ScoredDocuments docs, RerankerContext context, int depth) {
+      this.depth = depth;
+      return docs;
+    }
+  }
+
+  private static ScoredDocuments randomDocs(Random random, int n) {
+    ScoredDocuments docs = new ScoredDocuments();
+    docs.documents = new Document[n];
+    docs.ids = new int[n];
+    docs.scores = new float[n];
+    for (int i = 0; i < n; i++) {
+      docs.ids[i] = random.nextInt(1000);
+      docs.documents[i] = new Document();
+      docs.documents[i].add(new StringField("id", "doc" + docs.ids[i], Field.Store.YES));
+      docs.scores[i] = (n - i) + random.nextFloat();
+    }
+    return docs;
+  }
+
+  private static RerankerContext context(int qid) throws Exception {
+    return new RerankerContext(null, null, String.valueOf(qid), "query " + qid, new ArrayList<>(), "contents", null);
+  }
+
+  @Test
+  public void testMatchesSequentialCascade() throws Exception {
+    ReversingReranker reversing = new ReversingReranker(null);
+    RerankerCascade cascade = new RerankerCascade()
+        .add(new RescoringReranker(), 20, 10)
+        .add(reversing, 8, 5);
+    assertEquals(20, cascade.getInputDepth());
+
+    Random random = new Random(17);
+    List<ScoredDocuments> inputs = new ArrayList<>();
+    for (int q = 0; q < 50; q++) {
+      // Some queries come in shorter than the depths, and one with nothing at all
+      inputs.add(randomDocs(random, q == 7 ? 0 : 3 + random.nextInt(30)));
+    }
+
+    List<ScoredDocuments> expected = new ArrayList<>();
+    for (int q = 0; q < inputs.size(); q++) {
+      expected.add(cascade.run(inputs.get(q), context(q)));
+    }
+
+    List<CompletableFuture<ScoredDocuments>> futures = new ArrayList<>();
+    try (PipelinedRerankerCascade pipeline = new PipelinedRerankerCascade(cascade, 4, 2)) {
+      for (int q = 0; q < inputs.size(); q++) {
+        futures.add(pipeline.submit(inputs.get(q), context(q)));
+      }
+      for (int q = 0; q < inputs.size(); q++) {
+        ScoredDocuments actual = futures.get(q).join();
+        assertTrue(actual.documents.length <= 5);
+        assertArrayEquals(expected.get(q).ids, actual.ids);
+        assertArrayEquals(expected.get(q).scores, actual.scores, 0.0f);
+        for (int i = 0; i < actual.documents.length; i++) {
+          assertSame(expected.get(q).documents[i], actual.documents[i]);
+        }
+      }
+    }
+    // Not thread safe, so the stage has a single thread
+    assertFalse(reversing.overlapped);
+  }
+
+  @Test
+  public void testFailedStageStopsThreads() throws Exception {
+    RerankerCascade cascade = new RerankerCascade()
+        .add(new RescoringReranker(), 20, 10)
+        .add(new ReversingReranker("3"), 8, 5);
+    Random random = new Random(5);
+
+    List<CompletableFuture<ScoredDocuments>> futures = new ArrayList<>();
+    PipelinedRerankerCascade pipeline = new PipelinedRerankerCascade(cascade, 2, 2);
+    try {
+      for (int q = 0; q < 10; q++) {
+        futures.add(pipeline.submit(randomDocs(random, 20), context(q)));
+      }
+      futures.get(3).join();
+      fail();
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    } finally {
+      pipeline.close();
+    }
+    // The other queries still come through
+    assertEquals(5, futures.get(9).join().documents.length);
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (stageThreads() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, stageThreads());
+  }
+
+  @Test
+  public void testStagesToldTheirCutoff() throws Exception {
+    DepthRecordingReranker first = new DepthRecordingReranker();
+    DepthRecordingReranker second = new DepthRecordingReranker();
+    DepthRecordingReranker third = new DepthRecordingReranker();
+    DepthRecordingReranker last = new DepthRecordingReranker();
+    // The next stage's input depth cuts below the output depth, or the other way round
+    RerankerCascade cascade = new RerankerCascade()
+        .add(first, 50, 30)
+        .add(second, 20, 10)
+        .add(third, 15, 12)
+        .add(last);
+    cascade.run(randomDocs(new Random(3), 40), context(1));
+    assertEquals(20, first.depth);
+    assertEquals(10, second.depth);
+    assertEquals(12, third.depth);
+    assertEquals(Integer.MAX_VALUE, last.depth);
+
+    try (PipelinedRerankerCascade pipeline = new PipelinedRerankerCascade(cascade, 2, 2)) {
+      first.depth = -1;
+      pipeline.submit(randomDocs(new Random(4), 40), context(2)).join();
+      assertEquals(20, first.depth);
+    }
+  }
+
+  private static int stageThreads() {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().startsWith("reranker-stage-") && thread.isAlive()) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
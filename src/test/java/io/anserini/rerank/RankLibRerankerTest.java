@@ -0,0 +1,133 @@
+package io.anserini.rerank;
+
+import io.anserini.ltr.BaseFeatureExtractorTest;
+import io.anserini.ltr.CompiledTreeEnsemble;
+import io.anserini.ltr.feature.FeatureExtractors;
+import io.anserini.ltr.feature.base.BM25FeatureExtractor;
+import io.anserini.ltr.feature.base.DocSizeFeatureExtractor;
+import io.anserini.ltr.feature.base.TermFrequencyFeatureExtractor;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class RankLibRerankerTest extends BaseFeatureExtractorTest {
+  private static final String[] VOCABULARY = {"apple", "banana", "cherry", "date", "elder", "fig", "grape"};
+
+  private static final String MODEL =
+      "## LambdaMART\n" +
+      "## No. of trees = 2\n" +
+      "<ensemble>\n" +
+      "  <tree id=\"1\" weight=\"0.1\">\n" +
+      "    <split>\n" +
+      "      <feature> 1 </feature>\n" +
+      "      <threshold> 1.5 </threshold>\n" +
+      "      <split pos=\"left\">\n" +
+      "        <output> 0.25 </output>\n" +
+      "      </split>\n" +
+      "      <split pos=\"right\">\n" +
+      "        <feature> 2 </feature>\n" +
+      "        <threshold> 1.0 </threshold>\n" +
+      "        <split pos=\"left\">\n" +
+      "          <output> 1.5 </output>\n" +
+      "        </split>\n" +
+      "        <split pos=\"right\">\n" +
+      "          <output> 3.0 </output>\n" +
+      "        </split>\n" +
+      "      </split>\n" +
+      "    </split>\n" +
+      "  </tree>\n" +
+      "  <tree id=\"2\" weight=\"0.1\">\n" +
+      "    <split>\n" +
+      "      <feature> 3 </feature>\n" +
+      "      <threshold> 8.5 </threshold>\n" +
+      "      <split pos=\"left\">\n" +
+      "        <output> 0.5 </output>\n" +
+      "      </split>\n" +
+      "      <split pos=\"right\">\n" +
+      "        <output> -0.5 </output>\n" +
+      "      </split>\n" +
+      "    </split>\n" +
+      "  </tree>\n" +
+      "</ensemble>\n";
+
+  private static FeatureExtractors chain() {
+    return getChain(new TermFrequencyFeatureExtractor(), new BM25FeatureExtractor(), new DocSizeFeatureExtractor());
+  }
+
+  @Test
+  public void testParallelMatchesSequential() throws Exception {
+    Random random = new Random(42);
+    int numDocs = 150;
+    for (int i = 0; i < numDocs; i++) {
+      StringBuilder text = new StringBuilder();
+      int length = 3 + random.nextInt(12);
+      for (int j = 0; j < length; j++) {
+        text.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(' ');
+      }
+      addTestDocument(text.toString());
+    }
+
+    Path modelFile = createTempFile("lambdamart", ".txt");
+    Files.write(modelFile, MODEL.getBytes(StandardCharsets.UTF_8));
+
+    RerankerContext context = makeTestContext("apple banana");
+    IndexReader reader = context.getIndexSearcher().getIndexReader();
+    ScoredDocuments docs = new ScoredDocuments();
+    docs.documents = new Document[reader.maxDoc()];
+    docs.ids = new int[reader.maxDoc()];
+    docs.scores = new float[reader.maxDoc()];
+    for (int i = 0; i < reader.maxDoc(); i++) {
+      docs.documents[i] = reader.document(i);
+      docs.ids[i] = i;
+      docs.scores[i] = reader.maxDoc() - i;
+    }
+
+    // Reference scores, one document at a time in this thread
+    CompiledTreeEnsemble model = CompiledTreeEnsemble.load(modelFile.toString());
+    FeatureExtractors reference = chain();
+    float[] expected = new float[reader.maxDoc()];
+    for (int i = 0; i < reader.maxDoc(); i++) {
+      expected[i] = (float) model.score(reference.extractAll(docs.documents[i], i,
+          reader.getTermVector(i, TEST_FIELD_NAME), context, new float[3]));
+    }
+
+    ForkJoinPool sequentialPool = new ForkJoinPool(1);
+    ForkJoinPool parallelPool = new ForkJoinPool(4);
+    try {
+      ScoredDocuments sequential = new RankLibReranker(modelFile.toString(), TEST_FIELD_NAME, chain(), sequentialPool)
+          .rerank(docs, context);
+      ScoredDocuments parallel = new RankLibReranker(modelFile.toString(), TEST_FIELD_NAME, chain(), parallelPool)
+          .rerank(docs, context);
+      ScoredDocuments common = new RankLibReranker(modelFile.toString(), TEST_FIELD_NAME, chain())
+          .rerank(docs, context);
+
+      assertEquals(numDocs, sequential.ids.length);
+      assertArrayEquals(sequential.ids, parallel.ids);
+      assertArrayEquals(sequential.scores, parallel.scores, 0.0f);
+      assertArrayEquals(sequential.ids, common.ids);
+      assertArrayEquals(sequential.scores, common.scores, 0.0f);
+      for (int i = 0; i < numDocs; i++) {
+        assertSame(docs.documents[sequential.ids[i]], sequential.documents[i]);
+        assertEquals(expected[sequential.ids[i]], sequential.scores[i], 0.0f);
+        if (i > 0) {
+          // Sorted by score, ties by higher docid first
+          assertTrue(sequential.scores[i - 1] > sequential.scores[i] ||
+              (sequential.scores[i - 1] == sequential.scores[i] && sequential.ids[i - 1] > sequential.ids[i]));
+        }
+      }
+    } finally {
+      // The reranker leaves pools it is handed to the caller
+      sequentialPool.shutdown();
+      parallelPool.shutdown();
+      assertTrue(sequentialPool.awaitTermination(10, TimeUnit.SECONDS));
+      assertTrue(parallelPool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package io.anserini.rerank.twitter;
+
+import io.anserini.index.IndexTweets.StatusField;
+import io.anserini.rerank.RerankerContext;
+import io.anserini.rerank.ScoredDocuments;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class RemoveRetweetsTemporalTiebreakRerankerTest extends LuceneTestCase {
+  // Tweet ids, with the ids of the tweets they retweet (0 if they aren't retweets)
+  private static final long[] TWEETS = {10, 11, 12, 13, 14, 15};
+  private static final long[] RETWEETED = {0, 10, 0, 0, 12, 0};
+  private static final String[] TEXTS = {"apple", "apple", "apple", "apple banana", "apple", "banana"};
+
+  private static Directory buildIndex(boolean docValues) throws IOException {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(new StandardAnalyzer()));
+    for (int i = 0; i < TWEETS.length; i++) {
+      Document doc = new Document();
+      doc.add(new TextField(StatusField.TEXT.name, TEXTS[i], Field.Store.YES));
+      doc.add(new StoredField(StatusField.ID.name, TWEETS[i]));
+      if (docValues) {
+        doc.add(new NumericDocValuesField(StatusField.ID.name, TWEETS[i]));
+      }
+      if (RETWEETED[i] != 0) {
+        doc.add(new StoredField(StatusField.RETWEETED_STATUS_ID.name, RETWEETED[i]));
+        if (docValues) {
+          doc.add(new NumericDocValuesField(StatusField.RETWEETED_STATUS_ID.name, RETWEETED[i]));
+        }
+      }
+      writer.addDocument(doc);
+      // Spread the tweets over several segments
+      if (i % 2 == 1) {
+        writer.commit();
+      }
+    }
+    writer.close();
+    return dir;
+  }
+
+  @Test
+  public void testCollectorSkipsRetweets() throws IOException {
+    try (Directory dir = buildIndex(true); DirectoryReader reader = DirectoryReader.open(dir)) {
+      IndexSearcher searcher = newSearcher(reader);
+      TopScoreDocCollector collector = TopScoreDocCollector.create(10);
+      searcher.search(new TermQuery(new Term(StatusField.TEXT.name, "apple")), new RetweetFilterCollector(collector));
+
+      Set<Long> ids = new HashSet<>();
+      for (ScoreDoc hit : collector.topDocs().scoreDocs) {
+        ids.add((long) searcher.doc(hit.doc).getField(StatusField.ID.name).numericValue());
+      }
+      assertEquals(new HashSet<>(Arrays.asList(10L, 12L, 13L)), ids);
+      assertEquals(3, collector.getTotalHits());
+    }
+  }
+
+  @Test
+  public void testCollectorPassesThroughWithoutDocValues() throws IOException {
+    try (Directory dir = buildIndex(false); DirectoryReader reader = DirectoryReader.open(dir)) {
+      IndexSearcher searcher = newSearcher(reader);
+      TopScoreDocCollector collector = TopScoreDocCollector.create(10);
+      searcher.search(new TermQuery(new Term(StatusField.TEXT.name, "apple")), new RetweetFilterCollector(collector));
+      // Retweets are left for the reranker
+      assertEquals(5, collector.getTotalHits());
+    }
+  }
+
+  @Test
+  public void testRerankWithDocValues() throws IOException {
+    assertRerank(true);
+  }
+
+  @Test
+  public void testRerankWithStoredFields() throws IOException {
+    assertRerank(false);
+  }
+
+  private void assertRerank(boolean docValues) throws IOException {
+    try (Directory dir = buildIndex(docValues); DirectoryReader reader = DirectoryReader.open(dir)) {
+      IndexSearcher searcher = new IndexSearcher(reader);
+      // Every tweet, in index order, with the retweets scored highest and 12 listed twice
+      int[] order = {0, 1, 2, 3, 4, 5, 2};
+      float[] scores = {1.0f, 3.0f, 1.0f, 2.0f, 3.0f, 1.0f, 1.0f};
+      ScoredDocuments docs = new ScoredDocuments();
+      docs.documents = new Document[order.length];
+      docs.ids = new int[order.length];
+      docs.scores = new float[order.length];
+      for (int i = 0; i < order.length; i++) {
+        docs.ids[i] = docIdOf(searcher, TWEETS[order[i]]);
+        docs.documents[i] = searcher.doc(docs.ids[i]);
+        docs.scores[i] = scores[i];
+      }
+
+      RerankerContext context = new RerankerContext(searcher, null, "1", "apple", new ArrayList<>(),
+          StatusField.TEXT.name, null);
+      ScoredDocuments reranked = new RemoveRetweetsTemporalTiebreakReranker().rerank(docs, context);
+
+      // Retweets and the duplicate of 12 are gone, ties go to the more recent tweet
+      long[] expectedIds = {13, 15, 12, 10};
+      assertEquals(expectedIds.length, reranked.ids.length);
+      for (int i = 0; i < expectedIds.length; i++) {
+        assertEquals(expectedIds[i], (long) reranked.documents[i].getField(StatusField.ID.name).numericValue());
+        assertEquals(docIdOf(searcher, expectedIds[i]), reranked.ids[i]);
+      }
+      // Tied scores are perturbed so that they stay in this order
+      assertEquals(2.0f, reranked.scores[0], 0.0f);
+      assertEquals(1.0f, reranked.scores[1], 0.0f);
+      assertEquals(1.0f - 0.000001f, reranked.scores[2], 0.0f);
+      assertEquals(1.0f - 0.000002f, reranked.scores[3], 0.0f);
+    }
+  }
+
+  private static int docIdOf(IndexSearcher searcher, long tweetId) throws IOException {
+    for (int i = 0; i < searcher.getIndexReader().maxDoc(); i++) {
+      if ((long) searcher.doc(i).getField(StatusField.ID.name).numericValue() == tweetId) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("No tweet " + tweetId);
+  }
+}
@@ -0,0 +1,228 @@
+package io.anserini.search;
+
+import io.anserini.eval.MultiMetricEval;
+import io.anserini.eval.QueryJudgments;
+import io.anserini.eval.RankingResults;
+import io.anserini.util.AnalyzerUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.SuppressSysoutChecks;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_BODY;
+import static io.anserini.index.generator.LuceneDocumentGenerator.FIELD_ID;
+
+@SuppressSysoutChecks(bugUrl = "none, progress logging of the tuner")
+public class TuneSimilarityTest extends LuceneTestCase {
+  private static final double DELTA = 1e-9;
+  private static final String[] METRICS = {"map", "p.2", "ndcg.3"};
+  private static final double[][] BM25_VALUES = {{0.5, 0.9, 1.2}, {0.3, 0.75}};
+
+  private final Analyzer analyzer = new EnglishAnalyzer();
+  private Directory directory;
+  private IndexReader reader;
+  private QueryJudgments qrels;
+  private SortedMap<Integer, String> topics;
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    directory = new RAMDirectory();
+    String[] texts = {
+        "the quick brown fox jumps over the lazy dog",
+        "a fox in the forest, a fox in the den, a fox everywhere",
+        "brown bears and brown dogs",
+        "lazy afternoons with a lazy dog in the sun",
+        "the forest is quiet",
+        "quick quick quick thinking",
+        "dog days of summer with the brown dog",
+        "nothing to see here"
+    };
+    try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+      for (int i = 0; i < texts.length; i++) {
+        Document doc = new Document();
+        doc.add(new StringField(FIELD_ID, "doc" + i, Field.Store.YES));
+        doc.add(new TextField(FIELD_BODY, texts[i], Field.Store.NO));
+        writer.addDocument(doc);
+        // A few segments, so the statistics are over more than one
+        if (i % 3 == 2) {
+          writer.commit();
+        }
+      }
+    }
+    reader = DirectoryReader.open(directory);
+
+    topics = new TreeMap<>();
+    topics.put(1, "brown dog");
+    topics.put(2, "fox forest");
+    topics.put(3, "lazy dog");
+    topics.put(4, "quick fox");
+    topics.put(5, "unjudged topic");
+    qrels = new QueryJudgments(createQrels().toString());
+  }
+
+  private Path createQrels() throws IOException {
+    Path qrelsFile = createTempDir().resolve("qrels.txt");
+    Files.write(qrelsFile, Arrays.asList(
+        "1 0 doc2 1", "1 0 doc6 2", "1 0 doc0 0",
+        "2 0 doc1 2", "2 0 doc4 1",
+        "3 0 doc3 2", "3 0 doc0 1", "3 0 doc6 0",
+        "4 0 doc0 1", "4 0 doc5 0", "4 0 doc1 1"), StandardCharsets.UTF_8);
+    return qrelsFile;
+  }
+
+  @After
+  @Override
+  public void tearDown() throws Exception {
+    reader.close();
+    directory.close();
+    super.tearDown();
+  }
+
+  @Test
+  public void testGrid() {
+    List<TuneSimilarity.Point> grid = TuneSimilarity.grid(TuneSimilarity.Model.BM25, BM25_VALUES);
+    assertEquals(6, grid.size());
+    assertEquals(new TuneSimilarity.Point(TuneSimilarity.Model.BM25, 0.5, 0.3), grid.get(0));
+    assertEquals(new TuneSimilarity.Point(TuneSimilarity.Model.BM25, 0.5, 0.75), grid.get(1));
+    assertEquals(new TuneSimilarity.Point(TuneSimilarity.Model.BM25, 1.2, 0.75), grid.get(5));
+  }
+
+  @Test
+  public void testMatchesPlainSearch() throws IOException {
+    try (TuneSimilarity tuner = new TuneSimilarity(reader, topics, qrels, analyzer, 5, 2, METRICS)) {
+      assertEquals(Arrays.asList("1", "2", "3", "4"), tuner.getQids());
+      for (TuneSimilarity.Point point : TuneSimilarity.grid(TuneSimilarity.Model.BM25, BM25_VALUES)) {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setSimilarity(point.getSimilarity());
+        Map<String, double[]> actual = tuner.evaluate(point);
+        for (String qid : tuner.getQids()) {
+          TopDocs rs = searcher.search(AnalyzerUtils.buildBagOfWordsQuery(FIELD_BODY, analyzer,
+              topics.get(Integer.parseInt(qid))), 5);
+          String[] docids = new String[rs.scoreDocs.length];
+          float[] scores = new float[rs.scoreDocs.length];
+          for (int i = 0; i < docids.length; i++) {
+            ScoreDoc hit = rs.scoreDocs[i];
+            docids[i] = reader.document(hit.doc).get(FIELD_ID);
+            scores[i] = hit.score;
+          }
+          double[] expected = new MultiMetricEval(METRICS).evaluate(
+              RankingResults.rank(docids, scores, qrels.getDictionary()), qrels.getJudgments(qid),
+              new double[METRICS.length]);
+          assertArrayEquals(expected, actual.get(qid), DELTA);
+        }
+        // Searched once, then remembered
+        assertSame(actual, tuner.evaluate(point));
+      }
+    }
+  }
+
+  @Test
+  public void testCrossValidation() throws IOException {
+    try (TuneSimilarity tuner = new TuneSimilarity(reader, topics, qrels, analyzer, 5, 2, METRICS)) {
+      MultiMetricEval aggregator = new MultiMetricEval(METRICS);
+      List<TuneSimilarity.Point> grid = TuneSimilarity.grid(TuneSimilarity.Model.BM25, BM25_VALUES);
+      TuneSimilarity.Tuned tuned = tuner.tune(TuneSimilarity.Model.BM25, BM25_VALUES, false, 2, 0);
+
+      for (int m = 0; m < METRICS.length; m++) {
+        // Nothing in the grid beats the best point
+        for (TuneSimilarity.Point point : grid) {
+          assertTrue(aggregator.aggregate(tuner.evaluate(point))[m] <= tuned.bestValues[m] + DELTA);
+        }
+        assertEquals(aggregator.aggregate(tuner.evaluate(tuned.best[m]))[m], tuned.bestValues[m], DELTA);
+      }
+
+      // Topics 1 and 3 are one fold, 2 and 4 the other
+      List<List<String>> folds = tuner.folds(2);
+      assertEquals(Arrays.asList("1", "3"), folds.get(0));
+      assertEquals(Arrays.asList("2", "4"), folds.get(1));
+      for (int m = 0; m < METRICS.length; m++) {
+        Map<String, double[]> heldOut = new TreeMap<>();
+        for (int f = 0; f < 2; f++) {
+          Map<String, double[]> perQuery = tuner.evaluate(tuned.foldBest[f][m]);
+          for (String qid : folds.get(f)) {
+            heldOut.put(qid, perQuery.get(qid));
+          }
+          Map<String, double[]> train = new TreeMap<>();
+          for (String qid : folds.get(1 - f)) {
+            train.put(qid, perQuery.get(qid));
+          }
+          assertEquals(aggregator.aggregate(train)[m], tuned.foldTrainValues[f][m], DELTA);
+        }
+        assertEquals(aggregator.aggregate(heldOut)[m], tuned.crossValidated[m], DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void testCoordinateAscent() throws IOException {
+    try (TuneSimilarity tuner = new TuneSimilarity(reader, topics, qrels, analyzer, 5, 2, METRICS)) {
+      MultiMetricEval aggregator = new MultiMetricEval(METRICS);
+      List<String> qids = tuner.getQids();
+      TuneSimilarity.Point[] ascended = tuner.coordinateAscent(TuneSimilarity.Model.BM25, BM25_VALUES, qids, 5);
+      TuneSimilarity.Point start = new TuneSimilarity.Point(TuneSimilarity.Model.BM25, 0.9, 0.75);
+      List<TuneSimilarity.Point> grid = TuneSimilarity.grid(TuneSimilarity.Model.BM25, BM25_VALUES);
+      for (int m = 0; m < METRICS.length; m++) {
+        assertTrue(grid.contains(ascended[m]));
+        assertTrue(aggregator.aggregate(tuner.evaluate(ascended[m]))[m]
+            >= aggregator.aggregate(tuner.evaluate(start))[m] - DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void testUnretrievedTopicScoresZero() throws IOException {
+    // A judged topic whose terms aren't in the index
+    SortedMap<Integer, String> withMissing = new TreeMap<>(topics);
+    withMissing.put(6, "zebra");
+    Path qrelsFile = createTempDir().resolve("qrels.txt");
+    List<String> lines = new ArrayList<>(Files.readAllLines(createQrels(), StandardCharsets.UTF_8));
+    lines.add("6 0 doc7 1");
+    Files.write(qrelsFile, lines, StandardCharsets.UTF_8);
+    QueryJudgments judgments = new QueryJudgments(qrelsFile.toString());
+
+    String[] metrics = {"map", "p.2", "ndcg.3", "num_rel", "num_ret"};
+    TuneSimilarity.Point point = new TuneSimilarity.Point(TuneSimilarity.Model.BM25, 0.9, 0.4);
+    try (TuneSimilarity tuner = new TuneSimilarity(reader, withMissing, judgments, analyzer, 5, 2, metrics);
+         TuneSimilarity judged = new TuneSimilarity(reader, topics, qrels, analyzer, 5, 2, metrics)) {
+      Map<String, double[]> perQuery = tuner.evaluate(point);
+      assertEquals(Arrays.asList("1", "2", "3", "4", "6"), new ArrayList<>(perQuery.keySet()));
+      assertArrayEquals(new double[] {0.0, 0.0, 0.0, 1.0, 0.0}, perQuery.get("6"), DELTA);
+
+      // So it pulls the mean down, as trec_eval -c would
+      MultiMetricEval aggregator = new MultiMetricEval(metrics);
+      double[] withZero = aggregator.aggregate(perQuery);
+      double[] without = aggregator.aggregate(judged.evaluate(point));
+      assertEquals(without[0] * 4 / 5, withZero[0], DELTA);
+      assertEquals(without[3] + 1, withZero[3], DELTA);
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package io.anserini.search.query;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class SdmQueryBuilderTest extends LuceneTestCase {
+  private static final String FIELD = "contents";
+  private static final Analyzer ANALYZER = new WhitespaceAnalyzer();
+
+  @Test
+  public void testSingleTerm() {
+    Query query = new SdmQueryBuilder(FIELD, ANALYZER).build("fox");
+
+    // Just the bag of words
+    List<BooleanClause> clauses = ((BooleanQuery) query).clauses();
+    assertEquals(1, clauses.size());
+    assertEquals(BooleanClause.Occur.SHOULD, clauses.get(0).getOccur());
+    assertEquals(new TermQuery(new Term(FIELD, "fox")), clauses.get(0).getQuery());
+  }
+
+  @Test
+  public void testTwoTerms() {
+    assertSdm(new SdmQueryBuilder(FIELD, ANALYZER).build("brown fox"),
+        new String[] {"brown", "fox"}, 0.85f, 0.1f, 0.05f, 8);
+  }
+
+  @Test
+  public void testThreeTerms() {
+    assertSdm(new SdmQueryBuilder(FIELD, ANALYZER).build("quick brown fox"),
+        new String[] {"quick", "brown", "fox"}, 0.85f, 0.1f, 0.05f, 8);
+    assertSdm(new SdmQueryBuilder(FIELD, ANALYZER, 0.5f, 0.3f, 0.2f, 4).build("quick brown fox"),
+        new String[] {"quick", "brown", "fox"}, 0.5f, 0.3f, 0.2f, 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWindowTooSmall() {
+    new SdmQueryBuilder(FIELD, ANALYZER, 0.85f, 0.1f, 0.05f, 1);
+  }
+
+  private static void assertSdm(Query query, String[] terms, float termWeight, float orderedWeight,
+                                float unorderedWeight, int window) {
+    List<BooleanClause> clauses = ((BooleanQuery) query).clauses();
+    assertEquals(3, clauses.size());
+
+    // Unigrams are required
+    assertEquals(BooleanClause.Occur.MUST, clauses.get(0).getOccur());
+    BoostQuery unigrams = (BoostQuery) clauses.get(0).getQuery();
+    assertEquals(termWeight, unigrams.getBoost(), 0.0f);
+    List<BooleanClause> unigramClauses = ((BooleanQuery) unigrams.getQuery()).clauses();
+    assertEquals(terms.length, unigramClauses.size());
+    for (int i = 0; i < terms.length; i++) {
+      assertEquals(BooleanClause.Occur.SHOULD, unigramClauses.get(i).getOccur());
+      assertEquals(new TermQuery(new Term(FIELD, terms[i])), unigramClauses.get(i).getQuery());
+    }
+
+    // #1 over adjacent pairs, and #uwN with N - 2 positions between the pair
+    assertWindows(clauses.get(1), terms, orderedWeight, 0, true);
+    assertWindows(clauses.get(2), terms, unorderedWeight, window - 2, false);
+  }
+
+  private static void assertWindows(BooleanClause clause, String[] terms, float weight, int slop, boolean inOrder) {
+    assertEquals(BooleanClause.Occur.SHOULD, clause.getOccur());
+    BoostQuery boosted = (BoostQuery) clause.getQuery();
+    assertEquals(weight, boosted.getBoost(), 0.0f);
+
+    List<BooleanClause> windows = ((BooleanQuery) boosted.getQuery()).clauses();
+    assertEquals(terms.length - 1, windows.size());
+    for (int i = 0; i < terms.length - 1; i++) {
+      assertEquals(BooleanClause.Occur.SHOULD, windows.get(i).getOccur());
+      SpanNearQuery window = (SpanNearQuery) windows.get(i).getQuery();
+      assertEquals(slop, window.getSlop());
+      assertEquals(inOrder, window.isInOrder());
+      SpanQuery[] pair = window.getClauses();
+      assertEquals(2, pair.length);
+      assertEquals(new SpanTermQuery(new Term(FIELD, terms[i])), pair[0]);
+      assertEquals(new SpanTermQuery(new Term(FIELD, terms[i + 1])), pair[1]);
+    }
+  }
+
+  @Test
+  public void testRanking() throws IOException {
+    // The same terms, each once, in documents of the same length, so unigrams alone can't tell them apart
+    String[] texts = {
+        "quick a b c d e f g h i brown j k l m n o p q fox",
+        "a b c d e f g h i j k l m n o p q quick brown fox",
+        "a b c d e f g h i j k l m n o p q fox brown quick",
+        "a b c d e f g h i j k l m n o p q r s fox",
+        "a b c d e f g h i j k l m n o p q r s t",
+    };
+
+    try (Directory dir = new RAMDirectory()) {
+      try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(ANALYZER))) {
+        for (int i = 0; i < texts.length; i++) {
+          Document doc = new Document();
+          doc.add(new StringField("id", "doc" + i, Field.Store.YES));
+          doc.add(new TextField(FIELD, texts[i], Field.Store.NO));
+          writer.addDocument(doc);
+        }
+      }
+
+      try (IndexReader reader = DirectoryReader.open(dir)) {
+        SdmQueryBuilder builder = new SdmQueryBuilder(FIELD, ANALYZER);
+        assertTrue(builder.isSupported(reader));
+        assertFalse(new SdmQueryBuilder("id", ANALYZER).isSupported(reader));
+
+        IndexSearcher searcher = new IndexSearcher(reader);
+        TopDocs hits = searcher.search(builder.build("quick brown fox"), 10);
+
+        // Phrase first, then the pairs that are near but out of order, then the scattered terms, then
+        // the partial match. The document with none of the terms doesn't match at all.
+        String[] expected = {"doc1", "doc2", "doc0", "doc3"};
+        assertEquals(expected.length, hits.totalHits);
+        for (int i = 0; i < expected.length; i++) {
+          ScoreDoc hit = hits.scoreDocs[i];
+          assertEquals(expected[i], searcher.doc(hit.doc).get("id"));
+          if (i > 0) {
+            assertTrue(hits.scoreDocs[i - 1].score > hit.score);
+          }
+        }
+      }
+    }
+  }
+}
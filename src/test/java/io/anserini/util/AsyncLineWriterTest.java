@@ -0,0 +1,90 @@
+package io.anserini.util;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AsyncLineWriterTest extends LuceneTestCase {
+
+  /**
+   * Fails every write once {@code limit} characters have been written
+   */
+  private static class FailingWriter extends Writer {
+    private final int limit;
+    private int written = 0;
+
+    FailingWriter(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+      if (written + length > limit) {
+        throw new IOException("Disk full");
+      }
+      written += length;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Test
+  public void testOrder() throws IOException {
+    StringWriter out = new StringWriter();
+    StringBuilder expected = new StringBuilder();
+    // A small queue, so that the producer has to wait for the writer
+    try (AsyncLineWriter writer = new AsyncLineWriter(out, 2)) {
+      for (int i = 0; i < 500; i++) {
+        List<String> lines = new ArrayList<>();
+        for (int j = 0; j < i % 7; j++) {
+          lines.add(i + " " + j);
+          expected.append(i).append(' ').append(j).append(System.lineSeparator());
+        }
+        writer.write(lines);
+      }
+    }
+    assertEquals(expected.toString(), out.toString());
+  }
+
+  @Test
+  public void testWriterError() throws IOException {
+    // Small enough that the buffered writer has to pass lines through before the end
+    AsyncLineWriter writer = new AsyncLineWriter(new FailingWriter(20000), 2);
+    IOException error = null;
+    try {
+      for (int i = 0; i < 10000 && error == null; i++) {
+        List<String> lines = new ArrayList<>();
+        for (int j = 0; j < 10; j++) {
+          lines.add("line " + i + " " + j);
+        }
+        try {
+          writer.write(lines);
+        } catch (IOException e) {
+          error = e;
+        }
+      }
+      // Reported to the producer while it is still writing
+      assertNotNull(error);
+      assertEquals("Disk full", error.getMessage());
+    } finally {
+      try {
+        writer.close();
+        fail();
+      } catch (IOException e) {
+        // And again when closing
+        assertEquals("Disk full", e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package io.anserini.util;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+public class QrelsIndexTest extends LuceneTestCase {
+
+  @Test
+  public void testMatchesQrels() throws IOException {
+    Random random = new Random(7);
+    List<String> lines = new ArrayList<>();
+    for (int q = 0; q < 20; q++) {
+      for (int d = 0; d < 500; d++) {
+        if (random.nextInt(4) == 0) {
+          lines.add(String.format(Locale.ROOT, "%d 0 clueweb12-%04d %d", 100 + q, d, random.nextInt(5) - 1));
+        }
+      }
+    }
+    Path dir = createTempDir();
+    Path qrelsFile = dir.resolve("qrels.txt");
+    Files.write(qrelsFile, lines, StandardCharsets.UTF_8);
+    Qrels qrels = Qrels.read(qrelsFile.toString(), true, false);
+
+    Path indexFile = dir.resolve("qrels.idx");
+    QrelsIndex.write(qrels, indexFile);
+    QrelsIndex index = QrelsIndex.open(indexFile);
+    assertEquals(new ArrayList<>(qrels.getQids()), index.getQids());
+    assertEquals(lines.size(), index.size());
+
+    int[] grades = new int[index.numQids()];
+    // Every docid of the qrels plus some that aren't in them
+    for (int d = 0; d < 600; d++) {
+      String docid = String.format(Locale.ROOT, "clueweb12-%04d", d);
+      int ordinal = index.getDocidOrdinal(docid);
+      assertEquals(qrels.getDictionary().get(docid) >= 0, ordinal >= 0);
+      if (ordinal >= 0) {
+        assertEquals(docid, index.getDocid(ordinal));
+      }
+      index.getRelevanceGrades(ordinal, grades);
+      for (String qid : qrels.getQids()) {
+        int q = index.getQidOrdinal(qid);
+        assertEquals(qrels.getRelevanceGrade(qid, docid), index.getRelevanceGrade(qid, docid));
+        assertEquals(qrels.getRelevanceGrade(qid, docid), grades[q]);
+        assertEquals(qrels.isDocJudged(qid, docid), index.isDocJudged(q, ordinal));
+      }
+    }
+    assertEquals(-1, index.getQidOrdinal("99"));
+    assertEquals(0, index.getRelevanceGrade("99", "clueweb12-0000"));
+    assertSame(QrelsIndex.shared(indexFile), QrelsIndex.shared(indexFile));
+  }
+
+  @Test
+  public void testNotAnIndex() throws IOException {
+    Path file = createTempDir().resolve("qrels.txt");
+    Files.write(file, Arrays.asList("1 0 doc1 1"), StandardCharsets.UTF_8);
+    try {
+      QrelsIndex.open(file);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("not a qrels index"));
+    }
+  }
+}
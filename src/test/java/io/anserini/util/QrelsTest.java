@@ -0,0 +1,155 @@
+package io.anserini.util;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class QrelsTest extends LuceneTestCase {
+
+  private Path writeQrels(String... lines) throws IOException {
+    Path file = createTempDir().resolve("qrels.txt");
+    Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file;
+  }
+
+  @Test
+  public void testDictionarySameLowHashBits() {
+    // Docids whose hashes only differ in their high bits, which used to all land in one run of slots
+    List<String> docids = new ArrayList<>();
+    for (int i = 0; docids.size() < 5000; i++) {
+      String docid = "clueweb12-0000tw-" + i;
+      if ((docid.hashCode() & 0xFFF) == 0) {
+        docids.add(docid);
+      }
+    }
+    DocidDictionary dictionary = new DocidDictionary();
+    for (int i = 0; i < docids.size(); i++) {
+      assertEquals(i, dictionary.intern(docids.get(i)));
+    }
+    for (int i = 0; i < docids.size(); i++) {
+      assertEquals(i, dictionary.get(docids.get(i)));
+      assertEquals(docids.get(i), dictionary.get(i));
+    }
+    assertEquals(-1, dictionary.get("clueweb12-0000tw-x"));
+  }
+
+  @Test
+  public void testDictionary() {
+    DocidDictionary dictionary = new DocidDictionary();
+    // Enough docids to grow every array a few times
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(i, dictionary.intern("clueweb09-en0000-" + i));
+    }
+    assertEquals(10000, dictionary.size());
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(i, dictionary.get("clueweb09-en0000-" + i));
+      assertEquals(i, dictionary.intern("clueweb09-en0000-" + i));
+      assertEquals("clueweb09-en0000-" + i, dictionary.get(i));
+    }
+    assertEquals(-1, dictionary.get("clueweb09-en0000-10000"));
+    assertEquals(3, dictionary.get("x clueweb09-en0000-3 y", 2, 20));
+    assertEquals(10000, dictionary.size());
+  }
+
+  @Test
+  public void testFieldScanner() {
+    FieldScanner fields = new FieldScanner().reset("  301\tQ0  doc-1 -2 3.5e1 ");
+    assertTrue(fields.next());
+    assertEquals(301, fields.parseInt());
+    assertTrue(fields.next());
+    assertTrue(fields.matches("Q0"));
+    assertTrue(fields.next());
+    assertEquals("doc-1", fields.string());
+    assertTrue(fields.next());
+    assertEquals(-2, fields.parseInt());
+    assertTrue(fields.next());
+    assertEquals(35.0, fields.parseDouble(), 0.0);
+    assertFalse(fields.next());
+
+    fields.reset("2147483648");
+    fields.next();
+    try {
+      fields.parseInt();
+      fail();
+    } catch (NumberFormatException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRead() throws IOException {
+    Path file = writeQrels(
+        "2 0 doc3 1",
+        "1 0 doc2 2",
+        "1 0 doc1 0",
+        "",
+        "1\t0\tdoc9\t-1",
+        "1 0 doc2 1");
+    Qrels qrels = new Qrels(file.toString());
+
+    assertEquals(Arrays.asList("1", "2"), Arrays.asList(qrels.getQids().toArray()));
+    // The last judgment of a document wins
+    assertEquals(1, qrels.getRelevanceGrade("1", "doc2"));
+    assertEquals(0, qrels.getRelevanceGrade("1", "doc9"));
+    assertEquals(0, qrels.getRelevanceGrade("1", "doc3"));
+    assertEquals(0, qrels.getRelevanceGrade("3", "doc3"));
+    assertTrue(qrels.isDocJudged("1", "doc9"));
+    assertFalse(qrels.isDocJudged("2", "doc2"));
+
+    Map<String, Integer> expected = new TreeMap<>();
+    expected.put("doc1", 0);
+    expected.put("doc2", 1);
+    expected.put("doc9", -1);
+    assertEquals(expected, qrels.getDocMap("1"));
+    assertNull(qrels.getDocMap("3"));
+
+    Qrels.Judgments judgments = qrels.getJudgments("1");
+    assertEquals(3, judgments.size());
+    assertEquals(1, judgments.getGrade(qrels.getDictionary().get("doc2")));
+    assertTrue(judgments.indexOf(qrels.getDictionary().get("doc3")) < 0);
+    assertTrue(judgments.indexOf(-1) < 0);
+  }
+
+  @Test
+  public void testBinaryIgnoringNegative() throws IOException {
+    Path file = writeQrels("1 0 doc1 3", "1 0 doc2 -1", "1 0 doc3 0", "2 0 doc2 -2");
+    Qrels qrels = Qrels.read(file.toString(), false, true);
+
+    assertEquals(1, qrels.getRelevanceGrade("1", "doc1"));
+    assertFalse(qrels.isDocJudged("1", "doc2"));
+    assertTrue(qrels.isDocJudged("1", "doc3"));
+    // A query whose judgments are all left out is still there
+    assertEquals(0, qrels.getJudgments("2").size());
+  }
+
+  @Test
+  public void testMalformedLine() throws IOException {
+    Path file = writeQrels("1 0 doc1 1", "1 0 doc2");
+    try {
+      Qrels.read(file.toString(), true, false);
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("line 2"));
+    }
+  }
+
+  @Test
+  public void testTrailingColumns() throws IOException {
+    // As in statAP/MQ qrels, which have the sampling probability after the grade
+    Path file = writeQrels("1 0 doc1 1 0.25", "1 0 doc2 0\t1.0 extra", "2 0 doc3 2 ");
+    Qrels qrels = Qrels.read(file.toString(), true, false);
+    assertEquals(1, qrels.getRelevanceGrade("1", "doc1"));
+    assertTrue(qrels.isDocJudged("1", "doc2"));
+    assertEquals(0, qrels.getRelevanceGrade("1", "doc2"));
+    assertEquals(2, qrels.getRelevanceGrade("2", "doc3"));
+  }
+}